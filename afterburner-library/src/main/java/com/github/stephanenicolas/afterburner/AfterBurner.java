@@ -1,7 +1,10 @@
 package com.github.stephanenicolas.afterburner;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javassist.CannotCompileException;
 import javassist.CtClass;
@@ -13,7 +16,10 @@ import javassist.expr.ExprEditor;
 import javassist.expr.MethodCall;
 
 import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.index.HierarchyCache;
+import com.github.stephanenicolas.afterburner.inserts.Insertable;
 import com.github.stephanenicolas.afterburner.inserts.InsertableConstructor;
+import com.github.stephanenicolas.afterburner.inserts.InsertableField;
 import com.github.stephanenicolas.afterburner.inserts.InsertableMethod;
 import com.github.stephanenicolas.afterburner.inserts.CtMethodJavaWriter;
 import lombok.extern.slf4j.Slf4j;
@@ -21,16 +27,74 @@ import lombok.extern.slf4j.Slf4j;
 /**
  * Allows to modify byte code of java classes via javassist.
  * This class allows a rich API to injeect byte code into methods or constructors of a given class.
+ * An AfterBurner is not thread safe, neither are the builders it creates. Use {@link ConcurrentAfterBurner}
+ * to inject byte code from multiple threads.
  * @author SNI
  */
 @Slf4j
 public class AfterBurner {
-    private CtMethodJavaWriter signatureExtractor;
+    private final CtMethodJavaWriter signatureExtractor;
+    private HierarchyCache hierarchyCache;
+    private String hotMethodAnnotation;
+    private final List<CtClass> createdClasses = new ArrayList<CtClass>();
 
     public AfterBurner() {
         signatureExtractor = new CtMethodJavaWriter();
     }
 
+    /**
+     * @return the cache used to resolve overriden methods, null if there is none.
+     */
+    public HierarchyCache getHierarchyCache() {
+        return hierarchyCache;
+    }
+
+    /**
+     * Sets a cache to resolve overriden methods without loading super types into a pool.
+     * A single cache can be shared by all instances of {@link AfterBurner}, in all threads.
+     * @param hierarchyCache the cache to use, or null to load super types.
+     */
+    public void setHierarchyCache(HierarchyCache hierarchyCache) {
+        this.hierarchyCache = hierarchyCache;
+    }
+
+    /**
+     * @return the name of the annotation marking hot methods, null if bodies are not checked.
+     */
+    public String getHotMethodAnnotation() {
+        return hotMethodAnnotation;
+    }
+
+    /**
+     * Enables a strict mode for hot methods : bodies injected into methods or constructors annotated with
+     * hotMethodAnnotation are rejected if they use javassist's {@code $args}, {@code $sig}, {@code $r} or {@code $w},
+     * which allocate and box on each call. Such bodies should use {@link BodyAccessors} instead.
+     * @param hotMethodAnnotation the fully qualified name of an annotation, of any retention, or null to disable the strict mode.
+     */
+    public void setHotMethodAnnotation(String hotMethodAnnotation) {
+        this.hotMethodAnnotation = hotMethodAnnotation;
+    }
+
+    /**
+     * Records a class created to support an insertion, like a holder class, so that it is output along with
+     * the class it has been created for. {@link com.github.stephanenicolas.afterburner.transform.ClassFilesTransformer}
+     * writes created classes after each transformed class.
+     * @param createdClass a new class, in the pool of the class it has been created for.
+     */
+    public void addCreatedClass(CtClass createdClass) {
+        createdClasses.add(createdClass);
+    }
+
+    /**
+     * Returns the classes created since the previous call, and forgets them.
+     * @return the classes recorded by {@link #addCreatedClass(CtClass)}, in the order they have been recorded.
+     */
+    public List<CtClass> takeCreatedClasses() {
+        List<CtClass> takenClasses = new ArrayList<CtClass>(createdClasses);
+        createdClasses.clear();
+        return takenClasses;
+    }
+
     /**
      * Add/Inserts java instructions into a given method of a given class.
      * @param insertableMethod contains all information to perform byte code injection.
@@ -42,20 +106,7 @@ public class AfterBurner {
         // create or complete onViewCreated
         String targetMethodName = insertableMethod.getTargetMethodName();
         CtClass classToTransform = insertableMethod.getClassToInsertInto();
-        CtMethod targetMethod = extractExistingMethod(classToTransform,
-                targetMethodName);
-        log.info("Method : " + targetMethod);
-        if (targetMethod != null) {
-            InsertableMethodInjectorEditor injectorEditor = new InsertableMethodInjectorEditor(
-                    classToTransform, insertableMethod);
-            targetMethod.instrument(injectorEditor);
-            if (!injectorEditor.isSuccessful) {
-                throw new CannotCompileException("Transformation failed. Insertion method not found.: " + targetMethodName);
-            }
-        } else {
-            classToTransform.addMethod(CtNewMethod.make(
-                    insertableMethod.getFullMethod(), classToTransform));
-        }
+        insertIntoMethod(classToTransform, targetMethodName, Collections.singletonList(insertableMethod));
     }
 
     /**
@@ -67,7 +118,7 @@ public class AfterBurner {
      * @throws AfterBurnerImpossibleException if something else goes wrong, wraps other exceptions.
      */
     public void beforeOverrideMethod(CtClass targetClass, String targetMethodName, String body) throws CannotCompileException, AfterBurnerImpossibleException, NotFoundException {
-        InsertableMethod insertableMethod = new InsertableMethodBuilder(this, signatureExtractor).insertIntoClass(targetClass).beforeOverrideMethod(targetMethodName).withBody(body).createInsertableMethod();
+        InsertableMethod insertableMethod = new InsertableMethodBuilder(this, signatureExtractor, hierarchyCache).insertIntoClass(targetClass).beforeOverrideMethod(targetMethodName).withBody(body).createInsertableMethod();
         addOrInsertMethod(insertableMethod);
     }
 
@@ -80,7 +131,7 @@ public class AfterBurner {
      * @throws AfterBurnerImpossibleException if something else goes wrong, wraps other exceptions.
      */
     public void afterOverrideMethod(CtClass targetClass, String targetMethodName, String body) throws CannotCompileException, AfterBurnerImpossibleException, NotFoundException {
-        InsertableMethod insertableMethod = new InsertableMethodBuilder(this, signatureExtractor).insertIntoClass(targetClass).afterOverrideMethod(targetMethodName).withBody(body).createInsertableMethod();
+        InsertableMethod insertableMethod = new InsertableMethodBuilder(this, signatureExtractor, hierarchyCache).insertIntoClass(targetClass).afterOverrideMethod(targetMethodName).withBody(body).createInsertableMethod();
         addOrInsertMethod(insertableMethod);
     }
 
@@ -93,18 +144,55 @@ public class AfterBurner {
      */
     public void insertConstructor(InsertableConstructor insertableConstructor) throws CannotCompileException, AfterBurnerImpossibleException,
     NotFoundException {
-        // create or complete onViewCreated
-        List<CtConstructor> constructorList = extractExistingConstructors(insertableConstructor);
-        log.info("constructor : " + constructorList.toString());
-        if (!constructorList.isEmpty()) {
-            for (CtConstructor constructor : constructorList) {
-                constructor
-                .insertBeforeBody(insertableConstructor
-                        .getConstructorBody(constructor
-                                .getParameterTypes()));
+        insertIntoConstructors(insertableConstructor.getClassToInsertInto(), Collections.singletonList(insertableConstructor));
+    }
+
+    /**
+     * Adds a field to a given class, with its padding and accessors.
+     * @param insertableField contains all information about the field.
+     * @throws CannotCompileException if the field, its initializer or its accessors can't be compiled.
+     * @throws AfterBurnerImpossibleException if the padding or accessors don't apply to the field, wraps other exceptions.
+     */
+    public void addField(InsertableField insertableField) throws CannotCompileException, AfterBurnerImpossibleException {
+        log.info("InsertableField : " + insertableField);
+        new FieldInserter(insertableField).insert();
+    }
+
+    /**
+     * Applies all insertions recorded by {@code classEditor} into {@code classToEdit} at once.
+     * All insertions into a same method (resp. constructor) are merged so that the method
+     * is instrumented, and its stack map frames rebuilt, only once. When several insertions are merged,
+     * each one keeps its own block, so that the locals it declares don't clash with the ones of other insertions.
+     * Insertions into methods are applied first, method by method, then insertions into constructors.
+     * Into a same method (resp. constructor), insertions are applied in the order they were recorded
+     * and give the same result as successive calls to
+     * {@link #addOrInsertMethod(InsertableMethod)} and {@link #insertConstructor(InsertableConstructor)}.
+     * @param classToEdit the class to inject code into.
+     * @param classEditor records the insertions to perform.
+     * @throws CannotCompileException if the source of an insertion can't be compiled.
+     * @throws AfterBurnerImpossibleException if something else goes wrong, wraps other exceptions.
+     * @throws NotFoundException if a type or method needed by an insertion is not found.
+     */
+    public void editClass(CtClass classToEdit, ClassEditor classEditor) throws CannotCompileException, AfterBurnerImpossibleException,
+    NotFoundException {
+        ClassEdit classEdit = new ClassEdit(this, signatureExtractor, classToEdit);
+        classEditor.edit(classEdit);
+
+        Map<String, List<InsertableMethod>> insertableMethodsByTarget = new LinkedHashMap<String, List<InsertableMethod>>();
+        for (InsertableMethod insertableMethod : classEdit.getInsertableMethods()) {
+            String targetMethodName = insertableMethod.getTargetMethodName();
+            List<InsertableMethod> insertableMethods = insertableMethodsByTarget.get(targetMethodName);
+            if (insertableMethods == null) {
+                insertableMethods = new ArrayList<InsertableMethod>();
+                insertableMethodsByTarget.put(targetMethodName, insertableMethods);
             }
-        } else {
-            throw new AfterBurnerImpossibleException("No suitable constructor was found in class " + insertableConstructor.getClassToInsertInto().getName() + ". Add a constructor that is accepted by the InsertableConstructor. Don't use non static inner classes.");
+            insertableMethods.add(insertableMethod);
+        }
+        for (Map.Entry<String, List<InsertableMethod>> entry : insertableMethodsByTarget.entrySet()) {
+            insertIntoMethod(classToEdit, entry.getKey(), entry.getValue());
+        }
+        if (!classEdit.getInsertableConstructors().isEmpty()) {
+            insertIntoConstructors(classToEdit, classEdit.getInsertableConstructors());
         }
     }
 
@@ -130,6 +218,91 @@ public class AfterBurner {
         return new DetectMethodCallEditor(withinMethod, invokedMethod).checkIfisCallingMethod();
     }
 
+    private void insertIntoMethod(CtClass classToTransform, String targetMethodName, List<InsertableMethod> insertableMethods) throws CannotCompileException, AfterBurnerImpossibleException {
+        addFlagFields(classToTransform, insertableMethods);
+        CtMethod targetMethod = extractExistingMethod(classToTransform,
+                targetMethodName);
+        log.info("Method : " + targetMethod);
+        List<InsertableMethod> insertions = insertableMethods;
+        if (targetMethod == null) {
+            String fullMethod = insertableMethods.get(0).getFullMethod();
+            CtMethod createdMethod = CtNewMethod.make(BodyAccessors.resolve(fullMethod, false), classToTransform);
+            BodyAccessors.check(fullMethod, createdMethod.getSignature(), false);
+            classToTransform.addMethod(createdMethod);
+            insertions = insertableMethods.subList(1, insertableMethods.size());
+            if (insertions.isEmpty()) {
+                return;
+            }
+            targetMethod = extractExistingMethod(classToTransform, targetMethodName);
+        }
+        for (InsertableMethod insertion : insertions) {
+            BodyAccessors.checkNoBoxingHelpers(targetMethod, hotMethodAnnotation, insertion.getBody());
+        }
+        InsertableMethodInjectorEditor injectorEditor = new InsertableMethodInjectorEditor(
+                classToTransform, insertions);
+        try {
+            targetMethod.instrument(injectorEditor);
+        } catch (CannotCompileException e) {
+            if (injectorEditor.accessorFailure != null) {
+                throw injectorEditor.accessorFailure;
+            }
+            throw e;
+        }
+        if (!injectorEditor.isSuccessful()) {
+            throw new CannotCompileException("Transformation failed. Insertion method not found.: " + targetMethodName);
+        }
+    }
+
+    private void insertIntoConstructors(CtClass classToTransform, List<InsertableConstructor> insertableConstructors) throws CannotCompileException, AfterBurnerImpossibleException,
+    NotFoundException {
+        addFlagFields(classToTransform, insertableConstructors);
+        Map<CtConstructor, List<String>> bodiesByConstructor = new LinkedHashMap<CtConstructor, List<String>>();
+        for (InsertableConstructor insertableConstructor : insertableConstructors) {
+            List<CtConstructor> constructorList = extractExistingConstructors(insertableConstructor);
+            log.info("constructor : " + constructorList.toString());
+            if (constructorList.isEmpty()) {
+                throw new AfterBurnerImpossibleException("No suitable constructor was found in class " + classToTransform.getName() + ". Add a constructor that is accepted by the InsertableConstructor. Don't use non static inner classes.");
+            }
+            for (CtConstructor constructor : constructorList) {
+                List<String> bodies = bodiesByConstructor.get(constructor);
+                if (bodies == null) {
+                    bodies = new ArrayList<String>();
+                    bodiesByConstructor.put(constructor, bodies);
+                }
+                String constructorBody = insertableConstructor.getConstructorBody(constructor.getParameterTypes());
+                BodyAccessors.checkNoBoxingHelpers(constructor, hotMethodAnnotation, constructorBody);
+                BodyAccessors.check(constructorBody, constructor.getSignature(), false);
+                bodies.add(BodyAccessors.resolve(constructorBody, false));
+            }
+        }
+        for (Map.Entry<CtConstructor, List<String>> entry : bodiesByConstructor.entrySet()) {
+            entry.getKey().insertBeforeBody("{" + mergeBodies(entry.getValue()) + "}");
+        }
+    }
+
+    /**
+     * Merges the bodies inserted at a same place. A single body is kept as is, merged bodies are each wrapped
+     * in their own block, so that independent insertions can declare the same locals.
+     */
+    private static String mergeBodies(List<String> bodies) {
+        if (bodies.size() == 1) {
+            return bodies.get(0) + "\n";
+        }
+        StringBuilder mergedBodies = new StringBuilder();
+        for (String body : bodies) {
+            mergedBodies.append('{').append(body).append("\n}\n");
+        }
+        return mergedBodies.toString();
+    }
+
+    private void addFlagFields(CtClass classToTransform, List<? extends Insertable> insertables) throws AfterBurnerImpossibleException {
+        for (Insertable insertable : insertables) {
+            if (insertable.getGuardProperty() != null) {
+                SystemPropertyGuard.addFlagField(classToTransform, insertable.getGuardProperty());
+            }
+        }
+    }
+
     private List<CtConstructor> extractExistingConstructors(final InsertableConstructor insertableConstructor) throws NotFoundException, AfterBurnerImpossibleException {
         List<CtConstructor> constructors = new ArrayList<CtConstructor>();
         CtConstructor[] declaredConstructors = insertableConstructor
@@ -145,47 +318,78 @@ public class AfterBurner {
 
     private static final class InsertableMethodInjectorEditor extends ExprEditor {
         private final CtClass classToTransform;
-        private final String insertionMethod;
-        private final boolean insertAfter;
-        private final String bodyToInsert;
-        private boolean isSuccessful;
+        private final List<String> insertionMethods = new ArrayList<String>();
+        private final List<Boolean> insertAfters = new ArrayList<Boolean>();
+        private final List<String> bodies = new ArrayList<String>();
+        private final List<String> bodiesToInsert = new ArrayList<String>();
+        private final boolean[] isSuccessful;
+        /** Accessors are checked against each call, the first failure aborts the instrumentation. */
+        private AfterBurnerImpossibleException accessorFailure;
 
-        private InsertableMethodInjectorEditor(CtClass classToTransform, InsertableMethod insertableMethod) throws AfterBurnerImpossibleException {
+        private InsertableMethodInjectorEditor(CtClass classToTransform, List<InsertableMethod> insertableMethods) throws AfterBurnerImpossibleException {
             this.classToTransform = classToTransform;
-            String insertionAfterMethod = insertableMethod
-                    .getInsertionAfterMethod();
-            String insertionBeforeMethod = insertableMethod
-                    .getInsertionBeforeMethod();
-            if (insertionBeforeMethod == null && insertionAfterMethod == null) {
-                throw new AfterBurnerImpossibleException(
-                        "Error in class "
-                                + insertableMethod.getClass()
-                                + " both insertionBeforeMethod && insertionAfterMethod are null.");
-            } else if (insertionBeforeMethod != null) {
-                insertionMethod = insertionBeforeMethod;
-                insertAfter = false;
-            } else {
-                insertionMethod = insertionAfterMethod;
-                insertAfter = true;
+            for (InsertableMethod insertableMethod : insertableMethods) {
+                String insertionAfterMethod = insertableMethod
+                        .getInsertionAfterMethod();
+                String insertionBeforeMethod = insertableMethod
+                        .getInsertionBeforeMethod();
+                if (insertionBeforeMethod == null && insertionAfterMethod == null) {
+                    throw new AfterBurnerImpossibleException(
+                            "Error in class "
+                                    + insertableMethod.getClass()
+                                    + " both insertionBeforeMethod && insertionAfterMethod are null.");
+                } else if (insertionBeforeMethod != null) {
+                    insertionMethods.add(insertionBeforeMethod);
+                    insertAfters.add(false);
+                    bodies.add(insertableMethod.getBody());
+                    bodiesToInsert.add(BodyAccessors.resolve(insertableMethod.getBody(), false));
+                } else {
+                    insertionMethods.add(insertionAfterMethod);
+                    insertAfters.add(true);
+                    bodies.add(insertableMethod.getBody());
+                    bodiesToInsert.add(BodyAccessors.resolve(insertableMethod.getBody(), true));
+                }
+            }
+            isSuccessful = new boolean[insertableMethods.size()];
+        }
+
+        private boolean isSuccessful() {
+            for (boolean isInsertionSuccessful : isSuccessful) {
+                if (!isInsertionSuccessful) {
+                    return false;
+                }
             }
-            bodyToInsert = insertableMethod.getBody();
+            return true;
         }
 
         @Override
         public void edit(MethodCall m) throws CannotCompileException {
-            if (m.getMethodName().equals(insertionMethod)) {
-
-                String origMethodCall = "$_ = $proceed($$);;\n";
-                if (insertAfter) {
-                    origMethodCall = origMethodCall + bodyToInsert;
-                } else {
-                    origMethodCall = bodyToInsert + origMethodCall;
+            // insertions are nested around the call, as if they had been injected one after the other
+            List<String> before = new ArrayList<String>();
+            List<String> after = new ArrayList<String>();
+            for (int indexInsertion = 0; indexInsertion < insertionMethods.size(); indexInsertion++) {
+                if (m.getMethodName().equals(insertionMethods.get(indexInsertion))) {
+                    try {
+                        BodyAccessors.check(bodies.get(indexInsertion), m.getSignature(), insertAfters.get(indexInsertion));
+                    } catch (AfterBurnerImpossibleException e) {
+                        accessorFailure = e;
+                        throw new CannotCompileException(e);
+                    }
+                    if (insertAfters.get(indexInsertion)) {
+                        after.add(0, bodiesToInsert.get(indexInsertion));
+                    } else {
+                        before.add(bodiesToInsert.get(indexInsertion));
+                    }
+                    isSuccessful[indexInsertion] = true;
                 }
+            }
+            if (!before.isEmpty() || !after.isEmpty()) {
+                String origMethodCall = (before.isEmpty() ? "" : mergeBodies(before)) + "$_ = $proceed($$);;\n"
+                        + (after.isEmpty() ? "" : mergeBodies(after));
 
                 log.info("Injected : " + origMethodCall);
                 log.info("Class " + classToTransform.getName() + " has been enhanced.");
                 m.replace(origMethodCall);
-                isSuccessful = true;
             }
         }
     }
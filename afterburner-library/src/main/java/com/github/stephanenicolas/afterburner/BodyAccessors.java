@@ -0,0 +1,178 @@
+package com.github.stephanenicolas.afterburner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javassist.CtBehavior;
+import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.Descriptor;
+import javassist.bytecode.MethodInfo;
+
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+
+/**
+ * Typed accessors to parameters and return values in injected bodies.
+ * Unlike javassist's {@code $args}, {@code $sig} or {@code $r}, they never allocate nor box :
+ * they are resolved when code is injected into direct loads of locals, like {@code $1} or {@code $_}.
+ * <ul>
+ * <li>{@link #arg(int)} is the parameter at the given index, starting at 0. In a body inserted before
+ * or after a method call, it is the argument of the call. In a full method or a constructor,
+ * it is the parameter of the method or constructor.</li>
+ * <li>{@link #RESULT} is the value returned by the method call a body is inserted after.</li>
+ * </ul>
+ * Accessors are checked against the signature they access when code is injected : the index of a parameter
+ * must exist, and the return value must not be void. {@link #arg(int, String)} and {@link #result(String)}
+ * also declare the type the body expects, so that a body written for another overload is rejected
+ * instead of being silently converted.
+ * Bodies can also be checked for boxing helpers, see {@link AfterBurner#setHotMethodAnnotation(String)}.
+ * @author SNI
+ */
+public final class BodyAccessors {
+    public static final String RESULT = "==RESULT==";
+
+    private static final String ARG_PREFIX = "==ARG";
+    private static final String RESULT_PREFIX = "==RESULT";
+    private static final String TYPE_SEPARATOR = ":";
+    private static final String TAG_SUFFIX = "==";
+    private static final Pattern ARG_PATTERN = Pattern.compile("==ARG(\\d+)(?::([\\w.$\\[\\]]+))?==");
+    private static final Pattern RESULT_PATTERN = Pattern.compile("==RESULT(?::([\\w.$\\[\\]]+))?==");
+    private static final Pattern BOXING_HELPER_PATTERN = Pattern.compile("\\$(args|sig|r|w)\\b");
+
+    private BodyAccessors() {
+    }
+
+    /**
+     * @param index the index of a parameter, starting at 0.
+     * @return the tag to use in a body to access the parameter.
+     */
+    public static String arg(int index) {
+        return ARG_PREFIX + index + TAG_SUFFIX;
+    }
+
+    /**
+     * @param index the index of a parameter, starting at 0.
+     * @param typeName the java name of the type of the parameter, like "int", "java.lang.String" or "long[]".
+     * @return the tag to use in a body to access the parameter, rejected if the parameter has another type.
+     */
+    public static String arg(int index, String typeName) {
+        return ARG_PREFIX + index + TYPE_SEPARATOR + typeName + TAG_SUFFIX;
+    }
+
+    /**
+     * @param typeName the java name of the type of the return value, like "int", "java.lang.String" or "long[]".
+     * @return the tag to use in a body to access the return value, rejected if it has another type.
+     */
+    public static String result(String typeName) {
+        return RESULT_PREFIX + TYPE_SEPARATOR + typeName + TAG_SUFFIX;
+    }
+
+    /**
+     * Resolves all accessors of a body. Accessors should be checked by {@link #check(String, String, boolean)}.
+     * @param body a body that can contain accessors.
+     * @param hasResult true if the body is inserted after a method call, and can access its return value as {@code $_}.
+     * @return the body where accessors are replaced by javassist's direct accesses.
+     * @throws AfterBurnerImpossibleException if the body uses {@link #RESULT} but there is no return value.
+     */
+    static String resolve(String body, boolean hasResult) throws AfterBurnerImpossibleException {
+        if (body == null) {
+            return null;
+        }
+        Matcher resultMatcher = RESULT_PATTERN.matcher(body);
+        if (resultMatcher.find()) {
+            if (!hasResult) {
+                throw new AfterBurnerImpossibleException("The return value can only be accessed after a method call: " + body);
+            }
+            body = resultMatcher.replaceAll(Matcher.quoteReplacement("$_"));
+        }
+        Matcher matcher = ARG_PATTERN.matcher(body);
+        StringBuffer resolvedBody = new StringBuffer();
+        while (matcher.find()) {
+            int indexParameter = Integer.parseInt(matcher.group(1));
+            matcher.appendReplacement(resolvedBody, Matcher.quoteReplacement("$" + (indexParameter + 1)));
+        }
+        matcher.appendTail(resolvedBody);
+        return resolvedBody.toString();
+    }
+
+    /**
+     * Checks the accessors of a body against the signature they access.
+     * @param body a body that can contain accessors.
+     * @param descriptor the descriptor of the method whose parameters, and return value, are accessed :
+     * the called method for a body inserted around a call, the method or constructor itself otherwise.
+     * @param hasResult true if the body can access the return value of descriptor.
+     * @throws AfterBurnerImpossibleException if an accessor doesn't match descriptor.
+     */
+    static void check(String body, String descriptor, boolean hasResult) throws AfterBurnerImpossibleException {
+        if (body == null) {
+            return;
+        }
+        List<String> parameterTypeNames = getParameterTypeNames(descriptor);
+        Matcher matcher = ARG_PATTERN.matcher(body);
+        while (matcher.find()) {
+            int indexParameter = Integer.parseInt(matcher.group(1));
+            if (indexParameter >= parameterTypeNames.size()) {
+                throw new AfterBurnerImpossibleException("No parameter " + indexParameter + " in " + Descriptor.toString(descriptor) + ": " + body);
+            }
+            checkType(matcher.group(2), parameterTypeNames.get(indexParameter), body);
+        }
+        Matcher resultMatcher = RESULT_PATTERN.matcher(body);
+        if (hasResult && resultMatcher.find()) {
+            String resultTypeName = Descriptor.toClassName(descriptor.substring(descriptor.indexOf(')') + 1));
+            if ("void".equals(resultTypeName)) {
+                throw new AfterBurnerImpossibleException("No return value to access, method returns void: " + body);
+            }
+            do {
+                checkType(resultMatcher.group(1), resultTypeName, body);
+            } while (resultMatcher.find());
+        }
+    }
+
+    private static List<String> getParameterTypeNames(String descriptor) {
+        // "(int,java.lang.String)", type names don't contain commas
+        String parameters = Descriptor.toString(descriptor);
+        parameters = parameters.substring(1, parameters.length() - 1);
+        if (parameters.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(parameters.split(","));
+    }
+
+    private static void checkType(String expectedTypeName, String actualTypeName, String body) throws AfterBurnerImpossibleException {
+        if (expectedTypeName != null && !expectedTypeName.equals(actualTypeName)) {
+            throw new AfterBurnerImpossibleException("Accessor of type " + expectedTypeName + " used on a value of type " + actualTypeName + ": " + body);
+        }
+    }
+
+    /**
+     * Rejects a body that uses javassist's boxing helpers ({@code $args}, {@code $sig}, {@code $r}, {@code $w})
+     * if it is injected into a hot method.
+     * @param behavior the method or constructor the body is injected into.
+     * @param hotMethodAnnotation the name of the annotation marking hot methods.
+     * @param body the body to check.
+     * @throws AfterBurnerImpossibleException if behavior is hot and body uses a boxing helper.
+     */
+    static void checkNoBoxingHelpers(CtBehavior behavior, String hotMethodAnnotation, String body) throws AfterBurnerImpossibleException {
+        if (hotMethodAnnotation == null || body == null || !isAnnotatedWith(behavior, hotMethodAnnotation)) {
+            return;
+        }
+        Matcher matcher = BOXING_HELPER_PATTERN.matcher(body);
+        if (matcher.find()) {
+            throw new AfterBurnerImpossibleException("Hot method " + behavior.getLongName() + " can't receive a body using " + matcher.group()
+                    + ", it allocates on each call. Use BodyAccessors instead: " + body);
+        }
+    }
+
+    private static boolean isAnnotatedWith(CtBehavior behavior, String annotationName) {
+        MethodInfo methodInfo = behavior.getMethodInfo2();
+        for (String tag : new String[] {AnnotationsAttribute.visibleTag, AnnotationsAttribute.invisibleTag}) {
+            AnnotationsAttribute attribute = (AnnotationsAttribute) methodInfo.getAttribute(tag);
+            if (attribute != null && attribute.getAnnotation(annotationName) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,135 @@
+package com.github.stephanenicolas.afterburner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.NotFoundException;
+
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.index.ClassIndex;
+import com.github.stephanenicolas.afterburner.inserts.CtMethodJavaWriter;
+import com.github.stephanenicolas.afterburner.inserts.InsertableMethod;
+
+/**
+ * Almost a DSL/builder to create the same {@link InsertableMethod} in many classes at once.
+ * Target classes are selected via a {@link ClassIndex}, only the selected classes are loaded
+ * from the pool. Each of them then goes through an {@link InsertableMethodBuilder}.
+ * Needs more intermediate states.
+ * @author SNI
+ */
+public class BulkInsertableMethodBuilder {
+
+    private final AfterBurner afterBurner;
+    private final ClassIndex classIndex;
+    private final ClassPool classPool;
+    private final CtMethodJavaWriter signatureExtractor = new CtMethodJavaWriter();
+    private List<String> classNamesToInsertInto;
+    private String targetMethod;
+    private boolean insertAfter;
+    private String body;
+
+    public BulkInsertableMethodBuilder(AfterBurner afterBurner, ClassIndex classIndex, ClassPool classPool) {
+        this.afterBurner = afterBurner;
+        this.classIndex = classIndex;
+        this.classPool = classPool;
+    }
+
+    public StateTargetClassesSet insertIntoSubclassesOf(String className) {
+        classNamesToInsertInto = classIndex.getSubclassesOf(className);
+        return new StateTargetClassesSet();
+    }
+
+    public StateTargetClassesSet insertIntoImplementationsOf(String interfaceName) {
+        classNamesToInsertInto = classIndex.getImplementationsOf(interfaceName);
+        return new StateTargetClassesSet();
+    }
+
+    public StateTargetClassesSet insertIntoClassesAnnotatedWith(String annotationName) {
+        classNamesToInsertInto = new ArrayList<String>();
+        for (String className : classIndex.getClassesAnnotatedWith(annotationName)) {
+            if (!classIndex.getIndexedClass(className).isInterface()) {
+                classNamesToInsertInto.add(className);
+            }
+        }
+        return new StateTargetClassesSet();
+    }
+
+    protected void checkFields() throws AfterBurnerImpossibleException {
+        if (classNamesToInsertInto == null || targetMethod == null || body == null) {
+            throw new AfterBurnerImpossibleException(
+                    "Builder was not used as intended. A field is null.");
+        }
+    }
+
+    //**********************************************
+    //******* FLUENT DSL STATE CLASSES
+    //**********************************************
+
+    public class StateTargetClassesSet {
+        public List<String> getClassNames() {
+            return classNamesToInsertInto;
+        }
+
+        public StateInsertionPointSet beforeOverrideMethod(String targetMethod) {
+            BulkInsertableMethodBuilder.this.targetMethod = targetMethod;
+            BulkInsertableMethodBuilder.this.insertAfter = false;
+            return new StateInsertionPointSet();
+        }
+
+        public StateInsertionPointSet afterOverrideMethod(String targetMethod) {
+            BulkInsertableMethodBuilder.this.targetMethod = targetMethod;
+            BulkInsertableMethodBuilder.this.insertAfter = true;
+            return new StateInsertionPointSet();
+        }
+    }
+
+    public class StateInsertionPointSet {
+        public StateComplete withBody(String body) {
+            BulkInsertableMethodBuilder.this.body = body;
+            return new StateComplete();
+        }
+    }
+
+    public class StateComplete {
+
+        /**
+         * Creates an insertable method for each selected class.
+         * @return the insertable methods, in the order of the names of their classes.
+         * @throws AfterBurnerImpossibleException if the builder was not used as intended.
+         * @throws NotFoundException if a selected class or its target method can't be found.
+         */
+        public List<InsertableMethod> createInsertableMethods() throws AfterBurnerImpossibleException, NotFoundException {
+            checkFields();
+            List<InsertableMethod> methods = new ArrayList<InsertableMethod>();
+            for (String className : classNamesToInsertInto) {
+                CtClass classToInsertInto = classPool.get(className);
+                InsertableMethodBuilder.StateTargetClassSet state = new InsertableMethodBuilder(afterBurner, signatureExtractor, afterBurner.getHierarchyCache()).insertIntoClass(classToInsertInto);
+                if (insertAfter) {
+                    methods.add(state.afterOverrideMethod(targetMethod).withBody(body).createInsertableMethod());
+                } else {
+                    methods.add(state.beforeOverrideMethod(targetMethod).withBody(body).createInsertableMethod());
+                }
+            }
+            return methods;
+        }
+
+        /**
+         * Inserts code into all selected classes.
+         * @return the classes that have been modified.
+         * @throws CannotCompileException if the body can't be compiled in one of the classes.
+         * @throws AfterBurnerImpossibleException if something else goes wrong, wraps other exceptions.
+         * @throws NotFoundException if a selected class or its target method can't be found.
+         */
+        public List<CtClass> doIt() throws CannotCompileException, AfterBurnerImpossibleException, NotFoundException {
+            List<CtClass> modifiedClasses = new ArrayList<CtClass>();
+            for (InsertableMethod method : createInsertableMethods()) {
+                afterBurner.addOrInsertMethod(method);
+                modifiedClasses.add(method.getClassToInsertInto());
+            }
+            return modifiedClasses;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.github.stephanenicolas.afterburner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javassist.CtClass;
+import javassist.NotFoundException;
+
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.inserts.CtMethodJavaWriter;
+import com.github.stephanenicolas.afterburner.inserts.InsertableConstructor;
+import com.github.stephanenicolas.afterburner.inserts.InsertableMethod;
+
+/**
+ * A transaction of insertions into a single class.
+ * Insertions are only recorded here, they are applied all together by
+ * {@link AfterBurner#editClass(CtClass, ClassEditor)} : each method and constructor
+ * is instrumented only once, whatever the number of insertions it receives.
+ * @author SNI
+ */
+public class ClassEdit {
+
+    private final AfterBurner afterBurner;
+    private final CtMethodJavaWriter signatureExtractor;
+    private final CtClass classToEdit;
+    private final List<InsertableMethod> insertableMethods = new ArrayList<InsertableMethod>();
+    private final List<InsertableConstructor> insertableConstructors = new ArrayList<InsertableConstructor>();
+
+    ClassEdit(AfterBurner afterBurner, CtMethodJavaWriter signatureExtractor, CtClass classToEdit) {
+        this.afterBurner = afterBurner;
+        this.signatureExtractor = signatureExtractor;
+        this.classToEdit = classToEdit;
+    }
+
+    public CtClass getClassToEdit() {
+        return classToEdit;
+    }
+
+    /**
+     * Records the equivalent of {@link AfterBurner#addOrInsertMethod(InsertableMethod)}.
+     * @param insertableMethod contains all information to perform byte code injection.
+     * @return this edit, to chain calls.
+     * @throws AfterBurnerImpossibleException if insertableMethod targets another class.
+     */
+    public ClassEdit addOrInsertMethod(InsertableMethod insertableMethod) throws AfterBurnerImpossibleException {
+        checkTargetClass(insertableMethod.getClassToInsertInto());
+        insertableMethods.add(insertableMethod);
+        return this;
+    }
+
+    /**
+     * Records the equivalent of {@link AfterBurner#insertConstructor(InsertableConstructor)}.
+     * @param insertableConstructor contains all information about insertion.
+     * @return this edit, to chain calls.
+     * @throws AfterBurnerImpossibleException if insertableConstructor targets another class.
+     */
+    public ClassEdit insertConstructor(InsertableConstructor insertableConstructor) throws AfterBurnerImpossibleException {
+        checkTargetClass(insertableConstructor.getClassToInsertInto());
+        insertableConstructors.add(insertableConstructor);
+        return this;
+    }
+
+    /**
+     * Records the equivalent of {@link AfterBurner#beforeOverrideMethod(CtClass, String, String)}.
+     * @param targetMethodName the method to inject code into.
+     * @param body the instructions of java to be injected.
+     * @return this edit, to chain calls.
+     * @throws AfterBurnerImpossibleException if the insertion can't be created.
+     * @throws NotFoundException if no method named targetMethodName can be found.
+     */
+    public ClassEdit beforeOverrideMethod(String targetMethodName, String body) throws AfterBurnerImpossibleException, NotFoundException {
+        return addOrInsertMethod(new InsertableMethodBuilder(afterBurner, signatureExtractor, afterBurner.getHierarchyCache()).insertIntoClass(classToEdit).beforeOverrideMethod(targetMethodName).withBody(body).createInsertableMethod());
+    }
+
+    /**
+     * Records the equivalent of {@link AfterBurner#afterOverrideMethod(CtClass, String, String)}.
+     * @param targetMethodName the method to inject code into.
+     * @param body the instructions of java to be injected.
+     * @return this edit, to chain calls.
+     * @throws AfterBurnerImpossibleException if the insertion can't be created.
+     * @throws NotFoundException if no method named targetMethodName can be found.
+     */
+    public ClassEdit afterOverrideMethod(String targetMethodName, String body) throws AfterBurnerImpossibleException, NotFoundException {
+        return addOrInsertMethod(new InsertableMethodBuilder(afterBurner, signatureExtractor, afterBurner.getHierarchyCache()).insertIntoClass(classToEdit).afterOverrideMethod(targetMethodName).withBody(body).createInsertableMethod());
+    }
+
+    List<InsertableMethod> getInsertableMethods() {
+        return Collections.unmodifiableList(insertableMethods);
+    }
+
+    List<InsertableConstructor> getInsertableConstructors() {
+        return Collections.unmodifiableList(insertableConstructors);
+    }
+
+    private void checkTargetClass(CtClass classToInsertInto) throws AfterBurnerImpossibleException {
+        if (classToInsertInto != classToEdit) {
+            throw new AfterBurnerImpossibleException("Class edit of " + classToEdit.getName() + " can't insert code into another class: " + classToInsertInto.getName());
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.github.stephanenicolas.afterburner;
+
+import javassist.CannotCompileException;
+import javassist.NotFoundException;
+
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+
+/**
+ * Callback used by {@link AfterBurner#editClass(javassist.CtClass, ClassEditor)}.
+ * Records all insertions to perform on a class into a {@link ClassEdit}.
+ * @author SNI
+ */
+public interface ClassEditor {
+
+    /**
+     * Records insertions into {@code classEdit}. Nothing is applied to the class until this method returns.
+     * @param classEdit the transaction to record insertions into.
+     * @throws CannotCompileException if an insertion can't be prepared.
+     * @throws AfterBurnerImpossibleException if something else goes wrong, wraps other exceptions.
+     * @throws NotFoundException if a type or method needed to prepare an insertion is not found.
+     */
+    void edit(ClassEdit classEdit) throws CannotCompileException, AfterBurnerImpossibleException, NotFoundException;
+}
@@ -0,0 +1,278 @@
+package com.github.stephanenicolas.afterburner;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javassist.CannotCompileException;
+import javassist.CtClass;
+import javassist.NotFoundException;
+
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.index.HierarchyCache;
+import com.github.stephanenicolas.afterburner.inserts.InsertableConstructor;
+import com.github.stephanenicolas.afterburner.inserts.InsertableMethod;
+
+/**
+ * A thread safe facade of {@link AfterBurner}. Insertions can be submitted from any thread,
+ * they are applied asynchronously and their results are given back as {@link Future}s.
+ * <p>
+ * Each class is assigned to a lane, a single thread that owns its own {@link AfterBurner} :
+ * all insertions into a class are applied by the same thread, in the order they were submitted,
+ * and never concurrently with each other. Insertions into different classes run in parallel.
+ * Insertions into a class that are pending at the same time are applied together via
+ * {@link AfterBurner#editClass(CtClass, ClassEditor)}, instrumenting each method only once.
+ * If such a batch fails, all its insertions fail with the same exception.
+ * </p>
+ * <p>
+ * Stages are not pipelined : resolving the target methods, compiling the inserted bodies
+ * and instrumenting a class all happen on its lane, inside a single call to editClass.
+ * Serializing is a separate task, submitted on the lane of the class via {@link #serialize(CtClass)}.
+ * </p>
+ * <p>
+ * Insertions must be created before they are submitted, the builders themselves are not thread safe.
+ * As for javassist, bodies inserted into a class should not use classes of the same pool that are
+ * modified at the same time by another lane.
+ * </p>
+ * @author SNI
+ */
+public class ConcurrentAfterBurner {
+
+    private final ExecutorService[] lanes;
+    private final AfterBurner[] afterBurners;
+    private final List<Map<CtClass, List<PendingInsertion>>> pendingInsertionsByLane;
+
+    /**
+     * Creates a facade with one lane per available processor.
+     */
+    public ConcurrentAfterBurner() {
+        this(Runtime.getRuntime().availableProcessors(), null);
+    }
+
+    /**
+     * Creates a facade.
+     * @param laneCount the number of threads that apply insertions.
+     * @param hierarchyCache shared by all lanes to resolve overriden methods. Can be null.
+     */
+    public ConcurrentAfterBurner(int laneCount, HierarchyCache hierarchyCache) {
+        if (laneCount < 1) {
+            throw new IllegalArgumentException("At least one lane is needed.");
+        }
+        lanes = new ExecutorService[laneCount];
+        afterBurners = new AfterBurner[laneCount];
+        pendingInsertionsByLane = new ArrayList<Map<CtClass, List<PendingInsertion>>>(laneCount);
+        for (int indexLane = 0; indexLane < laneCount; indexLane++) {
+            lanes[indexLane] = Executors.newSingleThreadExecutor(new LaneThreadFactory(indexLane));
+            afterBurners[indexLane] = new AfterBurner();
+            afterBurners[indexLane].setHierarchyCache(hierarchyCache);
+            pendingInsertionsByLane.add(new IdentityHashMap<CtClass, List<PendingInsertion>>());
+        }
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * Submits the equivalent of {@link AfterBurner#addOrInsertMethod(InsertableMethod)}.
+     * @param insertableMethod contains all information to perform byte code injection.
+     * @return a future giving the modified class once insertableMethod has been applied.
+     * Its {@link Future#get()} throws an {@link java.util.concurrent.ExecutionException} wrapping
+     * the exception thrown by {@link AfterBurner} if the insertion fails.
+     * @throws RejectedExecutionException if this facade has been shut down.
+     */
+    public Future<CtClass> submit(InsertableMethod insertableMethod) {
+        return enqueue(insertableMethod.getClassToInsertInto(), new PendingInsertion(insertableMethod, null));
+    }
+
+    /**
+     * Submits the equivalent of {@link AfterBurner#insertConstructor(InsertableConstructor)}.
+     * @param insertableConstructor contains all information about insertion.
+     * @return a future giving the modified class once insertableConstructor has been applied.
+     * @throws RejectedExecutionException if this facade has been shut down.
+     * @see #submit(InsertableMethod)
+     */
+    public Future<CtClass> submit(InsertableConstructor insertableConstructor) {
+        return enqueue(insertableConstructor.getClassToInsertInto(), new PendingInsertion(null, insertableConstructor));
+    }
+
+    /**
+     * Serializes a class once all insertions submitted into it before this call have been applied.
+     * The class is frozen afterwards, as after {@link CtClass#toBytecode()}.
+     * @param classToSerialize the class to serialize.
+     * @return a future giving the byte code of the class.
+     */
+    public Future<byte[]> serialize(final CtClass classToSerialize) {
+        return lanes[getLaneIndex(classToSerialize)].submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                return classToSerialize.toBytecode();
+            }
+        });
+    }
+
+    /**
+     * Applies all submitted insertions and serializations, then stops all lanes.
+     * @param timeout the maximum time to wait.
+     * @param unit the unit of timeout.
+     * @return true if all lanes terminated, false if the timeout elapsed before.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ExecutorService lane : lanes) {
+            if (!lane.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Future<CtClass> enqueue(CtClass classToInsertInto, PendingInsertion pendingInsertion) {
+        int indexLane = getLaneIndex(classToInsertInto);
+        Map<CtClass, List<PendingInsertion>> pendingInsertionsByClass = pendingInsertionsByLane.get(indexLane);
+        boolean isFirstPendingInsertion;
+        synchronized (pendingInsertionsByClass) {
+            if (lanes[indexLane].isShutdown()) {
+                throw new RejectedExecutionException("Insertion into " + classToInsertInto.getName() + " submitted after shutdown.");
+            }
+            List<PendingInsertion> pendingInsertions = pendingInsertionsByClass.get(classToInsertInto);
+            isFirstPendingInsertion = pendingInsertions == null;
+            if (isFirstPendingInsertion) {
+                pendingInsertions = new ArrayList<PendingInsertion>();
+                pendingInsertionsByClass.put(classToInsertInto, pendingInsertions);
+            }
+            pendingInsertions.add(pendingInsertion);
+            // the batch is submitted while holding the lock, so that it is queued before any later serialization
+            if (isFirstPendingInsertion) {
+                try {
+                    lanes[indexLane].execute(new Batch(indexLane, classToInsertInto));
+                } catch (RejectedExecutionException e) {
+                    // the lane was shut down concurrently, no batch will ever apply these insertions
+                    pendingInsertionsByClass.remove(classToInsertInto);
+                    throw e;
+                }
+            }
+        }
+        return pendingInsertion.result;
+    }
+
+    private int getLaneIndex(CtClass ctClass) {
+        return (ctClass.getName().hashCode() & Integer.MAX_VALUE) % lanes.length;
+    }
+
+    /**
+     * Applies all insertions pending for a class.
+     */
+    private final class Batch implements Runnable {
+        private final int indexLane;
+        private final CtClass classToInsertInto;
+
+        private Batch(int indexLane, CtClass classToInsertInto) {
+            this.indexLane = indexLane;
+            this.classToInsertInto = classToInsertInto;
+        }
+
+        @Override
+        public void run() {
+            final List<PendingInsertion> pendingInsertions;
+            Map<CtClass, List<PendingInsertion>> pendingInsertionsByClass = pendingInsertionsByLane.get(indexLane);
+            synchronized (pendingInsertionsByClass) {
+                pendingInsertions = pendingInsertionsByClass.remove(classToInsertInto);
+            }
+            try {
+                afterBurners[indexLane].editClass(classToInsertInto, new ClassEditor() {
+                    @Override
+                    public void edit(ClassEdit classEdit) throws AfterBurnerImpossibleException {
+                        for (PendingInsertion pendingInsertion : pendingInsertions) {
+                            if (pendingInsertion.insertableMethod != null) {
+                                classEdit.addOrInsertMethod(pendingInsertion.insertableMethod);
+                            } else {
+                                classEdit.insertConstructor(pendingInsertion.insertableConstructor);
+                            }
+                        }
+                    }
+                });
+                for (PendingInsertion pendingInsertion : pendingInsertions) {
+                    pendingInsertion.result.succeed(classToInsertInto);
+                }
+            } catch (CannotCompileException e) {
+                fail(pendingInsertions, e);
+            } catch (AfterBurnerImpossibleException e) {
+                fail(pendingInsertions, e);
+            } catch (NotFoundException e) {
+                fail(pendingInsertions, e);
+            } catch (RuntimeException e) {
+                fail(pendingInsertions, e);
+            }
+        }
+
+        private void fail(List<PendingInsertion> pendingInsertions, Exception e) {
+            for (PendingInsertion pendingInsertion : pendingInsertions) {
+                pendingInsertion.result.fail(e);
+            }
+        }
+    }
+
+    private static final class PendingInsertion {
+        private final InsertableMethod insertableMethod;
+        private final InsertableConstructor insertableConstructor;
+        private final Result result = new Result();
+
+        private PendingInsertion(InsertableMethod insertableMethod, InsertableConstructor insertableConstructor) {
+            this.insertableMethod = insertableMethod;
+            this.insertableConstructor = insertableConstructor;
+        }
+    }
+
+    /**
+     * A future completed by a {@link Batch}.
+     */
+    private static final class Result extends FutureTask<CtClass> {
+        private static final Callable<CtClass> NOTHING = new Callable<CtClass>() {
+            @Override
+            public CtClass call() {
+                return null;
+            }
+        };
+
+        private Result() {
+            super(NOTHING);
+        }
+
+        private void succeed(CtClass ctClass) {
+            set(ctClass);
+        }
+
+        private void fail(Exception e) {
+            setException(e);
+        }
+    }
+
+    private static final class LaneThreadFactory implements ThreadFactory {
+        private final int indexLane;
+
+        private LaneThreadFactory(int indexLane) {
+            this.indexLane = indexLane;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "afterburner-lane-" + indexLane);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.github.stephanenicolas.afterburner;
+
+import javassist.CannotCompileException;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewMethod;
+import javassist.Modifier;
+
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.inserts.InsertableField;
+import com.github.stephanenicolas.afterburner.inserts.InsertableField.Padding;
+
+/**
+ * Adds an {@link InsertableField} to its class, with its padding and accessors.
+ * @author SNI
+ */
+final class FieldInserter {
+    /** Longs filling a cache line of 64 bytes. */
+    static final int PADDING_LONG_COUNT = 7;
+    /** The index of the value in a holder, between 2 paddings. */
+    static final int HOLDER_INDEX = PADDING_LONG_COUNT;
+
+    private static final String PAD_PREFIX = "afterburner$pad$";
+    private static final String UPDATER_PREFIX = "afterburner$updater$";
+    private static final String ATOMIC_PACKAGE = "java.util.concurrent.atomic.";
+
+    private final InsertableField insertableField;
+    private final CtClass classToInsertInto;
+    private final String fieldName;
+    private final String typeName;
+    private int modifiers;
+
+    FieldInserter(InsertableField insertableField) throws AfterBurnerImpossibleException {
+        this.insertableField = insertableField;
+        this.classToInsertInto = insertableField.getClassToInsertInto();
+        this.fieldName = insertableField.getFieldName();
+        this.typeName = insertableField.getTypeName();
+        this.modifiers = insertableField.getModifiers();
+    }
+
+    void insert() throws CannotCompileException, AfterBurnerImpossibleException {
+        checkField();
+        Padding padding = insertableField.getPadding();
+        if (padding == Padding.HOLDER) {
+            addField(ATOMIC_PACKAGE + "AtomicLongArray", fieldName, modifiers | Modifier.FINAL,
+                    "new " + ATOMIC_PACKAGE + "AtomicLongArray(" + (2 * PADDING_LONG_COUNT + 1) + ")");
+            if (insertableField.isGeneratingAccessors()) {
+                addAccessors(fieldName, "long", String.valueOf(HOLDER_INDEX));
+            }
+            return;
+        }
+
+        if (padding == Padding.SURROUNDING) {
+            addPaddingFields("before");
+        }
+        if (insertableField.isGeneratingAccessors()) {
+            modifiers |= Modifier.VOLATILE;
+        }
+        addField(typeName, fieldName, modifiers, insertableField.getInitializer());
+        if (padding == Padding.SURROUNDING) {
+            addPaddingFields("after");
+        }
+        if (insertableField.isGeneratingAccessors()) {
+            addUpdater();
+            addAccessors(UPDATER_PREFIX + fieldName, typeName, "this");
+        }
+    }
+
+    private void checkField() throws AfterBurnerImpossibleException {
+        Padding padding = insertableField.getPadding();
+        boolean isLong = "long".equals(typeName);
+        if (padding == Padding.SURROUNDING && !isLong && !"double".equals(typeName)) {
+            throw new AfterBurnerImpossibleException("Only long and double fields can be surrounded by padding: " + insertableField);
+        }
+        if (padding == Padding.HOLDER && (!isLong || insertableField.getInitializer() != null)) {
+            throw new AfterBurnerImpossibleException("Only long fields without initializer can be stored in a padded holder: " + insertableField);
+        }
+        if (insertableField.isGeneratingAccessors()) {
+            if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers)) {
+                throw new AfterBurnerImpossibleException("Only non final instance fields can have atomic accessors: " + insertableField);
+            }
+            if (isPrimitive(typeName) && !isLong && !"int".equals(typeName)) {
+                throw new AfterBurnerImpossibleException("Only long, int and reference fields can have atomic accessors: " + insertableField);
+            }
+        }
+    }
+
+    private void addPaddingFields(String position) throws CannotCompileException {
+        int paddingModifiers = Modifier.PRIVATE | (modifiers & Modifier.STATIC);
+        for (int indexPad = 0; indexPad < PADDING_LONG_COUNT; indexPad++) {
+            addField("long", PAD_PREFIX + fieldName + "$" + position + indexPad, paddingModifiers, null);
+        }
+    }
+
+    private void addUpdater() throws CannotCompileException {
+        String hostClass = classToInsertInto.getName() + ".class";
+        String updaterType;
+        String creation;
+        if ("long".equals(typeName)) {
+            updaterType = ATOMIC_PACKAGE + "AtomicLongFieldUpdater";
+            creation = updaterType + ".newUpdater(" + hostClass + ", \"" + fieldName + "\")";
+        } else if ("int".equals(typeName)) {
+            updaterType = ATOMIC_PACKAGE + "AtomicIntegerFieldUpdater";
+            creation = updaterType + ".newUpdater(" + hostClass + ", \"" + fieldName + "\")";
+        } else {
+            updaterType = ATOMIC_PACKAGE + "AtomicReferenceFieldUpdater";
+            creation = updaterType + ".newUpdater(" + hostClass + ", " + typeName + ".class, \"" + fieldName + "\")";
+        }
+        addField(updaterType, UPDATER_PREFIX + fieldName, Modifier.PRIVATE | Modifier.STATIC | Modifier.FINAL, creation);
+    }
+
+    /**
+     * Adds accessors delegating to an atomic updater or to a holder.
+     * @param delegate the updater or holder field.
+     * @param valueType the type of the value.
+     * @param target the first argument of the delegate's methods : the instance for an updater, the index for a holder.
+     */
+    private void addAccessors(String delegate, String valueType, String target) throws CannotCompileException {
+        String suffix = Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+        String call = delegate + ".%s(" + target + "%s)";
+        if (isPrimitive(valueType)) {
+            addMethod("public " + valueType + " get" + suffix + "() { return " + String.format(call, "get", "") + "; }");
+            addMethod("public " + valueType + " incrementAndGet" + suffix + "() { return " + String.format(call, "incrementAndGet", "") + "; }");
+            addMethod("public " + valueType + " addAndGet" + suffix + "(" + valueType + " delta) { return "
+                    + String.format(call, "addAndGet", ", delta") + "; }");
+        } else {
+            addMethod("public " + valueType + " get" + suffix + "() { return (" + valueType + ") " + String.format(call, "get", "") + "; }");
+        }
+        addMethod("public boolean compareAndSet" + suffix + "(" + valueType + " expect, " + valueType + " update) { return "
+                + String.format(call, "compareAndSet", ", expect, update") + "; }");
+    }
+
+    private void addField(String type, String name, int fieldModifiers, String initializer) throws CannotCompileException {
+        CtField field = CtField.make(type + " " + name + ";", classToInsertInto);
+        field.setModifiers(fieldModifiers);
+        if (initializer == null) {
+            classToInsertInto.addField(field);
+        } else {
+            classToInsertInto.addField(field, CtField.Initializer.byExpr(initializer));
+        }
+    }
+
+    private void addMethod(String method) throws CannotCompileException {
+        classToInsertInto.addMethod(CtNewMethod.make(method, classToInsertInto));
+    }
+
+    private static boolean isPrimitive(String typeName) {
+        return typeName.indexOf('.') == -1 && Character.isLowerCase(typeName.charAt(0)) && !typeName.endsWith("]");
+    }
+}
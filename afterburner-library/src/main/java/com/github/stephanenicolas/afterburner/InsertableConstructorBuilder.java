@@ -12,6 +12,7 @@ import com.github.stephanenicolas.afterburner.inserts.SimpleInsertableConstructo
 /**
  * Almost a DSL/builder to ease creating an {@link InsertableConstructor}.
  * Needs more intermediate states.
+ * A builder is not thread safe, it should be used by a single thread to create a single constructor.
  * @author SNI
  */
 public class InsertableConstructorBuilder {
@@ -19,6 +20,7 @@ public class InsertableConstructorBuilder {
     private CtClass classToInsertInto;
     protected String body;
     private AfterBurner afterBurner;
+    private String guardProperty;
     
     public InsertableConstructorBuilder(AfterBurner afterBurner) {
         this.afterBurner = afterBurner;
@@ -54,6 +56,17 @@ public class InsertableConstructorBuilder {
 
     public class StateComplete {
 
+        /**
+         * Executes the body only when a system property is "true".
+         * @param property the name of the system property.
+         * @return this state, to chain calls.
+         * @see InsertableMethodBuilder.StateComplete#guardedBySystemProperty(String)
+         */
+        public StateComplete guardedBySystemProperty(String property) {
+            InsertableConstructorBuilder.this.guardProperty = property;
+            return this;
+        }
+
         public void doIt() throws CannotCompileException, AfterBurnerImpossibleException, NotFoundException {
             InsertableConstructor method = createInsertableConstructor();
             afterBurner.insertConstructor(method);
@@ -62,7 +75,12 @@ public class InsertableConstructorBuilder {
         public InsertableConstructor createInsertableConstructor() throws AfterBurnerImpossibleException {
             checkFields();
 
-            InsertableConstructor constructor = new SimpleInsertableConstructor(classToInsertInto, body, true);
+            String bodyToInsert = body;
+            if (guardProperty != null) {
+                bodyToInsert = SystemPropertyGuard.guard(guardProperty, body);
+            }
+            InsertableConstructor constructor = new SimpleInsertableConstructor(classToInsertInto, bodyToInsert, true);
+            constructor.setGuardProperty(guardProperty);
             return constructor;
         }
     }
@@ -0,0 +1,121 @@
+package com.github.stephanenicolas.afterburner;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.Modifier;
+import javassist.NotFoundException;
+
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.inserts.InsertableField;
+import com.github.stephanenicolas.afterburner.inserts.InsertableField.Padding;
+import com.github.stephanenicolas.afterburner.inserts.SimpleInsertableField;
+
+/**
+ * Almost a DSL/builder to ease creating an {@link InsertableField}.
+ * <pre>
+ * new InsertableFieldBuilder(afterBurner).insertIntoClass(Foo.class).withField("long", "hits")
+ *     .paddedBy(Padding.HOLDER).withAtomicAccessors().doIt();
+ * </pre>
+ * Fields are private by default.
+ * A builder is not thread safe, it should be used by a single thread to create a single field.
+ * @author SNI
+ */
+public class InsertableFieldBuilder {
+
+    private CtClass classToInsertInto;
+    private String typeName;
+    private String fieldName;
+    private int modifiers = Modifier.PRIVATE;
+    private String initializer;
+    private Padding padding = Padding.NONE;
+    private boolean generatingAccessors;
+    private AfterBurner afterBurner;
+
+    public InsertableFieldBuilder(AfterBurner afterBurner) {
+        this.afterBurner = afterBurner;
+    }
+
+    public StateTargetClassSet insertIntoClass(Class<?> clazzToInsertInto) throws NotFoundException {
+        this.classToInsertInto = ClassPool.getDefault().get(clazzToInsertInto.getName());
+        return new StateTargetClassSet();
+    }
+
+    public StateTargetClassSet insertIntoClass(CtClass clazzToInsertInto) {
+        this.classToInsertInto = clazzToInsertInto;
+        return new StateTargetClassSet();
+    }
+
+    protected void checkFields() throws AfterBurnerImpossibleException {
+        if (classToInsertInto == null || typeName == null || fieldName == null) {
+            throw new AfterBurnerImpossibleException(
+                    "Builder was not used as intended. A field is null.");
+        }
+    }
+
+    //**********************************************
+    //******* FLUENT DSL STATE CLASSES
+    //**********************************************
+
+    public class StateTargetClassSet {
+        /**
+         * @param typeName the type of the field, like "long" or "java.lang.String".
+         * @param fieldName the name of the field.
+         * @return the next state.
+         */
+        public StateComplete withField(String typeName, String fieldName) {
+            InsertableFieldBuilder.this.typeName = typeName;
+            InsertableFieldBuilder.this.fieldName = fieldName;
+            return new StateComplete();
+        }
+    }
+
+    public class StateComplete {
+
+        /**
+         * @param modifiers the modifiers of the field, see {@link Modifier}.
+         * @return this state, to chain calls.
+         */
+        public StateComplete withModifiers(int modifiers) {
+            InsertableFieldBuilder.this.modifiers = modifiers;
+            return this;
+        }
+
+        /**
+         * @param initializer a java expression initializing the field.
+         * @return this state, to chain calls.
+         */
+        public StateComplete initializedBy(String initializer) {
+            InsertableFieldBuilder.this.initializer = initializer;
+            return this;
+        }
+
+        /**
+         * @param padding how to pad the field against false sharing.
+         * @return this state, to chain calls.
+         */
+        public StateComplete paddedBy(Padding padding) {
+            InsertableFieldBuilder.this.padding = padding;
+            return this;
+        }
+
+        /**
+         * Generates accessors based on atomic field updaters.
+         * @return this state, to chain calls.
+         * @see InsertableField#isGeneratingAccessors()
+         */
+        public StateComplete withAtomicAccessors() {
+            InsertableFieldBuilder.this.generatingAccessors = true;
+            return this;
+        }
+
+        public InsertableField createInsertableField() throws AfterBurnerImpossibleException {
+            checkFields();
+            return new SimpleInsertableField(classToInsertInto, typeName, fieldName, modifiers, initializer, padding, generatingAccessors);
+        }
+
+        public void doIt() throws CannotCompileException, AfterBurnerImpossibleException {
+            afterBurner.addField(createInsertableField());
+        }
+    }
+}
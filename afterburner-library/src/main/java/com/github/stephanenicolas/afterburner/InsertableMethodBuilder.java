@@ -1,5 +1,7 @@
 package com.github.stephanenicolas.afterburner;
 
+import java.io.IOException;
+
 import javassist.CannotCompileException;
 import javassist.ClassPool;
 import javassist.CtClass;
@@ -7,14 +9,17 @@ import javassist.CtMethod;
 import javassist.NotFoundException;
 
 import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.index.HierarchyCache;
 import com.github.stephanenicolas.afterburner.inserts.CtMethodJavaWriter;
 import com.github.stephanenicolas.afterburner.inserts.InsertableMethod;
+import com.github.stephanenicolas.afterburner.inserts.MethodSignature;
 import com.github.stephanenicolas.afterburner.inserts.SimpleInsertableMethod;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * Almost a DSL/builder to ease creating an {@link InsertableMethod}. Needs more
  * intermediate states.
+ * A builder is not thread safe, it should be used by a single thread to create a single method.
  * 
  * @author SNI
  */
@@ -29,6 +34,8 @@ public class InsertableMethodBuilder {
     protected String insertionAfterMethod;
     private AfterBurner afterBurner;
     private CtMethodJavaWriter signatureExtractor;
+    private HierarchyCache hierarchyCache;
+    private String guardProperty;
 
     public InsertableMethodBuilder(AfterBurner afterBurner) {
         this(afterBurner, null);
@@ -36,8 +43,17 @@ public class InsertableMethodBuilder {
 
     public InsertableMethodBuilder(AfterBurner afterBurner,
             CtMethodJavaWriter signatureExtractor) {
+        this(afterBurner, signatureExtractor, null);
+    }
+
+    /**
+     * @param hierarchyCache used to resolve overriden methods without loading super types. Can be null.
+     */
+    public InsertableMethodBuilder(AfterBurner afterBurner,
+            CtMethodJavaWriter signatureExtractor, HierarchyCache hierarchyCache) {
         this.afterBurner = afterBurner;
         this.signatureExtractor = signatureExtractor;
+        this.hierarchyCache = hierarchyCache;
     }
 
     public StateTargetClassSet insertIntoClass(Class<?> clazzToInsertInto) throws NotFoundException {
@@ -51,12 +67,12 @@ public class InsertableMethodBuilder {
         return new StateTargetClassSet();
     }
 
-    private void doInsertBodyInFullMethod() {
+    private void doInsertBodyInFullMethod(String bodyToInsert) {
         if (fullMethod != null) {
             if (!fullMethod.contains(InsertableMethod.BODY_TAG)) {
                 log.info("Full method doesn't contain body tag (InsertableMethod.BODY_TAG=" + InsertableMethod.BODY_TAG + ")");
             }
-            fullMethod = fullMethod.replace(InsertableMethod.BODY_TAG, body);
+            fullMethod = fullMethod.replace(InsertableMethod.BODY_TAG, bodyToInsert);
         }
     }
 
@@ -84,16 +100,12 @@ public class InsertableMethodBuilder {
         public StateInsertionPointAndFullMethodSet beforeOverrideMethod(String targetMethod) throws NotFoundException {
             InsertableMethodBuilder.this.targetMethod = targetMethod;
             InsertableMethodBuilder.this.insertionBeforeMethod = targetMethod;
-            CtMethod overridenMethod = findTargetMethod(targetMethod);
-            if (overridenMethod == null) {
-                throw new NotFoundException(String.format("Class %s doesn't contain any method named %s", classToInsertInto.getName(), targetMethod));
-            }
-            fullMethod = signatureExtractor
-                    .createJavaSignature(overridenMethod)
+            String[] signatureAndSuperCall = createSignatureAndSuperCall(targetMethod);
+            fullMethod = signatureAndSuperCall[0]
                     + " { \n"
                     + InsertableMethod.BODY_TAG
                     + "\n"
-                    + signatureExtractor.invokeSuper(overridenMethod) + "}\n";
+                    + signatureAndSuperCall[1] + "}\n";
             log.info("Creating override " + fullMethod);
             return new StateInsertionPointAndFullMethodSet();
         }
@@ -101,20 +113,50 @@ public class InsertableMethodBuilder {
         public StateInsertionPointAndFullMethodSet afterOverrideMethod(String targetMethod) throws NotFoundException {
             InsertableMethodBuilder.this.targetMethod = targetMethod;
             InsertableMethodBuilder.this.insertionAfterMethod = targetMethod;
-            CtMethod overridenMethod = findTargetMethod(targetMethod);
-            if (overridenMethod == null) {
-                throw new NotFoundException(String.format("Class %s doesn't contain any method named %s", classToInsertInto.getName(), targetMethod));
-            }
-            fullMethod = signatureExtractor
-                    .createJavaSignature(overridenMethod)
+            String[] signatureAndSuperCall = createSignatureAndSuperCall(targetMethod);
+            fullMethod = signatureAndSuperCall[0]
                     + " { \n"
-                    + signatureExtractor.invokeSuper(overridenMethod)
+                    + signatureAndSuperCall[1]
                     + "\n"
                     + InsertableMethod.BODY_TAG + "}\n";
             log.info("Creating override " + fullMethod);
             return new StateInsertionPointAndFullMethodSet();
         }
 
+        /**
+         * Generates the signature of the override of a method, and the call to its super implementation.
+         * Inherited methods are resolved via the {@link HierarchyCache} if there is one,
+         * in order not to load super types into the pool.
+         */
+        private String[] createSignatureAndSuperCall(String targetMethod) throws NotFoundException {
+            if (hierarchyCache != null && !declaresMethod(targetMethod)) {
+                MethodSignature overridenMethod;
+                try {
+                    overridenMethod = hierarchyCache.findInheritedMethod(classToInsertInto, targetMethod);
+                } catch (IOException e) {
+                    throw new NotFoundException(String.format("Impossible to read super types of class %s", classToInsertInto.getName()), e);
+                }
+                if (overridenMethod == null) {
+                    throw new NotFoundException(String.format("Class %s doesn't contain any method named %s", classToInsertInto.getName(), targetMethod));
+                }
+                return new String[] {signatureExtractor.createJavaSignature(overridenMethod), signatureExtractor.invokeSuper(overridenMethod)};
+            }
+            CtMethod overridenMethod = findTargetMethod(targetMethod);
+            if (overridenMethod == null) {
+                throw new NotFoundException(String.format("Class %s doesn't contain any method named %s", classToInsertInto.getName(), targetMethod));
+            }
+            return new String[] {signatureExtractor.createJavaSignature(overridenMethod), signatureExtractor.invokeSuper(overridenMethod)};
+        }
+
+        private boolean declaresMethod(String targetMethod) {
+            for (CtMethod method : classToInsertInto.getDeclaredMethods()) {
+                if (method.getName().equals(targetMethod)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
         private CtMethod findTargetMethod(String targetMethod) {
             CtMethod overridenMethod = null;
             try {
@@ -166,13 +208,31 @@ public class InsertableMethodBuilder {
 
     public class StateComplete {
 
+        /**
+         * Executes the body only when a system property is "true". The property is read once,
+         * when the class is initialized, into a static final field : when it is not set,
+         * the JIT eliminates the body entirely. See {@link SystemPropertyGuard}.
+         * The flag field is added to the class when the insertable method is applied.
+         * @param property the name of the system property.
+         * @return this state, to chain calls.
+         */
+        public StateComplete guardedBySystemProperty(String property) {
+            InsertableMethodBuilder.this.guardProperty = property;
+            return this;
+        }
+
         public InsertableMethod createInsertableMethod() throws AfterBurnerImpossibleException {
             checkFields();
-            doInsertBodyInFullMethod();
+            String bodyToInsert = body;
+            if (guardProperty != null) {
+                bodyToInsert = SystemPropertyGuard.guard(guardProperty, body);
+            }
+            doInsertBodyInFullMethod(bodyToInsert);
 
             InsertableMethod method = new SimpleInsertableMethod(
                     classToInsertInto, targetMethod, insertionBeforeMethod,
-                    insertionAfterMethod, body, fullMethod);
+                    insertionAfterMethod, bodyToInsert, fullMethod);
+            method.setGuardProperty(guardProperty);
             return method;
         }
 
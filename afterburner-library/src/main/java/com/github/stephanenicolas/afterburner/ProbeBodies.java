@@ -0,0 +1,37 @@
+package com.github.stephanenicolas.afterburner;
+
+/**
+ * Creates bodies that emit events through the probes of afterburner-runtime.
+ * An event is a single static call, that doesn't allocate nor lock, instead of
+ * logging or printing from injected code, which serializes all threads.
+ * Instrumented classes need afterburner-runtime at runtime.
+ * <pre>
+ * afterBurner.addOrInsertMethod(new SimpleInsertableMethod(fooClass, "doStuff", "bar", null,
+ *     ProbeBodies.emit(BAR_CALLED, BodyAccessors.arg(0)), null));
+ * </pre>
+ * @author SNI
+ */
+public final class ProbeBodies {
+    private static final String PROBES_CLASS_NAME = "com.github.stephanenicolas.afterburner.runtime.Probes";
+
+    private ProbeBodies() {
+    }
+
+    /**
+     * @param eventId the id of the event.
+     * @return a body emitting an event with no value.
+     */
+    public static String emit(int eventId) {
+        return PROBES_CLASS_NAME + ".emit(" + eventId + ");";
+    }
+
+    /**
+     * @param eventId the id of the event.
+     * @param valueExpression a primitive expression, converted to long, giving the value of the event.
+     * It can use {@link BodyAccessors}.
+     * @return a body emitting an event with a value.
+     */
+    public static String emit(int eventId, String valueExpression) {
+        return PROBES_CLASS_NAME + ".emit(" + eventId + ", (long) (" + valueExpression + "));";
+    }
+}
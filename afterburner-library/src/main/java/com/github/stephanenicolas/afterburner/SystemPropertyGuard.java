@@ -0,0 +1,75 @@
+package com.github.stephanenicolas.afterburner;
+
+import javassist.CannotCompileException;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.Modifier;
+import javassist.NotFoundException;
+
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+
+/**
+ * Guards injected code by a system property, read once when the class is initialized.
+ * The property is stored in a generated {@code static final boolean} field of the class,
+ * so that the JIT treats it as a constant : when the property is not set, the guarded
+ * code is eliminated from compiled code and costs nothing, not even a field load and a branch.
+ * The property must be set before the class is initialized.
+ * @author SNI
+ */
+public final class SystemPropertyGuard {
+    private static final String FIELD_PREFIX = "afterburner$flag$";
+
+    private SystemPropertyGuard() {
+    }
+
+    /**
+     * Wraps a body so that it is executed only when a system property is "true".
+     * The class doesn't change : the flag field must be added by {@link #addFlagField(CtClass, String)}
+     * when the guarded body is inserted.
+     * @param property the name of the system property.
+     * @param body the instructions of java to guard.
+     * @return the guarded body.
+     */
+    public static String guard(String property, String body) {
+        return "if (" + getFieldName(property) + ") { " + body + " }";
+    }
+
+    /**
+     * Adds the flag field of a system property to a class, if not already added by another guard of the same property.
+     * @param classToInsertInto the class guarded bodies are inserted into.
+     * @param property the name of the system property.
+     * @throws AfterBurnerImpossibleException if the flag field can't be added.
+     */
+    public static void addFlagField(CtClass classToInsertInto, String property) throws AfterBurnerImpossibleException {
+        String fieldName = getFieldName(property);
+        try {
+            classToInsertInto.getDeclaredField(fieldName);
+        } catch (NotFoundException e) {
+            try {
+                CtField flagField = new CtField(CtClass.booleanType, fieldName, classToInsertInto);
+                flagField.setModifiers(Modifier.PRIVATE | Modifier.STATIC | Modifier.FINAL);
+                classToInsertInto.addField(flagField, CtField.Initializer.byExpr("Boolean.getBoolean(\"" + escape(property) + "\")"));
+            } catch (CannotCompileException e1) {
+                throw new AfterBurnerImpossibleException("Impossible to add flag of property " + property + " to class " + classToInsertInto.getName(), e1);
+            }
+        }
+    }
+
+    /**
+     * @param property the name of a system property.
+     * @return the name of the field holding the value of property.
+     */
+    public static String getFieldName(String property) {
+        StringBuilder builder = new StringBuilder(FIELD_PREFIX);
+        for (char c : property.toCharArray()) {
+            builder.append(Character.isJavaIdentifierPart(c) ? c : '_');
+        }
+        // different properties can be sanitized to the same name
+        builder.append('$').append(Integer.toHexString(property.hashCode()));
+        return builder.toString();
+    }
+
+    private static String escape(String property) {
+        return property.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,294 @@
+package com.github.stephanenicolas.afterburner.bytecode;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A minimal, read only, class file parser. Unlike {@link javassist.bytecode.ClassFile},
+ * it doesn't build any object for fields, methods or their code : it only indexes the constant pool
+ * and decodes strings on demand. It is meant to quickly inspect a lot of class files,
+ * before deciding whether or not to load them into a {@link javassist.ClassPool}.
+ * @author SNI
+ */
+public final class ClassFileParser {
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int HEADER_SIZE = 10;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private static final String RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+    private static final String RUNTIME_INVISIBLE_ANNOTATIONS = "RuntimeInvisibleAnnotations";
+
+    private static final int U1 = 1;
+    private static final int U2 = 2;
+    private static final int U4 = 4;
+    private static final int U8 = 8;
+    private static final int BYTE_MASK = 0xFF;
+    private static final int BITS_PER_BYTE = 8;
+    /** Access flags, name and descriptor of a field or method. */
+    private static final int MEMBER_HEADER_SIZE = 3 * U2;
+
+    private final byte[] classFile;
+    private final int[] constantOffsets;
+    private final int accessFlags;
+    private final int thisClassIndex;
+    private final int superClassIndex;
+    private final int[] interfaceIndexes;
+    private final int attributesOffset;
+
+    /**
+     * Parses a class file.
+     * @param classFile the bytes of a class file.
+     * @throws IOException if classFile is not a valid class file.
+     */
+    public ClassFileParser(byte[] classFile) throws IOException {
+        this.classFile = classFile;
+        try {
+            if (readU4(0) != MAGIC) {
+                throw new IOException("Not a class file.");
+            }
+            int constantCount = readU2(HEADER_SIZE - U2);
+            constantOffsets = new int[constantCount];
+            int offset = HEADER_SIZE;
+            for (int indexConstant = 1; indexConstant < constantCount; indexConstant++) {
+                constantOffsets[indexConstant] = offset;
+                int tag = classFile[offset] & BYTE_MASK;
+                offset += U1 + getConstantSize(tag, offset);
+                if (tag == CONSTANT_LONG || tag == CONSTANT_DOUBLE) {
+                    indexConstant++;
+                }
+            }
+            accessFlags = readU2(offset);
+            offset += U2;
+            thisClassIndex = readU2(offset);
+            offset += U2;
+            superClassIndex = readU2(offset);
+            offset += U2;
+            int interfaceCount = readU2(offset);
+            offset += U2;
+            interfaceIndexes = new int[interfaceCount];
+            for (int indexInterface = 0; indexInterface < interfaceCount; indexInterface++) {
+                interfaceIndexes[indexInterface] = readU2(offset);
+                offset += U2;
+            }
+            // fields, then methods
+            offset = skipMembers(skipMembers(offset));
+            attributesOffset = offset;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Truncated class file.", e);
+        }
+    }
+
+    public int getAccessFlags() {
+        return accessFlags;
+    }
+
+    /**
+     * @return the name of the class, like "java.lang.String".
+     * @throws IOException if the constant pool is invalid.
+     */
+    public String getClassName() throws IOException {
+        return getClassInfo(thisClassIndex);
+    }
+
+    /**
+     * @return the name of the super class, null for java.lang.Object.
+     * @throws IOException if the constant pool is invalid.
+     */
+    public String getSuperclassName() throws IOException {
+        return superClassIndex == 0 ? null : getClassInfo(superClassIndex);
+    }
+
+    /**
+     * @return the names of the interfaces directly implemented by the class.
+     * @throws IOException if the constant pool is invalid.
+     */
+    public String[] getInterfaceNames() throws IOException {
+        String[] interfaceNames = new String[interfaceIndexes.length];
+        for (int indexInterface = 0; indexInterface < interfaceIndexes.length; indexInterface++) {
+            interfaceNames[indexInterface] = getClassInfo(interfaceIndexes[indexInterface]);
+        }
+        return interfaceNames;
+    }
+
+    /**
+     * Returns the content of an attribute of the class (not of its members).
+     * @param attributeName the name of the attribute, like "SourceFile".
+     * @return a copy of the content of the attribute, null if the class has no such attribute.
+     * @throws IOException if the class file is invalid.
+     */
+    public byte[] getAttribute(String attributeName) throws IOException {
+        int attributeCount = readU2(attributesOffset);
+        int offset = attributesOffset + U2;
+        for (int indexAttribute = 0; indexAttribute < attributeCount; indexAttribute++) {
+            int length = readU4(offset + U2);
+            if (attributeName.equals(getUtf8(readU2(offset)))) {
+                byte[] attribute = new byte[length];
+                System.arraycopy(classFile, offset + U2 + U4, attribute, 0, length);
+                return attribute;
+            }
+            offset += U2 + U4 + length;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the annotations of the class, both visible and invisible at runtime.
+     * @return the names of the annotation types, like "java.lang.Deprecated".
+     * @throws IOException if the class file is invalid.
+     */
+    public List<String> getAnnotationNames() throws IOException {
+        List<String> annotationNames = new ArrayList<String>();
+        collectAnnotationNames(getAttribute(RUNTIME_VISIBLE_ANNOTATIONS), annotationNames);
+        collectAnnotationNames(getAttribute(RUNTIME_INVISIBLE_ANNOTATIONS), annotationNames);
+        return annotationNames;
+    }
+
+    /**
+     * @param index the index of a CONSTANT_Utf8 entry.
+     * @return the decoded string.
+     * @throws IOException if the entry is not a CONSTANT_Utf8.
+     */
+    public String getUtf8(int index) throws IOException {
+        int offset = getConstantOffset(index, CONSTANT_UTF8);
+        DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(classFile, offset + U1, classFile.length - offset - U1));
+        return inputStream.readUTF();
+    }
+
+    /**
+     * @param index the index of a CONSTANT_Class entry.
+     * @return the name of the class, like "java.lang.String" or "[Ljava.lang.String;" for arrays.
+     * @throws IOException if the entry is not a CONSTANT_Class.
+     */
+    public String getClassInfo(int index) throws IOException {
+        int offset = getConstantOffset(index, CONSTANT_CLASS);
+        return getUtf8(readU2(offset + U1)).replace('/', '.');
+    }
+
+    private int getConstantOffset(int index, int expectedTag) throws IOException {
+        if (index <= 0 || index >= constantOffsets.length || (classFile[constantOffsets[index]] & BYTE_MASK) != expectedTag) {
+            throw new IOException("Invalid constant pool index " + index);
+        }
+        return constantOffsets[index];
+    }
+
+    private int getConstantSize(int tag, int offset) throws IOException {
+        switch (tag) {
+            case CONSTANT_UTF8:
+                return U2 + readU2(offset + U1);
+            case CONSTANT_CLASS:
+            case CONSTANT_STRING:
+            case CONSTANT_METHOD_TYPE:
+            case CONSTANT_MODULE:
+            case CONSTANT_PACKAGE:
+                return U2;
+            case CONSTANT_METHOD_HANDLE:
+                return U1 + U2;
+            case CONSTANT_INTEGER:
+            case CONSTANT_FLOAT:
+            case CONSTANT_FIELDREF:
+            case CONSTANT_METHODREF:
+            case CONSTANT_INTERFACE_METHODREF:
+            case CONSTANT_NAME_AND_TYPE:
+            case CONSTANT_DYNAMIC:
+            case CONSTANT_INVOKE_DYNAMIC:
+                return U4;
+            case CONSTANT_LONG:
+            case CONSTANT_DOUBLE:
+                return U8;
+            default:
+                throw new IOException("Invalid constant pool tag " + tag + " at " + offset);
+        }
+    }
+
+    private void collectAnnotationNames(byte[] annotations, List<String> annotationNames) throws IOException {
+        if (annotations == null) {
+            return;
+        }
+        DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(annotations));
+        int annotationCount = inputStream.readUnsignedShort();
+        for (int indexAnnotation = 0; indexAnnotation < annotationCount; indexAnnotation++) {
+            String typeDescriptor = getUtf8(inputStream.readUnsignedShort());
+            // type descriptors are like Lcom/foo/Bar;
+            annotationNames.add(typeDescriptor.substring(1, typeDescriptor.length() - 1).replace('/', '.'));
+            skipElementValuePairs(inputStream);
+        }
+    }
+
+    private void skipElementValuePairs(DataInputStream inputStream) throws IOException {
+        int pairCount = inputStream.readUnsignedShort();
+        for (int indexPair = 0; indexPair < pairCount; indexPair++) {
+            inputStream.skipBytes(U2);
+            skipElementValue(inputStream);
+        }
+    }
+
+    private void skipElementValue(DataInputStream inputStream) throws IOException {
+        int tag = inputStream.readUnsignedByte();
+        switch (tag) {
+            case 'e':
+                inputStream.skipBytes(U2 + U2);
+                break;
+            case '@':
+                inputStream.skipBytes(U2);
+                skipElementValuePairs(inputStream);
+                break;
+            case '[':
+                int valueCount = inputStream.readUnsignedShort();
+                for (int indexValue = 0; indexValue < valueCount; indexValue++) {
+                    skipElementValue(inputStream);
+                }
+                break;
+            default:
+                // constants and classes
+                inputStream.skipBytes(U2);
+                break;
+        }
+    }
+
+    private int skipMembers(int offset) {
+        int memberCount = readU2(offset);
+        int newOffset = offset + U2;
+        for (int indexMember = 0; indexMember < memberCount; indexMember++) {
+            newOffset += MEMBER_HEADER_SIZE;
+            newOffset = skipAttributes(newOffset);
+        }
+        return newOffset;
+    }
+
+    private int skipAttributes(int offset) {
+        int attributeCount = readU2(offset);
+        int newOffset = offset + U2;
+        for (int indexAttribute = 0; indexAttribute < attributeCount; indexAttribute++) {
+            newOffset += U2 + U4 + readU4(newOffset + U2);
+        }
+        return newOffset;
+    }
+
+    private int readU2(int offset) {
+        return ((classFile[offset] & BYTE_MASK) << BITS_PER_BYTE) | (classFile[offset + 1] & BYTE_MASK);
+    }
+
+    private int readU4(int offset) {
+        return (readU2(offset) << (U2 * BITS_PER_BYTE)) | readU2(offset + U2);
+    }
+}
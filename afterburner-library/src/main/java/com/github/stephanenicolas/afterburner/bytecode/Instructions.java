@@ -0,0 +1,84 @@
+package com.github.stephanenicolas.afterburner.bytecode;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.ExceptionTable;
+import javassist.bytecode.Opcode;
+
+/**
+ * Helpers to match sequences of instructions in the code of a method.
+ * A sequence can only be matched, and replaced, if the control flow can't enter it
+ * anywhere else than at its first instruction, see {@link #getJumpTargets(CodeAttribute)}.
+ * @author SNI
+ */
+public final class Instructions {
+    private static final int SWITCH_ALIGNMENT = 4;
+    private static final int INT_SIZE = 4;
+    /** Default offset, low and high values of a tableswitch. */
+    private static final int TABLE_HEADER_SIZE = 12;
+    /** Default offset and pair count of a lookupswitch. */
+    private static final int LOOKUP_HEADER_SIZE = 8;
+    private static final int LOOKUP_PAIR_SIZE = 8;
+
+    private Instructions() {
+    }
+
+    /**
+     * @param codeAttribute the code of a method.
+     * @return the indexes of all instructions of codeAttribute, in order.
+     * @throws BadBytecode if the code is invalid.
+     */
+    public static List<Integer> getIndexes(CodeAttribute codeAttribute) throws BadBytecode {
+        List<Integer> indexes = new ArrayList<Integer>();
+        CodeIterator iterator = codeAttribute.iterator();
+        while (iterator.hasNext()) {
+            indexes.add(iterator.next());
+        }
+        return indexes;
+    }
+
+    /**
+     * @param codeAttribute the code of a method.
+     * @return the indexes of the instructions that a jump, a switch or an exception handler can lead to.
+     * @throws BadBytecode if the code is invalid.
+     */
+    public static Set<Integer> getJumpTargets(CodeAttribute codeAttribute) throws BadBytecode {
+        Set<Integer> targets = new HashSet<Integer>();
+        ExceptionTable exceptionTable = codeAttribute.getExceptionTable();
+        for (int indexHandler = 0; indexHandler < exceptionTable.size(); indexHandler++) {
+            targets.add(exceptionTable.handlerPc(indexHandler));
+        }
+        CodeIterator iterator = codeAttribute.iterator();
+        while (iterator.hasNext()) {
+            int index = iterator.next();
+            int opcode = iterator.byteAt(index);
+            if (opcode >= Opcode.IFEQ && opcode <= Opcode.JSR || opcode == Opcode.IFNULL || opcode == Opcode.IFNONNULL) {
+                targets.add(index + iterator.s16bitAt(index + 1));
+            } else if (opcode == Opcode.GOTO_W || opcode == Opcode.JSR_W) {
+                targets.add(index + iterator.s32bitAt(index + 1));
+            } else if (opcode == Opcode.TABLESWITCH || opcode == Opcode.LOOKUPSWITCH) {
+                int defaultIndex = (index + SWITCH_ALIGNMENT) & ~(SWITCH_ALIGNMENT - 1);
+                targets.add(index + iterator.s32bitAt(defaultIndex));
+                if (opcode == Opcode.TABLESWITCH) {
+                    int low = iterator.s32bitAt(defaultIndex + INT_SIZE);
+                    int high = iterator.s32bitAt(defaultIndex + 2 * INT_SIZE);
+                    for (int indexOffset = 0; indexOffset <= high - low; indexOffset++) {
+                        targets.add(index + iterator.s32bitAt(defaultIndex + TABLE_HEADER_SIZE + indexOffset * INT_SIZE));
+                    }
+                } else {
+                    int pairCount = iterator.s32bitAt(defaultIndex + INT_SIZE);
+                    for (int indexPair = 0; indexPair < pairCount; indexPair++) {
+                        targets.add(index + iterator.s32bitAt(defaultIndex + LOOKUP_HEADER_SIZE + indexPair * LOOKUP_PAIR_SIZE + INT_SIZE));
+                    }
+                }
+            }
+        }
+        return targets;
+    }
+}
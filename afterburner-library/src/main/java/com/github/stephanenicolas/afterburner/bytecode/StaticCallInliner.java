@@ -0,0 +1,419 @@
+package com.github.stephanenicolas.afterburner.bytecode;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import javassist.ClassPool;
+import javassist.CtBehavior;
+import javassist.CtClass;
+import javassist.CtMember;
+import javassist.CtMethod;
+import javassist.Modifier;
+import javassist.NotFoundException;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.Descriptor;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
+import javassist.bytecode.analysis.Analyzer;
+import javassist.bytecode.analysis.Frame;
+
+/**
+ * Inlines calls to small static helpers, e.g. the probes called by injected code, into the bytecode of their callers :
+ * the arguments are stored into new locals of the caller, and the code of the helper is copied at the call site,
+ * with its locals shifted after the locals of the caller, its constants copied to the constant pool of the caller,
+ * and its returns replaced by jumps to the end of the copy. It removes the call overhead of interpreters and of
+ * runtimes that don't inline, e.g. Android before its JIT kicks in.
+ * <p>
+ * Only the helpers selected by name whose code is not longer than a threshold are inlined, and only if their code is simple :
+ * helpers calling themselves, or with exception handlers, switches, subroutines, invokedynamic or synchronization are kept,
+ * as well as helpers using a class or member that the caller can't access.
+ * Inlining is not recursive : the calls of an inlined helper are kept. An inlined helper doesn't appear in stack traces anymore,
+ * and its class is initialized when the inlined code first uses one of its static members, rather than at the call.
+ * </p>
+ * <p>
+ * An inliner can be applied to any method modified by AfterBurner, once the injected code is in place.
+ * </p>
+ * @author SNI
+ */
+public class StaticCallInliner {
+    private static final int INVOKESTATIC_LENGTH = 3;
+    private static final int SHORT_FORM_COUNT = 4;
+    private static final int U1_MAX = 0xFF;
+
+    private final Pattern helperNamePattern;
+    private final int maxCodeLength;
+
+    /**
+     * Creates an inliner.
+     * @param helperNameRegex selects the helpers to inline by their full name, e.g. "com.foo.Probes.enter".
+     * @param maxCodeLength the maximum length in bytes of the code of an inlined helper.
+     */
+    public StaticCallInliner(String helperNameRegex, int maxCodeLength) {
+        this.helperNamePattern = Pattern.compile(helperNameRegex);
+        this.maxCodeLength = maxCodeLength;
+    }
+
+    /**
+     * Inlines the calls of a behavior to the selected helpers.
+     * @param behavior the behavior to modify.
+     * @return the number of inlined calls.
+     * @throws BadBytecode if the code of behavior, or of a helper, is invalid.
+     */
+    public int inline(CtBehavior behavior) throws BadBytecode {
+        MethodInfo methodInfo = behavior.getMethodInfo();
+        CodeAttribute codeAttribute = methodInfo.getCodeAttribute();
+        if (codeAttribute == null) {
+            return 0;
+        }
+        CtClass callerClass = behavior.getDeclaringClass();
+        ConstPool constPool = codeAttribute.getConstPool();
+        int firstLocal = codeAttribute.getMaxLocals();
+        int maxLocals = firstLocal;
+        int inlinedCallCount = 0;
+        CodeIterator iterator = codeAttribute.iterator();
+        while (iterator.hasNext()) {
+            int index = iterator.next();
+            if (iterator.byteAt(index) != Opcode.INVOKESTATIC) {
+                continue;
+            }
+            CtMethod helper = findHelper(behavior, constPool, iterator.u16bitAt(index + 1));
+            if (helper == null) {
+                continue;
+            }
+            CodeAttribute helperCode = helper.getMethodInfo2().getCodeAttribute();
+            byte[] inlinedCode = new Translation(helper, callerClass, constPool, firstLocal).translate();
+            if (inlinedCode == null) {
+                continue;
+            }
+            // inclusive : jumps to the call and exception handlers covering it now apply to the inlined code
+            CodeIterator.Gap gap = iterator.insertGapAt(index, inlinedCode.length - INVOKESTATIC_LENGTH, false);
+            int inlinedCodeEnd = gap.position + gap.length + INVOKESTATIC_LENGTH;
+            for (int inlinedCodeIndex = gap.position; inlinedCodeIndex < inlinedCodeEnd; inlinedCodeIndex++) {
+                int offset = inlinedCodeIndex - gap.position;
+                iterator.writeByte(offset < inlinedCode.length ? inlinedCode[offset] : Opcode.NOP, inlinedCodeIndex);
+            }
+            maxLocals = Math.max(maxLocals, firstLocal + helperCode.getMaxLocals());
+            inlinedCallCount++;
+        }
+        if (inlinedCallCount != 0) {
+            codeAttribute.setMaxLocals(maxLocals);
+            codeAttribute.computeMaxStack();
+            methodInfo.rebuildStackMapIf6(callerClass.getClassPool(), callerClass.getClassFile2());
+        }
+        return inlinedCallCount;
+    }
+
+    private CtMethod findHelper(CtBehavior caller, ConstPool constPool, int methodRefIndex) {
+        if (constPool.getTag(methodRefIndex) != ConstPool.CONST_Methodref) {
+            return null;
+        }
+        CtMethod helper;
+        try {
+            helper = caller.getDeclaringClass().getClassPool().get(constPool.getMethodrefClassName(methodRefIndex))
+                    .getMethod(constPool.getMethodrefName(methodRefIndex), constPool.getMethodrefType(methodRefIndex));
+        } catch (NotFoundException e) {
+            return null;
+        }
+        int modifiers = helper.getModifiers();
+        MethodInfo helperInfo = helper.getMethodInfo2();
+        CodeAttribute helperCode = helperInfo.getCodeAttribute();
+        if (!Modifier.isStatic(modifiers) || Modifier.isSynchronized(modifiers) || helperCode == null || helperCode.getCodeLength() > maxCodeLength
+                || helperCode.getExceptionTable().size() != 0 || isSameBehavior(helper, caller)
+                || !helperNamePattern.matcher(helper.getDeclaringClass().getName() + "." + helper.getName()).matches()) {
+            return null;
+        }
+        return helper;
+    }
+
+    private static boolean isSameBehavior(CtMember member, CtBehavior behavior) {
+        return member instanceof CtBehavior && member.getDeclaringClass().getName().equals(behavior.getDeclaringClass().getName())
+                && member.getName().equals(behavior.getName()) && member.getSignature().equals(behavior.getSignature());
+    }
+
+    /**
+     * Translates the code of a helper into code inlinable in a caller.
+     */
+    private static final class Translation {
+        private final CtMethod helper;
+        private final CtClass callerClass;
+        private final ConstPool constPool;
+        private final int firstLocal;
+        private final CodeAttribute helperCode;
+        private final ConstPool helperConstPool;
+        private final CodeIterator iterator;
+
+        private Translation(CtMethod helper, CtClass callerClass, ConstPool constPool, int firstLocal) {
+            this.helper = helper;
+            this.callerClass = callerClass;
+            this.constPool = constPool;
+            this.firstLocal = firstLocal;
+            this.helperCode = helper.getMethodInfo2().getCodeAttribute();
+            this.helperConstPool = helperCode.getConstPool();
+            this.iterator = helperCode.iterator();
+        }
+
+        /**
+         * @return the inlined code, replacing the call, null if the helper can't be inlined.
+         */
+        private byte[] translate() throws BadBytecode {
+            List<Integer> indexes = Instructions.getIndexes(helperCode);
+            if (!returnsWithEmptyStack(indexes)) {
+                return null;
+            }
+            // the lengths of translated instructions don't depend on jump offsets : a first pass computes their indexes.
+            int[] newIndexes = new int[indexes.size() + 1];
+            if (emit(indexes, newIndexes) == null) {
+                return null;
+            }
+            Bytecode bytecode = emit(indexes, newIndexes);
+            return bytecode == null ? null : bytecode.get();
+        }
+
+        /**
+         * Javac code returns with only the returned value on the stack : values below it would be lost when jumping to the caller code.
+         */
+        private boolean returnsWithEmptyStack(List<Integer> indexes) throws BadBytecode {
+            Frame[] frames = new Analyzer().analyze(helper.getDeclaringClass(), helper.getMethodInfo2());
+            String descriptor = helper.getSignature();
+            int returnSize = Descriptor.dataSize(descriptor) + Descriptor.paramSize(descriptor);
+            for (int index : indexes) {
+                if (frames[index] == null) {
+                    // unreachable code
+                    return false;
+                }
+                int opcode = iterator.byteAt(index);
+                if (opcode >= Opcode.IRETURN && opcode <= Opcode.RETURN && frames[index].getTopIndex() + 1 != returnSize) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Emits the translated code, storing the index of each translated instruction into newIndexes.
+         * @return the translated code, null if an instruction can't be translated.
+         */
+        private Bytecode emit(List<Integer> indexes, int[] newIndexes) throws BadBytecode {
+            Bytecode bytecode = new Bytecode(constPool);
+            emitArgumentStores(bytecode);
+            int codeStart = bytecode.getSize();
+            for (int position = 0; position < indexes.size(); position++) {
+                int index = indexes.get(position);
+                int nextIndex = position + 1 < indexes.size() ? indexes.get(position + 1) : helperCode.getCodeLength();
+                newIndexes[position] = bytecode.getSize() - codeStart;
+                if (!emitInstruction(bytecode, index, nextIndex, position == indexes.size() - 1, indexes, newIndexes, codeStart)) {
+                    return null;
+                }
+            }
+            newIndexes[indexes.size()] = bytecode.getSize() - codeStart;
+            return bytecode;
+        }
+
+        /** The arguments on the stack, the last one on top, are stored into the shifted parameters of the helper. */
+        private void emitArgumentStores(Bytecode bytecode) throws BadBytecode {
+            CtClass[] parameterTypes;
+            try {
+                parameterTypes = helper.getParameterTypes();
+            } catch (NotFoundException e) {
+                throw new BadBytecode("Unknown parameter type of " + helper.getLongName());
+            }
+            int[] locals = new int[parameterTypes.length];
+            int local = 0;
+            for (int indexParameter = 0; indexParameter < parameterTypes.length; indexParameter++) {
+                locals[indexParameter] = local;
+                local += parameterTypes[indexParameter] == CtClass.longType || parameterTypes[indexParameter] == CtClass.doubleType ? 2 : 1;
+            }
+            for (int indexParameter = parameterTypes.length - 1; indexParameter >= 0; indexParameter--) {
+                emitLocalInstruction(bytecode, getStoreOpcode(parameterTypes[indexParameter]), firstLocal + locals[indexParameter]);
+            }
+        }
+
+        private int getStoreOpcode(CtClass type) {
+            if (type == CtClass.longType) {
+                return Opcode.LSTORE;
+            } else if (type == CtClass.floatType) {
+                return Opcode.FSTORE;
+            } else if (type == CtClass.doubleType) {
+                return Opcode.DSTORE;
+            } else if (type.isPrimitive()) {
+                return Opcode.ISTORE;
+            }
+            return Opcode.ASTORE;
+        }
+
+        private boolean emitInstruction(Bytecode bytecode, int index, int nextIndex, boolean isLast, List<Integer> indexes, int[] newIndexes,
+                int codeStart) throws BadBytecode {
+            int opcode = iterator.byteAt(index);
+            int newIndex = bytecode.getSize() - codeStart;
+            if (opcode >= Opcode.ILOAD && opcode <= Opcode.ALOAD || opcode >= Opcode.ISTORE && opcode <= Opcode.ASTORE) {
+                emitLocalInstruction(bytecode, opcode, firstLocal + iterator.byteAt(index + 1));
+            } else if (opcode >= Opcode.ILOAD_0 && opcode <= Opcode.ALOAD_3) {
+                int shortForm = opcode - Opcode.ILOAD_0;
+                emitLocalInstruction(bytecode, Opcode.ILOAD + shortForm / SHORT_FORM_COUNT, firstLocal + shortForm % SHORT_FORM_COUNT);
+            } else if (opcode >= Opcode.ISTORE_0 && opcode <= Opcode.ASTORE_3) {
+                int shortForm = opcode - Opcode.ISTORE_0;
+                emitLocalInstruction(bytecode, Opcode.ISTORE + shortForm / SHORT_FORM_COUNT, firstLocal + shortForm % SHORT_FORM_COUNT);
+            } else if (opcode == Opcode.IINC) {
+                emitIncrement(bytecode, firstLocal + iterator.byteAt(index + 1), (byte) iterator.byteAt(index + 2));
+            } else if (opcode == Opcode.WIDE) {
+                int wideOpcode = iterator.byteAt(index + 1);
+                if (wideOpcode == Opcode.IINC) {
+                    emitIncrement(bytecode, firstLocal + iterator.u16bitAt(index + 2), iterator.s16bitAt(index + 2 + 2));
+                } else if (wideOpcode == Opcode.RET) {
+                    return false;
+                } else {
+                    emitLocalInstruction(bytecode, wideOpcode, firstLocal + iterator.u16bitAt(index + 2));
+                }
+            } else if (opcode == Opcode.LDC || opcode == Opcode.LDC_W) {
+                int constIndex = copyConstant(opcode == Opcode.LDC ? iterator.byteAt(index + 1) : iterator.u16bitAt(index + 1));
+                if (constIndex == 0) {
+                    return false;
+                }
+                if (constIndex <= U1_MAX) {
+                    bytecode.add(Opcode.LDC, constIndex);
+                } else {
+                    bytecode.add(Opcode.LDC_W);
+                    bytecode.addIndex(constIndex);
+                }
+            } else if (opcode == Opcode.LDC2_W || opcode >= Opcode.GETSTATIC && opcode <= Opcode.INVOKEINTERFACE || opcode == Opcode.NEW
+                    || opcode == Opcode.ANEWARRAY || opcode == Opcode.CHECKCAST || opcode == Opcode.INSTANCEOF || opcode == Opcode.MULTIANEWARRAY) {
+                int constIndex = copyConstant(iterator.u16bitAt(index + 1));
+                if (constIndex == 0) {
+                    return false;
+                }
+                bytecode.add(opcode);
+                bytecode.addIndex(constIndex);
+                // count of invokeinterface, dimensions of multianewarray
+                for (int operandIndex = index + 2 + 1; operandIndex < nextIndex; operandIndex++) {
+                    bytecode.add(iterator.byteAt(operandIndex));
+                }
+            } else if (opcode >= Opcode.IFEQ && opcode <= Opcode.GOTO || opcode == Opcode.IFNULL || opcode == Opcode.IFNONNULL) {
+                int offset = newIndexes[indexes.indexOf(index + iterator.s16bitAt(index + 1))] - newIndex;
+                if (offset != (short) offset) {
+                    return false;
+                }
+                bytecode.add(opcode);
+                bytecode.addIndex(offset);
+            } else if (opcode == Opcode.GOTO_W) {
+                bytecode.add(opcode);
+                bytecode.add32bit(newIndexes[indexes.indexOf(index + iterator.s32bitAt(index + 1))] - newIndex);
+            } else if (opcode >= Opcode.IRETURN && opcode <= Opcode.RETURN) {
+                if (!isLast) {
+                    // the returned value, if any, stays on the stack
+                    int offset = newIndexes[indexes.size()] - newIndex;
+                    if (offset != (short) offset) {
+                        return false;
+                    }
+                    bytecode.add(Opcode.GOTO);
+                    bytecode.addIndex(offset);
+                }
+            } else if (opcode == Opcode.JSR || opcode == Opcode.JSR_W || opcode == Opcode.RET || opcode == Opcode.TABLESWITCH
+                    || opcode == Opcode.LOOKUPSWITCH || opcode == Opcode.INVOKEDYNAMIC || opcode == Opcode.MONITORENTER
+                    || opcode == Opcode.MONITOREXIT) {
+                return false;
+            } else {
+                for (int operandIndex = index; operandIndex < nextIndex; operandIndex++) {
+                    bytecode.add(iterator.byteAt(operandIndex));
+                }
+            }
+            return true;
+        }
+
+        private void emitLocalInstruction(Bytecode bytecode, int opcode, int local) {
+            boolean isLoad = opcode <= Opcode.ALOAD;
+            if (local < SHORT_FORM_COUNT) {
+                int shortFormBase = isLoad ? Opcode.ILOAD_0 + (opcode - Opcode.ILOAD) * SHORT_FORM_COUNT : Opcode.ISTORE_0 + (opcode - Opcode.ISTORE)
+                        * SHORT_FORM_COUNT;
+                bytecode.add(shortFormBase + local);
+            } else if (local <= U1_MAX) {
+                bytecode.add(opcode, local);
+            } else {
+                bytecode.add(Opcode.WIDE, opcode);
+                bytecode.addIndex(local);
+            }
+        }
+
+        private void emitIncrement(Bytecode bytecode, int local, int increment) {
+            if (local <= U1_MAX && increment == (byte) increment) {
+                bytecode.add(Opcode.IINC, local);
+                bytecode.add(increment);
+            } else {
+                bytecode.add(Opcode.WIDE, Opcode.IINC);
+                bytecode.addIndex(local);
+                bytecode.addIndex(increment);
+            }
+        }
+
+        /**
+         * Copies a constant of the helper into the constant pool of the caller.
+         * @return the index of the copy, 0 if the caller can't access the class or member it refers to.
+         */
+        private int copyConstant(int constIndex) {
+            try {
+                switch (helperConstPool.getTag(constIndex)) {
+                    case ConstPool.CONST_Class:
+                        if (!isAccessible(getElementClass(helperConstPool.getClassInfo(constIndex)))) {
+                            return 0;
+                        }
+                        break;
+                    case ConstPool.CONST_Fieldref:
+                        CtClass fieldClass = getClassPool().get(helperConstPool.getFieldrefClassName(constIndex));
+                        if (!isAccessible(fieldClass) || !isAccessible(fieldClass.getField(helperConstPool.getFieldrefName(constIndex),
+                                helperConstPool.getFieldrefType(constIndex)))) {
+                            return 0;
+                        }
+                        break;
+                    case ConstPool.CONST_Methodref:
+                    case ConstPool.CONST_InterfaceMethodref:
+                        CtClass methodClass = getClassPool().get(helperConstPool.getMethodrefClassName(constIndex));
+                        String methodName = helperConstPool.getMethodrefName(constIndex);
+                        String descriptor = helperConstPool.getMethodrefType(constIndex);
+                        CtMember method = MethodInfo.nameInit.equals(methodName) ? methodClass.getConstructor(descriptor) : methodClass.getMethod(methodName,
+                                descriptor);
+                        if (!isAccessible(methodClass) || !isAccessible(method) || isSameBehavior(method, helper)) {
+                            return 0;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            } catch (NotFoundException e) {
+                return 0;
+            }
+            return helperConstPool.copy(constIndex, constPool, null);
+        }
+
+        private ClassPool getClassPool() {
+            return callerClass.getClassPool();
+        }
+
+        private CtClass getElementClass(String className) throws NotFoundException {
+            CtClass elementClass = getClassPool().get(className.startsWith("[") ? Descriptor.toClassName(className) : className);
+            while (elementClass.isArray()) {
+                elementClass = elementClass.getComponentType();
+            }
+            return elementClass;
+        }
+
+        private boolean isAccessible(CtClass ctClass) {
+            return ctClass.isPrimitive() || Modifier.isPublic(ctClass.getModifiers()) || isInCallerPackage(ctClass);
+        }
+
+        /** Protected members are only accessible from their package : the caller may not be a subclass. */
+        private boolean isAccessible(CtMember member) {
+            int modifiers = member.getModifiers();
+            CtClass declaringClass = member.getDeclaringClass();
+            return Modifier.isPublic(modifiers) || declaringClass.getName().equals(callerClass.getName())
+                    || !Modifier.isPrivate(modifiers) && isInCallerPackage(declaringClass);
+        }
+
+        private boolean isInCallerPackage(CtClass ctClass) {
+            String packageName = ctClass.getPackageName();
+            return packageName == null ? callerClass.getPackageName() == null : packageName.equals(callerClass.getPackageName());
+        }
+    }
+}
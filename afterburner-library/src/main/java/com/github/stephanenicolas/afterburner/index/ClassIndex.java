@@ -0,0 +1,263 @@
+package com.github.stephanenicolas.afterburner.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * An index of the hierarchy and annotations of a set of classes.
+ * It is built once, by a {@link ClassIndexBuilder}, and allows to select classes
+ * in a time proportional to the number of matches, without loading any class :
+ * all subclasses of a class, all implementations of an interface, all classes annotated with an annotation.
+ * It can be saved to and loaded from disk. An index is immutable and can be shared between threads.
+ * @author SNI
+ */
+public final class ClassIndex {
+    private static final int MAGIC = 0xAFB1DE;
+    private static final int VERSION = 1;
+    private static final int HEX_RADIX = 16;
+
+    private final Map<String, IndexedClass> indexedClasses = new TreeMap<String, IndexedClass>();
+    private final Map<String, List<String>> directSubclasses = new TreeMap<String, List<String>>();
+    private final Map<String, List<String>> directImplementations = new TreeMap<String, List<String>>();
+    private final Map<String, List<String>> annotatedClasses = new TreeMap<String, List<String>>();
+
+    ClassIndex(Collection<IndexedClass> classes) {
+        for (IndexedClass indexedClass : classes) {
+            indexedClasses.put(indexedClass.getName(), indexedClass);
+        }
+        for (IndexedClass indexedClass : indexedClasses.values()) {
+            if (indexedClass.getSuperclassName() != null) {
+                addTo(directSubclasses, indexedClass.getSuperclassName(), indexedClass.getName());
+            }
+            for (String interfaceName : indexedClass.getInterfaceNames()) {
+                addTo(directImplementations, interfaceName, indexedClass.getName());
+            }
+            for (String annotationName : indexedClass.getAnnotationNames()) {
+                addTo(annotatedClasses, annotationName, indexedClass.getName());
+            }
+        }
+    }
+
+    /**
+     * @return the names of all indexed classes, sorted.
+     */
+    public Set<String> getClassNames() {
+        return Collections.unmodifiableSet(indexedClasses.keySet());
+    }
+
+    /**
+     * @param className the name of a class.
+     * @return what the index knows about className, null if it is not indexed.
+     */
+    public IndexedClass getIndexedClass(String className) {
+        return indexedClasses.get(className);
+    }
+
+    /**
+     * Returns all direct and indirect indexed subclasses of a class.
+     * The class itself doesn't need to be indexed (for instance android.app.Activity).
+     * @param className the name of a class.
+     * @return the names of the subclasses of className, sorted.
+     */
+    public List<String> getSubclassesOf(String className) {
+        Set<String> subclasses = new TreeSet<String>();
+        collectSubclasses(className, subclasses);
+        return new ArrayList<String>(subclasses);
+    }
+
+    /**
+     * Returns all indexed classes that implement an interface, directly, via a sub interface or via a super class.
+     * Interfaces are not part of the result.
+     * @param interfaceName the name of an interface.
+     * @return the names of the classes implementing interfaceName, sorted.
+     */
+    public List<String> getImplementationsOf(String interfaceName) {
+        Set<String> visitedTypes = new TreeSet<String>();
+        Set<String> implementations = new TreeSet<String>();
+        LinkedList<String> typesToVisit = new LinkedList<String>();
+        typesToVisit.add(interfaceName);
+        while (!typesToVisit.isEmpty()) {
+            String type = typesToVisit.removeFirst();
+            if (!visitedTypes.add(type)) {
+                continue;
+            }
+            IndexedClass indexedClass = indexedClasses.get(type);
+            if (indexedClass != null && !indexedClass.isInterface()) {
+                implementations.add(type);
+                collectSubclasses(type, implementations);
+            }
+            List<String> implementationsOfType = directImplementations.get(type);
+            if (implementationsOfType != null) {
+                typesToVisit.addAll(implementationsOfType);
+            }
+        }
+        return new ArrayList<String>(implementations);
+    }
+
+    /**
+     * Returns all indexed classes annotated with a given annotation. Annotations are not inherited.
+     * @param annotationName the name of an annotation type.
+     * @return the names of the classes annotated with annotationName, sorted.
+     */
+    public List<String> getClassesAnnotatedWith(String annotationName) {
+        List<String> classes = annotatedClasses.get(annotationName);
+        return classes == null ? Collections.<String>emptyList() : Collections.unmodifiableList(classes);
+    }
+
+    /**
+     * Digests the subclasses of some classes : the digest changes as soon as a subclass of one of them
+     * is added or removed. Rules relying on the hierarchy put it in their fingerprint.
+     * @param classNames the names of classes.
+     * @return a SHA-1 digest, in hexadecimal, of the names of the subclasses of each class of classNames.
+     */
+    public String digestSubclasses(Collection<String> classNames) {
+        StringBuilder hierarchy = new StringBuilder();
+        for (String className : classNames) {
+            hierarchy.append(className).append(getSubclassesOf(className)).append('\n');
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(hierarchy.toString().getBytes(Charset.forName("UTF-8")));
+            return new BigInteger(1, digest).toString(HEX_RADIX);
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is supported by all JVMs
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Saves this index.
+     * @param outputStream the stream to write to. It is not closed.
+     * @throws IOException if outputStream can't be written.
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+        dataOutputStream.writeInt(MAGIC);
+        dataOutputStream.writeInt(VERSION);
+        dataOutputStream.writeInt(indexedClasses.size());
+        for (IndexedClass indexedClass : indexedClasses.values()) {
+            dataOutputStream.writeUTF(indexedClass.getName());
+            dataOutputStream.writeInt(indexedClass.getAccessFlags());
+            dataOutputStream.writeBoolean(indexedClass.getSuperclassName() != null);
+            if (indexedClass.getSuperclassName() != null) {
+                dataOutputStream.writeUTF(indexedClass.getSuperclassName());
+            }
+            writeNames(dataOutputStream, indexedClass.getInterfaceNames());
+            writeNames(dataOutputStream, indexedClass.getAnnotationNames());
+        }
+        dataOutputStream.flush();
+    }
+
+    /**
+     * Saves this index into a file.
+     * @param file the file to write to.
+     * @throws IOException if file can't be written.
+     */
+    public void save(File file) throws IOException {
+        OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            writeTo(outputStream);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    /**
+     * Loads an index saved by {@link #writeTo(OutputStream)}.
+     * @param inputStream the stream to read from. It is not closed.
+     * @return the index read.
+     * @throws IOException if inputStream can't be read or doesn't contain an index.
+     */
+    public static ClassIndex readFrom(InputStream inputStream) throws IOException {
+        DataInputStream dataInputStream = new DataInputStream(inputStream);
+        if (dataInputStream.readInt() != MAGIC || dataInputStream.readInt() != VERSION) {
+            throw new IOException("Not a class index or unsupported version.");
+        }
+        int classCount = dataInputStream.readInt();
+        List<IndexedClass> classes = new ArrayList<IndexedClass>(classCount);
+        for (int indexClass = 0; indexClass < classCount; indexClass++) {
+            String name = dataInputStream.readUTF();
+            int accessFlags = dataInputStream.readInt();
+            String superclassName = dataInputStream.readBoolean() ? dataInputStream.readUTF() : null;
+            List<String> interfaceNames = readNames(dataInputStream);
+            List<String> annotationNames = readNames(dataInputStream);
+            classes.add(new IndexedClass(name, accessFlags, superclassName, interfaceNames, annotationNames));
+        }
+        return new ClassIndex(classes);
+    }
+
+    /**
+     * Loads an index saved by {@link #save(File)}.
+     * @param file the file to read from.
+     * @return the index read.
+     * @throws IOException if file can't be read or doesn't contain an index.
+     */
+    public static ClassIndex load(File file) throws IOException {
+        InputStream inputStream = new BufferedInputStream(new FileInputStream(file));
+        try {
+            return readFrom(inputStream);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private void collectSubclasses(String className, Set<String> subclasses) {
+        LinkedList<String> classesToVisit = new LinkedList<String>();
+        classesToVisit.add(className);
+        while (!classesToVisit.isEmpty()) {
+            List<String> subclassesOfClass = directSubclasses.get(classesToVisit.removeFirst());
+            if (subclassesOfClass != null) {
+                for (String subclass : subclassesOfClass) {
+                    if (subclasses.add(subclass)) {
+                        classesToVisit.add(subclass);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void addTo(Map<String, List<String>> multiMap, String key, String value) {
+        List<String> values = multiMap.get(key);
+        if (values == null) {
+            values = new ArrayList<String>();
+            multiMap.put(key, values);
+        }
+        values.add(value);
+    }
+
+    private static void writeNames(DataOutputStream dataOutputStream, List<String> names) throws IOException {
+        dataOutputStream.writeShort(names.size());
+        for (String name : names) {
+            dataOutputStream.writeUTF(name);
+        }
+    }
+
+    private static List<String> readNames(DataInputStream dataInputStream) throws IOException {
+        int nameCount = dataInputStream.readUnsignedShort();
+        List<String> names = new ArrayList<String>(nameCount);
+        for (int indexName = 0; indexName < nameCount; indexName++) {
+            names.add(dataInputStream.readUTF());
+        }
+        return names;
+    }
+}
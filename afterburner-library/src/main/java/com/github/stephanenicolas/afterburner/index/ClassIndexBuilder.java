@@ -0,0 +1,108 @@
+package com.github.stephanenicolas.afterburner.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.github.stephanenicolas.afterburner.bytecode.ClassFileParser;
+import com.github.stephanenicolas.afterburner.io.ClassFiles;
+
+/**
+ * Builds a {@link ClassIndex} in a single pass over class files.
+ * Class files are parsed with a {@link ClassFileParser} : only their constant pool and
+ * class attributes are read, nothing is loaded into a {@link javassist.ClassPool}.
+ * @author SNI
+ */
+public class ClassIndexBuilder {
+    private static final String CLASS_FILE_EXTENSION = ".class";
+
+    private final List<IndexedClass> indexedClasses = new ArrayList<IndexedClass>();
+
+    /**
+     * Indexes a single class.
+     * @param classFile the bytes of a class file.
+     * @return this builder, to chain calls.
+     * @throws IOException if classFile is invalid.
+     */
+    public ClassIndexBuilder addClassFile(byte[] classFile) throws IOException {
+        indexedClasses.add(indexClassFile(classFile));
+        return this;
+    }
+
+    /**
+     * Adds classes that have already been indexed, for instance to update an index incrementally.
+     * @param classes the classes to add.
+     * @return this builder, to chain calls.
+     */
+    public ClassIndexBuilder addIndexedClasses(Collection<IndexedClass> classes) {
+        indexedClasses.addAll(classes);
+        return this;
+    }
+
+    /**
+     * Indexes a single class, without adding it to any index.
+     * @param classFile the bytes of a class file.
+     * @return the indexed class.
+     * @throws IOException if classFile is invalid.
+     */
+    public static IndexedClass indexClassFile(byte[] classFile) throws IOException {
+        ClassFileParser parser = new ClassFileParser(classFile);
+        return new IndexedClass(parser.getClassName(), parser.getAccessFlags(), parser.getSuperclassName(),
+                Arrays.asList(parser.getInterfaceNames()), parser.getAnnotationNames());
+    }
+
+    /**
+     * Indexes all classes of a directory.
+     * @param directory the root of a class file hierarchy.
+     * @return this builder, to chain calls.
+     * @throws IOException if a class file can't be read or is invalid.
+     */
+    public ClassIndexBuilder addDirectory(File directory) throws IOException {
+        for (String className : ClassFiles.listClassNames(directory)) {
+            File classFile = new File(directory, className.replace('.', File.separatorChar) + CLASS_FILE_EXTENSION);
+            addClassFile(ClassFiles.readFully(classFile));
+        }
+        return this;
+    }
+
+    /**
+     * Indexes all classes of a jar.
+     * @param jar a jar or zip file.
+     * @return this builder, to chain calls.
+     * @throws IOException if jar or one of its class files can't be read or is invalid.
+     */
+    public ClassIndexBuilder addJar(File jar) throws IOException {
+        ZipFile zipFile = new ZipFile(jar);
+        try {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory() && entry.getName().endsWith(CLASS_FILE_EXTENSION)) {
+                    InputStream inputStream = zipFile.getInputStream(entry);
+                    try {
+                        addClassFile(ClassFiles.readFully(inputStream));
+                    } finally {
+                        inputStream.close();
+                    }
+                }
+            }
+        } finally {
+            zipFile.close();
+        }
+        return this;
+    }
+
+    /**
+     * @return an index of all classes added so far. If a class was added twice, the last one wins.
+     */
+    public ClassIndex build() {
+        return new ClassIndex(indexedClasses);
+    }
+}
@@ -0,0 +1,353 @@
+package com.github.stephanenicolas.afterburner.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.Modifier;
+import javassist.bytecode.AccessFlag;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.ExceptionsAttribute;
+import javassist.bytecode.MethodInfo;
+
+import com.github.stephanenicolas.afterburner.inserts.MethodSignature;
+import com.github.stephanenicolas.afterburner.io.ClassFiles;
+
+/**
+ * Caches the super types and method signatures of classes, keyed by the hash of their class file.
+ * Used to resolve the method overriden by an insertion (see {@link com.github.stephanenicolas.afterburner.InsertableMethodBuilder})
+ * without loading the super types of a class, including JDK or Android framework classes, into a pool.
+ * The cache can be saved at the end of a build and loaded by the next one : on a warm build,
+ * class files of super types are only hashed, never parsed.
+ * A cache is thread safe, it can be shared by all threads and pools of a build.
+ * @author SNI
+ */
+public class HierarchyCache {
+    private static final int MAGIC = 0xAFB1CA;
+    private static final int VERSION = 2;
+    private static final int HEX_RADIX = 16;
+    private static final int BYTE_MASK = 0xFF;
+
+    /** Persisted entries, valid across builds as long as class files don't change. */
+    private final ConcurrentMap<String, CachedClass> cachedClassesByHash = new ConcurrentHashMap<String, CachedClass>();
+    /**
+     * Hashes of class files seen by this process, by class name then by location of the class file :
+     * pools with different class paths can find different class files for the same class.
+     * Class files can change between builds, so they are never persisted.
+     */
+    private final ConcurrentMap<String, ConcurrentMap<String, String>> hashesByClassName = new ConcurrentHashMap<String, ConcurrentMap<String, String>>();
+    private final AtomicInteger parsedClassCount = new AtomicInteger();
+
+    /**
+     * Finds the method that a class would override, in its super classes first, then in its interfaces.
+     * Private, static, bridge and synthetic methods and constructors are ignored.
+     * @param ctClass the class that would override a method. It is not looked up in the cache, so it can be modified freely.
+     * @param methodName the name of the method to look for.
+     * @return the signature of the nearest method named methodName in the super types of ctClass, null if there is none.
+     * @throws IOException if a class file of a super type can't be read.
+     */
+    public MethodSignature findInheritedMethod(CtClass ctClass, String methodName) throws IOException {
+        ClassFile classFile = ctClass.getClassFile2();
+        List<String> superTypes = new ArrayList<String>();
+        if (classFile.getSuperclass() != null && !ctClass.getName().equals(Object.class.getName())) {
+            superTypes.add(classFile.getSuperclass());
+        }
+        superTypes.addAll(Arrays.asList(classFile.getInterfaces()));
+        return findMethod(ctClass.getClassPool(), superTypes, methodName);
+    }
+
+    /**
+     * Forgets the class file of a class read by this process, so that it is read again on next lookup.
+     * Needed by long lived processes when class files change, like {@link com.github.stephanenicolas.afterburner.transform.TransformationDaemon}.
+     * @param className the name of a class whose class file has changed.
+     */
+    public void invalidate(String className) {
+        hashesByClassName.remove(className);
+    }
+
+    /**
+     * @return the number of class files that have been parsed since this cache was created or loaded.
+     */
+    public int getParsedClassCount() {
+        return parsedClassCount.get();
+    }
+
+    /**
+     * @return the number of classes in the cache.
+     */
+    public int size() {
+        return cachedClassesByHash.size();
+    }
+
+    /**
+     * Saves this cache.
+     * @param outputStream the stream to write to. It is not closed.
+     * @throws IOException if outputStream can't be written.
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        Map<String, CachedClass> sortedCachedClasses = new TreeMap<String, CachedClass>(cachedClassesByHash);
+        DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+        dataOutputStream.writeInt(MAGIC);
+        dataOutputStream.writeInt(VERSION);
+        dataOutputStream.writeInt(sortedCachedClasses.size());
+        for (Map.Entry<String, CachedClass> entry : sortedCachedClasses.entrySet()) {
+            dataOutputStream.writeUTF(entry.getKey());
+            entry.getValue().writeTo(dataOutputStream);
+        }
+        dataOutputStream.flush();
+    }
+
+    /**
+     * Saves this cache into a file.
+     * @param file the file to write to.
+     * @throws IOException if file can't be written.
+     */
+    public void save(File file) throws IOException {
+        OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            writeTo(outputStream);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    /**
+     * Loads a cache saved by {@link #writeTo(OutputStream)}.
+     * @param inputStream the stream to read from. It is not closed.
+     * @return the cache read.
+     * @throws IOException if inputStream can't be read or doesn't contain a cache.
+     */
+    public static HierarchyCache readFrom(InputStream inputStream) throws IOException {
+        DataInputStream dataInputStream = new DataInputStream(inputStream);
+        if (dataInputStream.readInt() != MAGIC || dataInputStream.readInt() != VERSION) {
+            throw new IOException("Not a hierarchy cache or unsupported version.");
+        }
+        HierarchyCache hierarchyCache = new HierarchyCache();
+        int classCount = dataInputStream.readInt();
+        for (int indexClass = 0; indexClass < classCount; indexClass++) {
+            String hash = dataInputStream.readUTF();
+            hierarchyCache.cachedClassesByHash.put(hash, CachedClass.readFrom(dataInputStream));
+        }
+        return hierarchyCache;
+    }
+
+    /**
+     * Loads a cache saved by {@link #save(File)}, or creates an empty cache if file doesn't exist.
+     * @param file the file to read from.
+     * @return the cache read.
+     * @throws IOException if file can't be read or doesn't contain a cache.
+     */
+    public static HierarchyCache load(File file) throws IOException {
+        if (!file.exists()) {
+            return new HierarchyCache();
+        }
+        InputStream inputStream = new BufferedInputStream(new FileInputStream(file));
+        try {
+            return readFrom(inputStream);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private MethodSignature findMethod(ClassPool classPool, List<String> superTypes, String methodName) throws IOException {
+        // super classes are visited before interfaces, breadth first
+        LinkedList<String> superclassesToVisit = new LinkedList<String>();
+        LinkedList<String> interfacesToVisit = new LinkedList<String>();
+        Set<String> visitedTypes = new TreeSet<String>();
+        if (!superTypes.isEmpty()) {
+            superclassesToVisit.add(superTypes.get(0));
+            interfacesToVisit.addAll(superTypes.subList(1, superTypes.size()));
+        }
+        while (!superclassesToVisit.isEmpty() || !interfacesToVisit.isEmpty()) {
+            String typeName = superclassesToVisit.isEmpty() ? interfacesToVisit.removeFirst() : superclassesToVisit.removeFirst();
+            if (!visitedTypes.add(typeName)) {
+                continue;
+            }
+            CachedClass cachedClass = getCachedClass(classPool, typeName);
+            if (cachedClass == null) {
+                continue;
+            }
+            for (MethodSignature method : cachedClass.methods) {
+                if (method.getName().equals(methodName)) {
+                    return method;
+                }
+            }
+            if (cachedClass.superclassName != null) {
+                superclassesToVisit.add(cachedClass.superclassName);
+            }
+            interfacesToVisit.addAll(cachedClass.interfaceNames);
+        }
+        return null;
+    }
+
+    private CachedClass getCachedClass(ClassPool classPool, String className) throws IOException {
+        URL url = classPool.find(className);
+        if (url == null) {
+            return null;
+        }
+        String location = url.toExternalForm();
+        ConcurrentMap<String, String> hashesByLocation = getHashesByLocation(className);
+        String hash = hashesByLocation.get(location);
+        byte[] classFile = null;
+        if (hash == null) {
+            InputStream inputStream = url.openStream();
+            try {
+                classFile = ClassFiles.readFully(inputStream);
+            } finally {
+                inputStream.close();
+            }
+            hash = hash(classFile);
+            hashesByLocation.put(location, hash);
+        }
+        CachedClass cachedClass = cachedClassesByHash.get(hash);
+        if (cachedClass == null) {
+            if (classFile == null) {
+                // another thread hashed the class but has not cached it yet
+                hashesByLocation.remove(location, hash);
+                return getCachedClass(classPool, className);
+            }
+            cachedClass = CachedClass.parse(classFile);
+            parsedClassCount.incrementAndGet();
+            cachedClassesByHash.putIfAbsent(hash, cachedClass);
+        }
+        return cachedClass;
+    }
+
+    private ConcurrentMap<String, String> getHashesByLocation(String className) {
+        ConcurrentMap<String, String> hashesByLocation = hashesByClassName.get(className);
+        if (hashesByLocation == null) {
+            hashesByLocation = new ConcurrentHashMap<String, String>();
+            ConcurrentMap<String, String> previousHashesByLocation = hashesByClassName.putIfAbsent(className, hashesByLocation);
+            if (previousHashesByLocation != null) {
+                hashesByLocation = previousHashesByLocation;
+            }
+        }
+        return hashesByLocation;
+    }
+
+    private static String hash(byte[] classFile) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(classFile);
+            StringBuilder builder = new StringBuilder();
+            for (byte b : digest) {
+                String hex = Integer.toString(b & BYTE_MASK, HEX_RADIX);
+                if (hex.length() == 1) {
+                    builder.append('0');
+                }
+                builder.append(hex);
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is supported by all JVMs
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Super types and declared methods of a class.
+     */
+    private static final class CachedClass {
+        private final String superclassName;
+        private final List<String> interfaceNames;
+        private final List<MethodSignature> methods;
+
+        private CachedClass(String superclassName, List<String> interfaceNames, List<MethodSignature> methods) {
+            this.superclassName = superclassName;
+            this.interfaceNames = interfaceNames;
+            this.methods = methods;
+        }
+
+        private static CachedClass parse(byte[] bytes) throws IOException {
+            ClassFile classFile = new ClassFile(new DataInputStream(new ByteArrayInputStream(bytes)));
+            List<MethodSignature> methods = new ArrayList<MethodSignature>();
+            for (Object methodInfoObject : classFile.getMethods()) {
+                MethodInfo methodInfo = (MethodInfo) methodInfoObject;
+                int modifiers = AccessFlag.toModifier(methodInfo.getAccessFlags());
+                // bridges and other synthetic methods are generated by compilers, they can't be overriden in source
+                if (!methodInfo.isMethod() || Modifier.isPrivate(modifiers) || Modifier.isStatic(modifiers)
+                        || (methodInfo.getAccessFlags() & (AccessFlag.BRIDGE | AccessFlag.SYNTHETIC)) != 0) {
+                    continue;
+                }
+                List<String> exceptionTypeNames = new ArrayList<String>();
+                ExceptionsAttribute exceptions = methodInfo.getExceptionsAttribute();
+                if (exceptions != null && exceptions.getExceptions() != null) {
+                    exceptionTypeNames.addAll(Arrays.asList(exceptions.getExceptions()));
+                }
+                methods.add(new MethodSignature(classFile.getName(), methodInfo.getName(), methodInfo.getDescriptor(), modifiers, exceptionTypeNames));
+            }
+            String superclassName = classFile.getName().equals(Object.class.getName()) ? null : classFile.getSuperclass();
+            return new CachedClass(superclassName, Arrays.asList(classFile.getInterfaces()), methods);
+        }
+
+        private void writeTo(DataOutputStream dataOutputStream) throws IOException {
+            dataOutputStream.writeBoolean(superclassName != null);
+            if (superclassName != null) {
+                dataOutputStream.writeUTF(superclassName);
+            }
+            writeNames(dataOutputStream, interfaceNames);
+            dataOutputStream.writeShort(methods.size());
+            for (MethodSignature method : methods) {
+                dataOutputStream.writeUTF(method.getDeclaringClassName());
+                dataOutputStream.writeUTF(method.getName());
+                dataOutputStream.writeUTF(method.getDescriptor());
+                dataOutputStream.writeInt(method.getModifiers());
+                writeNames(dataOutputStream, method.getExceptionTypeNames());
+            }
+        }
+
+        private static CachedClass readFrom(DataInputStream dataInputStream) throws IOException {
+            String superclassName = dataInputStream.readBoolean() ? dataInputStream.readUTF() : null;
+            List<String> interfaceNames = readNames(dataInputStream);
+            int methodCount = dataInputStream.readUnsignedShort();
+            List<MethodSignature> methods = new ArrayList<MethodSignature>(methodCount);
+            for (int indexMethod = 0; indexMethod < methodCount; indexMethod++) {
+                String declaringClassName = dataInputStream.readUTF();
+                String name = dataInputStream.readUTF();
+                String descriptor = dataInputStream.readUTF();
+                int modifiers = dataInputStream.readInt();
+                methods.add(new MethodSignature(declaringClassName, name, descriptor, modifiers, readNames(dataInputStream)));
+            }
+            return new CachedClass(superclassName, interfaceNames, methods);
+        }
+
+        private static void writeNames(DataOutputStream dataOutputStream, List<String> names) throws IOException {
+            dataOutputStream.writeShort(names.size());
+            for (String name : names) {
+                dataOutputStream.writeUTF(name);
+            }
+        }
+
+        private static List<String> readNames(DataInputStream dataInputStream) throws IOException {
+            int nameCount = dataInputStream.readUnsignedShort();
+            List<String> names = new ArrayList<String>(nameCount);
+            for (int indexName = 0; indexName < nameCount; indexName++) {
+                names.add(dataInputStream.readUTF());
+            }
+            return names;
+        }
+    }
+}
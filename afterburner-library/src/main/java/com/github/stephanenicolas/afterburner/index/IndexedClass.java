@@ -0,0 +1,62 @@
+package com.github.stephanenicolas.afterburner.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javassist.Modifier;
+
+/**
+ * What a {@link ClassIndex} knows about a class : its direct super types and its annotations.
+ * @author SNI
+ */
+public final class IndexedClass {
+    private final String name;
+    private final int accessFlags;
+    private final String superclassName;
+    private final List<String> interfaceNames;
+    private final List<String> annotationNames;
+
+    public IndexedClass(String name, int accessFlags, String superclassName, List<String> interfaceNames, List<String> annotationNames) {
+        this.name = name;
+        this.accessFlags = accessFlags;
+        this.superclassName = superclassName;
+        this.interfaceNames = Collections.unmodifiableList(new ArrayList<String>(interfaceNames));
+        this.annotationNames = Collections.unmodifiableList(new ArrayList<String>(annotationNames));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the access flags of the class, as defined by {@link javassist.bytecode.AccessFlag}.
+     */
+    public int getAccessFlags() {
+        return accessFlags;
+    }
+
+    public boolean isInterface() {
+        return Modifier.isInterface(accessFlags);
+    }
+
+    /**
+     * @return the name of the super class, null for java.lang.Object.
+     */
+    public String getSuperclassName() {
+        return superclassName;
+    }
+
+    public List<String> getInterfaceNames() {
+        return interfaceNames;
+    }
+
+    public List<String> getAnnotationNames() {
+        return annotationNames;
+    }
+
+    @Override
+    public String toString() {
+        return "[class:" + name + ",super:" + superclassName + ",interfaces:" + interfaceNames + ",annotations:" + annotationNames + "]";
+    }
+}
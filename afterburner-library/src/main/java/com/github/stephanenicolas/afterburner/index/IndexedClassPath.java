@@ -0,0 +1,338 @@
+package com.github.stephanenicolas.afterburner.index;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import javassist.ClassPath;
+import javassist.NotFoundException;
+
+import com.github.stephanenicolas.afterburner.io.ClassFiles;
+
+/**
+ * A {@link ClassPath} that indexes all classes of a list of jars and directories once,
+ * so that each lookup is a single hash map access, whether the class is found or not.
+ * Jars are memory mapped : class files are read directly from the mapping, using the
+ * offsets read from the central directory, without any stream or {@link java.util.zip.ZipFile} per lookup.
+ * As in a regular class path, the first entry containing a class wins.
+ * <p>
+ * Entries must not change once indexed. Zip64 jars are not supported.
+ * An instance is thread safe and can be shared by many pools.
+ * </p>
+ * @author SNI
+ */
+public class IndexedClassPath implements ClassPath {
+    private static final String CLASS_FILE_EXTENSION = ".class";
+    private static final String JAR_EXTENSION = ".jar";
+    private static final String WILDCARD = "*";
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int OFFSET_ENTRY_COUNT = 10;
+    private static final int OFFSET_CENTRAL_DIRECTORY_OFFSET = 16;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int OFFSET_CENTRAL_METHOD = 10;
+    private static final int OFFSET_CENTRAL_COMPRESSED_SIZE = 20;
+    private static final int OFFSET_CENTRAL_SIZE = 24;
+    private static final int OFFSET_CENTRAL_NAME_LENGTH = 28;
+    private static final int OFFSET_CENTRAL_EXTRA_LENGTH = 30;
+    private static final int OFFSET_CENTRAL_COMMENT_LENGTH = 32;
+    private static final int OFFSET_CENTRAL_LOCAL_HEADER = 42;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int OFFSET_LOCAL_NAME_LENGTH = 26;
+    private static final int OFFSET_LOCAL_EXTRA_LENGTH = 28;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    private static final int U2_MASK = 0xFFFF;
+    private static final long U4_MASK = 0xFFFFFFFFL;
+
+    private final List<File> files = new ArrayList<File>();
+    private final List<ByteBuffer> mappings = new ArrayList<ByteBuffer>();
+    private final Map<String, Entry> entriesByClassName = new HashMap<String, Entry>();
+
+    /**
+     * Indexes a class path.
+     * @param classPath entries of the class path : directories, jars, or directories followed by "/*" for all their jars.
+     * @throws IOException if an entry doesn't exist or can't be read.
+     */
+    public IndexedClassPath(List<String> classPath) throws IOException {
+        for (File file : listFiles(classPath)) {
+            if (file.isDirectory()) {
+                indexDirectory(file);
+            } else {
+                indexJar(file);
+            }
+        }
+    }
+
+    /**
+     * Lists the directories and jars of a class path, in order.
+     * @param classPath entries of the class path : directories, jars, or directories followed by "/*" for all their jars.
+     * @return the directories and jars of classPath, the jars of a directory followed by "/*" sorted by name.
+     * @throws IOException if an entry doesn't exist.
+     */
+    public static List<File> listFiles(List<String> classPath) throws IOException {
+        List<File> classPathFiles = new ArrayList<File>();
+        for (String classPathEntry : classPath) {
+            if (classPathEntry.endsWith(WILDCARD)) {
+                File directory = new File(classPathEntry.substring(0, classPathEntry.length() - 1));
+                String[] fileNames = directory.list();
+                if (fileNames == null) {
+                    throw new IOException("Not a directory " + directory);
+                }
+                Arrays.sort(fileNames);
+                for (String fileName : fileNames) {
+                    if (fileName.endsWith(JAR_EXTENSION)) {
+                        classPathFiles.add(new File(directory, fileName));
+                    }
+                }
+            } else {
+                File file = new File(classPathEntry);
+                if (!file.isDirectory() && !file.isFile()) {
+                    throw new IOException("Class path entry not found " + classPathEntry);
+                }
+                classPathFiles.add(file);
+            }
+        }
+        return classPathFiles;
+    }
+
+    /**
+     * @return the number of classes indexed.
+     */
+    public int size() {
+        return entriesByClassName.size();
+    }
+
+    /**
+     * @return the names of all classes of this class path, sorted.
+     */
+    public Set<String> getClassNames() {
+        return new TreeSet<String>(entriesByClassName.keySet());
+    }
+
+    /**
+     * @param className a fully-qualified class name.
+     * @return whether this class path contains className.
+     */
+    public boolean contains(String className) {
+        return entriesByClassName.containsKey(className);
+    }
+
+    /**
+     * Reads a class file.
+     * @param className a fully-qualified class name.
+     * @return the bytes of the class file, null if this class path doesn't contain className.
+     * @throws IOException if the class file can't be read.
+     */
+    public byte[] getClassFile(String className) throws IOException {
+        Entry entry = entriesByClassName.get(className);
+        if (entry == null) {
+            return null;
+        }
+        File file = files.get(entry.indexFile);
+        ByteBuffer mapping = mappings.get(entry.indexFile);
+        if (mapping == null) {
+            return ClassFiles.readFully(ClassFiles.getClassFile(file, className));
+        }
+        return readJarEntry(file, mapping, entry);
+    }
+
+    @Override
+    public InputStream openClassfile(String className) throws NotFoundException {
+        try {
+            byte[] classFile = getClassFile(className);
+            return classFile == null ? null : new ByteArrayInputStream(classFile);
+        } catch (IOException e) {
+            throw new NotFoundException("Impossible to read class " + className, e);
+        }
+    }
+
+    @Override
+    public URL find(String className) {
+        Entry entry = entriesByClassName.get(className);
+        if (entry == null) {
+            return null;
+        }
+        String path = className.replace('.', '/') + CLASS_FILE_EXTENSION;
+        File file = files.get(entry.indexFile);
+        try {
+            if (mappings.get(entry.indexFile) == null) {
+                return new File(file, path).toURI().toURL();
+            }
+            return new URL("jar:" + file.toURI().toURL() + "!/" + path);
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        // mappings are released when this class path is garbage collected
+    }
+
+    @Override
+    public String toString() {
+        return "IndexedClassPath" + files;
+    }
+
+    private void indexDirectory(File directory) {
+        int indexFile = addFile(directory, null);
+        for (String className : ClassFiles.listClassNames(directory)) {
+            addEntry(className, new Entry(indexFile, 0, 0, 0, 0));
+        }
+    }
+
+    private void indexJar(File jar) throws IOException {
+        ByteBuffer mapping = map(jar);
+        int indexFile = addFile(jar, mapping);
+        int endOfCentralDirectory = findEndOfCentralDirectory(jar, mapping);
+        int entryCount = mapping.getShort(endOfCentralDirectory + OFFSET_ENTRY_COUNT) & U2_MASK;
+        int offset = (int) (mapping.getInt(endOfCentralDirectory + OFFSET_CENTRAL_DIRECTORY_OFFSET) & U4_MASK);
+        for (int indexEntry = 0; indexEntry < entryCount; indexEntry++) {
+            if (mapping.getInt(offset) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("Invalid central directory in " + jar);
+            }
+            int nameLength = mapping.getShort(offset + OFFSET_CENTRAL_NAME_LENGTH) & U2_MASK;
+            String name = readName(mapping, offset + CENTRAL_HEADER_SIZE, nameLength);
+            if (name.endsWith(CLASS_FILE_EXTENSION)) {
+                String className = name.substring(0, name.length() - CLASS_FILE_EXTENSION.length()).replace('/', '.');
+                addEntry(className, new Entry(indexFile,
+                        (int) (mapping.getInt(offset + OFFSET_CENTRAL_LOCAL_HEADER) & U4_MASK),
+                        mapping.getShort(offset + OFFSET_CENTRAL_METHOD) & U2_MASK,
+                        (int) (mapping.getInt(offset + OFFSET_CENTRAL_COMPRESSED_SIZE) & U4_MASK),
+                        (int) (mapping.getInt(offset + OFFSET_CENTRAL_SIZE) & U4_MASK)));
+            }
+            offset += CENTRAL_HEADER_SIZE + nameLength
+                    + (mapping.getShort(offset + OFFSET_CENTRAL_EXTRA_LENGTH) & U2_MASK)
+                    + (mapping.getShort(offset + OFFSET_CENTRAL_COMMENT_LENGTH) & U2_MASK);
+        }
+    }
+
+    private int addFile(File file, ByteBuffer mapping) {
+        files.add(file);
+        mappings.add(mapping);
+        return files.size() - 1;
+    }
+
+    private void addEntry(String className, Entry entry) {
+        if (!entriesByClassName.containsKey(className)) {
+            entriesByClassName.put(className, entry);
+        }
+    }
+
+    private static ByteBuffer map(File jar) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(jar, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Jar too large " + jar);
+            }
+            // a mapping stays valid once its channel is closed
+            MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapping.order(ByteOrder.LITTLE_ENDIAN);
+            return mapping;
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private static int findEndOfCentralDirectory(File jar, ByteBuffer mapping) throws IOException {
+        int lowestOffset = Math.max(0, mapping.limit() - END_OF_CENTRAL_DIRECTORY_SIZE - MAX_COMMENT_SIZE);
+        for (int offset = mapping.limit() - END_OF_CENTRAL_DIRECTORY_SIZE; offset >= lowestOffset; offset--) {
+            if (mapping.getInt(offset) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                return offset;
+            }
+        }
+        throw new IOException("Not a jar " + jar);
+    }
+
+    private static String readName(ByteBuffer mapping, int offset, int length) throws IOException {
+        byte[] name = new byte[length];
+        ByteBuffer view = mapping.duplicate();
+        view.position(offset);
+        view.get(name);
+        return new String(name, "UTF-8");
+    }
+
+    private static byte[] readJarEntry(File jar, ByteBuffer mapping, Entry entry) throws IOException {
+        int offset = entry.localHeaderOffset;
+        if (mapping.getInt(offset) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("Invalid local header in " + jar);
+        }
+        int dataOffset = offset + LOCAL_HEADER_SIZE
+                + (mapping.getShort(offset + OFFSET_LOCAL_NAME_LENGTH) & U2_MASK)
+                + (mapping.getShort(offset + OFFSET_LOCAL_EXTRA_LENGTH) & U2_MASK);
+        byte[] data = new byte[entry.compressedSize];
+        // each read uses its own view, so that the mapping can be shared by threads
+        ByteBuffer view = mapping.duplicate();
+        view.position(dataOffset);
+        view.get(data);
+        if (entry.method == METHOD_STORED) {
+            return data;
+        }
+        if (entry.method != METHOD_DEFLATED) {
+            throw new IOException("Unsupported compression method " + entry.method + " in " + jar);
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            byte[] classFile = new byte[entry.size];
+            int length = 0;
+            while (length < classFile.length && !inflater.finished()) {
+                int inflated = inflater.inflate(classFile, length, classFile.length - length);
+                if (inflated == 0 && inflater.needsInput()) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != classFile.length) {
+                throw new IOException("Truncated entry in " + jar);
+            }
+            return classFile;
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid entry in " + jar, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Where to find a class file. Only the index of the file is used for directories.
+     */
+    private static final class Entry {
+        private final int indexFile;
+        private final int localHeaderOffset;
+        private final int method;
+        private final int compressedSize;
+        private final int size;
+
+        private Entry(int indexFile, int localHeaderOffset, int method, int compressedSize, int size) {
+            this.indexFile = indexFile;
+            this.localHeaderOffset = localHeaderOffset;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.github.stephanenicolas.afterburner.inserts;
 
+import java.util.List;
+
 import javassist.CtClass;
 import javassist.CtMethod;
 import javassist.Modifier;
@@ -36,14 +38,61 @@ public class CtMethodJavaWriter {
                 + extractParameters(method) + ");";
     }
 
+    /**
+     * Returns the signature of a method like "public abstract foo(Object o) throws Exception, Throwable".
+     * Doesn't need to load any type.
+     * @param overridenMethod the method to generate the signature of.
+     * @return the signature of overridenMethod like "public abstract foo(Object o) throws Exception, Throwable".
+     */
+    public String createJavaSignature(MethodSignature overridenMethod) {
+        List<String> parameterTypeNames = overridenMethod.getParameterTypeNames();
+        return Modifier.toString(overridenMethod.getModifiers()) + " "
+                + overridenMethod.getReturnTypeName() + " "
+                + overridenMethod.getName() + "("
+                + joinParametersAndTypes(parameterTypeNames.toArray(new String[parameterTypeNames.size()])) + ")"
+                + joinThrowClause(overridenMethod.getExceptionTypeNames().toArray(new String[0]));
+    }
+
+    /**
+     * Invokes the super implemntation of a method like "super.foo(o)".
+     * Doesn't need to load any type.
+     * @param method the method to generate the super impl invocation of.
+     * @return the super implemntation of a method like "super.foo(o)".
+     */
+    public String invokeSuper(MethodSignature method) {
+        return "super."
+                + method.getName() + "("
+                + joinParameters(method.getParameterTypeNames().size()) + ");";
+    }
+
     private String extractThrowClause(CtMethod overridenMethod) throws NotFoundException {
+        return joinThrowClause(getNames(overridenMethod.getExceptionTypes()));
+    }
+
+    private String extractParametersAndTypes(CtMethod overridenMethod) throws NotFoundException {
+        return joinParametersAndTypes(getNames(overridenMethod.getParameterTypes()));
+    }
+
+    private String extractParameters(CtMethod overridenMethod) throws NotFoundException {
+        return joinParameters(overridenMethod.getParameterTypes().length);
+    }
+
+    private String[] getNames(CtClass[] types) {
+        String[] names = new String[types.length];
+        for (int indexType = 0; indexType < types.length; indexType++) {
+            names[indexType] = types[indexType].getName();
+        }
+        return names;
+    }
+
+    private String joinThrowClause(String[] exceptionTypeNames) {
         int indexException = 0;
         StringBuilder builder = new StringBuilder();
-        for (CtClass paramType : overridenMethod.getExceptionTypes()) {
-            builder.append(paramType.getName());
-            if (indexException < overridenMethod.getExceptionTypes().length - 1) {
+        for (String exceptionTypeName : exceptionTypeNames) {
+            builder.append(exceptionTypeName);
+            if (indexException < exceptionTypeNames.length - 1) {
                 builder.append(", ");
-            }   
+            }
             indexException++;
         }
         if (builder.length() != 0) {
@@ -52,14 +101,14 @@ public class CtMethodJavaWriter {
         return builder.toString();
     }
 
-    private String extractParametersAndTypes(CtMethod overridenMethod) throws NotFoundException {
+    private String joinParametersAndTypes(String[] parameterTypeNames) {
         StringBuilder builder = new StringBuilder();
         int indexParam = 0;
-        for (CtClass paramType : overridenMethod.getParameterTypes()) {
-            builder.append(paramType.getName());
+        for (String parameterTypeName : parameterTypeNames) {
+            builder.append(parameterTypeName);
             builder.append(" ");
             builder.append("p" + indexParam);
-            if (indexParam < overridenMethod.getParameterTypes().length - 1) {
+            if (indexParam < parameterTypeNames.length - 1) {
                 builder.append(", ");
             }
             indexParam++;
@@ -67,11 +116,11 @@ public class CtMethodJavaWriter {
         return builder.toString();
     }
 
-    private String extractParameters(CtMethod overridenMethod) throws NotFoundException {
+    private String joinParameters(int parameterCount) {
         StringBuilder builder = new StringBuilder();
-        for (int indexParam = 0; indexParam < overridenMethod.getParameterTypes().length; indexParam++) {
+        for (int indexParam = 0; indexParam < parameterCount; indexParam++) {
             builder.append("p" + indexParam);
-            if (indexParam < overridenMethod.getParameterTypes().length - 1) {
+            if (indexParam < parameterCount - 1) {
                 builder.append(", ");
             }
         }
@@ -10,6 +10,8 @@ public class Insertable {
 
     /** The target class into which to insert code. */
     private CtClass classToInsertInto;
+    /** The system property guarding the inserted code, null if it is not guarded. */
+    private String guardProperty;
 
     public Insertable(CtClass classToInsertInto) {
         this.classToInsertInto = classToInsertInto;
@@ -19,4 +21,18 @@ public class Insertable {
         return classToInsertInto;
     }
 
+    public String getGuardProperty() {
+        return guardProperty;
+    }
+
+    /**
+     * Declares that the inserted code is guarded by a system property, see
+     * {@link com.github.stephanenicolas.afterburner.SystemPropertyGuard}. The flag field of the property
+     * is added to the target class when the insertion is applied.
+     * @param guardProperty the name of the system property, or null if the code is not guarded.
+     */
+    public void setGuardProperty(String guardProperty) {
+        this.guardProperty = guardProperty;
+    }
+
 }
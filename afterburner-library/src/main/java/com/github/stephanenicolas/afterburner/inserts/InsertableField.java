@@ -0,0 +1,89 @@
+package com.github.stephanenicolas.afterburner.inserts;
+
+import javassist.CtClass;
+
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+
+/**
+ * Base class of all insertable fields through AfterBurner.
+ * A field can be padded, so that it doesn't share a cache line with other fields,
+ * and can receive accessors based on atomic field updaters.
+ * @author SNI
+ */
+public abstract class InsertableField extends Insertable {
+
+    /**
+     * How a field is padded against false sharing.
+     */
+    public enum Padding {
+        /** The field is added as is. */
+        NONE,
+        /**
+         * The field, a long or a double, is surrounded by long fields filling a cache line before and after it.
+         * HotSpot lays out long fields of a class together, in declaration order, this is a best effort.
+         */
+        SURROUNDING,
+        /**
+         * The field, a long, is stored in the middle slot of its own {@code AtomicLongArray}, padded by a cache line on each side.
+         * The holder is allocated with the instance, and doesn't depend on the layout of the class.
+         */
+        HOLDER
+    }
+
+    public InsertableField(CtClass classToInsertInto) {
+        super(classToInsertInto);
+    }
+
+    /**
+     * @return the name of the field to add.
+     * @throws AfterBurnerImpossibleException in case something goes wrong. Wrap all exceptions into it.
+     */
+    public abstract String getFieldName() throws AfterBurnerImpossibleException;
+
+    /**
+     * @return the type of the field, like "long" or "java.lang.String".
+     * @throws AfterBurnerImpossibleException in case something goes wrong. Wrap all exceptions into it.
+     */
+    public abstract String getTypeName() throws AfterBurnerImpossibleException;
+
+    /**
+     * @return the modifiers of the field, see {@link javassist.Modifier}.
+     */
+    public abstract int getModifiers();
+
+    /**
+     * @return the java expression initializing the field, null to keep the default value.
+     */
+    public String getInitializer() {
+        return null;
+    }
+
+    public Padding getPadding() {
+        return Padding.NONE;
+    }
+
+    /**
+     * Accessors are public methods named after the field, e.g. for a long field "hits" : {@code getHits()},
+     * {@code incrementAndGetHits()}, {@code addAndGetHits(long)} and {@code compareAndSetHits(long, long)}.
+     * They are based on an atomic field updater (the field is then made volatile), or on the holder.
+     * Only instance fields of type long, int, or of a reference type, can have accessors.
+     * @return whether or not to generate accessors.
+     */
+    public boolean isGeneratingAccessors() {
+        return false;
+    }
+
+    public String toString() {
+        String fieldName;
+        String typeName;
+        try {
+            fieldName = getFieldName();
+            typeName = getTypeName();
+        } catch (AfterBurnerImpossibleException e) {
+            fieldName = "<Exception>";
+            typeName = "<Exception>";
+        }
+        return "[class:" + getClassToInsertInto().getName() + ",field:" + typeName + " " + fieldName + ",padding:" + getPadding() + ",accessors:"
+                + isGeneratingAccessors() + "]";
+    }
+}
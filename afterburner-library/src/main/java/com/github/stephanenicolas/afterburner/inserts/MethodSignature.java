@@ -0,0 +1,84 @@
+package com.github.stephanenicolas.afterburner.inserts;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javassist.bytecode.Descriptor;
+
+/**
+ * Describes a method by names only, without any {@link javassist.CtClass}.
+ * Allows to generate code for a method without loading its declaring class or its parameter types.
+ * @author SNI
+ */
+public final class MethodSignature {
+    private final String declaringClassName;
+    private final String name;
+    private final String descriptor;
+    private final int modifiers;
+    private final List<String> exceptionTypeNames;
+
+    /**
+     * Creates a method signature.
+     * @param declaringClassName the name of the class declaring the method.
+     * @param name the name of the method.
+     * @param descriptor the JVM descriptor of the method, like "(I[Ljava/lang/String;)V".
+     * @param modifiers the modifiers of the method, as defined by {@link javassist.Modifier}.
+     * @param exceptionTypeNames the names of the exceptions declared by the method.
+     */
+    public MethodSignature(String declaringClassName, String name, String descriptor, int modifiers, List<String> exceptionTypeNames) {
+        this.declaringClassName = declaringClassName;
+        this.name = name;
+        this.descriptor = descriptor;
+        this.modifiers = modifiers;
+        this.exceptionTypeNames = Collections.unmodifiableList(new ArrayList<String>(exceptionTypeNames));
+    }
+
+    public String getDeclaringClassName() {
+        return declaringClassName;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    public int getModifiers() {
+        return modifiers;
+    }
+
+    public List<String> getExceptionTypeNames() {
+        return exceptionTypeNames;
+    }
+
+    /**
+     * @return the names of the parameter types, like "int" or "java.lang.String[]".
+     */
+    public List<String> getParameterTypeNames() {
+        String parameters = Descriptor.toString(descriptor);
+        // parameters look like (int,java.lang.String[])
+        parameters = parameters.substring(1, parameters.length() - 1);
+        List<String> parameterTypeNames = new ArrayList<String>();
+        if (parameters.length() != 0) {
+            for (String parameterTypeName : parameters.split(",")) {
+                parameterTypeNames.add(parameterTypeName);
+            }
+        }
+        return parameterTypeNames;
+    }
+
+    /**
+     * @return the name of the return type, like "void" or "java.lang.String[]".
+     */
+    public String getReturnTypeName() {
+        return Descriptor.toClassName(descriptor.substring(descriptor.indexOf(')') + 1));
+    }
+
+    @Override
+    public String toString() {
+        return declaringClassName + "." + name + descriptor;
+    }
+}
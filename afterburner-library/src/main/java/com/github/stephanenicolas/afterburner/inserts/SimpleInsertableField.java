@@ -0,0 +1,30 @@
+package com.github.stephanenicolas.afterburner.inserts;
+
+import javassist.CtClass;
+import lombok.Getter;
+
+public final class SimpleInsertableField extends InsertableField {
+    @Getter
+    private String fieldName;
+    @Getter
+    private String typeName;
+    @Getter
+    private int modifiers;
+    @Getter
+    private String initializer;
+    @Getter
+    private Padding padding;
+    @Getter
+    private boolean generatingAccessors;
+
+    public SimpleInsertableField(CtClass classToInsertInto, String typeName, String fieldName, int modifiers, String initializer,
+            Padding padding, boolean generatingAccessors) {
+        super(classToInsertInto);
+        this.typeName = typeName;
+        this.fieldName = fieldName;
+        this.modifiers = modifiers;
+        this.initializer = initializer;
+        this.padding = padding;
+        this.generatingAccessors = generatingAccessors;
+    }
+}
@@ -0,0 +1,111 @@
+package com.github.stephanenicolas.afterburner.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Helpers to read and write class files and directories of class files.
+ * @author SNI
+ */
+public final class ClassFiles {
+    private static final String CLASS_FILE_EXTENSION = ".class";
+    private static final int BUFFER_SIZE = 8192;
+
+    private ClassFiles() {
+    }
+
+    /**
+     * Lists all classes of a directory.
+     * @param directory the root of a class file hierarchy.
+     * @return the names, sorted, of all classes in directory.
+     */
+    public static List<String> listClassNames(File directory) {
+        List<String> classNames = new ArrayList<String>();
+        collectClassNames(directory, "", classNames);
+        Collections.sort(classNames);
+        return classNames;
+    }
+
+    /**
+     * @param directory the root of a class file hierarchy.
+     * @param className the name of a class.
+     * @return the file of className in directory, which may not exist.
+     */
+    public static File getClassFile(File directory, String className) {
+        return new File(directory, className.replace('.', File.separatorChar) + CLASS_FILE_EXTENSION);
+    }
+
+    /**
+     * Reads a whole file.
+     * @param file the file to read.
+     * @return the content of file.
+     * @throws IOException if file can't be read.
+     */
+    public static byte[] readFully(File file) throws IOException {
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            return readFully(inputStream);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Reads a stream until its end. The stream is not closed.
+     * @param inputStream the stream to read.
+     * @return the content of inputStream.
+     * @throws IOException if inputStream can't be read.
+     */
+    public static byte[] readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, read);
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Writes a whole file, creating its parent directories if needed.
+     * @param file the file to write.
+     * @param bytes the content of file.
+     * @throws IOException if file can't be written.
+     */
+    public static void write(File file, byte[] bytes) throws IOException {
+        File parent = file.getParentFile();
+        // another thread, or process, can create the directory at the same time
+        if (parent != null && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Impossible to create directory " + parent);
+        }
+        OutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(bytes);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private static void collectClassNames(File directory, String packagePrefix, List<String> classNames) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String fileName = file.getName();
+            if (file.isDirectory()) {
+                collectClassNames(file, packagePrefix + fileName + ".", classNames);
+            } else if (fileName.endsWith(CLASS_FILE_EXTENSION)) {
+                classNames.add(packagePrefix + fileName.substring(0, fileName.length() - CLASS_FILE_EXTENSION.length()));
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.github.stephanenicolas.afterburner.rules;
+
+import java.util.regex.Pattern;
+
+import javassist.CannotCompileException;
+import javassist.CtBehavior;
+import javassist.CtClass;
+import javassist.NotFoundException;
+import javassist.bytecode.Opcode;
+import javassist.expr.ExprEditor;
+import javassist.expr.NewArray;
+import javassist.expr.NewExpr;
+
+import com.github.stephanenicolas.afterburner.AfterBurner;
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.transform.TransformationRule;
+
+/**
+ * Counts allocations per allocation site : each {@code new} of an object or an array in the selected methods
+ * and constructors increments a counter of {@code Counters.ALLOCATIONS}, in afterburner-runtime.
+ * Allocation sites can then be ranked by rate, in a running process, via {@code Counters.ALLOCATIONS.snapshot()}.
+ * <p>
+ * Counting can be sampled, to reduce its cost : with a sampling rate of N, the counter of a site
+ * is increased by N every N allocations. Allocations of static initializers are not counted,
+ * and classes without allocations in the selected methods are left untouched.
+ * Instrumented classes need afterburner-runtime at runtime.
+ * </p>
+ * @author SNI
+ */
+public class AllocationSiteRule implements TransformationRule {
+    private static final String FIELD_PREFIX = "afterburner$allocationSite$";
+    private static final String VERSION = "1";
+
+    private final Pattern classNamePattern;
+    private final Pattern methodNamePattern;
+    private final int samplingRate;
+
+    /**
+     * Creates a rule counting all allocations of all classes, without sampling.
+     */
+    public AllocationSiteRule() {
+        this(".*", ".*", 1);
+    }
+
+    /**
+     * Creates a rule.
+     * @param classNameRegex selects the classes to instrument by their name.
+     * @param methodNameRegex selects the methods to instrument by their name, constructors are named "&lt;init&gt;".
+     * @param samplingRate counts one allocation out of samplingRate, must be a power of 2. 1 counts all allocations.
+     */
+    public AllocationSiteRule(String classNameRegex, String methodNameRegex, int samplingRate) {
+        if (samplingRate <= 0 || Integer.bitCount(samplingRate) != 1) {
+            throw new IllegalArgumentException("Sampling rate must be a positive power of 2: " + samplingRate);
+        }
+        this.classNamePattern = Pattern.compile(classNameRegex);
+        this.methodNamePattern = Pattern.compile(methodNameRegex);
+        this.samplingRate = samplingRate;
+    }
+
+    @Override
+    public String getFingerprint() {
+        return getClass().getName() + ":" + VERSION + ":" + classNamePattern + ":" + methodNamePattern + ":" + samplingRate;
+    }
+
+    @Override
+    public boolean shouldTransform(CtClass candidateClass) throws AfterBurnerImpossibleException {
+        if (candidateClass.isInterface() || !classNamePattern.matcher(candidateClass.getName()).matches()) {
+            return false;
+        }
+        for (CtBehavior behavior : candidateClass.getDeclaredBehaviors()) {
+            if (SiteFields.hasCode(behavior) && !behavior.getMethodInfo2().isStaticInitializer()
+                    && methodNamePattern.matcher(behavior.getMethodInfo2().getName()).matches()
+                    && SiteFields.containsOpcode(behavior, Opcode.NEW, Opcode.NEWARRAY, Opcode.ANEWARRAY, Opcode.MULTIANEWARRAY)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void applyTransformations(AfterBurner afterBurner, final CtClass classToTransform) throws CannotCompileException,
+            AfterBurnerImpossibleException, NotFoundException {
+        final int[] siteCount = new int[1];
+        for (final CtBehavior behavior : classToTransform.getDeclaredBehaviors()) {
+            if (!SiteFields.hasCode(behavior) || !methodNamePattern.matcher(behavior.getMethodInfo2().getName()).matches()) {
+                continue;
+            }
+            behavior.instrument(new ExprEditor() {
+                @Override
+                public void edit(NewExpr newExpr) throws CannotCompileException {
+                    String description = SiteFields.describe(behavior, newExpr.getLineNumber()) + " new " + newExpr.getClassName();
+                    newExpr.replace(createCountingStatement(description) + " $_ = $proceed($$);");
+                }
+
+                @Override
+                public void edit(NewArray newArray) throws CannotCompileException {
+                    String description = SiteFields.describe(behavior, newArray.getLineNumber()) + " new " + getArrayTypeName(newArray);
+                    newArray.replace(createCountingStatement(description) + " $_ = $proceed($$);");
+                }
+
+                private String createCountingStatement(String description) throws CannotCompileException {
+                    String siteField = SiteFields.addSiteField(classToTransform, FIELD_PREFIX + siteCount[0]++, "ALLOCATIONS", description);
+                    if (samplingRate == 1) {
+                        return SiteFields.COUNTERS_CLASS_NAME + ".ALLOCATIONS.increment(" + siteField + ");";
+                    }
+                    return SiteFields.COUNTERS_CLASS_NAME + ".ALLOCATIONS.sample(" + siteField + ", " + samplingRate + ");";
+                }
+            });
+        }
+    }
+
+    private static String getArrayTypeName(NewArray newArray) {
+        StringBuilder typeName = new StringBuilder();
+        try {
+            typeName.append(newArray.getComponentType().getName());
+        } catch (NotFoundException e) {
+            typeName.append("?");
+        }
+        for (int dimension = 0; dimension < newArray.getCreatedDimensions(); dimension++) {
+            typeName.append("[]");
+        }
+        return typeName.toString();
+    }
+}
@@ -0,0 +1,132 @@
+package com.github.stephanenicolas.afterburner.rules;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import javassist.CannotCompileException;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtMethod;
+import javassist.Modifier;
+import javassist.NotFoundException;
+import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.ClassFile;
+
+import com.github.stephanenicolas.afterburner.AfterBurner;
+import com.github.stephanenicolas.afterburner.InsertableFieldBuilder;
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.inserts.SimpleInsertableMethod;
+import com.github.stephanenicolas.afterburner.transform.TransformationRule;
+
+/**
+ * Caches the hash code of immutable classes, like {@link String} does : {@code hashCode()} is computed on first call
+ * and stored into a private transient int field. The cache is race-benign : the field is read once,
+ * and threads that see it unset compute the same value again.
+ * <p>
+ * A class is transformed if it declares {@code hashCode()} and is immutable : either it is annotated by
+ * the immutability annotation of the rule, or all instance fields of the class and of its super classes are final
+ * and hold immutable values : primitives, strings or boxed primitives. A final field holding an array or
+ * any other object doesn't make a class immutable, the class must then be annotated.
+ * A hash code of 0 is never cached, it is computed on each call.
+ * </p>
+ * @author SNI
+ */
+public class CachedHashCodeRule implements TransformationRule {
+    static final String CACHE_FIELD = "afterburner$hashCode";
+    static final String COMPUTE_METHOD = "afterburner$computeHashCode";
+
+    private static final String VERSION = "2";
+    private static final Set<String> IMMUTABLE_VALUE_DESCRIPTORS = new HashSet<String>(Arrays.asList("Ljava/lang/String;",
+            "Ljava/lang/Boolean;", "Ljava/lang/Byte;", "Ljava/lang/Character;", "Ljava/lang/Short;", "Ljava/lang/Integer;",
+            "Ljava/lang/Long;", "Ljava/lang/Float;", "Ljava/lang/Double;"));
+
+    private final String immutableAnnotation;
+
+    /**
+     * Creates a rule that transforms classes whose instance fields are all final and hold immutable values.
+     */
+    public CachedHashCodeRule() {
+        this(null);
+    }
+
+    /**
+     * Creates a rule.
+     * @param immutableAnnotation the fully qualified name of an annotation marking immutable classes,
+     * whatever their fields. Classes whose instance fields are all final and hold immutable values are transformed too. Can be null.
+     */
+    public CachedHashCodeRule(String immutableAnnotation) {
+        this.immutableAnnotation = immutableAnnotation;
+    }
+
+    @Override
+    public String getFingerprint() {
+        return getClass().getName() + ":" + VERSION + ":" + immutableAnnotation;
+    }
+
+    @Override
+    public boolean shouldTransform(CtClass candidateClass) throws AfterBurnerImpossibleException {
+        if (candidateClass.isInterface() || getHashCodeMethod(candidateClass) == null) {
+            return false;
+        }
+        return isAnnotatedAsImmutable(candidateClass) || hasOnlyFinalValueFields(candidateClass);
+    }
+
+    @Override
+    public void applyTransformations(AfterBurner afterBurner, CtClass classToTransform) throws CannotCompileException,
+            AfterBurnerImpossibleException, NotFoundException {
+        CtMethod hashCodeMethod = getHashCodeMethod(classToTransform);
+        hashCodeMethod.setName(COMPUTE_METHOD);
+        hashCodeMethod.setModifiers(Modifier.PRIVATE);
+        new InsertableFieldBuilder(afterBurner).insertIntoClass(classToTransform).withField("int", CACHE_FIELD)
+                .withModifiers(Modifier.PRIVATE | Modifier.TRANSIENT).doIt();
+        String fullMethod = "public int hashCode() { int hash = " + CACHE_FIELD + "; if (hash == 0) { hash = " + COMPUTE_METHOD + "(); "
+                + CACHE_FIELD + " = hash; } return hash; }";
+        afterBurner.addOrInsertMethod(new SimpleInsertableMethod(classToTransform, "hashCode", null, null, "", fullMethod));
+    }
+
+    private CtMethod getHashCodeMethod(CtClass candidateClass) {
+        try {
+            CtMethod hashCodeMethod = candidateClass.getDeclaredMethod("hashCode", new CtClass[0]);
+            return Modifier.isAbstract(hashCodeMethod.getModifiers()) ? null : hashCodeMethod;
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+
+    private boolean isAnnotatedAsImmutable(CtClass candidateClass) {
+        if (immutableAnnotation == null) {
+            return false;
+        }
+        ClassFile classFile = candidateClass.getClassFile2();
+        for (String tag : new String[] {AnnotationsAttribute.visibleTag, AnnotationsAttribute.invisibleTag}) {
+            AnnotationsAttribute attribute = (AnnotationsAttribute) classFile.getAttribute(tag);
+            if (attribute != null && attribute.getAnnotation(immutableAnnotation) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasOnlyFinalValueFields(CtClass candidateClass) {
+        try {
+            for (CtClass currentClass = candidateClass; currentClass != null; currentClass = currentClass.getSuperclass()) {
+                for (CtField field : currentClass.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers)) {
+                        continue;
+                    }
+                    String descriptor = field.getFieldInfo2().getDescriptor();
+                    boolean isValue = descriptor.length() == 1 || IMMUTABLE_VALUE_DESCRIPTORS.contains(descriptor);
+                    if (!Modifier.isFinal(modifiers) || !isValue) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        } catch (NotFoundException e) {
+            // a super class is unknown, its fields can't be checked
+            return false;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.github.stephanenicolas.afterburner.rules;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javassist.CannotCompileException;
+import javassist.CtBehavior;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.Opcode;
+import javassist.expr.ExprEditor;
+import javassist.expr.MethodCall;
+
+import com.github.stephanenicolas.afterburner.bytecode.Instructions;
+
+/**
+ * Finds chains of calls in the code of a behavior, and the code replacing their calls.
+ * Instructions are designated by their position, i.e. their ordinal in the code.
+ * Calls are replaced by their ordinal among the calls seen by a {@link MethodCall} editor :
+ * their position in the code changes as soon as one of them is replaced.
+ * @author SNI
+ */
+abstract class CallChainMatcher {
+    final CodeIterator iterator;
+    final ConstPool constPool;
+    final List<Integer> indexes;
+    private final Set<Integer> jumpTargets;
+    private final List<Integer> callOrdinals = new ArrayList<Integer>();
+    private final Map<Integer, String> replacementsByCallOrdinal = new HashMap<Integer, String>();
+
+    CallChainMatcher(CodeAttribute codeAttribute) throws BadBytecode {
+        this.iterator = codeAttribute.iterator();
+        this.constPool = codeAttribute.getConstPool();
+        this.indexes = Instructions.getIndexes(codeAttribute);
+        this.jumpTargets = Instructions.getJumpTargets(codeAttribute);
+        int callOrdinal = 0;
+        for (int index : indexes) {
+            callOrdinals.add(isMethodCall(index) ? callOrdinal++ : -1);
+        }
+    }
+
+    /**
+     * Replaces the calls of a behavior.
+     * @param behavior the behavior to edit.
+     * @param replacementsByCallOrdinal the code replacing calls, as returned by {@link #findReplacements()}.
+     * @throws CannotCompileException if a replacement doesn't compile.
+     */
+    static void replaceCalls(CtBehavior behavior, final Map<Integer, String> replacementsByCallOrdinal) throws CannotCompileException {
+        behavior.instrument(new ExprEditor() {
+            private int callOrdinal;
+
+            @Override
+            public void edit(MethodCall methodCall) throws CannotCompileException {
+                String replacement = replacementsByCallOrdinal.get(callOrdinal++);
+                if (replacement != null) {
+                    methodCall.replace(replacement);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the code replacing calls, by call ordinal.
+     */
+    Map<Integer, String> findReplacements() {
+        for (int position = 0; position < indexes.size(); position++) {
+            match(position);
+        }
+        return replacementsByCallOrdinal;
+    }
+
+    /**
+     * Matches the chain ending at a position, if any, and registers the replacements of its calls.
+     * @param position the position of the last instruction of the chain.
+     */
+    abstract void match(int position);
+
+    void replaceCall(int position, String replacement) {
+        replacementsByCallOrdinal.put(callOrdinals.get(position), replacement);
+    }
+
+    /**
+     * @return the name of the class pushed by X.class ending at position, null if there is none.
+     */
+    String getConstantClassName(int position) {
+        if (!isOpcode(position, Opcode.LDC) && !isOpcode(position, Opcode.LDC_W)) {
+            return null;
+        }
+        int constIndex = getConstIndex(position);
+        return constPool.getTag(constIndex) == ConstPool.CONST_Class ? constPool.getClassInfo(constIndex) : null;
+    }
+
+    String getConstantString(int position) {
+        if (!isOpcode(position, Opcode.LDC) && !isOpcode(position, Opcode.LDC_W)) {
+            return null;
+        }
+        int constIndex = getConstIndex(position);
+        return constPool.getTag(constIndex) == ConstPool.CONST_String ? constPool.getStringInfo(constIndex) : null;
+    }
+
+    private int getConstIndex(int position) {
+        int index = indexes.get(position);
+        return iterator.byteAt(index) == Opcode.LDC ? iterator.byteAt(index + 1) : iterator.u16bitAt(index + 1);
+    }
+
+    /** The push of a variable, a static field or null, without side effect. */
+    boolean isSinglePush(int position) {
+        if (position < 0) {
+            return false;
+        }
+        int opcode = iterator.byteAt(indexes.get(position));
+        return opcode == Opcode.ALOAD || opcode >= Opcode.ALOAD_0 && opcode <= Opcode.ALOAD_3 || opcode == Opcode.ACONST_NULL
+                || opcode == Opcode.GETSTATIC;
+    }
+
+    boolean isCall(int position, int opcode, String className, String methodName, String descriptor) {
+        if (!isOpcode(position, opcode)) {
+            return false;
+        }
+        int methodRefIndex = iterator.u16bitAt(indexes.get(position) + 1);
+        return constPool.getTag(methodRefIndex) == ConstPool.CONST_Methodref && constPool.getMethodrefClassName(methodRefIndex).equals(className)
+                && constPool.getMethodrefName(methodRefIndex).equals(methodName) && constPool.getMethodrefType(methodRefIndex).equals(descriptor);
+    }
+
+    boolean isOpcode(int position, int opcode) {
+        return position >= 0 && position < indexes.size() && iterator.byteAt(indexes.get(position)) == opcode;
+    }
+
+    private boolean isMethodCall(int index) {
+        int opcode = iterator.byteAt(index);
+        if (opcode == Opcode.INVOKEVIRTUAL || opcode == Opcode.INVOKESTATIC || opcode == Opcode.INVOKEINTERFACE) {
+            return true;
+        }
+        if (opcode != Opcode.INVOKESPECIAL) {
+            return false;
+        }
+        int methodRefIndex = iterator.u16bitAt(index + 1);
+        String methodName;
+        if (constPool.getTag(methodRefIndex) == ConstPool.CONST_Methodref) {
+            methodName = constPool.getMethodrefName(methodRefIndex);
+        } else {
+            methodName = constPool.getInterfaceMethodrefName(methodRefIndex);
+        }
+        return !"<init>".equals(methodName);
+    }
+
+    /**
+     * @return true if the instructions from start to end can only be entered at start.
+     */
+    boolean isEnteredOnlyFrom(int start, int end) {
+        for (int position = start + 1; position <= end; position++) {
+            if (jumpTargets.contains(indexes.get(position))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.stephanenicolas.afterburner.rules;
+
+import java.util.regex.Pattern;
+
+import javassist.CannotCompileException;
+import javassist.CtClass;
+import javassist.CtConstructor;
+import javassist.NotFoundException;
+
+import com.github.stephanenicolas.afterburner.AfterBurner;
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.transform.TransformationRule;
+
+/**
+ * Times the static initializers of the selected classes, into {@code ClassInitTimings.TIMER} of afterburner-runtime,
+ * to find what slows startup down. The time of nested initializations is attributed to the nested classes.
+ * Timings are reported as folded stacks, for flame graph tools, or as the slowest initializations, see {@code ClassInitTimings}.
+ * <p>
+ * Timing doesn't allocate. The end of a static initializer is timed even if it throws.
+ * Classes without static initializer are not instrumented.
+ * Instrumented classes need afterburner-runtime at runtime.
+ * </p>
+ * @author SNI
+ */
+public class ClassInitTimingRule implements TransformationRule {
+    private static final String TIMER = "com.github.stephanenicolas.afterburner.runtime.ClassInitTimings.TIMER";
+    private static final String VERSION = "1";
+
+    private final Pattern classNamePattern;
+
+    /**
+     * Creates a rule timing the static initializers of all classes.
+     */
+    public ClassInitTimingRule() {
+        this(".*");
+    }
+
+    /**
+     * Creates a rule.
+     * @param classNameRegex selects the classes to instrument by their name, like "com\\.foo\\..*" for a package.
+     */
+    public ClassInitTimingRule(String classNameRegex) {
+        this.classNamePattern = Pattern.compile(classNameRegex);
+    }
+
+    @Override
+    public String getFingerprint() {
+        return getClass().getName() + ":" + VERSION + ":" + classNamePattern;
+    }
+
+    @Override
+    public boolean shouldTransform(CtClass candidateClass) throws AfterBurnerImpossibleException {
+        return classNamePattern.matcher(candidateClass.getName()).matches() && candidateClass.getClassInitializer() != null;
+    }
+
+    @Override
+    public void applyTransformations(AfterBurner afterBurner, CtClass classToTransform) throws CannotCompileException,
+            AfterBurnerImpossibleException, NotFoundException {
+        CtConstructor classInitializer = classToTransform.getClassInitializer();
+        classInitializer.insertBefore(TIMER + ".enter(\"" + classToTransform.getName() + "\");");
+        classInitializer.insertAfter(TIMER + ".exit();", true);
+    }
+}
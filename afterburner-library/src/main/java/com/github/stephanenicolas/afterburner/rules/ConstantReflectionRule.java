@@ -0,0 +1,256 @@
+package com.github.stephanenicolas.afterburner.rules;
+
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtBehavior;
+import javassist.CtClass;
+import javassist.CtConstructor;
+import javassist.CtField;
+import javassist.CtMethod;
+import javassist.Modifier;
+import javassist.NotFoundException;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.Opcode;
+
+import com.github.stephanenicolas.afterburner.AfterBurner;
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.transform.TransformationRule;
+
+/**
+ * Replaces reflection on constant class and member names by direct code, without reflective lookups,
+ * dispatch nor access checks. The recognized chains, where the class is {@code X.class} or {@code Class.forName("X")} :
+ * <ul>
+ * <li>{@code X.class.newInstance()} becomes {@code new X()}.</li>
+ * <li>{@code X.class.getMethod("m").invoke(target)}, for a method without parameter, becomes a direct call to {@code m}.
+ * Exceptions are still wrapped into an {@code InvocationTargetException}.</li>
+ * <li>{@code X.class.getField("f").get(target)} becomes a direct read of {@code f}.</li>
+ * </ul>
+ * The lookup of the method or field is removed, the target must be a variable, a static field or null.
+ * Results of primitive type are still boxed, and a null or wrong target still throws the exceptions of reflection.
+ * {@code Class.forName} calls are kept, as they initialize classes.
+ * <p>
+ * Chains are only replaced if their class and member are public and can be resolved when transforming :
+ * otherwise, the original reflective code is kept.
+ * </p>
+ * @author SNI
+ */
+public class ConstantReflectionRule implements TransformationRule {
+    private static final String VERSION = "1";
+    private static final String CLASS = "java.lang.Class";
+    private static final String NULLIFY = "$_ = null;";
+    private static final String CHECK_TARGET = "if ($1 == null) { throw new NullPointerException(); } "
+            + "if (!($1 instanceof %1$s)) { throw new IllegalArgumentException(\"object is not an instance of declaring class\"); } ";
+
+    private final Pattern classNamePattern;
+
+    /**
+     * Creates a rule replacing constant reflection in all classes.
+     */
+    public ConstantReflectionRule() {
+        this(".*");
+    }
+
+    /**
+     * Creates a rule.
+     * @param classNameRegex selects the classes to transform by their name.
+     */
+    public ConstantReflectionRule(String classNameRegex) {
+        this.classNamePattern = Pattern.compile(classNameRegex);
+    }
+
+    @Override
+    public String getFingerprint() {
+        return getClass().getName() + ":" + VERSION + ":" + classNamePattern;
+    }
+
+    @Override
+    public boolean shouldTransform(CtClass candidateClass) throws AfterBurnerImpossibleException {
+        return !candidateClass.isInterface() && classNamePattern.matcher(candidateClass.getName()).matches()
+                && candidateClass.getRefClasses().contains(CLASS);
+    }
+
+    @Override
+    public void applyTransformations(AfterBurner afterBurner, CtClass classToTransform) throws CannotCompileException,
+            AfterBurnerImpossibleException, NotFoundException {
+        for (CtBehavior behavior : classToTransform.getDeclaredBehaviors()) {
+            CodeAttribute codeAttribute = behavior.getMethodInfo2().getCodeAttribute();
+            if (codeAttribute == null) {
+                continue;
+            }
+            Map<Integer, String> replacementsByCallOrdinal;
+            try {
+                replacementsByCallOrdinal = new ChainMatcher(classToTransform.getClassPool(), codeAttribute).findReplacements();
+            } catch (BadBytecode e) {
+                throw new CannotCompileException(e);
+            }
+            if (!replacementsByCallOrdinal.isEmpty()) {
+                CallChainMatcher.replaceCalls(behavior, replacementsByCallOrdinal);
+            }
+        }
+    }
+
+    /**
+     * Finds the reflective chains of a method, and the code replacing their calls.
+     */
+    private static final class ChainMatcher extends CallChainMatcher {
+        private final ClassPool classPool;
+
+        private ChainMatcher(ClassPool classPool, CodeAttribute codeAttribute) throws BadBytecode {
+            super(codeAttribute);
+            this.classPool = classPool;
+        }
+
+        @Override
+        void match(int position) {
+            if (isCall(position, Opcode.INVOKEVIRTUAL, CLASS, "newInstance", "()Ljava/lang/Object;")) {
+                matchNewInstance(position);
+            } else if (isCall(position, Opcode.INVOKEVIRTUAL, "java.lang.reflect.Method", "invoke",
+                    "(Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;")) {
+                matchInvoke(position);
+            } else if (isCall(position, Opcode.INVOKEVIRTUAL, "java.lang.reflect.Field", "get", "(Ljava/lang/Object;)Ljava/lang/Object;")) {
+                matchGet(position);
+            }
+        }
+
+        /** X.class.newInstance() */
+        private void matchNewInstance(int position) {
+            int classPosition = position - 1;
+            CtClass targetClass = getConstantClass(classPosition);
+            if (targetClass == null || !isEnteredOnlyFrom(getConstantClassStart(classPosition), position)) {
+                return;
+            }
+            try {
+                CtConstructor constructor = targetClass.getConstructor("()V");
+                if (!Modifier.isPublic(constructor.getModifiers()) || Modifier.isAbstract(targetClass.getModifiers())) {
+                    return;
+                }
+            } catch (NotFoundException e) {
+                return;
+            }
+            replaceCall(position, "$_ = new " + targetClass.getName() + "();");
+        }
+
+        /** X.class.getMethod("m", new Class[0]).invoke(target, new Object[0] or null) */
+        private void matchInvoke(int position) {
+            int argumentsStart = position - 1;
+            if (argumentsStart >= 1 && isEmptyArray(argumentsStart - 1, "java.lang.Object")) {
+                argumentsStart--;
+            } else if (!isOpcode(argumentsStart, Opcode.ACONST_NULL)) {
+                return;
+            }
+            int getMethodPosition = argumentsStart - 2;
+            if (!isSinglePush(argumentsStart - 1)
+                    || !isCall(getMethodPosition, Opcode.INVOKEVIRTUAL, CLASS, "getMethod", "(Ljava/lang/String;[Ljava/lang/Class;)Ljava/lang/reflect/Method;")
+                    || !isEmptyArray(getMethodPosition - 2, CLASS)) {
+                return;
+            }
+            int namePosition = getMethodPosition - 2 - 1;
+            int classPosition = namePosition - 1;
+            String methodName = getConstantString(namePosition);
+            CtClass targetClass = getConstantClass(classPosition);
+            if (methodName == null || targetClass == null || !isEnteredOnlyFrom(getConstantClassStart(classPosition), position)) {
+                return;
+            }
+            CtMethod method = findPublicMethodWithoutParameter(targetClass, methodName);
+            if (method == null) {
+                return;
+            }
+            String targetClassName = targetClass.getName();
+            String call;
+            String checks = "";
+            if (Modifier.isStatic(method.getModifiers())) {
+                call = targetClassName + "." + methodName + "()";
+            } else {
+                call = "((" + targetClassName + ") $1)." + methodName + "()";
+                checks = String.format(CHECK_TARGET, targetClassName);
+            }
+            String invocation = isVoid(method) ? call + "; $_ = null;" : "$_ = ($w) " + call + ";";
+            replaceCall(getMethodPosition, NULLIFY);
+            replaceCall(position, "{ " + checks + "try { " + invocation + " } catch (Throwable t) { "
+                    + "throw new java.lang.reflect.InvocationTargetException(t); } }");
+        }
+
+        /** X.class.getField("f").get(target) */
+        private void matchGet(int position) {
+            int getFieldPosition = position - 2;
+            if (!isSinglePush(position - 1)
+                    || !isCall(getFieldPosition, Opcode.INVOKEVIRTUAL, CLASS, "getField", "(Ljava/lang/String;)Ljava/lang/reflect/Field;")) {
+                return;
+            }
+            String fieldName = getConstantString(getFieldPosition - 1);
+            CtClass targetClass = getConstantClass(getFieldPosition - 2);
+            if (fieldName == null || targetClass == null || !isEnteredOnlyFrom(getConstantClassStart(getFieldPosition - 2), position)) {
+                return;
+            }
+            CtField field;
+            try {
+                field = targetClass.getField(fieldName);
+            } catch (NotFoundException e) {
+                return;
+            }
+            if (!Modifier.isPublic(field.getModifiers())) {
+                return;
+            }
+            String targetClassName = targetClass.getName();
+            String read;
+            if (Modifier.isStatic(field.getModifiers())) {
+                read = "$_ = ($w) " + targetClassName + "." + fieldName + ";";
+            } else {
+                read = String.format(CHECK_TARGET, targetClassName) + "$_ = ($w) ((" + targetClassName + ") $1)." + fieldName + ";";
+            }
+            replaceCall(getFieldPosition, NULLIFY);
+            replaceCall(position, "{ " + read + " }");
+        }
+
+        private CtMethod findPublicMethodWithoutParameter(CtClass targetClass, String methodName) {
+            CtMethod foundMethod = null;
+            for (CtMethod method : targetClass.getMethods()) {
+                if (method.getName().equals(methodName) && method.getSignature().startsWith("()") && Modifier.isPublic(method.getModifiers())) {
+                    if (foundMethod != null) {
+                        // covariant return types, let reflection choose
+                        return null;
+                    }
+                    foundMethod = method;
+                }
+            }
+            return foundMethod;
+        }
+
+        private boolean isVoid(CtMethod method) {
+            return method.getSignature().endsWith(")V");
+        }
+
+        /**
+         * @return the public class pushed by X.class or Class.forName("X") ending at position, null if there is none.
+         */
+        private CtClass getConstantClass(int position) {
+            String className = getConstantClassName(position);
+            if (isCall(position, Opcode.INVOKESTATIC, CLASS, "forName", "(Ljava/lang/String;)Ljava/lang/Class;")) {
+                className = getConstantString(position - 1);
+            }
+            if (className == null || className.startsWith("[")) {
+                return null;
+            }
+            try {
+                CtClass constantClass = classPool.get(className);
+                return Modifier.isPublic(constantClass.getModifiers()) && !constantClass.isInterface() ? constantClass : null;
+            } catch (NotFoundException e) {
+                return null;
+            }
+        }
+
+        private int getConstantClassStart(int position) {
+            return isOpcode(position, Opcode.INVOKESTATIC) ? position - 1 : position;
+        }
+
+        /** new X[0] */
+        private boolean isEmptyArray(int position, String componentClassName) {
+            return isOpcode(position, Opcode.ICONST_0) && isOpcode(position + 1, Opcode.ANEWARRAY)
+                    && constPool.getClassInfo(iterator.u16bitAt(indexes.get(position + 1) + 1)).equals(componentClassName);
+        }
+    }
+}
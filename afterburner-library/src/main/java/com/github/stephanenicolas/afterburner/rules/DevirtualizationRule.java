@@ -0,0 +1,230 @@
+package com.github.stephanenicolas.afterburner.rules;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import javassist.CannotCompileException;
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.Modifier;
+import javassist.NotFoundException;
+import javassist.bytecode.AttributeInfo;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.MethodInfo;
+
+import com.github.stephanenicolas.afterburner.AfterBurner;
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.index.ClassIndex;
+import com.github.stephanenicolas.afterburner.transform.AppliedRulesMarker;
+import com.github.stephanenicolas.afterburner.transform.TransformationRule;
+
+/**
+ * Whole program devirtualization : in a closed world of classes, given by a {@link ClassIndex},
+ * marks final the classes that have no subclass, and the methods of other classes that no subclass overrides.
+ * Final classes and methods are dispatched statically by interpreters and Android runtimes,
+ * and let the class hierarchy analysis of JITs inline without speculating, hence without deoptimizing
+ * when new classes are loaded.
+ * <p>
+ * The closed world must contain all the classes that can extend the transformed classes, typically
+ * by indexing all the class files of an application, e.g. {@code new ClassIndexBuilder().addDirectory(classesDirectory).build()}.
+ * Classes subclassed at runtime, by mocking libraries or proxy generators, must not be selected.
+ * </p>
+ * <p>
+ * A method is considered overriden as soon as a subclass declares a method with the same name and descriptor,
+ * whatever their visibility. Methods are not made private nor static : it would require rewriting all their call sites.
+ * </p>
+ * <p>
+ * The fingerprint of the rule contains a digest of the subclasses of the selected classes : classes that have already been
+ * devirtualized are transformed again when subclasses are added to or removed from the closed world. The rule records in
+ * a class attribute the modifiers it added, and removes them before devirtualizing a class again.
+ * A class overriding a method made final by an earlier devirtualization, that is not applied again, is rejected :
+ * the original classes have to be devirtualized.
+ * </p>
+ * @author SNI
+ */
+public class DevirtualizationRule implements TransformationRule {
+    /** Name of the class attribute containing the classes and methods made final by the rule. */
+    public static final String ATTRIBUTE_NAME = "com.github.stephanenicolas.afterburner.Devirtualized";
+    private static final String VERSION = "3";
+    /** The member of a finalized class that stands for the class itself. */
+    private static final String CLASS_MEMBER = "<class>";
+
+    private final ClassIndex closedWorld;
+    private final Pattern classNamePattern;
+    private final String hierarchyDigest;
+
+    /**
+     * Creates a rule devirtualizing all classes of a closed world.
+     * @param closedWorld indexes all the classes of the program.
+     */
+    public DevirtualizationRule(ClassIndex closedWorld) {
+        this(closedWorld, ".*");
+    }
+
+    /**
+     * Creates a rule.
+     * @param closedWorld indexes all the classes of the program.
+     * @param classNameRegex selects the classes to devirtualize by their name, among the classes of closedWorld.
+     */
+    public DevirtualizationRule(ClassIndex closedWorld, String classNameRegex) {
+        this.closedWorld = closedWorld;
+        this.classNamePattern = Pattern.compile(classNameRegex);
+        this.hierarchyDigest = digestHierarchy();
+    }
+
+    @Override
+    public String getFingerprint() {
+        return getClass().getName() + ":" + VERSION + ":" + classNamePattern + ":" + hierarchyDigest;
+    }
+
+    @Override
+    public boolean shouldTransform(CtClass candidateClass) throws AfterBurnerImpossibleException {
+        if (candidateClass.isInterface() || closedWorld.getIndexedClass(candidateClass.getName()) == null) {
+            return false;
+        }
+        checkNoFinalizedMethodOverriden(candidateClass);
+        return (!Modifier.isFinal(candidateClass.getModifiers()) || readFinalizedMembers(candidateClass).contains(CLASS_MEMBER))
+                && classNamePattern.matcher(candidateClass.getName()).matches();
+    }
+
+    @Override
+    public void applyTransformations(AfterBurner afterBurner, CtClass classToTransform) throws CannotCompileException,
+            AfterBurnerImpossibleException, NotFoundException {
+        Set<String> previouslyFinalizedMembers = readFinalizedMembers(classToTransform);
+        if (previouslyFinalizedMembers.contains(CLASS_MEMBER)) {
+            classToTransform.setModifiers(Modifier.clear(classToTransform.getModifiers(), Modifier.FINAL));
+        }
+        for (CtMethod method : classToTransform.getDeclaredMethods()) {
+            if (previouslyFinalizedMembers.contains(getSignature(method))) {
+                method.setModifiers(Modifier.clear(method.getModifiers(), Modifier.FINAL));
+            }
+        }
+        Set<String> finalizedMembers = addFinalModifiers(classToTransform);
+        if (!finalizedMembers.isEmpty() || !previouslyFinalizedMembers.isEmpty()) {
+            writeFinalizedMembers(classToTransform, finalizedMembers);
+        }
+    }
+
+    /**
+     * Makes final a class, or its methods.
+     * @return the members made final, {@link #CLASS_MEMBER} for the class itself.
+     */
+    private Set<String> addFinalModifiers(CtClass classToTransform) throws NotFoundException {
+        Set<String> finalizedMembers = new TreeSet<String>();
+        List<String> subclassNames = closedWorld.getSubclassesOf(classToTransform.getName());
+        if (subclassNames.isEmpty()) {
+            if (!Modifier.isAbstract(classToTransform.getModifiers())) {
+                classToTransform.setModifiers(classToTransform.getModifiers() | Modifier.FINAL);
+                finalizedMembers.add(CLASS_MEMBER);
+            }
+            return finalizedMembers;
+        }
+
+        Set<String> overridenSignatures = new HashSet<String>();
+        for (String subclassName : subclassNames) {
+            for (CtMethod method : classToTransform.getClassPool().get(subclassName).getDeclaredMethods()) {
+                overridenSignatures.add(getSignature(method));
+            }
+        }
+        for (CtMethod method : classToTransform.getDeclaredMethods()) {
+            int modifiers = method.getModifiers();
+            if ((modifiers & (Modifier.STATIC | Modifier.PRIVATE | Modifier.FINAL | Modifier.ABSTRACT)) == 0
+                    && !overridenSignatures.contains(getSignature(method))) {
+                method.setModifiers(modifiers | Modifier.FINAL);
+                finalizedMembers.add(getSignature(method));
+            }
+        }
+        return finalizedMembers;
+    }
+
+    /**
+     * Rejects a class that overrides a method made final by an earlier devirtualization of one of its superclasses,
+     * if this rule will not transform that superclass again.
+     */
+    private void checkNoFinalizedMethodOverriden(CtClass candidateClass) throws AfterBurnerImpossibleException {
+        Set<String> declaredSignatures = new HashSet<String>();
+        for (CtMethod method : candidateClass.getDeclaredMethods()) {
+            declaredSignatures.add(getSignature(method));
+        }
+        String superclassName = candidateClass.getClassFile2().getSuperclass();
+        while (superclassName != null && closedWorld.getIndexedClass(superclassName) != null) {
+            CtClass superclass;
+            try {
+                superclass = candidateClass.getClassPool().get(superclassName);
+            } catch (NotFoundException e) {
+                throw new AfterBurnerImpossibleException("Impossible to find superclass " + superclassName + " of class " + candidateClass.getName(), e);
+            }
+            if (AppliedRulesMarker.readAppliedRules(superclass).contains(getFingerprint())) {
+                for (String finalizedMember : readFinalizedMembers(superclass)) {
+                    if (declaredSignatures.contains(finalizedMember)) {
+                        throw new AfterBurnerImpossibleException("Class " + candidateClass.getName() + " overrides method " + superclassName + "."
+                                + finalizedMember + ", made final by an earlier devirtualization. Devirtualize the original classes.");
+                    }
+                }
+            }
+            superclassName = superclass.getClassFile2().getSuperclass();
+        }
+    }
+
+    private static Set<String> readFinalizedMembers(CtClass ctClass) throws AfterBurnerImpossibleException {
+        Set<String> finalizedMembers = new TreeSet<String>();
+        AttributeInfo attribute = ctClass.getClassFile2().getAttribute(ATTRIBUTE_NAME);
+        if (attribute == null) {
+            return finalizedMembers;
+        }
+        DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(attribute.get()));
+        try {
+            int count = inputStream.readUnsignedShort();
+            for (int indexMember = 0; indexMember < count; indexMember++) {
+                finalizedMembers.add(inputStream.readUTF());
+            }
+        } catch (IOException e) {
+            throw new AfterBurnerImpossibleException("Invalid attribute " + ATTRIBUTE_NAME + " in class " + ctClass.getName(), e);
+        }
+        return finalizedMembers;
+    }
+
+    private static void writeFinalizedMembers(CtClass ctClass, Set<String> finalizedMembers) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream outputStream = new DataOutputStream(bytes);
+        try {
+            outputStream.writeShort(finalizedMembers.size());
+            for (String finalizedMember : finalizedMembers) {
+                outputStream.writeUTF(finalizedMember);
+            }
+            outputStream.flush();
+        } catch (IOException e) {
+            // can't happen when writing in memory
+            throw new IllegalStateException(e);
+        }
+        ClassFile classFile = ctClass.getClassFile();
+        classFile.addAttribute(new AttributeInfo(classFile.getConstPool(), ATTRIBUTE_NAME, bytes.toByteArray()));
+    }
+
+    /**
+     * @return a digest of the subclasses of each selected class of the closed world.
+     */
+    private String digestHierarchy() {
+        List<String> classNames = new ArrayList<String>();
+        for (String className : closedWorld.getClassNames()) {
+            if (classNamePattern.matcher(className).matches()) {
+                classNames.add(className);
+            }
+        }
+        return closedWorld.digestSubclasses(classNames);
+    }
+
+    private String getSignature(CtMethod method) {
+        MethodInfo methodInfo = method.getMethodInfo2();
+        return methodInfo.getName() + methodInfo.getDescriptor();
+    }
+}
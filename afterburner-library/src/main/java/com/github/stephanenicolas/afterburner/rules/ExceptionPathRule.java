@@ -0,0 +1,146 @@
+package com.github.stephanenicolas.afterburner.rules;
+
+import java.util.regex.Pattern;
+
+import javassist.CannotCompileException;
+import javassist.CtBehavior;
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.NotFoundException;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.ExceptionTable;
+import javassist.expr.ExprEditor;
+import javassist.expr.Handler;
+
+import com.github.stephanenicolas.afterburner.AfterBurner;
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.transform.TransformationRule;
+
+/**
+ * Counts the exceptions of the selected methods, into {@code Counters.EXCEPTIONS} of afterburner-runtime :
+ * <ul>
+ * <li>exceptions caught, per {@code catch} handler. Handlers of {@code finally} blocks are ignored.
+ * Handlers of constructors are instrumented too.</li>
+ * <li>exceptions thrown out of a method, per method, via a handler added around the whole method that rethrows.
+ * Constructors are not instrumented for thrown exceptions.</li>
+ * </ul>
+ * Classes without a selected method, nor a catch handler in a selected constructor, are left untouched.
+ * Counting doesn't allocate. The stack depth of counted exceptions can also be sampled into
+ * {@code Counters.EXCEPTION_STACK_DEPTHS} : it allocates a copy of the stack trace, once per sample.
+ * Depths are recorded as estimates of the sum of the stack depths of all counted exceptions, under the description
+ * of the counted site : ids of both tables don't match, the average depth of a site is the ratio of its counts in both tables,
+ * summed by description.
+ * Instrumented classes need afterburner-runtime at runtime.
+ * @author SNI
+ */
+public class ExceptionPathRule implements TransformationRule {
+    private static final String FIELD_PREFIX = "afterburner$exceptionSite$";
+    private static final String DEPTH_FIELD_PREFIX = "afterburner$exceptionDepthSite$";
+    private static final String VERSION = "1";
+
+    private final Pattern classNamePattern;
+    private final Pattern methodNamePattern;
+    private final int stackDepthSamplingRate;
+
+    /**
+     * Creates a rule counting the exceptions of all classes, without stack depths.
+     */
+    public ExceptionPathRule() {
+        this(".*", ".*", 0);
+    }
+
+    /**
+     * Creates a rule.
+     * @param classNameRegex selects the classes to instrument by their name.
+     * @param methodNameRegex selects the methods to instrument by their name, constructors are named "&lt;init&gt;".
+     * @param stackDepthSamplingRate samples the stack depth of one exception out of stackDepthSamplingRate, must be a power of 2.
+     * 0 disables stack depths.
+     */
+    public ExceptionPathRule(String classNameRegex, String methodNameRegex, int stackDepthSamplingRate) {
+        if (stackDepthSamplingRate < 0 || stackDepthSamplingRate > 0 && Integer.bitCount(stackDepthSamplingRate) != 1) {
+            throw new IllegalArgumentException("Sampling rate must be 0 or a power of 2: " + stackDepthSamplingRate);
+        }
+        this.classNamePattern = Pattern.compile(classNameRegex);
+        this.methodNamePattern = Pattern.compile(methodNameRegex);
+        this.stackDepthSamplingRate = stackDepthSamplingRate;
+    }
+
+    @Override
+    public String getFingerprint() {
+        return getClass().getName() + ":" + VERSION + ":" + classNamePattern + ":" + methodNamePattern + ":" + stackDepthSamplingRate;
+    }
+
+    @Override
+    public boolean shouldTransform(CtClass candidateClass) throws AfterBurnerImpossibleException {
+        if (candidateClass.isInterface() || !classNamePattern.matcher(candidateClass.getName()).matches()) {
+            return false;
+        }
+        for (CtBehavior behavior : candidateClass.getDeclaredBehaviors()) {
+            if (SiteFields.hasCode(behavior) && !behavior.getMethodInfo2().isStaticInitializer()
+                    && methodNamePattern.matcher(behavior.getMethodInfo2().getName()).matches()
+                    && (behavior instanceof CtMethod || hasCatchHandler(behavior))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void applyTransformations(AfterBurner afterBurner, final CtClass classToTransform) throws CannotCompileException,
+            AfterBurnerImpossibleException, NotFoundException {
+        final int[] siteCount = new int[1];
+        CtClass throwableClass = classToTransform.getClassPool().get(Throwable.class.getName());
+        for (final CtBehavior behavior : classToTransform.getDeclaredBehaviors()) {
+            if (!SiteFields.hasCode(behavior) || !methodNamePattern.matcher(behavior.getMethodInfo2().getName()).matches()) {
+                continue;
+            }
+            behavior.instrument(new ExprEditor() {
+                @Override
+                public void edit(Handler handler) throws CannotCompileException {
+                    if (handler.isFinally()) {
+                        return;
+                    }
+                    String description;
+                    try {
+                        description = SiteFields.describe(behavior, handler.getLineNumber()) + " catch " + handler.getType().getName();
+                    } catch (NotFoundException e) {
+                        throw new CannotCompileException(e);
+                    }
+                    handler.insertBefore(createCountingStatement(classToTransform, siteCount[0]++, description, "$1"));
+                }
+            });
+            // after handlers, so that the added handler is not counted as a catch
+            if (behavior instanceof CtMethod) {
+                String description = SiteFields.describe(behavior, -1) + " throws";
+                behavior.addCatch("{ " + createCountingStatement(classToTransform, siteCount[0]++, description, "$e") + " throw $e; }", throwableClass);
+            }
+        }
+    }
+
+    private static boolean hasCatchHandler(CtBehavior behavior) {
+        CodeAttribute codeAttribute = behavior.getMethodInfo2().getCodeAttribute();
+        if (codeAttribute == null) {
+            return false;
+        }
+        ExceptionTable exceptionTable = codeAttribute.getExceptionTable();
+        for (int indexHandler = 0; indexHandler < exceptionTable.size(); indexHandler++) {
+            // handlers of finally blocks catch any type, with a catch type of 0
+            if (exceptionTable.catchType(indexHandler) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String createCountingStatement(CtClass classToTransform, int indexSite, String description, String exceptionExpression) throws CannotCompileException {
+        String siteField = SiteFields.addSiteField(classToTransform, FIELD_PREFIX + indexSite, "EXCEPTIONS", description);
+        String countingStatement = SiteFields.COUNTERS_CLASS_NAME + ".EXCEPTIONS.increment(" + siteField + ");";
+        if (stackDepthSamplingRate == 0) {
+            return countingStatement;
+        }
+        String depthSiteField = SiteFields.addSiteField(classToTransform, DEPTH_FIELD_PREFIX + indexSite, "EXCEPTION_STACK_DEPTHS", description);
+        return countingStatement + " if (" + SiteFields.COUNTERS_CLASS_NAME + ".EXCEPTIONS.tick(" + siteField + ", " + stackDepthSamplingRate + ")) { "
+                + SiteFields.COUNTERS_CLASS_NAME + ".EXCEPTION_STACK_DEPTHS.add(" + depthSiteField + ", (long) " + exceptionExpression
+                + ".getStackTrace().length * " + stackDepthSamplingRate + "L); }";
+    }
+}
@@ -0,0 +1,157 @@
+package com.github.stephanenicolas.afterburner.rules;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javassist.CannotCompileException;
+import javassist.CtBehavior;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.NotFoundException;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.Opcode;
+import javassist.expr.ExprEditor;
+import javassist.expr.FieldAccess;
+
+import com.github.stephanenicolas.afterburner.AfterBurner;
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.transform.TransformationRule;
+
+/**
+ * Counts writes per field, to detect contended fields and false sharing : each write of a selected field
+ * in the selected methods increments a counter of {@code Counters.FIELD_WRITES}, in afterburner-runtime,
+ * and optionally records the writer thread. Counters are striped by thread and merged by snapshots,
+ * {@code FieldWriteReport} then flags the fields written by many threads at high rates.
+ * <p>
+ * Fields are counted where they are written : the classes to instrument are the ones containing the writes,
+ * the written field can belong to another class. Fields are named after the class declaring them, even when
+ * they are written through a subclass, and all classes writing a field share its counter.
+ * Writes of static initializers are not counted, and classes without selected writes are left untouched.
+ * Instrumented classes need afterburner-runtime at runtime.
+ * </p>
+ * @author SNI
+ */
+public class FieldWriteRule implements TransformationRule {
+    private static final String FIELD_PREFIX = "afterburner$fieldWriteSite$";
+    private static final String VERSION = "2";
+
+    private final Pattern classNamePattern;
+    private final Pattern methodNamePattern;
+    private final Pattern fieldNamePattern;
+    private final boolean recordingWriterThreads;
+
+    /**
+     * Creates a rule counting all writes of all fields in all classes, and recording writer threads.
+     */
+    public FieldWriteRule() {
+        this(".*", ".*", ".*", true);
+    }
+
+    /**
+     * Creates a rule.
+     * @param classNameRegex selects the classes to instrument by their name.
+     * @param methodNameRegex selects the methods to instrument by their name, constructors are named "&lt;init&gt;".
+     * @param fieldNameRegex selects the written fields by their full name, like "com.foo.Bar.count".
+     * @param recordingWriterThreads if true, writer threads are recorded, which estimates the number of distinct writers of each field.
+     */
+    public FieldWriteRule(String classNameRegex, String methodNameRegex, String fieldNameRegex, boolean recordingWriterThreads) {
+        this.classNamePattern = Pattern.compile(classNameRegex);
+        this.methodNamePattern = Pattern.compile(methodNameRegex);
+        this.fieldNamePattern = Pattern.compile(fieldNameRegex);
+        this.recordingWriterThreads = recordingWriterThreads;
+    }
+
+    @Override
+    public String getFingerprint() {
+        return getClass().getName() + ":" + VERSION + ":" + classNamePattern + ":" + methodNamePattern + ":" + fieldNamePattern + ":"
+                + recordingWriterThreads;
+    }
+
+    @Override
+    public boolean shouldTransform(CtClass candidateClass) throws AfterBurnerImpossibleException {
+        if (candidateClass.isInterface() || !classNamePattern.matcher(candidateClass.getName()).matches()) {
+            return false;
+        }
+        ClassPool classPool = candidateClass.getClassPool();
+        ConstPool constPool = candidateClass.getClassFile2().getConstPool();
+        for (CtBehavior behavior : candidateClass.getDeclaredBehaviors()) {
+            CodeAttribute codeAttribute = behavior.getMethodInfo2().getCodeAttribute();
+            if (codeAttribute == null || behavior.getMethodInfo2().isStaticInitializer()
+                    || !methodNamePattern.matcher(behavior.getMethodInfo2().getName()).matches()) {
+                continue;
+            }
+            CodeIterator iterator = codeAttribute.iterator();
+            try {
+                while (iterator.hasNext()) {
+                    int index = iterator.next();
+                    int opcode = iterator.byteAt(index);
+                    if (opcode != Opcode.PUTFIELD && opcode != Opcode.PUTSTATIC) {
+                        continue;
+                    }
+                    int fieldRefIndex = iterator.u16bitAt(index + 1);
+                    String fieldName = constPool.getFieldrefName(fieldRefIndex);
+                    String declaringClassName = getDeclaringClassName(classPool, constPool.getFieldrefClassName(fieldRefIndex), fieldName);
+                    if (fieldNamePattern.matcher(declaringClassName + "." + fieldName).matches()) {
+                        return true;
+                    }
+                }
+            } catch (BadBytecode e) {
+                throw new AfterBurnerImpossibleException("Impossible to read the code of " + behavior.getLongName(), e);
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void applyTransformations(AfterBurner afterBurner, final CtClass classToTransform) throws CannotCompileException,
+            AfterBurnerImpossibleException, NotFoundException {
+        final Map<String, String> siteFieldsByFieldName = new HashMap<String, String>();
+        for (CtBehavior behavior : classToTransform.getDeclaredBehaviors()) {
+            if (!SiteFields.hasCode(behavior) || !methodNamePattern.matcher(behavior.getMethodInfo2().getName()).matches()) {
+                continue;
+            }
+            behavior.instrument(new ExprEditor() {
+                @Override
+                public void edit(FieldAccess fieldAccess) throws CannotCompileException {
+                    if (!fieldAccess.isWriter()) {
+                        return;
+                    }
+                    String fieldName = getDeclaringClassName(classToTransform.getClassPool(), fieldAccess.getClassName(), fieldAccess.getFieldName())
+                            + "." + fieldAccess.getFieldName();
+                    if (!fieldNamePattern.matcher(fieldName).matches()) {
+                        return;
+                    }
+                    String siteField = siteFieldsByFieldName.get(fieldName);
+                    if (siteField == null) {
+                        siteField = SiteFields.addSharedSiteField(classToTransform, FIELD_PREFIX + siteFieldsByFieldName.size(), "FIELD_WRITES", fieldName);
+                        siteFieldsByFieldName.put(fieldName, siteField);
+                    }
+                    String table = SiteFields.COUNTERS_CLASS_NAME + ".FIELD_WRITES";
+                    StringBuilder replacement = new StringBuilder("{ ");
+                    replacement.append(table).append(".increment(").append(siteField).append("); ");
+                    if (recordingWriterThreads) {
+                        replacement.append(table).append(".recordThread(").append(siteField).append("); ");
+                    }
+                    replacement.append("$proceed($$); }");
+                    fieldAccess.replace(replacement.toString());
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the name of the class declaring a field, that can be a superclass of the class named by a field reference.
+     * The class of the reference if the field can't be resolved.
+     */
+    private static String getDeclaringClassName(ClassPool classPool, String refClassName, String fieldName) {
+        try {
+            return classPool.get(refClassName).getField(fieldName).getDeclaringClass().getName();
+        } catch (NotFoundException e) {
+            return refClassName;
+        }
+    }
+}
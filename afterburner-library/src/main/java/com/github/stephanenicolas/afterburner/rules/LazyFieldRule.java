@@ -0,0 +1,135 @@
+package com.github.stephanenicolas.afterburner.rules;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javassist.CannotCompileException;
+import javassist.CtBehavior;
+import javassist.CtClass;
+import javassist.CtConstructor;
+import javassist.CtField;
+import javassist.Modifier;
+import javassist.NotFoundException;
+
+import com.github.stephanenicolas.afterburner.AfterBurner;
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.transform.TransformationRule;
+
+/**
+ * Makes the initialization of an expensive field lazy. The field must be of a reference type.
+ * <ul>
+ * <li>its eager initialization is removed : in constructors (or the static initializer for a static field),
+ * a {@code new} or a method call whose result is directly stored into the field is not executed anymore,
+ * the field receives null instead. Arguments of the removed expression are still evaluated.</li>
+ * <li>a lazy getter is generated. It evaluates the initializer of the rule, or reproduces the removed
+ * initialization when it was a call to a no-arg constructor or to a no-arg static method. A static field is initialized by the holder class idiom :
+ * the value is a static final field of a generated nested class, initialized by the JVM on first access.
+ * An instance field is initialized by double-checked locking on the instance, the field is made volatile and non final.</li>
+ * <li>every read of the field is replaced by a call to the getter, in the class of the field and in all classes referencing it,
+ * including through a subclass.</li>
+ * </ul>
+ * Other writes of an instance field are kept : a value written explicitly is returned as is by the getter.
+ * The getter of a static field always returns the value of its holder : a static field must not be written
+ * outside of its eager initialization, the rule fails otherwise.
+ * Initializers of static fields are evaluated in the holder class, in the same package : they can't use private members.
+ * @author SNI
+ */
+public class LazyFieldRule implements TransformationRule {
+    private static final String VERSION = "3";
+
+    private final String className;
+    private final String fieldName;
+    private final String initializer;
+
+    /**
+     * Creates a rule.
+     * @param className the class declaring the field.
+     * @param fieldName the name of the field.
+     * @param initializer a java expression creating the value of the field, or null to reproduce
+     * the eager initialization if it is a call to a no-arg constructor or to a no-arg static method.
+     */
+    public LazyFieldRule(String className, String fieldName, String initializer) {
+        this.className = className;
+        this.fieldName = fieldName;
+        this.initializer = initializer;
+    }
+
+    /**
+     * @param fieldName the name of a lazy field.
+     * @return the name of the lazy getter of the field.
+     */
+    public static String getGetterName(String fieldName) {
+        return LazyFields.getGetterName(fieldName);
+    }
+
+    @Override
+    public String getFingerprint() {
+        return getClass().getName() + ":" + VERSION + ":" + className + ":" + fieldName + ":" + initializer;
+    }
+
+    @Override
+    public boolean shouldTransform(CtClass candidateClass) throws AfterBurnerImpossibleException {
+        return candidateClass.getName().equals(className) || LazyFields.referencesField(candidateClass, className, fieldName);
+    }
+
+    @Override
+    public void applyTransformations(AfterBurner afterBurner, CtClass classToTransform) throws CannotCompileException,
+            AfterBurnerImpossibleException, NotFoundException {
+        if (!classToTransform.getName().equals(className)) {
+            CtField field = classToTransform.getClassPool().get(className).getField(fieldName);
+            if (Modifier.isStatic(field.getModifiers())) {
+                for (CtBehavior behavior : classToTransform.getDeclaredBehaviors()) {
+                    checkNoStaticWrite(behavior);
+                }
+            }
+            LazyFields.redirectReads(classToTransform, className, fieldName, Modifier.isStatic(field.getModifiers()),
+                    Modifier.isPrivate(field.getModifiers()));
+            return;
+        }
+
+        CtField field = classToTransform.getDeclaredField(fieldName);
+        if (field.getType().isPrimitive()) {
+            throw new AfterBurnerImpossibleException("Only fields of a reference type can be lazy: " + className + "." + fieldName);
+        }
+        boolean isStatic = Modifier.isStatic(field.getModifiers());
+        List<CtBehavior> initializingBehaviors = new ArrayList<CtBehavior>();
+        if (isStatic) {
+            CtConstructor classInitializer = classToTransform.getClassInitializer();
+            if (classInitializer != null) {
+                initializingBehaviors.add(classInitializer);
+                if (LazyFields.countWrites(classInitializer, className, fieldName) > 1) {
+                    throw new AfterBurnerImpossibleException("The static field " + className + "." + fieldName
+                            + " is written more than once by the static initializer, it can't be lazy.");
+                }
+            }
+            for (CtBehavior behavior : classToTransform.getDeclaredBehaviors()) {
+                if (!behavior.getMethodInfo2().isStaticInitializer()) {
+                    checkNoStaticWrite(behavior);
+                }
+            }
+        } else {
+            for (CtConstructor constructor : classToTransform.getDeclaredConstructors()) {
+                initializingBehaviors.add(constructor);
+            }
+        }
+
+        String lazyInitializer = initializer;
+        if (lazyInitializer == null) {
+            lazyInitializer = LazyFields.findReproducibleInitializer(initializingBehaviors, className, fieldName);
+        }
+        if (lazyInitializer == null) {
+            throw new AfterBurnerImpossibleException("The eager initialization of " + className + "." + fieldName
+                    + " can't be reproduced, the rule needs an initializer.");
+        }
+        LazyFields.removeEagerInitializations(initializingBehaviors, className, fieldName);
+        LazyFields.redirectReads(classToTransform, className, fieldName, isStatic, Modifier.isPrivate(field.getModifiers()));
+        LazyFields.addLazyGetter(afterBurner, classToTransform, field, lazyInitializer);
+    }
+
+    private void checkNoStaticWrite(CtBehavior behavior) throws CannotCompileException, AfterBurnerImpossibleException {
+        if (LazyFields.countWrites(behavior, className, fieldName) != 0) {
+            throw new AfterBurnerImpossibleException("The static field " + className + "." + fieldName + " is written by "
+                    + behavior.getLongName() + ", it can't be lazy.");
+        }
+    }
+}
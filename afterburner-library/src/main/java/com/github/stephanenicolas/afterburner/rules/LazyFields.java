@@ -0,0 +1,330 @@
+package com.github.stephanenicolas.afterburner.rules;
+
+import java.util.List;
+import java.util.Set;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtBehavior;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewMethod;
+import javassist.Modifier;
+import javassist.NotFoundException;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
+import javassist.expr.Expr;
+import javassist.expr.ExprEditor;
+import javassist.expr.MethodCall;
+import javassist.expr.NewExpr;
+
+import com.github.stephanenicolas.afterburner.AfterBurner;
+import com.github.stephanenicolas.afterburner.bytecode.Instructions;
+
+/**
+ * Moves the initialization of reference fields out of constructors and static initializers,
+ * into lazy getters. Used by {@link LazyFieldRule} and {@link StaticInitializerSplitRule}.
+ * <p>
+ * An eager initialization can be reproduced lazily if the value stored into the field is the result of a call
+ * to a no-arg constructor, or of a no-arg static method, that is not private and that is not reached by a jump :
+ * <code>new X()</code> or <code>X.create()</code> is then evaluated by the getter instead.
+ * </p>
+ * <p>
+ * Field references are resolved like the JVM does : javac records the class through which a field is accessed,
+ * like <code>Sub.CACHE</code>, which can be a subclass of the class declaring it.
+ * </p>
+ * @author SNI
+ */
+final class LazyFields {
+    private static final String GETTER_PREFIX = "afterburner$lazy$";
+    private static final String HOLDER_SUFFIX = "$afterburner$LazyHolder$";
+    private static final String HOLDER_FIELD = "VALUE";
+    private static final String CONSTRUCTOR_NAME = "<init>";
+    private static final String NO_ARG_CONSTRUCTOR_SIGNATURE = "()V";
+    private static final String NO_ARG_PREFIX = "()";
+
+    private LazyFields() {
+    }
+
+    static String getGetterName(String fieldName) {
+        return GETTER_PREFIX + fieldName;
+    }
+
+    /**
+     * @return the expression reproducing the first eager initialization of the field in behaviors,
+     * or null if there is none that can be reproduced.
+     */
+    static String findReproducibleInitializer(List<? extends CtBehavior> behaviors, String className, String fieldName) throws CannotCompileException {
+        for (CtBehavior behavior : behaviors) {
+            CodeAttribute codeAttribute = behavior.getMethodInfo2().getCodeAttribute();
+            if (codeAttribute == null) {
+                continue;
+            }
+            ClassPool classPool = behavior.getDeclaringClass().getClassPool();
+            ConstPool constPool = codeAttribute.getConstPool();
+            CodeIterator iterator = codeAttribute.iterator();
+            Set<Integer> jumpTargets;
+            try {
+                jumpTargets = Instructions.getJumpTargets(codeAttribute);
+            } catch (BadBytecode e) {
+                throw new CannotCompileException(e);
+            }
+            // the indexes of the 3 instructions preceding the current one, the most recent first
+            int[] previousIndexes = {-1, -1, -1};
+            try {
+                while (iterator.hasNext()) {
+                    int index = iterator.next();
+                    if (isWriteOf(classPool, iterator, index, constPool, className, fieldName) && !jumpTargets.contains(index)) {
+                        String initializer = getReproducibleInitializer(behavior, iterator, constPool, previousIndexes);
+                        if (initializer != null) {
+                            return initializer;
+                        }
+                    }
+                    System.arraycopy(previousIndexes, 0, previousIndexes, 1, previousIndexes.length - 1);
+                    previousIndexes[0] = index;
+                }
+            } catch (BadBytecode e) {
+                throw new CannotCompileException(e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of instructions of behavior that write the field.
+     */
+    static int countWrites(CtBehavior behavior, String className, String fieldName) throws CannotCompileException {
+        CodeAttribute codeAttribute = behavior.getMethodInfo2().getCodeAttribute();
+        if (codeAttribute == null) {
+            return 0;
+        }
+        ClassPool classPool = behavior.getDeclaringClass().getClassPool();
+        int writeCount = 0;
+        CodeIterator iterator = codeAttribute.iterator();
+        try {
+            while (iterator.hasNext()) {
+                if (isWriteOf(classPool, iterator, iterator.next(), codeAttribute.getConstPool(), className, fieldName)) {
+                    writeCount++;
+                }
+            }
+        } catch (BadBytecode e) {
+            throw new CannotCompileException(e);
+        }
+        return writeCount;
+    }
+
+    /**
+     * @return true if the constant pool of ctClass references the field, through its class or a subclass.
+     */
+    static boolean referencesField(CtClass ctClass, String className, String fieldName) {
+        ConstPool constPool = ctClass.getClassFile2().getConstPool();
+        for (int index = 1; index < constPool.getSize(); index++) {
+            if (constPool.getTag(index) == ConstPool.CONST_Fieldref && isField(ctClass.getClassPool(), constPool, index, className, fieldName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replaces the expressions whose result is directly stored into the field by null.
+     * Arguments of the removed expressions are still evaluated.
+     */
+    static void removeEagerInitializations(List<? extends CtBehavior> behaviors, String className, String fieldName) throws CannotCompileException {
+        for (CtBehavior behavior : behaviors) {
+            behavior.instrument(new EagerInitializationRemover(className, fieldName));
+        }
+    }
+
+    /**
+     * Replaces each read of the field by a call to its lazy getter. Both instructions have the same length
+     * and the same effect on the stack, the read is rewritten in place : the getter doesn't need to exist yet
+     * in the version of the field's class loaded in the pool.
+     */
+    static void redirectReads(CtClass classToTransform, String className, String fieldName, boolean isStatic, boolean isPrivate) throws CannotCompileException {
+        ClassPool classPool = classToTransform.getClassPool();
+        ClassFile classFile = classToTransform.getClassFile();
+        ConstPool constPool = classFile.getConstPool();
+        int getterRefIndex = 0;
+        for (Object methodInfo : classFile.getMethods()) {
+            CodeAttribute codeAttribute = ((MethodInfo) methodInfo).getCodeAttribute();
+            if (codeAttribute == null) {
+                continue;
+            }
+            CodeIterator iterator = codeAttribute.iterator();
+            try {
+                while (iterator.hasNext()) {
+                    int index = iterator.next();
+                    int opcode = iterator.byteAt(index);
+                    if (opcode != Opcode.GETFIELD && opcode != Opcode.GETSTATIC) {
+                        continue;
+                    }
+                    int fieldRefIndex = iterator.u16bitAt(index + 1);
+                    if (!isField(classPool, constPool, fieldRefIndex, className, fieldName)) {
+                        continue;
+                    }
+                    if (getterRefIndex == 0) {
+                        getterRefIndex = constPool.addMethodrefInfo(constPool.addClassInfo(className), getGetterName(fieldName),
+                                NO_ARG_PREFIX + constPool.getFieldrefType(fieldRefIndex));
+                    }
+                    int invokeOpcode = Opcode.INVOKEVIRTUAL;
+                    if (isStatic) {
+                        invokeOpcode = Opcode.INVOKESTATIC;
+                    } else if (isPrivate) {
+                        invokeOpcode = Opcode.INVOKESPECIAL;
+                    }
+                    iterator.writeByte(invokeOpcode, index);
+                    iterator.write16bit(getterRefIndex, index + 1);
+                }
+            } catch (BadBytecode e) {
+                throw new CannotCompileException(e);
+            }
+        }
+    }
+
+    /**
+     * Adds the lazy getter of a field. A static field is initialized by the holder class idiom :
+     * the value is a static final field of a generated class, initialized by the JVM on first access.
+     * An instance field is initialized by double-checked locking on the instance, the field is made volatile and non final.
+     */
+    static void addLazyGetter(AfterBurner afterBurner, CtClass classToTransform, CtField field, String initializer) throws CannotCompileException,
+            NotFoundException {
+        String className = classToTransform.getName();
+        String fieldName = field.getName();
+        String typeName = field.getType().getName();
+        int accessModifiers = field.getModifiers() & (Modifier.PUBLIC | Modifier.PROTECTED | Modifier.PRIVATE);
+        String getterName = getGetterName(fieldName);
+        if (Modifier.isStatic(field.getModifiers())) {
+            CtClass holder = classToTransform.getClassPool().makeClass(className + HOLDER_SUFFIX + fieldName);
+            holder.setModifiers(Modifier.FINAL);
+            CtField valueField = CtField.make("static final " + typeName + " " + HOLDER_FIELD + ";", holder);
+            holder.addField(valueField, CtField.Initializer.byExpr(initializer));
+            afterBurner.addCreatedClass(holder);
+            classToTransform.addMethod(CtNewMethod.make(Modifier.toString(accessModifiers) + " static " + typeName + " " + getterName + "() { return "
+                    + holder.getName() + "." + HOLDER_FIELD + "; }", classToTransform));
+        } else {
+            field.setModifiers((field.getModifiers() & ~Modifier.FINAL) | Modifier.VOLATILE);
+            classToTransform.addMethod(CtNewMethod.make(Modifier.toString(accessModifiers) + " " + typeName + " " + getterName + "() { "
+                    + typeName + " value = this." + fieldName + "; "
+                    + "if (value == null) { synchronized (this) { value = this." + fieldName + "; "
+                    + "if (value == null) { value = " + initializer + "; this." + fieldName + " = value; } } } "
+                    + "return value; }", classToTransform));
+        }
+    }
+
+    private static String getReproducibleInitializer(CtBehavior behavior, CodeIterator iterator, ConstPool constPool, int[] previousIndexes) {
+        if (previousIndexes[0] == -1) {
+            return null;
+        }
+        int opcode = iterator.byteAt(previousIndexes[0]);
+        if (opcode != Opcode.INVOKESTATIC && opcode != Opcode.INVOKESPECIAL) {
+            return null;
+        }
+        int methodRefIndex = iterator.u16bitAt(previousIndexes[0] + 1);
+        if (constPool.getTag(methodRefIndex) != ConstPool.CONST_Methodref) {
+            return null;
+        }
+        String declaringClassName = constPool.getMethodrefClassName(methodRefIndex);
+        String methodName = constPool.getMethodrefName(methodRefIndex);
+        String signature = constPool.getMethodrefType(methodRefIndex);
+        if (opcode == Opcode.INVOKESPECIAL) {
+            boolean isNewDupInit = CONSTRUCTOR_NAME.equals(methodName) && NO_ARG_CONSTRUCTOR_SIGNATURE.equals(signature)
+                    && previousIndexes[2] != -1 && iterator.byteAt(previousIndexes[1]) == Opcode.DUP && iterator.byteAt(previousIndexes[2]) == Opcode.NEW
+                    && declaringClassName.equals(constPool.getClassInfo(iterator.u16bitAt(previousIndexes[2] + 1)));
+            if (!isNewDupInit || !isAccessible(behavior, declaringClassName, methodName, signature)) {
+                return null;
+            }
+            return "new " + declaringClassName + "()";
+        }
+        if (!signature.startsWith(NO_ARG_PREFIX) || !isAccessible(behavior, declaringClassName, methodName, signature)) {
+            return null;
+        }
+        return declaringClassName + "." + methodName + "()";
+    }
+
+    private static boolean isAccessible(CtBehavior behavior, String className, String methodName, String signature) {
+        try {
+            CtClass declaringClass = behavior.getDeclaringClass().getClassPool().get(className);
+            CtBehavior target;
+            if (CONSTRUCTOR_NAME.equals(methodName)) {
+                target = declaringClass.getConstructor(signature);
+            } else {
+                target = declaringClass.getMethod(methodName, signature);
+            }
+            return !Modifier.isPrivate(declaringClass.getModifiers()) && !Modifier.isPrivate(target.getModifiers());
+        } catch (NotFoundException e) {
+            return false;
+        }
+    }
+
+    private static boolean isWriteOf(ClassPool classPool, CodeIterator iterator, int index, ConstPool constPool, String className, String fieldName) {
+        int opcode = iterator.byteAt(index);
+        return (opcode == Opcode.PUTFIELD || opcode == Opcode.PUTSTATIC) && isField(classPool, constPool, iterator.u16bitAt(index + 1), className, fieldName);
+    }
+
+    /**
+     * @return true if the field reference resolves to the field declared by className.
+     */
+    private static boolean isField(ClassPool classPool, ConstPool constPool, int fieldRefIndex, String className, String fieldName) {
+        if (!constPool.getFieldrefName(fieldRefIndex).equals(fieldName)) {
+            return false;
+        }
+        String refClassName = constPool.getFieldrefClassName(fieldRefIndex);
+        if (refClassName.equals(className)) {
+            return true;
+        }
+        try {
+            return classPool.get(refClassName).getField(fieldName).getDeclaringClass().getName().equals(className);
+        } catch (NotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Replaces by null the expressions whose result is directly stored into a field.
+     */
+    private static final class EagerInitializationRemover extends ExprEditor {
+        private final String className;
+        private final String fieldName;
+
+        private EagerInitializationRemover(String className, String fieldName) {
+            this.className = className;
+            this.fieldName = fieldName;
+        }
+
+        @Override
+        public void edit(NewExpr newExpr) throws CannotCompileException {
+            if (isStoredIntoField(newExpr)) {
+                newExpr.replace("$_ = null;");
+            }
+        }
+
+        @Override
+        public void edit(MethodCall methodCall) throws CannotCompileException {
+            if (!methodCall.getMethodName().equals(CONSTRUCTOR_NAME) && isStoredIntoField(methodCall)) {
+                methodCall.replace("$_ = null;");
+            }
+        }
+
+        private boolean isStoredIntoField(Expr expr) throws CannotCompileException {
+            try {
+                CodeAttribute codeAttribute = expr.where().getMethodInfo().getCodeAttribute();
+                CodeIterator iterator = codeAttribute.iterator();
+                iterator.move(expr.indexOfBytecode());
+                iterator.next();
+                if (!iterator.hasNext()) {
+                    return false;
+                }
+                return isWriteOf(expr.where().getDeclaringClass().getClassPool(), iterator, iterator.next(), codeAttribute.getConstPool(),
+                        className, fieldName);
+            } catch (BadBytecode e) {
+                throw new CannotCompileException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.github.stephanenicolas.afterburner.rules;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtBehavior;
+import javassist.CtClass;
+import javassist.CtConstructor;
+import javassist.Modifier;
+import javassist.NotFoundException;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.Opcode;
+
+import com.github.stephanenicolas.afterburner.AfterBurner;
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.index.IndexedClassPath;
+import com.github.stephanenicolas.afterburner.io.ClassFiles;
+import com.github.stephanenicolas.afterburner.transform.TransformationRule;
+
+/**
+ * Resolves {@link java.util.ServiceLoader} at build time : the providers of a service are read from the
+ * {@code META-INF/services} files of a class path when the rule is created, and the iteration of
+ * {@code ServiceLoader.load(X.class)} or {@code ServiceLoader.load(X.class, loader)} is replaced by
+ * the direct instantiation of these providers, without scanning resources nor reflection at runtime.
+ * This covers the for-each loops over a loader, the only use of its result must be a call to {@code iterator()}.
+ * <p>
+ * Providers are instantiated when the iterator is created, rather than lazily while iterating, and the loader
+ * argument is ignored. As with {@link java.util.ServiceLoader}, what a provider constructor throws is wrapped
+ * into a {@link java.util.ServiceConfigurationError}, but it is thrown by {@code iterator()} rather than by {@code next()}. The class path must contain all the provider configuration files of the runtime class path :
+ * services that have no configuration file in it, or one of whose providers is not a public concrete class
+ * implementing the service with a public constructor without parameter, are still loaded at runtime.
+ * </p>
+ * @author SNI
+ */
+public class ServiceLoaderRule implements TransformationRule {
+    private static final String VERSION = "2";
+    private static final String SERVICE_LOADER = "java.util.ServiceLoader";
+    private static final String SERVICES_DIRECTORY = "META-INF/services/";
+    private static final String ENCODING = "UTF-8";
+
+    private final Pattern classNamePattern;
+    private final Map<String, List<String>> providerNamesByServiceName = new TreeMap<String, List<String>>();
+
+    /**
+     * Creates a rule resolving service loaders in all classes.
+     * @param classPath entries of the class path holding the provider configuration files :
+     * directories, jars, or directories followed by "/*" for all their jars.
+     * @throws IOException if an entry doesn't exist or can't be read.
+     */
+    public ServiceLoaderRule(List<String> classPath) throws IOException {
+        this(classPath, ".*");
+    }
+
+    /**
+     * Creates a rule.
+     * @param classPath entries of the class path holding the provider configuration files :
+     * directories, jars, or directories followed by "/*" for all their jars.
+     * @param classNameRegex selects the classes to transform by their name.
+     * @throws IOException if an entry doesn't exist or can't be read.
+     */
+    public ServiceLoaderRule(List<String> classPath, String classNameRegex) throws IOException {
+        this.classNamePattern = Pattern.compile(classNameRegex);
+        Map<String, Set<String>> providerNameSets = new TreeMap<String, Set<String>>();
+        for (File file : IndexedClassPath.listFiles(classPath)) {
+            if (file.isDirectory()) {
+                readDirectory(file, providerNameSets);
+            } else {
+                readJar(file, providerNameSets);
+            }
+        }
+        for (Map.Entry<String, Set<String>> entry : providerNameSets.entrySet()) {
+            providerNamesByServiceName.put(entry.getKey(), new ArrayList<String>(entry.getValue()));
+        }
+    }
+
+    /**
+     * @return the names of the providers of each service found in the class path, in the order of the class path.
+     */
+    public Map<String, List<String>> getProviderNamesByServiceName() {
+        return Collections.unmodifiableMap(providerNamesByServiceName);
+    }
+
+    @Override
+    public String getFingerprint() {
+        return getClass().getName() + ":" + VERSION + ":" + classNamePattern + ":" + providerNamesByServiceName;
+    }
+
+    @Override
+    public boolean shouldTransform(CtClass candidateClass) throws AfterBurnerImpossibleException {
+        return !candidateClass.isInterface() && !providerNamesByServiceName.isEmpty() && classNamePattern.matcher(candidateClass.getName()).matches()
+                && candidateClass.getRefClasses().contains(SERVICE_LOADER);
+    }
+
+    @Override
+    public void applyTransformations(AfterBurner afterBurner, CtClass classToTransform) throws CannotCompileException,
+            AfterBurnerImpossibleException, NotFoundException {
+        for (CtBehavior behavior : classToTransform.getDeclaredBehaviors()) {
+            CodeAttribute codeAttribute = behavior.getMethodInfo2().getCodeAttribute();
+            if (codeAttribute == null) {
+                continue;
+            }
+            Map<Integer, String> replacementsByCallOrdinal;
+            try {
+                replacementsByCallOrdinal = new LoaderMatcher(classToTransform.getClassPool(), codeAttribute).findReplacements();
+            } catch (BadBytecode e) {
+                throw new CannotCompileException(e);
+            }
+            if (!replacementsByCallOrdinal.isEmpty()) {
+                CallChainMatcher.replaceCalls(behavior, replacementsByCallOrdinal);
+            }
+        }
+    }
+
+    private static void readDirectory(File directory, Map<String, Set<String>> providerNameSets) throws IOException {
+        File[] files = new File(directory, SERVICES_DIRECTORY).listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isFile()) {
+                addProviderNames(file.getName(), ClassFiles.readFully(file), providerNameSets);
+            }
+        }
+    }
+
+    private static void readJar(File jar, Map<String, Set<String>> providerNameSets) throws IOException {
+        ZipFile zipFile = new ZipFile(jar);
+        try {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (entry.isDirectory() || !name.startsWith(SERVICES_DIRECTORY) || name.indexOf('/', SERVICES_DIRECTORY.length()) != -1) {
+                    continue;
+                }
+                InputStream inputStream = zipFile.getInputStream(entry);
+                try {
+                    addProviderNames(name.substring(SERVICES_DIRECTORY.length()), ClassFiles.readFully(inputStream), providerNameSets);
+                } finally {
+                    inputStream.close();
+                }
+            }
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    /**
+     * Parses a provider configuration file : one provider name per line, comments start with '#'.
+     * As in {@link java.util.ServiceLoader}, a provider listed twice is only kept once.
+     */
+    private static void addProviderNames(String serviceName, byte[] configuration, Map<String, Set<String>> providerNameSets) throws IOException {
+        Set<String> providerNames = providerNameSets.get(serviceName);
+        if (providerNames == null) {
+            providerNames = new LinkedHashSet<String>();
+            providerNameSets.put(serviceName, providerNames);
+        }
+        for (String line : new String(configuration, ENCODING).split("\n")) {
+            int commentStart = line.indexOf('#');
+            String providerName = (commentStart == -1 ? line : line.substring(0, commentStart)).trim();
+            if (!providerName.isEmpty()) {
+                providerNames.add(providerName);
+            }
+        }
+    }
+
+    /**
+     * Finds the iterations of service loaders of resolved services, and the code replacing them.
+     */
+    private final class LoaderMatcher extends CallChainMatcher {
+        private final ClassPool classPool;
+
+        private LoaderMatcher(ClassPool classPool, CodeAttribute codeAttribute) throws BadBytecode {
+            super(codeAttribute);
+            this.classPool = classPool;
+        }
+
+        /** ServiceLoader.load(X.class[, loader]).iterator() */
+        @Override
+        void match(int position) {
+            if (!isCall(position, Opcode.INVOKEVIRTUAL, SERVICE_LOADER, "iterator", "()Ljava/util/Iterator;")) {
+                return;
+            }
+            int loadPosition = position - 1;
+            int classPosition;
+            if (isCall(loadPosition, Opcode.INVOKESTATIC, SERVICE_LOADER, "load", "(Ljava/lang/Class;)Ljava/util/ServiceLoader;")) {
+                classPosition = loadPosition - 1;
+            } else if (isCall(loadPosition, Opcode.INVOKESTATIC, SERVICE_LOADER, "load", "(Ljava/lang/Class;Ljava/lang/ClassLoader;)Ljava/util/ServiceLoader;")
+                    && isSinglePush(loadPosition - 1)) {
+                classPosition = loadPosition - 2;
+            } else {
+                return;
+            }
+            String serviceName = getConstantClassName(classPosition);
+            if (serviceName == null || !isEnteredOnlyFrom(classPosition, position)) {
+                return;
+            }
+            List<String> providerNames = providerNamesByServiceName.get(serviceName);
+            if (providerNames == null || !areInstantiable(serviceName, providerNames)) {
+                return;
+            }
+            StringBuilder replacement = new StringBuilder("{ java.util.List providers = new java.util.ArrayList(" + providerNames.size() + "); ");
+            for (String providerName : providerNames) {
+                // as ServiceLoader, wraps what a provider constructor throws
+                replacement.append("try { providers.add(new ").append(providerName).append("()); } catch (Throwable e) { ");
+                replacement.append("throw new java.util.ServiceConfigurationError(\"").append(serviceName).append(": Provider ").append(providerName);
+                replacement.append(" could not be instantiated: \" + e, e); } ");
+            }
+            replacement.append("$_ = java.util.Collections.unmodifiableList(providers).iterator(); }");
+            replaceCall(loadPosition, "$_ = null;");
+            replaceCall(position, replacement.toString());
+        }
+
+        private boolean areInstantiable(String serviceName, List<String> providerNames) {
+            try {
+                CtClass service = classPool.get(serviceName);
+                for (String providerName : providerNames) {
+                    CtClass provider = classPool.get(providerName);
+                    if (!Modifier.isPublic(provider.getModifiers()) || Modifier.isAbstract(provider.getModifiers()) || provider.isInterface()
+                            || !provider.subtypeOf(service)) {
+                        return false;
+                    }
+                    CtConstructor constructor = provider.getConstructor("()V");
+                    if (!Modifier.isPublic(constructor.getModifiers())) {
+                        return false;
+                    }
+                }
+                return true;
+            } catch (NotFoundException e) {
+                return false;
+            }
+        }
+    }
+}
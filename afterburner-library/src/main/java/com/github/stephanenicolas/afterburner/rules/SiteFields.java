@@ -0,0 +1,108 @@
+package com.github.stephanenicolas.afterburner.rules;
+
+import javassist.CannotCompileException;
+import javassist.CtBehavior;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.Modifier;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+
+/**
+ * Adds the fields holding the ids of instrumented sites. Each site gets a {@code private static final int} field,
+ * initialized when the class is initialized by registering the site in a counter table of afterburner-runtime.
+ * Injected code then reads the id as a constant. Each site has its own id, unless it is registered as shared.
+ * @author SNI
+ */
+final class SiteFields {
+    static final String COUNTERS_CLASS_NAME = "com.github.stephanenicolas.afterburner.runtime.Counters";
+
+    private SiteFields() {
+    }
+
+    /**
+     * Adds a site field.
+     * @param classToTransform the class containing the site.
+     * @param fieldName the name of the field, unique in the class.
+     * @param table the name of the table of {@code Counters}, like "ALLOCATIONS".
+     * @param description describes the site.
+     * @return the name of the field.
+     * @throws CannotCompileException if the field can't be added.
+     */
+    static String addSiteField(CtClass classToTransform, String fieldName, String table, String description) throws CannotCompileException {
+        return addSiteField(classToTransform, fieldName, table, "register", description);
+    }
+
+    /**
+     * Adds the field of a shared site : all shared sites with the same description, in all classes, have the same id.
+     * @param classToTransform the class containing the site.
+     * @param fieldName the name of the field, unique in the class.
+     * @param table the name of the table of {@code Counters}, like "FIELD_WRITES".
+     * @param description describes the site.
+     * @return the name of the field.
+     * @throws CannotCompileException if the field can't be added.
+     */
+    static String addSharedSiteField(CtClass classToTransform, String fieldName, String table, String description) throws CannotCompileException {
+        return addSiteField(classToTransform, fieldName, table, "registerShared", description);
+    }
+
+    /**
+     * @param behavior a method or constructor.
+     * @param lineNumber a line of behavior, -1 if unknown.
+     * @return a description like "com.foo.Bar.baz(int) line 12".
+     */
+    static String describe(CtBehavior behavior, int lineNumber) {
+        return behavior.getLongName() + (lineNumber < 0 ? "" : " line " + lineNumber);
+    }
+
+    /**
+     * @param behavior a method or constructor.
+     * @return true if behavior has code that can be instrumented.
+     */
+    static boolean hasCode(CtBehavior behavior) {
+        return (behavior.getModifiers() & (Modifier.ABSTRACT | Modifier.NATIVE)) == 0;
+    }
+
+    /**
+     * @param behavior a method or constructor.
+     * @param opcodes the opcodes to look for.
+     * @return true if the code of behavior contains one of opcodes.
+     * @throws AfterBurnerImpossibleException if the code of behavior can't be read.
+     */
+    static boolean containsOpcode(CtBehavior behavior, int... opcodes) throws AfterBurnerImpossibleException {
+        CodeAttribute codeAttribute = behavior.getMethodInfo2().getCodeAttribute();
+        if (codeAttribute == null) {
+            return false;
+        }
+        CodeIterator iterator = codeAttribute.iterator();
+        try {
+            while (iterator.hasNext()) {
+                int opcode = iterator.byteAt(iterator.next());
+                for (int searchedOpcode : opcodes) {
+                    if (opcode == searchedOpcode) {
+                        return true;
+                    }
+                }
+            }
+        } catch (BadBytecode e) {
+            throw new AfterBurnerImpossibleException("Impossible to read the code of " + behavior.getLongName(), e);
+        }
+        return false;
+    }
+
+    private static String addSiteField(CtClass classToTransform, String fieldName, String table, String registerMethod, String description)
+        throws CannotCompileException {
+        CtField siteField = new CtField(CtClass.intType, fieldName, classToTransform);
+        siteField.setModifiers(Modifier.PRIVATE | Modifier.STATIC | Modifier.FINAL);
+        String register = COUNTERS_CLASS_NAME + "." + table + "." + registerMethod + "(\"" + escape(description) + "\")";
+        classToTransform.addField(siteField, CtField.Initializer.byExpr(register));
+        return fieldName;
+    }
+
+    private static String escape(String description) {
+        return description.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
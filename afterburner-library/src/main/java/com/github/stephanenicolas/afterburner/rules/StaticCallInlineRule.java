@@ -0,0 +1,137 @@
+package com.github.stephanenicolas.afterburner.rules;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import javassist.CannotCompileException;
+import javassist.CtBehavior;
+import javassist.CtClass;
+import javassist.NotFoundException;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.MethodInfo;
+
+import com.github.stephanenicolas.afterburner.AfterBurner;
+import com.github.stephanenicolas.afterburner.bytecode.StaticCallInliner;
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.index.IndexedClassPath;
+import com.github.stephanenicolas.afterburner.transform.TransformationRule;
+
+/**
+ * Inlines the calls to small static helpers into the bytecode of their callers, see {@link StaticCallInliner}.
+ * Placed after the rules injecting calls to helpers, e.g. probes, it removes the overhead of these calls.
+ * <p>
+ * Only the classes whose constant pool references a selected helper, by the name of the class of the reference,
+ * are transformed. The fingerprint of the rule contains a digest of the class files declaring helpers in the
+ * helper class path : classes are transformed again when helpers change.
+ * </p>
+ * @author SNI
+ */
+public class StaticCallInlineRule implements TransformationRule {
+    private static final String VERSION = "2";
+    private static final int HEX_RADIX = 16;
+
+    private final Pattern classNamePattern;
+    private final Pattern helperNamePattern;
+    private final int maxCodeLength;
+    private final StaticCallInliner inliner;
+    private final String helpersDigest;
+
+    /**
+     * Creates a rule inlining helpers in all classes.
+     * @param helperClassPath entries of the class path holding the helpers : directories, jars,
+     * or directories followed by "/*" for all their jars.
+     * @param helperNameRegex selects the helpers to inline by their full name, e.g. "com.foo.Probes.enter".
+     * @param maxCodeLength the maximum length in bytes of the code of an inlined helper.
+     * @throws IOException if an entry doesn't exist or can't be read.
+     */
+    public StaticCallInlineRule(List<String> helperClassPath, String helperNameRegex, int maxCodeLength) throws IOException {
+        this(helperClassPath, helperNameRegex, maxCodeLength, ".*");
+    }
+
+    /**
+     * Creates a rule.
+     * @param helperClassPath entries of the class path holding the helpers : directories, jars,
+     * or directories followed by "/*" for all their jars.
+     * @param helperNameRegex selects the helpers to inline by their full name, e.g. "com.foo.Probes.enter".
+     * @param maxCodeLength the maximum length in bytes of the code of an inlined helper.
+     * @param classNameRegex selects the classes to transform by their name.
+     * @throws IOException if an entry doesn't exist or can't be read.
+     */
+    public StaticCallInlineRule(List<String> helperClassPath, String helperNameRegex, int maxCodeLength, String classNameRegex) throws IOException {
+        this.classNamePattern = Pattern.compile(classNameRegex);
+        this.helperNamePattern = Pattern.compile(helperNameRegex);
+        this.maxCodeLength = maxCodeLength;
+        this.inliner = new StaticCallInliner(helperNameRegex, maxCodeLength);
+        this.helpersDigest = digestHelpers(new IndexedClassPath(helperClassPath));
+    }
+
+    @Override
+    public String getFingerprint() {
+        return getClass().getName() + ":" + VERSION + ":" + classNamePattern + ":" + helperNamePattern + ":" + maxCodeLength + ":" + helpersDigest;
+    }
+
+    @Override
+    public boolean shouldTransform(CtClass candidateClass) throws AfterBurnerImpossibleException {
+        if (candidateClass.isInterface() || !classNamePattern.matcher(candidateClass.getName()).matches()) {
+            return false;
+        }
+        ConstPool constPool = candidateClass.getClassFile2().getConstPool();
+        for (int index = 1; index < constPool.getSize(); index++) {
+            if (constPool.getTag(index) == ConstPool.CONST_Methodref
+                    && helperNamePattern.matcher(constPool.getMethodrefClassName(index) + "." + constPool.getMethodrefName(index)).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void applyTransformations(AfterBurner afterBurner, CtClass classToTransform) throws CannotCompileException,
+            AfterBurnerImpossibleException, NotFoundException {
+        for (CtBehavior behavior : classToTransform.getDeclaredBehaviors()) {
+            try {
+                inliner.inline(behavior);
+            } catch (BadBytecode e) {
+                throw new CannotCompileException(e);
+            }
+        }
+    }
+
+    /**
+     * @return a SHA-1 digest, in hexadecimal, of the class files declaring at least one selected helper.
+     */
+    private String digestHelpers(IndexedClassPath helperClassPath) throws IOException {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is supported by all JVMs
+            throw new IllegalStateException(e);
+        }
+        for (String className : helperClassPath.getClassNames()) {
+            byte[] classFile = helperClassPath.getClassFile(className);
+            if (declaresHelper(className, new ClassFile(new DataInputStream(new ByteArrayInputStream(classFile))))) {
+                messageDigest.update(className.getBytes("UTF-8"));
+                messageDigest.update(classFile);
+            }
+        }
+        return new BigInteger(1, messageDigest.digest()).toString(HEX_RADIX);
+    }
+
+    private boolean declaresHelper(String className, ClassFile classFile) {
+        for (Object method : classFile.getMethods()) {
+            if (helperNamePattern.matcher(className + "." + ((MethodInfo) method).getName()).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
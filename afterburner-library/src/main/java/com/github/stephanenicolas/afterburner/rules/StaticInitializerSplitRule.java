@@ -0,0 +1,173 @@
+package com.github.stephanenicolas.afterburner.rules;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtConstructor;
+import javassist.CtField;
+import javassist.Modifier;
+import javassist.NotFoundException;
+
+import com.github.stephanenicolas.afterburner.AfterBurner;
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.index.IndexedClassPath;
+import com.github.stephanenicolas.afterburner.transform.TransformationRule;
+
+/**
+ * Speeds up class loading by moving the initialization of selected static fields out of static initializers.
+ * Each selected field gets a generated holder class, initialized by the JVM on the first read of the field,
+ * and the static initializer of its class doesn't create the value anymore : loading the class, for instance
+ * to call an unrelated static method at startup, doesn't pay for the field. See {@link LazyFieldRule} for
+ * the getters and holder classes.
+ * <p>
+ * Unlike {@link LazyFieldRule}, which applies to a single field and fails if it can't, this rule
+ * splits all the selected fields it safely can and silently keeps the others :
+ * a field is split only if it is static, final and of a reference type, and its single write in the static initializer
+ * stores the result of a non private no-arg constructor or static method, like <code>new Foo()</code> or <code>Foo.create()</code>.
+ * Classes referencing a split field are transformed too, to read it through its holder.
+ * </p>
+ * <p>
+ * The fields to split are chosen once, when the rule is created, from a class path holding the classes
+ * before their transformation : the decision doesn't depend on the order in which classes are transformed,
+ * and it is part of the fingerprint of the rule, so that classes referencing a field are transformed again
+ * when the decision for this field changes.
+ * </p>
+ * <p>
+ * Splitting moves the side effects of the removed initializations to the first read of each field.
+ * </p>
+ * @author SNI
+ */
+public class StaticInitializerSplitRule implements TransformationRule {
+    private static final String VERSION = "2";
+
+    private final Pattern classNamePattern;
+    private final Pattern fieldNamePattern;
+    private final Map<String, Map<String, String>> splitFieldsByClassName = new TreeMap<String, Map<String, String>>();
+
+    /**
+     * Creates a rule, and chooses the fields to split.
+     * @param classPath entries of the class path holding the classes to split, not transformed yet, and the classes
+     * their initializers use : directories, jars, or directories followed by "/*" for all their jars.
+     * @param classNameRegex selects the classes whose static initializer is split, by their name.
+     * @param fieldNameRegex selects the static fields to split by their full name, like "com.foo.Bar.CACHE".
+     * @throws IOException if an entry doesn't exist or can't be read.
+     * @throws AfterBurnerImpossibleException if a selected class can't be analyzed.
+     */
+    public StaticInitializerSplitRule(List<String> classPath, String classNameRegex, String fieldNameRegex) throws IOException,
+            AfterBurnerImpossibleException {
+        this.classNamePattern = Pattern.compile(classNameRegex);
+        this.fieldNamePattern = Pattern.compile(fieldNameRegex);
+        IndexedClassPath indexedClassPath = new IndexedClassPath(classPath);
+        ClassPool classPool = new ClassPool(true);
+        classPool.appendClassPath(indexedClassPath);
+        for (String className : indexedClassPath.getClassNames()) {
+            if (!classNamePattern.matcher(className).matches()) {
+                continue;
+            }
+            try {
+                Map<String, String> initializersByFieldName = findSplitFields(classPool.get(className));
+                if (!initializersByFieldName.isEmpty()) {
+                    splitFieldsByClassName.put(className, initializersByFieldName);
+                }
+            } catch (NotFoundException e) {
+                throw new AfterBurnerImpossibleException("Impossible to load class " + className, e);
+            } catch (CannotCompileException e) {
+                throw new AfterBurnerImpossibleException("Impossible to analyze class " + className, e);
+            }
+        }
+    }
+
+    /**
+     * @return the names of the fields to split of each class, in declaration order.
+     */
+    public Map<String, List<String>> getSplitFieldNamesByClassName() {
+        Map<String, List<String>> splitFieldNamesByClassName = new TreeMap<String, List<String>>();
+        for (Map.Entry<String, Map<String, String>> entry : splitFieldsByClassName.entrySet()) {
+            splitFieldNamesByClassName.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<String>(entry.getValue().keySet())));
+        }
+        return Collections.unmodifiableMap(splitFieldNamesByClassName);
+    }
+
+    @Override
+    public String getFingerprint() {
+        return getClass().getName() + ":" + VERSION + ":" + classNamePattern + ":" + fieldNamePattern + ":" + splitFieldsByClassName;
+    }
+
+    @Override
+    public boolean shouldTransform(CtClass candidateClass) throws AfterBurnerImpossibleException {
+        if (splitFieldsByClassName.containsKey(candidateClass.getName())) {
+            return true;
+        }
+        for (Map.Entry<String, Map<String, String>> entry : splitFieldsByClassName.entrySet()) {
+            for (String fieldName : entry.getValue().keySet()) {
+                if (LazyFields.referencesField(candidateClass, entry.getKey(), fieldName)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void applyTransformations(AfterBurner afterBurner, CtClass classToTransform) throws CannotCompileException,
+            AfterBurnerImpossibleException, NotFoundException {
+        for (Map.Entry<String, Map<String, String>> entry : splitFieldsByClassName.entrySet()) {
+            String className = entry.getKey();
+            if (className.equals(classToTransform.getName())) {
+                continue;
+            }
+            for (String fieldName : entry.getValue().keySet()) {
+                // split fields are static, their reads become static calls whatever their visibility
+                LazyFields.redirectReads(classToTransform, className, fieldName, true, false);
+            }
+        }
+
+        Map<String, String> initializersByFieldName = splitFieldsByClassName.get(classToTransform.getName());
+        if (initializersByFieldName == null) {
+            return;
+        }
+        List<CtConstructor> classInitializers = Collections.singletonList(classToTransform.getClassInitializer());
+        for (Map.Entry<String, String> entry : initializersByFieldName.entrySet()) {
+            CtField field = classToTransform.getDeclaredField(entry.getKey());
+            LazyFields.removeEagerInitializations(classInitializers, classToTransform.getName(), field.getName());
+            LazyFields.redirectReads(classToTransform, classToTransform.getName(), field.getName(), true, Modifier.isPrivate(field.getModifiers()));
+            LazyFields.addLazyGetter(afterBurner, classToTransform, field, entry.getValue());
+        }
+    }
+
+    /**
+     * @return the initializers of the fields of ctClass that can be split, by field name, in declaration order.
+     */
+    private Map<String, String> findSplitFields(CtClass ctClass) throws CannotCompileException {
+        Map<String, String> initializersByFieldName = new LinkedHashMap<String, String>();
+        CtConstructor classInitializer = ctClass.getClassInitializer();
+        if (ctClass.isInterface() || classInitializer == null) {
+            return initializersByFieldName;
+        }
+        List<CtConstructor> classInitializers = Collections.singletonList(classInitializer);
+        for (CtField field : ctClass.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            String descriptor = field.getFieldInfo2().getDescriptor();
+            boolean isReference = descriptor.startsWith("L") || descriptor.startsWith("[");
+            if (!Modifier.isStatic(modifiers) || !Modifier.isFinal(modifiers) || !isReference
+                    || !fieldNamePattern.matcher(ctClass.getName() + "." + field.getName()).matches()
+                    || LazyFields.countWrites(classInitializer, ctClass.getName(), field.getName()) != 1) {
+                continue;
+            }
+            String initializer = LazyFields.findReproducibleInitializer(classInitializers, ctClass.getName(), field.getName());
+            if (initializer != null) {
+                initializersByFieldName.put(field.getName(), initializer);
+            }
+        }
+        return initializersByFieldName;
+    }
+}
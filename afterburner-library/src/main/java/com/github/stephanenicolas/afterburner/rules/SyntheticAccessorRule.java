@@ -0,0 +1,402 @@
+package com.github.stephanenicolas.afterburner.rules;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javassist.CannotCompileException;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtMethod;
+import javassist.Modifier;
+import javassist.NotFoundException;
+import javassist.bytecode.AccessFlag;
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.Descriptor;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
+
+import com.github.stephanenicolas.afterburner.AfterBurner;
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.index.ClassIndex;
+import com.github.stephanenicolas.afterburner.transform.TransformationRule;
+
+/**
+ * Eliminates the synthetic accessors, like {@code access$000}, that javac generates before Java 11
+ * for each private member accessed from a nested class. Each accessor is a call, and a method to dex or load.
+ * <ul>
+ * <li>in the class declaring an accessor, the private member it accesses is relaxed to package private.
+ * A relaxed instance method is also made final : it can't be overriden by accident. As a subclass declaring a method
+ * with the same name and descriptor would then fail to load, an instance method is only relaxed if its class is final,
+ * or if no subclass in the closed world of the rule declares such a method. Otherwise, its accessors are kept.</li>
+ * <li>in all classes of the same top level class, calls to the accessor are replaced by direct accesses to the member.</li>
+ * <li>accessors reading a field or calling a method are deleted. Accessors writing a field are kept,
+ * but they are only called when the written value is used, like in {@code a = outer.b = c}.</li>
+ * </ul>
+ * Accessors to constructors, compound assignments (like {@code outer.count++}) and super calls are kept as is.
+ * As classes are selected by their top level class name, all the classes calling an accessor are transformed with it.
+ * The closed world, a {@link ClassIndex}, must contain all the classes that can extend the transformed classes.
+ * Without it, the instance methods of classes that are not final keep their accessors.
+ * @author SNI
+ */
+public class SyntheticAccessorRule implements TransformationRule {
+    private static final Pattern ACCESSOR_NAME_PATTERN = Pattern.compile("access\\$\\d+");
+    private static final String VERSION = "2";
+
+    private final ClassIndex closedWorld;
+    private final Pattern topLevelClassNamePattern;
+    private final String hierarchyDigest;
+
+    /**
+     * Creates a rule eliminating the accessors of all classes, without closed world.
+     */
+    public SyntheticAccessorRule() {
+        this(".*");
+    }
+
+    /**
+     * Creates a rule without closed world.
+     * @param topLevelClassNameRegex selects the classes to transform by the name of their top level class :
+     * a class and all its nested classes are transformed together.
+     */
+    public SyntheticAccessorRule(String topLevelClassNameRegex) {
+        this(null, topLevelClassNameRegex);
+    }
+
+    /**
+     * Creates a rule.
+     * @param closedWorld indexes all the classes that can extend the transformed classes. Can be null.
+     * @param topLevelClassNameRegex selects the classes to transform by the name of their top level class :
+     * a class and all its nested classes are transformed together.
+     */
+    public SyntheticAccessorRule(ClassIndex closedWorld, String topLevelClassNameRegex) {
+        this.closedWorld = closedWorld;
+        this.topLevelClassNamePattern = Pattern.compile(topLevelClassNameRegex);
+        this.hierarchyDigest = closedWorld == null ? "" : digestHierarchy();
+    }
+
+    @Override
+    public String getFingerprint() {
+        return getClass().getName() + ":" + VERSION + ":" + topLevelClassNamePattern + ":" + hierarchyDigest;
+    }
+
+    @Override
+    public boolean shouldTransform(CtClass candidateClass) throws AfterBurnerImpossibleException {
+        if (candidateClass.isInterface() || !topLevelClassNamePattern.matcher(getTopLevelClassName(candidateClass.getName())).matches()) {
+            return false;
+        }
+        ConstPool constPool = candidateClass.getClassFile2().getConstPool();
+        for (int index = 1; index < constPool.getSize(); index++) {
+            if (constPool.getTag(index) == ConstPool.CONST_Methodref && isAccessorName(constPool.getMethodrefName(index))) {
+                return true;
+            }
+        }
+        for (Object methodInfo : candidateClass.getClassFile2().getMethods()) {
+            if (isAccessor((MethodInfo) methodInfo)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void applyTransformations(AfterBurner afterBurner, CtClass classToTransform) throws CannotCompileException,
+            AfterBurnerImpossibleException, NotFoundException {
+        rewriteAccessorCalls(classToTransform);
+
+        List<CtMethod> accessors = new ArrayList<CtMethod>();
+        for (CtMethod method : classToTransform.getDeclaredMethods()) {
+            if (isAccessor(method.getMethodInfo2())) {
+                accessors.add(method);
+            }
+        }
+        for (CtMethod accessor : accessors) {
+            Access access = Access.of(classToTransform, accessor.getMethodInfo2());
+            if (access == null || !canRelax(classToTransform, access)) {
+                continue;
+            }
+            if (access.isField()) {
+                CtField field = classToTransform.getDeclaredField(access.memberName);
+                field.setModifiers(field.getModifiers() & ~Modifier.PRIVATE);
+            } else {
+                CtMethod method = classToTransform.getMethod(access.memberName, access.memberDescriptor);
+                if (Modifier.isPrivate(method.getModifiers())) {
+                    int relaxedModifiers = method.getModifiers() & ~Modifier.PRIVATE;
+                    method.setModifiers(access.isStatic() ? relaxedModifiers : relaxedModifiers | Modifier.FINAL);
+                }
+            }
+            if (!access.isWrite()) {
+                classToTransform.removeMethod(accessor);
+            }
+        }
+    }
+
+    /**
+     * Replaces calls to accessors of the same top level class by direct accesses.
+     * Each call is rewritten in place : the read of a field, or the call of a method, has the same length as the call of its accessor.
+     * A write is rewritten only if the call is followed by a pop of the value returned by the accessor.
+     */
+    private void rewriteAccessorCalls(CtClass classToTransform) throws CannotCompileException, NotFoundException {
+        ClassFile classFile = classToTransform.getClassFile();
+        ConstPool constPool = classFile.getConstPool();
+        Map<Integer, Access> accessesByMethodRefIndex = new HashMap<Integer, Access>();
+        Map<Integer, Integer> memberRefIndexesByMethodRefIndex = new HashMap<Integer, Integer>();
+        String topLevelClassName = getTopLevelClassName(classToTransform.getName());
+        for (Object methodInfo : classFile.getMethods()) {
+            CodeAttribute codeAttribute = ((MethodInfo) methodInfo).getCodeAttribute();
+            if (codeAttribute == null) {
+                continue;
+            }
+            CodeIterator iterator = codeAttribute.iterator();
+            try {
+                while (iterator.hasNext()) {
+                    int index = iterator.next();
+                    if (iterator.byteAt(index) != Opcode.INVOKESTATIC) {
+                        continue;
+                    }
+                    int methodRefIndex = iterator.u16bitAt(index + 1);
+                    if (constPool.getTag(methodRefIndex) != ConstPool.CONST_Methodref) {
+                        continue;
+                    }
+                    String accessorClassName = constPool.getMethodrefClassName(methodRefIndex);
+                    if (!isAccessorName(constPool.getMethodrefName(methodRefIndex)) || !topLevelClassName.equals(getTopLevelClassName(accessorClassName))) {
+                        continue;
+                    }
+                    if (!accessesByMethodRefIndex.containsKey(methodRefIndex)) {
+                        Access access = findAccess(classToTransform, accessorClassName, constPool.getMethodrefName(methodRefIndex),
+                                constPool.getMethodrefType(methodRefIndex));
+                        accessesByMethodRefIndex.put(methodRefIndex, access);
+                        if (access != null) {
+                            memberRefIndexesByMethodRefIndex.put(methodRefIndex, access.addMemberRef(constPool, accessorClassName));
+                        }
+                    }
+                    Access access = accessesByMethodRefIndex.get(methodRefIndex);
+                    if (access == null) {
+                        continue;
+                    }
+                    int memberRefIndex = memberRefIndexesByMethodRefIndex.get(methodRefIndex);
+                    if (!access.isWrite()) {
+                        iterator.writeByte(access.getDirectOpcode(), index);
+                        iterator.write16bit(memberRefIndex, index + 1);
+                        continue;
+                    }
+                    if (!iterator.hasNext()) {
+                        continue;
+                    }
+                    int nextIndex = iterator.lookAhead();
+                    int nextOpcode = iterator.byteAt(nextIndex);
+                    if (nextOpcode == Opcode.POP || nextOpcode == Opcode.POP2) {
+                        iterator.writeByte(access.getDirectOpcode(), index);
+                        iterator.write16bit(memberRefIndex, index + 1);
+                        iterator.writeByte(Opcode.NOP, nextIndex);
+                    }
+                }
+            } catch (BadBytecode e) {
+                throw new CannotCompileException(e);
+            }
+        }
+    }
+
+    private Access findAccess(CtClass classToTransform, String accessorClassName, String accessorName, String accessorDescriptor) throws NotFoundException {
+        CtClass accessorClass = classToTransform.getName().equals(accessorClassName) ? classToTransform : classToTransform.getClassPool().get(accessorClassName);
+        MethodInfo accessor = accessorClass.getClassFile2().getMethod(accessorName);
+        if (accessor == null || !accessor.getDescriptor().equals(accessorDescriptor) || !isAccessor(accessor)) {
+            return null;
+        }
+        Access access = Access.of(accessorClass, accessor);
+        return access == null || !canRelax(accessorClass, access) ? null : access;
+    }
+
+    /**
+     * @return true if the member accessed can be relaxed without being overriden by a subclass.
+     */
+    private boolean canRelax(CtClass accessorClass, Access access) {
+        if (access.isField() || access.isStatic() || Modifier.isFinal(accessorClass.getModifiers())) {
+            return true;
+        }
+        if (closedWorld == null) {
+            return false;
+        }
+        for (String subclassName : closedWorld.getSubclassesOf(accessorClass.getName())) {
+            try {
+                if (Access.isDeclaredMethod(accessorClass.getClassPool().get(subclassName), access.memberName, access.memberDescriptor)) {
+                    return false;
+                }
+            } catch (NotFoundException e) {
+                // the subclass can't be checked
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return a digest of the subclasses of the classes of the closed world selected by their top level class.
+     */
+    private String digestHierarchy() {
+        List<String> classNames = new ArrayList<String>();
+        for (String className : closedWorld.getClassNames()) {
+            if (topLevelClassNamePattern.matcher(getTopLevelClassName(className)).matches()) {
+                classNames.add(className);
+            }
+        }
+        return closedWorld.digestSubclasses(classNames);
+    }
+
+    private static boolean isAccessor(MethodInfo methodInfo) {
+        int accessFlags = methodInfo.getAccessFlags();
+        return (accessFlags & AccessFlag.SYNTHETIC) != 0 && (accessFlags & AccessFlag.STATIC) != 0 && isAccessorName(methodInfo.getName());
+    }
+
+    private static boolean isAccessorName(String methodName) {
+        return ACCESSOR_NAME_PATTERN.matcher(methodName).matches();
+    }
+
+    private static String getTopLevelClassName(String className) {
+        int indexDollar = className.indexOf('$');
+        return indexDollar == -1 ? className : className.substring(0, indexDollar);
+    }
+
+    /**
+     * What an accessor does, if it is a single access to a member of its class that can be done directly.
+     */
+    private static final class Access {
+        private final int opcode;
+        private final String memberName;
+        private final String memberDescriptor;
+
+        private Access(int opcode, String memberName, String memberDescriptor) {
+            this.opcode = opcode;
+            this.memberName = memberName;
+            this.memberDescriptor = memberDescriptor;
+        }
+
+        /**
+         * Recognizes the accessors generated by javac : loads of the parameters, a single access, a return.
+         * The write of a field can also duplicate the written value, to return it.
+         * @return the access of accessor, null if it is not recognized.
+         */
+        private static Access of(CtClass accessorClass, MethodInfo accessor) {
+            CodeAttribute codeAttribute = accessor.getCodeAttribute();
+            if (codeAttribute == null || codeAttribute.getExceptionTable().size() != 0) {
+                return null;
+            }
+            List<Integer> indexes = new ArrayList<Integer>();
+            CodeIterator iterator = codeAttribute.iterator();
+            try {
+                while (iterator.hasNext()) {
+                    indexes.add(iterator.next());
+                }
+            } catch (BadBytecode e) {
+                return null;
+            }
+            int indexAccess = -1;
+            for (int indexInstruction = 0; indexInstruction < indexes.size() - 1; indexInstruction++) {
+                int opcode = iterator.byteAt(indexes.get(indexInstruction));
+                if (isLoad(opcode) || opcode == Opcode.DUP || opcode == Opcode.DUP2 || opcode == Opcode.DUP_X1 || opcode == Opcode.DUP2_X1) {
+                    continue;
+                }
+                if (indexAccess != -1) {
+                    return null;
+                }
+                indexAccess = indexInstruction;
+            }
+            int returnOpcode = iterator.byteAt(indexes.get(indexes.size() - 1));
+            if (indexAccess == -1 || returnOpcode < Opcode.IRETURN || returnOpcode > Opcode.RETURN) {
+                return null;
+            }
+            int accessIndex = indexes.get(indexAccess);
+            int opcode = iterator.byteAt(accessIndex);
+            int refIndex = iterator.u16bitAt(accessIndex + 1);
+            ConstPool constPool = codeAttribute.getConstPool();
+            String accessorDescriptor = accessor.getDescriptor();
+            String instanceParameter = "(" + Descriptor.of(accessorClass.getName());
+            switch (opcode) {
+                case Opcode.GETSTATIC:
+                case Opcode.PUTSTATIC:
+                case Opcode.GETFIELD:
+                case Opcode.PUTFIELD:
+                    if (!constPool.getFieldrefClassName(refIndex).equals(accessorClass.getName())
+                            || !isDeclaredField(accessorClass, constPool.getFieldrefName(refIndex))) {
+                        return null;
+                    }
+                    boolean isInstanceField = opcode == Opcode.GETFIELD || opcode == Opcode.PUTFIELD;
+                    if (isInstanceField != accessorDescriptor.startsWith(instanceParameter)) {
+                        return null;
+                    }
+                    return new Access(opcode, constPool.getFieldrefName(refIndex), constPool.getFieldrefType(refIndex));
+                case Opcode.INVOKESTATIC:
+                case Opcode.INVOKESPECIAL:
+                case Opcode.INVOKEVIRTUAL:
+                    if (constPool.getTag(refIndex) != ConstPool.CONST_Methodref || !constPool.getMethodrefClassName(refIndex).equals(accessorClass.getName())) {
+                        return null;
+                    }
+                    String methodName = constPool.getMethodrefName(refIndex);
+                    String methodDescriptor = constPool.getMethodrefType(refIndex);
+                    String expectedAccessorDescriptor = methodDescriptor;
+                    if (opcode != Opcode.INVOKESTATIC) {
+                        expectedAccessorDescriptor = instanceParameter + methodDescriptor.substring(1);
+                    }
+                    if (methodName.startsWith("<") || !accessorDescriptor.equals(expectedAccessorDescriptor)
+                            || !isDeclaredMethod(accessorClass, methodName, methodDescriptor)) {
+                        return null;
+                    }
+                    return new Access(opcode == Opcode.INVOKESTATIC ? Opcode.INVOKESTATIC : Opcode.INVOKEVIRTUAL, methodName, methodDescriptor);
+                default:
+                    return null;
+            }
+        }
+
+        private static boolean isLoad(int opcode) {
+            return opcode >= Opcode.ILOAD && opcode <= Opcode.ALOAD_3;
+        }
+
+        private static boolean isDeclaredField(CtClass ctClass, String fieldName) {
+            try {
+                ctClass.getDeclaredField(fieldName);
+                return true;
+            } catch (NotFoundException e) {
+                return false;
+            }
+        }
+
+        private static boolean isDeclaredMethod(CtClass ctClass, String methodName, String methodDescriptor) {
+            for (Object methodInfo : ctClass.getClassFile2().getMethods()) {
+                if (((MethodInfo) methodInfo).getName().equals(methodName) && ((MethodInfo) methodInfo).getDescriptor().equals(methodDescriptor)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean isField() {
+            return opcode == Opcode.GETSTATIC || opcode == Opcode.PUTSTATIC || opcode == Opcode.GETFIELD || opcode == Opcode.PUTFIELD;
+        }
+
+        private boolean isStatic() {
+            return opcode == Opcode.GETSTATIC || opcode == Opcode.PUTSTATIC || opcode == Opcode.INVOKESTATIC;
+        }
+
+        private boolean isWrite() {
+            return opcode == Opcode.PUTSTATIC || opcode == Opcode.PUTFIELD;
+        }
+
+        private int getDirectOpcode() {
+            return opcode;
+        }
+
+        private int addMemberRef(ConstPool constPool, String className) {
+            int classIndex = constPool.addClassInfo(className);
+            if (isField()) {
+                return constPool.addFieldrefInfo(classIndex, memberName, memberDescriptor);
+            }
+            return constPool.addMethodrefInfo(classIndex, memberName, memberDescriptor);
+        }
+    }
+}
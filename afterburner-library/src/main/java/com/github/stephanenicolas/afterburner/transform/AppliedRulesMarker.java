@@ -0,0 +1,104 @@
+package com.github.stephanenicolas.afterburner.transform;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javassist.CtClass;
+import javassist.bytecode.AttributeInfo;
+import javassist.bytecode.ClassFile;
+
+import com.github.stephanenicolas.afterburner.bytecode.ClassFileParser;
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+
+/**
+ * Records in a class file which {@link TransformationRule}s have already been applied to it.
+ * The fingerprints of the rules are stored in a custom class attribute, that the JVM ignores.
+ * The attribute doesn't reference the constant pool, so it survives any rewriting of it.
+ * It can be read with a {@link ClassFileParser}, without loading the class into a pool.
+ * @author SNI
+ */
+public final class AppliedRulesMarker {
+    /** Name of the class attribute containing the fingerprints of applied rules. */
+    public static final String ATTRIBUTE_NAME = "com.github.stephanenicolas.afterburner.AppliedRules";
+
+    private AppliedRulesMarker() {
+    }
+
+    /**
+     * Reads the fingerprints of the rules already applied to a class file.
+     * @param classFile the bytes of a class file.
+     * @return the fingerprints, sorted. Empty if the class has never been transformed.
+     * @throws AfterBurnerImpossibleException if classFile or the attribute is invalid.
+     */
+    public static Set<String> readAppliedRules(byte[] classFile) throws AfterBurnerImpossibleException {
+        try {
+            return decode(new ClassFileParser(classFile).getAttribute(ATTRIBUTE_NAME));
+        } catch (IOException e) {
+            throw new AfterBurnerImpossibleException("Invalid class file", e);
+        }
+    }
+
+    /**
+     * Reads the fingerprints of the rules already applied to a class.
+     * @param ctClass a class.
+     * @return the fingerprints, sorted. Empty if the class has never been transformed.
+     * @throws AfterBurnerImpossibleException if the attribute is invalid.
+     */
+    public static Set<String> readAppliedRules(CtClass ctClass) throws AfterBurnerImpossibleException {
+        AttributeInfo attribute = ctClass.getClassFile2().getAttribute(ATTRIBUTE_NAME);
+        try {
+            return decode(attribute == null ? null : attribute.get());
+        } catch (IOException e) {
+            throw new AfterBurnerImpossibleException("Invalid attribute " + ATTRIBUTE_NAME + " in class " + ctClass.getName(), e);
+        }
+    }
+
+    /**
+     * Adds fingerprints to the ones already recorded in a class.
+     * @param ctClass the class to mark.
+     * @param fingerprints the fingerprints of the rules applied to ctClass.
+     * @throws AfterBurnerImpossibleException if the attribute already present is invalid.
+     */
+    public static void markAppliedRules(CtClass ctClass, Collection<String> fingerprints) throws AfterBurnerImpossibleException {
+        Set<String> appliedRules = new TreeSet<String>(readAppliedRules(ctClass));
+        appliedRules.addAll(fingerprints);
+        ClassFile classFile = ctClass.getClassFile();
+        classFile.addAttribute(new AttributeInfo(classFile.getConstPool(), ATTRIBUTE_NAME, encode(appliedRules)));
+    }
+
+    private static Set<String> decode(byte[] attribute) throws IOException {
+        if (attribute == null) {
+            return Collections.emptySet();
+        }
+        DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(attribute));
+        int count = inputStream.readUnsignedShort();
+        Set<String> fingerprints = new TreeSet<String>();
+        for (int indexFingerprint = 0; indexFingerprint < count; indexFingerprint++) {
+            fingerprints.add(inputStream.readUTF());
+        }
+        return fingerprints;
+    }
+
+    private static byte[] encode(Set<String> fingerprints) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream outputStream = new DataOutputStream(bytes);
+        try {
+            outputStream.writeShort(fingerprints.size());
+            for (String fingerprint : fingerprints) {
+                outputStream.writeUTF(fingerprint);
+            }
+            outputStream.flush();
+        } catch (IOException e) {
+            // can't happen when writing in memory
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,354 @@
+package com.github.stephanenicolas.afterburner.transform;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.NotFoundException;
+
+import com.github.stephanenicolas.afterburner.AfterBurner;
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.index.IndexedClassPath;
+import com.github.stephanenicolas.afterburner.io.ClassFiles;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Applies a list of {@link TransformationRule}s to all class files of a directory.
+ * The output is reproducible : identical inputs and rules always produce byte-identical
+ * class files, whatever the number of threads used. To achieve this :
+ * <ul>
+ * <li>classes are processed in the order of their names, and rules in the order they are given,</li>
+ * <li>each class is transformed against the original version of all other classes : transformed
+ * classes are detached from their pool once written, and the output directory must differ from the input directory,</li>
+ * <li>the constant pool of each transformed class is rebuilt from scratch (see {@link javassist.bytecode.ClassFile#compact()}),
+ * so that its layout doesn't depend on the history of edits,</li>
+ * <li>class files that are not transformed are copied verbatim, and nothing like a timestamp is ever written.</li>
+ * </ul>
+ * Transformed classes are marked with the fingerprints of the rules that were applied to them
+ * (see {@link AppliedRulesMarker}). A class that already received all rules, for instance when it is
+ * transformed twice by incremental builds, is copied verbatim without even being loaded into a pool.
+ * Classes created by rules, see {@link AfterBurner#addCreatedClass(CtClass)}, are written along with the class they were created for.
+ * Each thread uses its own {@link ClassPool} and {@link AfterBurner}.
+ * @author SNI
+ */
+@Slf4j
+public class ClassFilesTransformer {
+    private final List<TransformationRule> rules;
+    private final List<String> classPath;
+    private int threadCount = 1;
+    private int maxClassesPerPool;
+    private IndexedClassPath indexedClassPath;
+    private TransformationMetrics metrics = new TransformationMetrics();
+
+    /**
+     * Creates a transformer.
+     * @param rules the rules to apply, in this order, to each class.
+     * @param classPath additional class path entries (directories or jars) needed to resolve the types used by the classes to transform.
+     * They are indexed once by an {@link IndexedClassPath} and must not change.
+     */
+    public ClassFilesTransformer(List<TransformationRule> rules, List<String> classPath) {
+        this.rules = new ArrayList<TransformationRule>(rules);
+        this.classPath = new ArrayList<String>(classPath);
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be positive: " + threadCount);
+        }
+        this.threadCount = threadCount;
+    }
+
+    public int getMaxClassesPerPool() {
+        return maxClassesPerPool;
+    }
+
+    /**
+     * Bounds the memory used by each thread : its {@link ClassPool} is replaced by a new one
+     * after transforming maxClassesPerPool classes. This doesn't change the output, as each class
+     * is transformed against the original version of all other classes anyway.
+     * @param maxClassesPerPool the number of classes to transform with a same pool, 0 for no limit.
+     */
+    public void setMaxClassesPerPool(int maxClassesPerPool) {
+        if (maxClassesPerPool < 0) {
+            throw new IllegalArgumentException("Max classes per pool must not be negative: " + maxClassesPerPool);
+        }
+        this.maxClassesPerPool = maxClassesPerPool;
+    }
+
+    /**
+     * @return the metrics of the last transformation.
+     */
+    public TransformationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Transforms all classes of {@code inputDirectory} into {@code outputDirectory}.
+     * @param inputDirectory the directory containing the class files to transform.
+     * @param outputDirectory the directory to write class files into. Must not be inputDirectory.
+     * @return the names, sorted, of the classes that have been transformed by at least one rule.
+     * @throws AfterBurnerImpossibleException if a class can't be transformed, or if outputDirectory is inputDirectory. Wraps other exceptions.
+     */
+    public List<String> transform(File inputDirectory, File outputDirectory) throws AfterBurnerImpossibleException {
+        return transform(inputDirectory, outputDirectory, ClassFiles.listClassNames(inputDirectory));
+    }
+
+    /**
+     * Transforms some classes of {@code inputDirectory} into {@code outputDirectory}.
+     * @param inputDirectory the directory containing the class files to transform.
+     * @param outputDirectory the directory to write class files into. Must not be inputDirectory.
+     * @param classNames the names of the classes to transform, all of them must be in inputDirectory.
+     * @return the names, sorted, of the classes that have been transformed by at least one rule.
+     * @throws AfterBurnerImpossibleException if a class can't be transformed, or if outputDirectory is inputDirectory. Wraps other exceptions.
+     */
+    public List<String> transform(final File inputDirectory, final File outputDirectory, Collection<String> classNames) throws AfterBurnerImpossibleException {
+        checkDistinctDirectories(inputDirectory, outputDirectory);
+        final List<String> sortedClassNames = new ArrayList<String>(classNames);
+        Collections.sort(sortedClassNames);
+        final boolean[] transformed = new boolean[sortedClassNames.size()];
+        metrics = new TransformationMetrics();
+
+        if (threadCount == 1 || sortedClassNames.size() < 2) {
+            new Worker(inputDirectory, outputDirectory, sortedClassNames, transformed, new AtomicInteger(), metrics).call();
+        } else {
+            ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+            try {
+                AtomicInteger nextIndex = new AtomicInteger();
+                List<Future<Void>> futures = new ArrayList<Future<Void>>();
+                for (int indexThread = 0; indexThread < threadCount; indexThread++) {
+                    futures.add(executorService.submit(new Worker(inputDirectory, outputDirectory, sortedClassNames, transformed, nextIndex, metrics)));
+                }
+                for (Future<Void> future : futures) {
+                    waitFor(future);
+                }
+            } finally {
+                executorService.shutdownNow();
+            }
+        }
+
+        List<String> transformedClassNames = new ArrayList<String>();
+        for (int indexClass = 0; indexClass < transformed.length; indexClass++) {
+            if (transformed[indexClass]) {
+                transformedClassNames.add(sortedClassNames.get(indexClass));
+            }
+        }
+        return transformedClassNames;
+    }
+
+    /**
+     * Rejects in place transformations : the pools read the classes of the input directory while transformed classes
+     * are written, so classes would be transformed against already transformed neighbours, e.g. a nested class against
+     * an outer class whose accessors were removed.
+     * @param inputDirectory the directory containing the class files to transform.
+     * @param outputDirectory the directory to write class files into.
+     * @throws AfterBurnerImpossibleException if both are the same directory.
+     */
+    static void checkDistinctDirectories(File inputDirectory, File outputDirectory) throws AfterBurnerImpossibleException {
+        try {
+            if (inputDirectory.getCanonicalFile().equals(outputDirectory.getCanonicalFile())) {
+                throw new AfterBurnerImpossibleException("Classes can't be transformed in place, output directory must differ from " + inputDirectory);
+            }
+        } catch (IOException e) {
+            throw new AfterBurnerImpossibleException("Invalid directories " + inputDirectory + ", " + outputDirectory, e);
+        }
+    }
+
+    /**
+     * Creates the pool used by a thread to load the classes it transforms.
+     * @param inputDirectory the directory containing the class files to transform.
+     * @return a new pool, classes of inputDirectory take precedence over the class path,
+     * that takes precedence over the system class path.
+     * @throws NotFoundException if an entry of the class path can't be found.
+     */
+    protected ClassPool createClassPool(File inputDirectory) throws NotFoundException {
+        ClassPool classPool = new ClassPool(false);
+        if (!classPath.isEmpty()) {
+            classPool.appendClassPath(getIndexedClassPath());
+        }
+        classPool.appendSystemPath();
+        classPool.insertClassPath(inputDirectory.getAbsolutePath());
+        return classPool;
+    }
+
+    /**
+     * Returns the index of the class path, built once and shared by all pools of this transformer.
+     * @return the index of the class path.
+     * @throws NotFoundException if an entry of the class path can't be found.
+     */
+    protected synchronized IndexedClassPath getIndexedClassPath() throws NotFoundException {
+        if (indexedClassPath == null) {
+            try {
+                indexedClassPath = new IndexedClassPath(classPath);
+            } catch (IOException e) {
+                throw new NotFoundException("Impossible to index class path " + classPath, e);
+            }
+        }
+        return indexedClassPath;
+    }
+
+    /**
+     * Creates the {@link AfterBurner} used by a thread.
+     * @return a new {@link AfterBurner}.
+     */
+    protected AfterBurner createAfterBurner() {
+        return new AfterBurner();
+    }
+
+    /**
+     * Applies rules to a class.
+     * @param afterBurner the AfterBurner to pass to the rules.
+     * @param classToTransform the class to transform.
+     * @param rulesToApply the rules that have not been applied yet to classToTransform.
+     * @return true if at least one rule transformed the class.
+     * @throws CannotCompileException if some injected source can't be compiled.
+     * @throws AfterBurnerImpossibleException if something else goes wrong, wraps other exceptions.
+     * @throws NotFoundException if a type or method is not found.
+     */
+    protected boolean applyRules(AfterBurner afterBurner, CtClass classToTransform, List<TransformationRule> rulesToApply) throws CannotCompileException, AfterBurnerImpossibleException, NotFoundException {
+        boolean transformed = false;
+        for (TransformationRule rule : rulesToApply) {
+            if (rule.shouldTransform(classToTransform)) {
+                rule.applyTransformations(afterBurner, classToTransform);
+                transformed = true;
+            }
+        }
+        return transformed;
+    }
+
+    private List<TransformationRule> getRulesToApply(Set<String> appliedRules) {
+        List<TransformationRule> rulesToApply = new ArrayList<TransformationRule>();
+        for (TransformationRule rule : rules) {
+            if (!appliedRules.contains(rule.getFingerprint())) {
+                rulesToApply.add(rule);
+            }
+        }
+        return rulesToApply;
+    }
+
+    private static void waitFor(Future<Void> future) throws AfterBurnerImpossibleException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AfterBurnerImpossibleException("Transformation interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AfterBurnerImpossibleException) {
+                throw (AfterBurnerImpossibleException) e.getCause();
+            }
+            throw new AfterBurnerImpossibleException(e.getCause());
+        }
+    }
+
+    /**
+     * Transforms classes one after the other, using its own pool.
+     * Workers share the index of the next class to transform.
+     */
+    private final class Worker implements Callable<Void> {
+        private final File inputDirectory;
+        private final File outputDirectory;
+        private final List<String> classNames;
+        private final boolean[] transformed;
+        private final AtomicInteger nextIndex;
+        private final TransformationMetrics workerMetrics;
+
+        private Worker(File inputDirectory, File outputDirectory, List<String> classNames, boolean[] transformed, AtomicInteger nextIndex,
+                TransformationMetrics workerMetrics) {
+            this.inputDirectory = inputDirectory;
+            this.outputDirectory = outputDirectory;
+            this.classNames = classNames;
+            this.transformed = transformed;
+            this.nextIndex = nextIndex;
+            this.workerMetrics = workerMetrics;
+        }
+
+        @Override
+        public Void call() throws AfterBurnerImpossibleException {
+            AfterBurner afterBurner = createAfterBurner();
+            ClassPool classPool = null;
+            int classCountInPool = 0;
+            int indexClass;
+            while ((indexClass = nextIndex.getAndIncrement()) < classNames.size()) {
+                if (classPool == null || maxClassesPerPool != 0 && classCountInPool == maxClassesPerPool) {
+                    classPool = newClassPool();
+                    classCountInPool = 0;
+                }
+                transformed[indexClass] = transformClass(classPool, afterBurner, classNames.get(indexClass));
+                classCountInPool++;
+            }
+            return null;
+        }
+
+        private ClassPool newClassPool() throws AfterBurnerImpossibleException {
+            workerMetrics.incrementPoolCount();
+            try {
+                return createClassPool(inputDirectory);
+            } catch (NotFoundException e) {
+                throw new AfterBurnerImpossibleException("Invalid class path " + classPath, e);
+            }
+        }
+
+        private boolean transformClass(ClassPool classPool, AfterBurner afterBurner, String className) throws AfterBurnerImpossibleException {
+            File inputFile = ClassFiles.getClassFile(inputDirectory, className);
+            File outputFile = ClassFiles.getClassFile(outputDirectory, className);
+            CtClass classToTransform = null;
+            // classes created for a class that failed to transform must not be written with the next one
+            afterBurner.takeCreatedClasses();
+            try {
+                byte[] classFile = ClassFiles.readFully(inputFile);
+                workerMetrics.incrementClassCount();
+                List<TransformationRule> rulesToApply = getRulesToApply(AppliedRulesMarker.readAppliedRules(classFile));
+                boolean isTransformed = false;
+                if (rulesToApply.isEmpty()) {
+                    workerMetrics.incrementUpToDateClassCount();
+                } else {
+                    classToTransform = classPool.makeClass(new ByteArrayInputStream(classFile));
+                    isTransformed = applyRules(afterBurner, classToTransform, rulesToApply);
+                }
+                if (isTransformed) {
+                    log.info("Class " + className + " has been transformed.");
+                    workerMetrics.incrementTransformedClassCount();
+                    List<String> fingerprints = new ArrayList<String>();
+                    for (TransformationRule rule : rulesToApply) {
+                        fingerprints.add(rule.getFingerprint());
+                    }
+                    AppliedRulesMarker.markAppliedRules(classToTransform, fingerprints);
+                    classToTransform.getClassFile().compact();
+                    ClassFiles.write(outputFile, classToTransform.toBytecode());
+                    for (CtClass createdClass : afterBurner.takeCreatedClasses()) {
+                        log.info("Class " + createdClass.getName() + " has been created.");
+                        workerMetrics.incrementCreatedClassCount();
+                        ClassFiles.write(ClassFiles.getClassFile(outputDirectory, createdClass.getName()), createdClass.toBytecode());
+                        createdClass.detach();
+                    }
+                } else {
+                    ClassFiles.write(outputFile, classFile);
+                }
+                return isTransformed;
+            } catch (Exception e) {
+                throw new AfterBurnerImpossibleException("Impossible to transform class " + className, e);
+            } finally {
+                if (classToTransform != null) {
+                    classToTransform.detach();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.github.stephanenicolas.afterburner.transform;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+
+/**
+ * Entry point of the worker JVMs forked by {@link ShardedClassFilesTransformer}.
+ * Transforms one shard of classes with a {@link ClassFilesTransformer} and writes
+ * the names of the transformed classes into a result file, and its {@link TransformationMetrics} into a metrics file.
+ * <p>
+ * Arguments are : input directory, output directory, thread count, max classes per pool,
+ * then the paths of the files listing (one per line) the rule class names, the class path entries,
+ * the classes of the shard and, finally, the result and metrics files to write.
+ * Rules are instantiated via their public no-arg constructor : their configuration is not passed to workers,
+ * so rules that need constructor arguments can't be sharded.
+ * </p>
+ * <p>
+ * Errors are written to the standard error stream, that the forking JVM logs, as a worker may
+ * have no logging backend, and the worker exits with a non zero status.
+ * </p>
+ * @author SNI
+ */
+public final class ShardWorker {
+    private static final String ENCODING = "UTF-8";
+    private static final int ARGUMENT_COUNT = 9;
+    private static final int INDEX_THREAD_COUNT = 2;
+    private static final int INDEX_MAX_CLASSES_PER_POOL = 3;
+    private static final int INDEX_RULES = 4;
+    private static final int INDEX_CLASS_PATH = 5;
+    private static final int INDEX_CLASSES = 6;
+    private static final int INDEX_RESULT = 7;
+    private static final int INDEX_METRICS = 8;
+
+    private ShardWorker() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length != ARGUMENT_COUNT) {
+            System.err.println("Usage: ShardWorker <input dir> <output dir> <thread count> <max classes per pool> <rules file> <class path file> <classes file> "
+                    + "<result file> <metrics file>");
+            System.exit(2);
+        }
+        try {
+            List<TransformationRule> rules = new ArrayList<TransformationRule>();
+            for (String ruleClassName : readLines(new File(args[INDEX_RULES]))) {
+                rules.add(createRule(ruleClassName));
+            }
+            ClassFilesTransformer transformer = new ClassFilesTransformer(rules, readLines(new File(args[INDEX_CLASS_PATH])));
+            transformer.setThreadCount(Integer.parseInt(args[INDEX_THREAD_COUNT]));
+            transformer.setMaxClassesPerPool(Integer.parseInt(args[INDEX_MAX_CLASSES_PER_POOL]));
+            List<String> transformedClassNames = transformer.transform(new File(args[0]), new File(args[1]), readLines(new File(args[INDEX_CLASSES])));
+            writeLines(new File(args[INDEX_RESULT]), transformedClassNames);
+            writeLines(new File(args[INDEX_METRICS]), transformer.getMetrics().toLines());
+        } catch (Exception e) {
+            System.err.println("Impossible to transform shard " + args[INDEX_CLASSES]);
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    static TransformationRule createRule(String ruleClassName) throws AfterBurnerImpossibleException {
+        try {
+            Class<?> ruleClass = Class.forName(ruleClassName);
+            checkRuleClass(ruleClass);
+            return (TransformationRule) ruleClass.newInstance();
+        } catch (AfterBurnerImpossibleException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new AfterBurnerImpossibleException("Impossible to create rule " + ruleClassName, e);
+        }
+    }
+
+    /**
+     * Checks that a rule can be instantiated by workers.
+     * @param ruleClass the class of a rule.
+     * @throws AfterBurnerImpossibleException if ruleClass is not a {@link TransformationRule}
+     * or has no public no-arg constructor.
+     */
+    static void checkRuleClass(Class<?> ruleClass) throws AfterBurnerImpossibleException {
+        if (!TransformationRule.class.isAssignableFrom(ruleClass)) {
+            throw new AfterBurnerImpossibleException("Class " + ruleClass.getName() + " is not a " + TransformationRule.class.getSimpleName());
+        }
+        try {
+            ruleClass.getConstructor();
+        } catch (NoSuchMethodException e) {
+            throw new AfterBurnerImpossibleException("Rule " + ruleClass.getName() + " can't be sharded: workers create rules by class name, "
+                    + "via a public no-arg constructor, and can't get the configuration of a rule.", e);
+        }
+    }
+
+    static List<String> readLines(File file) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        Reader reader = new InputStreamReader(new FileInputStream(file), ENCODING);
+        try {
+            BufferedReader bufferedReader = new BufferedReader(reader);
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                if (line.length() != 0) {
+                    lines.add(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+    static void writeLines(File file, Collection<String> lines) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), ENCODING));
+        try {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+}
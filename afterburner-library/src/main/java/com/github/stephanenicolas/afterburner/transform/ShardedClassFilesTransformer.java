@@ -0,0 +1,262 @@
+package com.github.stephanenicolas.afterburner.transform;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.io.ClassFiles;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Transforms a directory of class files with several worker JVMs, for class sets too large for a single heap.
+ * Classes are split into shards, by hash of their name or of their package, and each shard is transformed
+ * by a forked JVM running a {@link ShardWorker}, i.e. a {@link ClassFilesTransformer} with its own,
+ * bounded, pools. A {@link ClassFilesTransformer} transforms each class against the original version of all
+ * other classes, and output and input directories must differ. So the output doesn't depend on the number of shards,
+ * as long as rules only depend on the class they transform and on the classes they read, not on state kept
+ * by a rule instance across classes : such state is split between workers.
+ * The results of all shards are merged in the order of class names, and their {@link TransformationMetrics} are added up.
+ * <p>
+ * Rules are given by class name and are instantiated in each worker via their public no-arg constructor :
+ * rules that need constructor arguments can't be sharded, and are rejected before forking workers
+ * when the current JVM can load them. Shards without classes don't fork a worker. Workers use the class path of the current JVM, unless another one is set.
+ * </p>
+ * @author SNI
+ */
+@Slf4j
+public class ShardedClassFilesTransformer {
+    private static final int DEFAULT_MAX_CLASSES_PER_POOL = 1000;
+    private static final String RULES_FILE_NAME = "rules.txt";
+    private static final String CLASS_PATH_FILE_NAME = "classpath.txt";
+
+    private final List<String> ruleClassNames;
+    private final List<String> classPath;
+    private final int shardCount;
+    private boolean shardByPackage;
+    private int workerThreadCount = 1;
+    private int maxClassesPerPool = DEFAULT_MAX_CLASSES_PER_POOL;
+    private List<String> workerJvmArguments = Collections.emptyList();
+    private String workerClassPath = System.getProperty("java.class.path");
+    private String javaExecutable = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    private TransformationMetrics metrics = new TransformationMetrics();
+
+    /**
+     * Creates a sharded transformer.
+     * @param ruleClassNames the names of the classes of the rules to apply, in this order, to each class.
+     * @param classPath additional class path entries (directories or jars) needed to resolve the types used by the classes to transform.
+     * @param shardCount the number of worker JVMs.
+     */
+    public ShardedClassFilesTransformer(List<String> ruleClassNames, List<String> classPath, int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be positive: " + shardCount);
+        }
+        this.ruleClassNames = new ArrayList<String>(ruleClassNames);
+        this.classPath = new ArrayList<String>(classPath);
+        this.shardCount = shardCount;
+    }
+
+    /**
+     * @param shardByPackage if true, all classes of a package go to the same shard,
+     * otherwise classes are spread by the hash of their name.
+     */
+    public void setShardByPackage(boolean shardByPackage) {
+        this.shardByPackage = shardByPackage;
+    }
+
+    public void setWorkerThreadCount(int workerThreadCount) {
+        this.workerThreadCount = workerThreadCount;
+    }
+
+    /**
+     * @see ClassFilesTransformer#setMaxClassesPerPool(int)
+     */
+    public void setMaxClassesPerPool(int maxClassesPerPool) {
+        this.maxClassesPerPool = maxClassesPerPool;
+    }
+
+    /**
+     * @param workerJvmArguments arguments of the worker JVMs, like "-Xmx512m".
+     */
+    public void setWorkerJvmArguments(List<String> workerJvmArguments) {
+        this.workerJvmArguments = new ArrayList<String>(workerJvmArguments);
+    }
+
+    public void setWorkerClassPath(String workerClassPath) {
+        this.workerClassPath = workerClassPath;
+    }
+
+    public void setJavaExecutable(String javaExecutable) {
+        this.javaExecutable = javaExecutable;
+    }
+
+    /**
+     * @return the metrics of the last transformation, added up over all shards.
+     */
+    public TransformationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Transforms all classes of {@code inputDirectory} into {@code outputDirectory}.
+     * @param inputDirectory the directory containing the class files to transform.
+     * @param outputDirectory the directory to write class files into. Must not be inputDirectory.
+     * @return the names, sorted, of the classes that have been transformed by at least one rule.
+     * @throws AfterBurnerImpossibleException if a worker fails, or if outputDirectory is inputDirectory. Wraps other exceptions.
+     */
+    public List<String> transform(File inputDirectory, File outputDirectory) throws AfterBurnerImpossibleException {
+        ClassFilesTransformer.checkDistinctDirectories(inputDirectory, outputDirectory);
+        checkRuleClasses();
+        List<List<String>> shards = createShards(ClassFiles.listClassNames(inputDirectory));
+        File workDirectory = null;
+        try {
+            workDirectory = createWorkDirectory();
+            ShardWorker.writeLines(new File(workDirectory, RULES_FILE_NAME), ruleClassNames);
+            ShardWorker.writeLines(new File(workDirectory, CLASS_PATH_FILE_NAME), classPath);
+
+            List<Integer> startedShards = new ArrayList<Integer>();
+            List<Process> processes = new ArrayList<Process>();
+            try {
+                for (int indexShard = 0; indexShard < shardCount; indexShard++) {
+                    if (shards.get(indexShard).isEmpty()) {
+                        continue;
+                    }
+                    ShardWorker.writeLines(getShardFile(workDirectory, "classes", indexShard), shards.get(indexShard));
+                    processes.add(startWorker(indexShard, inputDirectory, outputDirectory, workDirectory));
+                    startedShards.add(indexShard);
+                }
+                for (int indexProcess = 0; indexProcess < processes.size(); indexProcess++) {
+                    int indexShard = startedShards.get(indexProcess);
+                    int exitCode = processes.get(indexProcess).waitFor();
+                    if (exitCode != 0) {
+                        throw new AfterBurnerImpossibleException("Shard " + indexShard + " failed with exit code " + exitCode);
+                    }
+                }
+            } finally {
+                for (Process process : processes) {
+                    process.destroy();
+                }
+            }
+
+            Set<String> transformedClassNames = new TreeSet<String>();
+            TransformationMetrics mergedMetrics = new TransformationMetrics();
+            for (int indexShard : startedShards) {
+                transformedClassNames.addAll(ShardWorker.readLines(getShardFile(workDirectory, "result", indexShard)));
+                TransformationMetrics shardMetrics = TransformationMetrics.fromLines(ShardWorker.readLines(getShardFile(workDirectory, "metrics", indexShard)));
+                log.info("Shard " + indexShard + " : " + shardMetrics);
+                mergedMetrics.add(shardMetrics);
+            }
+            metrics = mergedMetrics;
+            log.info("All shards : " + metrics);
+            return new ArrayList<String>(transformedClassNames);
+        } catch (IOException e) {
+            throw new AfterBurnerImpossibleException("Impossible to run shard workers", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AfterBurnerImpossibleException("Transformation interrupted", e);
+        } finally {
+            delete(workDirectory);
+        }
+    }
+
+    private void checkRuleClasses() throws AfterBurnerImpossibleException {
+        for (String ruleClassName : ruleClassNames) {
+            Class<?> ruleClass;
+            try {
+                ruleClass = Class.forName(ruleClassName);
+            } catch (ClassNotFoundException e) {
+                // workers may use another class path, they will report rules they can't load
+                continue;
+            }
+            ShardWorker.checkRuleClass(ruleClass);
+        }
+    }
+
+    /**
+     * Splits classes into shards.
+     * @param classNames the names of all classes to transform.
+     * @return shardCount lists of class names.
+     */
+    List<List<String>> createShards(List<String> classNames) {
+        List<List<String>> shards = new ArrayList<List<String>>();
+        for (int indexShard = 0; indexShard < shardCount; indexShard++) {
+            shards.add(new ArrayList<String>());
+        }
+        for (String className : classNames) {
+            String key = className;
+            if (shardByPackage) {
+                int indexLastDot = className.lastIndexOf('.');
+                key = indexLastDot == -1 ? "" : className.substring(0, indexLastDot);
+            }
+            shards.get((key.hashCode() & Integer.MAX_VALUE) % shardCount).add(className);
+        }
+        return shards;
+    }
+
+    private Process startWorker(final int indexShard, File inputDirectory, File outputDirectory, File workDirectory) throws IOException {
+        List<String> command = new ArrayList<String>();
+        command.add(javaExecutable);
+        command.addAll(workerJvmArguments);
+        command.add("-cp");
+        command.add(workerClassPath);
+        command.add(ShardWorker.class.getName());
+        command.addAll(Arrays.asList(inputDirectory.getAbsolutePath(), outputDirectory.getAbsolutePath(), String.valueOf(workerThreadCount),
+                String.valueOf(maxClassesPerPool), new File(workDirectory, RULES_FILE_NAME).getAbsolutePath(),
+                new File(workDirectory, CLASS_PATH_FILE_NAME).getAbsolutePath(), getShardFile(workDirectory, "classes", indexShard).getAbsolutePath(),
+                getShardFile(workDirectory, "result", indexShard).getAbsolutePath(), getShardFile(workDirectory, "metrics", indexShard).getAbsolutePath()));
+        final Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        process.getOutputStream().close();
+        // the output of a worker must be consumed, or it would block once the pipe is full
+        Thread outputReader = new Thread("afterburner-shard-" + indexShard) {
+            @Override
+            public void run() {
+                try {
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        log.info("[shard " + indexShard + "] " + line);
+                    }
+                } catch (IOException e) {
+                    log.debug("Output of shard " + indexShard + " closed", e);
+                }
+            }
+        };
+        outputReader.setDaemon(true);
+        outputReader.start();
+        return process;
+    }
+
+    private static File getShardFile(File workDirectory, String prefix, int indexShard) {
+        return new File(workDirectory, prefix + "-" + indexShard + ".txt");
+    }
+
+    private static File createWorkDirectory() throws IOException {
+        File workDirectory = File.createTempFile("afterburner-shards", "");
+        if (!workDirectory.delete() || !workDirectory.mkdir()) {
+            throw new IOException("Impossible to create directory " + workDirectory);
+        }
+        return workDirectory;
+    }
+
+    private static void delete(File file) {
+        if (file == null) {
+            return;
+        }
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        if (!file.delete()) {
+            log.debug("Impossible to delete " + file);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.github.stephanenicolas.afterburner.transform;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javassist.ClassPool;
+import javassist.NotFoundException;
+
+import com.github.stephanenicolas.afterburner.AfterBurner;
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.index.ClassIndex;
+import com.github.stephanenicolas.afterburner.index.ClassIndexBuilder;
+import com.github.stephanenicolas.afterburner.index.HierarchyCache;
+import com.github.stephanenicolas.afterburner.index.IndexedClass;
+import com.github.stephanenicolas.afterburner.index.IndexedClassPath;
+import com.github.stephanenicolas.afterburner.io.ClassFiles;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A long lived process that keeps the output of a {@link ClassFilesTransformer} up to date
+ * while a class output directory is rebuilt, typically by javac in a dev loop.
+ * <p>
+ * Each {@link #poll()} compares the class files of the input directory with the previous poll
+ * and re-transforms only the classes that changed, plus their subclasses and implementations in the
+ * input directory. Classes deleted from the input directory are deleted from the output directory.
+ * The first poll transforms all classes.
+ * </p>
+ * <p>
+ * The daemon stays warm between polls : classes of the class path are loaded once in a parent {@link ClassPool},
+ * overriden methods are resolved through a shared {@link HierarchyCache}, and the {@link ClassIndex} of the input
+ * directory is updated incrementally. Only classes of the input directory are reloaded, in child pools.
+ * </p>
+ * <p>
+ * Changes are detected by comparing the last modification time and length of class files.
+ * </p>
+ * @author SNI
+ */
+@Slf4j
+public class TransformationDaemon {
+    private final File inputDirectory;
+    private final File outputDirectory;
+    private final ClassFilesTransformer transformer;
+    private final ClassPool warmClassPool;
+    private final HierarchyCache hierarchyCache;
+    private final Map<String, FileState> fileStatesByClassName = new HashMap<String, FileState>();
+    private final Map<String, IndexedClass> indexedClassesByName = new HashMap<String, IndexedClass>();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Creates a daemon.
+     * @param rules the rules to apply, in this order, to each class.
+     * @param classPath additional class path entries (directories or jars) needed to resolve the types used by the classes to transform.
+     * They should not change while the daemon runs.
+     * @param inputDirectory the directory containing the class files to transform.
+     * @param outputDirectory the directory to write class files into. Must not be inputDirectory.
+     * @param hierarchyCache the cache to resolve overriden methods, can have been loaded from a previous run. Can be null.
+     * @throws AfterBurnerImpossibleException if an entry of the class path can't be found, or if outputDirectory is inputDirectory.
+     */
+    public TransformationDaemon(List<TransformationRule> rules, List<String> classPath, File inputDirectory, File outputDirectory,
+            final HierarchyCache hierarchyCache) throws AfterBurnerImpossibleException {
+        // transformed classes would be detected as changes, and skipped as already transformed
+        ClassFilesTransformer.checkDistinctDirectories(inputDirectory, outputDirectory);
+        this.inputDirectory = inputDirectory;
+        this.outputDirectory = outputDirectory;
+        this.hierarchyCache = hierarchyCache;
+        warmClassPool = new ClassPool(false);
+        try {
+            warmClassPool.appendClassPath(new IndexedClassPath(classPath));
+        } catch (IOException e) {
+            throw new AfterBurnerImpossibleException("Invalid class path " + classPath, e);
+        }
+        warmClassPool.appendSystemPath();
+        transformer = new ClassFilesTransformer(rules, new ArrayList<String>()) {
+            @Override
+            protected ClassPool createClassPool(File directory) throws NotFoundException {
+                ClassPool classPool = new ClassPool(warmClassPool);
+                classPool.childFirstLookup = true;
+                classPool.insertClassPath(directory.getAbsolutePath());
+                return classPool;
+            }
+
+            @Override
+            protected AfterBurner createAfterBurner() {
+                AfterBurner afterBurner = super.createAfterBurner();
+                afterBurner.setHierarchyCache(hierarchyCache);
+                return afterBurner;
+            }
+        };
+    }
+
+    public HierarchyCache getHierarchyCache() {
+        return hierarchyCache;
+    }
+
+    /**
+     * Transforms the classes that changed since the previous poll, and their dependents.
+     * If the transformation fails, the next poll transforms them again.
+     * @return the names, sorted, of the classes that have been transformed by at least one rule.
+     * @throws AfterBurnerImpossibleException if a class can't be transformed, wraps other exceptions.
+     */
+    public synchronized List<String> poll() throws AfterBurnerImpossibleException {
+        long start = System.currentTimeMillis();
+        Set<String> changedClassNames = new TreeSet<String>();
+        Map<String, FileState> newFileStates = new HashMap<String, FileState>();
+        for (String className : ClassFiles.listClassNames(inputDirectory)) {
+            File classFile = ClassFiles.getClassFile(inputDirectory, className);
+            FileState fileState = new FileState(classFile.lastModified(), classFile.length());
+            newFileStates.put(className, fileState);
+            if (!fileState.equals(fileStatesByClassName.get(className))) {
+                changedClassNames.add(className);
+            }
+        }
+        for (Iterator<String> iterator = fileStatesByClassName.keySet().iterator(); iterator.hasNext();) {
+            String className = iterator.next();
+            if (!newFileStates.containsKey(className)) {
+                log.info("Class " + className + " has been deleted.");
+                indexedClassesByName.remove(className);
+                invalidate(className);
+                File outputFile = ClassFiles.getClassFile(outputDirectory, className);
+                if (!outputFile.delete()) {
+                    log.warn("Impossible to delete " + outputFile);
+                }
+                iterator.remove();
+            }
+        }
+        if (changedClassNames.isEmpty()) {
+            return new ArrayList<String>();
+        }
+
+        ClassIndex classIndex = updateClassIndex(changedClassNames);
+        Set<String> classNamesToTransform = new TreeSet<String>(changedClassNames);
+        for (String className : changedClassNames) {
+            invalidate(className);
+            classNamesToTransform.addAll(classIndex.getSubclassesOf(className));
+            if (classIndex.getIndexedClass(className).isInterface()) {
+                classNamesToTransform.addAll(classIndex.getImplementationsOf(className));
+            }
+        }
+        List<String> transformedClassNames = transformer.transform(inputDirectory, outputDirectory, classNamesToTransform);
+        // only now, so that classes are transformed again by the next poll if this one fails
+        fileStatesByClassName.putAll(newFileStates);
+        log.info("Transformed " + transformedClassNames.size() + " of " + classNamesToTransform.size() + " changed or dependent classes in "
+                + (System.currentTimeMillis() - start) + " ms.");
+        return transformedClassNames;
+    }
+
+    /**
+     * Polls the input directory periodically, in a daemon thread.
+     * @param period the time between the end of a poll and the start of the next one.
+     * @param unit the unit of period.
+     */
+    public synchronized void start(long period, TimeUnit unit) {
+        if (scheduler != null) {
+            throw new IllegalStateException("Daemon is already started.");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "afterburner-daemon");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    poll();
+                } catch (AfterBurnerImpossibleException e) {
+                    // the next compilation will probably fix it, keep watching
+                    log.error("Transformation failed", e);
+                } catch (RuntimeException e) {
+                    // an exception escaping this task would silently cancel all next polls
+                    log.error("Transformation failed", e);
+                }
+            }
+        }, 0, period, unit);
+    }
+
+    /**
+     * Stops polling. A poll in progress completes.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+
+    private void invalidate(String className) {
+        if (hierarchyCache != null) {
+            hierarchyCache.invalidate(className);
+        }
+    }
+
+    private ClassIndex updateClassIndex(Set<String> changedClassNames) throws AfterBurnerImpossibleException {
+        for (String className : changedClassNames) {
+            try {
+                byte[] classFile = ClassFiles.readFully(ClassFiles.getClassFile(inputDirectory, className));
+                indexedClassesByName.put(className, ClassIndexBuilder.indexClassFile(classFile));
+            } catch (IOException e) {
+                throw new AfterBurnerImpossibleException("Impossible to index class " + className, e);
+            }
+        }
+        return new ClassIndexBuilder().addIndexedClasses(indexedClassesByName.values()).build();
+    }
+
+    /**
+     * What is compared to detect that a class file changed.
+     */
+    private static final class FileState {
+        private final long lastModified;
+        private final long length;
+
+        private FileState(long lastModified, long length) {
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof FileState)) {
+                return false;
+            }
+            FileState other = (FileState) object;
+            return lastModified == other.lastModified && length == other.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (lastModified ^ length);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.github.stephanenicolas.afterburner.transform;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts of a transformation by a {@link ClassFilesTransformer}, see {@link ClassFilesTransformer#getMetrics()}.
+ * Counts are updated by all threads of a transformer. They don't depend on the number of threads, and the metrics
+ * of the shards of a {@link ShardedClassFilesTransformer} add up to the metrics of a single JVM,
+ * except for the number of pools.
+ * @author SNI
+ */
+public class TransformationMetrics {
+    private static final String SEPARATOR = "=";
+
+    private final AtomicInteger classCount = new AtomicInteger();
+    private final AtomicInteger transformedClassCount = new AtomicInteger();
+    private final AtomicInteger upToDateClassCount = new AtomicInteger();
+    private final AtomicInteger createdClassCount = new AtomicInteger();
+    private final AtomicInteger poolCount = new AtomicInteger();
+
+    /**
+     * @return the number of classes read from the input directory.
+     */
+    public int getClassCount() {
+        return classCount.get();
+    }
+
+    /**
+     * @return the number of classes transformed by at least one rule.
+     */
+    public int getTransformedClassCount() {
+        return transformedClassCount.get();
+    }
+
+    /**
+     * @return the number of classes that had already received all rules, and were copied without being loaded.
+     */
+    public int getUpToDateClassCount() {
+        return upToDateClassCount.get();
+    }
+
+    /**
+     * @return the number of classes created by rules.
+     */
+    public int getCreatedClassCount() {
+        return createdClassCount.get();
+    }
+
+    /**
+     * @return the number of pools used to load classes.
+     */
+    public int getPoolCount() {
+        return poolCount.get();
+    }
+
+    /**
+     * Adds the counts of another transformation to these metrics.
+     * @param metrics the metrics to add.
+     */
+    public void add(TransformationMetrics metrics) {
+        classCount.addAndGet(metrics.getClassCount());
+        transformedClassCount.addAndGet(metrics.getTransformedClassCount());
+        upToDateClassCount.addAndGet(metrics.getUpToDateClassCount());
+        createdClassCount.addAndGet(metrics.getCreatedClassCount());
+        poolCount.addAndGet(metrics.getPoolCount());
+    }
+
+    @Override
+    public String toString() {
+        return toLines().toString();
+    }
+
+    void incrementClassCount() {
+        classCount.incrementAndGet();
+    }
+
+    void incrementTransformedClassCount() {
+        transformedClassCount.incrementAndGet();
+    }
+
+    void incrementUpToDateClassCount() {
+        upToDateClassCount.incrementAndGet();
+    }
+
+    void incrementCreatedClassCount() {
+        createdClassCount.incrementAndGet();
+    }
+
+    void incrementPoolCount() {
+        poolCount.incrementAndGet();
+    }
+
+    /**
+     * @return these metrics as "name=count" lines, read back by {@link #fromLines(List)}.
+     */
+    List<String> toLines() {
+        List<String> lines = new ArrayList<String>();
+        lines.add("classes" + SEPARATOR + getClassCount());
+        lines.add("transformed" + SEPARATOR + getTransformedClassCount());
+        lines.add("upToDate" + SEPARATOR + getUpToDateClassCount());
+        lines.add("created" + SEPARATOR + getCreatedClassCount());
+        lines.add("pools" + SEPARATOR + getPoolCount());
+        return lines;
+    }
+
+    static TransformationMetrics fromLines(List<String> lines) {
+        TransformationMetrics metrics = new TransformationMetrics();
+        for (String line : lines) {
+            String[] nameAndCount = line.split(SEPARATOR);
+            int count = Integer.parseInt(nameAndCount[1]);
+            if ("classes".equals(nameAndCount[0])) {
+                metrics.classCount.set(count);
+            } else if ("transformed".equals(nameAndCount[0])) {
+                metrics.transformedClassCount.set(count);
+            } else if ("upToDate".equals(nameAndCount[0])) {
+                metrics.upToDateClassCount.set(count);
+            } else if ("created".equals(nameAndCount[0])) {
+                metrics.createdClassCount.set(count);
+            } else if ("pools".equals(nameAndCount[0])) {
+                metrics.poolCount.set(count);
+            }
+        }
+        return metrics;
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.stephanenicolas.afterburner.transform;
+
+import javassist.CannotCompileException;
+import javassist.CtClass;
+import javassist.NotFoundException;
+
+import com.github.stephanenicolas.afterburner.AfterBurner;
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+
+/**
+ * A transformation applied by a {@link ClassFilesTransformer} to each class it processes.
+ * Rules must only modify the class they receive and must not depend on the order in which
+ * classes are processed, so that the output of a transformation only depends on its inputs.
+ * @author SNI
+ */
+public interface TransformationRule {
+
+    /**
+     * Identifies this rule and its version. Classes record the fingerprints of the rules applied to them
+     * (see {@link AppliedRulesMarker}) and a rule is never applied twice to the same class.
+     * The fingerprint must change whenever the code injected by the rule changes.
+     * @return a fingerprint like "com.foo.LogLifeCycleRule:2".
+     */
+    String getFingerprint();
+
+    /**
+     * Tells whether or not a class should be transformed by this rule.
+     * @param candidateClass the class to inspect.
+     * @return true if {@link #applyTransformations(AfterBurner, CtClass)} should be called on candidateClass.
+     * @throws AfterBurnerImpossibleException in case something goes wrong. Wrap all exceptions into it.
+     */
+    boolean shouldTransform(CtClass candidateClass) throws AfterBurnerImpossibleException;
+
+    /**
+     * Transforms a class.
+     * @param afterBurner the AfterBurner to use to inject code.
+     * @param classToTransform the class to transform.
+     * @throws CannotCompileException if some injected source can't be compiled.
+     * @throws AfterBurnerImpossibleException if something else goes wrong, wraps other exceptions.
+     * @throws NotFoundException if a type or method is not found.
+     */
+    void applyTransformations(AfterBurner afterBurner, CtClass classToTransform) throws CannotCompileException, AfterBurnerImpossibleException, NotFoundException;
+}
@@ -214,6 +214,146 @@ public class AfterBurnerTest {
         assertEquals(target, captured.getValue().getClassToInsertInto());
     }
 
+    @Test
+    public void testEditClass_mergesInsertionsIntoSameMethod() throws Exception {
+        // GIVEN
+        target.addMethod(CtNewMethod.make("public void bar() { }", target));
+        target.addMethod(CtNewMethod.make("public boolean foo() { bar(); return false; }", target));
+        target.addField(new CtField(CtClass.intType, "foo", target));
+        final InsertableMethod insertableMethodBefore = new SimpleInsertableMethod(target, "foo", "bar", null, "foo = foo * 10 + 1;", null);
+        final InsertableMethod insertableMethodAfter = new SimpleInsertableMethod(target, "foo", null, "bar", "foo = foo * 10 + 2;", null);
+        final InsertableMethod insertableMethodBefore2 = new SimpleInsertableMethod(target, "foo", "bar", null, "foo = foo * 10 + 3;", null);
+
+        // WHEN
+        afterBurner.editClass(target, new ClassEditor() {
+            @Override
+            public void edit(ClassEdit classEdit) throws AfterBurnerImpossibleException {
+                classEdit.addOrInsertMethod(insertableMethodBefore)
+                    .addOrInsertMethod(insertableMethodAfter)
+                    .addOrInsertMethod(insertableMethodBefore2);
+            }
+        });
+
+        // THEN
+        targetClass = target.toClass();
+        targetInstance = targetClass.newInstance();
+        assertHasFooMethodWithReturnValue(target, false);
+        assertHasFooFieldWithValue(target, 132);
+    }
+
+    @Test
+    public void testEditClass_mergesInsertionsDeclaringSameLocalsOrEndingWithComments() throws Exception {
+        // GIVEN
+        target.addMethod(CtNewMethod.make("public void bar() { }", target));
+        target.addMethod(CtNewMethod.make("public boolean foo() { bar(); return false; }", target));
+        target.addField(new CtField(CtClass.intType, "foo", target));
+        final InsertableMethod insertableMethodBefore = new SimpleInsertableMethod(target, "foo", "bar", null, "String digit = \"1\"; foo = foo * 10 + Integer.parseInt(digit); // first digit", null);
+        final InsertableMethod insertableMethodBefore2 = new SimpleInsertableMethod(target, "foo", "bar", null, "int digit = 2; foo = foo * 10 + digit;", null);
+
+        // WHEN
+        afterBurner.editClass(target, new ClassEditor() {
+            @Override
+            public void edit(ClassEdit classEdit) throws AfterBurnerImpossibleException {
+                classEdit.addOrInsertMethod(insertableMethodBefore)
+                    .addOrInsertMethod(insertableMethodBefore2);
+            }
+        });
+
+        // THEN
+        targetClass = target.toClass();
+        targetInstance = targetClass.newInstance();
+        assertHasFooMethodWithReturnValue(target, false);
+        assertHasFooFieldWithValue(target, 12);
+    }
+
+    @Test
+    public void testEditClass_createsMethodThenInsertsIntoIt() throws Exception {
+        // GIVEN
+        target.addMethod(CtNewMethod.make("public void bar() { }", target));
+        target.addField(new CtField(CtClass.intType, "foo", target));
+        final InsertableMethod insertableMethodCreate = new SimpleInsertableMethod(target, "foo", null, "bar", "foo = 1;", "public boolean foo() { bar(); return true; }");
+        final InsertableMethod insertableMethodAfter = new SimpleInsertableMethod(target, "foo", null, "bar", "foo = foo + 1;", null);
+
+        // WHEN
+        afterBurner.editClass(target, new ClassEditor() {
+            @Override
+            public void edit(ClassEdit classEdit) throws AfterBurnerImpossibleException {
+                classEdit.addOrInsertMethod(insertableMethodCreate)
+                    .addOrInsertMethod(insertableMethodAfter);
+            }
+        });
+
+        // THEN
+        targetClass = target.toClass();
+        targetInstance = targetClass.newInstance();
+        assertHasFooMethodWithReturnValue(target, true);
+        assertHasFooFieldWithValue(target, 1);
+    }
+
+    @Test
+    public void testEditClass_mergesConstructorInsertions() throws Exception {
+        // GIVEN
+        target.addConstructor(CtNewConstructor.make("public Target() {}", target));
+        target.addField(new CtField(CtClass.intType, "foo", target));
+        final InsertableConstructor insertableConstructor = new SimpleInsertableConstructor(target, "foo = 2;", true);
+        final InsertableConstructor insertableConstructor2 = new SimpleInsertableConstructor(target, "foo = foo * 3;", true);
+
+        // WHEN
+        afterBurner.editClass(target, new ClassEditor() {
+            @Override
+            public void edit(ClassEdit classEdit) throws AfterBurnerImpossibleException {
+                classEdit.insertConstructor(insertableConstructor)
+                    .insertConstructor(insertableConstructor2);
+            }
+        });
+
+        // THEN
+        targetClass = target.toClass();
+        targetInstance = targetClass.newInstance();
+        assertHasFooFieldWithValue(target, 6);
+    }
+
+    @Test
+    public void testEditClass_mergesConstructorInsertionsDeclaringSameLocals() throws Exception {
+        // GIVEN
+        target.addConstructor(CtNewConstructor.make("public Target() {}", target));
+        target.addField(new CtField(CtClass.intType, "foo", target));
+        final InsertableConstructor insertableConstructor = new SimpleInsertableConstructor(target, "String factor = \"2\"; foo = Integer.parseInt(factor);", true);
+        final InsertableConstructor insertableConstructor2 = new SimpleInsertableConstructor(target, "int factor = 3; foo = foo * factor;", true);
+
+        // WHEN
+        afterBurner.editClass(target, new ClassEditor() {
+            @Override
+            public void edit(ClassEdit classEdit) throws AfterBurnerImpossibleException {
+                classEdit.insertConstructor(insertableConstructor)
+                    .insertConstructor(insertableConstructor2);
+            }
+        });
+
+        // THEN
+        targetClass = target.toClass();
+        targetInstance = targetClass.newInstance();
+        assertHasFooFieldWithValue(target, 6);
+    }
+
+    @Test(expected = AfterBurnerImpossibleException.class)
+    public void testEditClass_rejectsInsertionsIntoAnotherClass() throws Exception {
+        // GIVEN
+        final CtClass otherClass = ClassPool.getDefault().makeClass("Other" + target.getName());
+        final InsertableMethod insertableMethod = new SimpleInsertableMethod(otherClass, "foo", null, null, null, "public boolean foo() { return true; }");
+
+        // WHEN
+        afterBurner.editClass(target, new ClassEditor() {
+            @Override
+            public void edit(ClassEdit classEdit) throws AfterBurnerImpossibleException {
+                classEdit.addOrInsertMethod(insertableMethod);
+            }
+        });
+
+        // THEN
+        fail();
+    }
+
     private void assertHasFooMethodWithReturnValue(CtClass clazz, boolean returnValue) throws Exception {
         CtMethod fooMethod = clazz.getDeclaredMethod("foo");
         assertNotNull(fooMethod);
@@ -0,0 +1,175 @@
+package com.github.stephanenicolas.afterburner;
+
+import static org.junit.Assert.assertEquals;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtMethod;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.annotation.Annotation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.inserts.InsertableConstructor;
+import com.github.stephanenicolas.afterburner.inserts.SimpleInsertableMethod;
+
+public class BodyAccessorsTest {
+
+    private static final String HOT_ANNOTATION = "test.Hot";
+
+    private AfterBurner afterBurner;
+    private CtClass target;
+    private CtMethod fooMethod;
+
+    @Before
+    public void setUp() throws Exception {
+        afterBurner = new AfterBurner();
+        target = ClassPool.getDefault().makeClass("Target" + TestCounter.testCounter++);
+        target.addField(CtField.make("public int count;", target));
+        target.addConstructor(CtNewConstructor.make("public " + target.getSimpleName() + "() {}", target));
+        target.addConstructor(CtNewConstructor.make("public " + target.getSimpleName() + "(int a) {}", target));
+        target.addMethod(CtNewMethod.make("public int bar(int a) { return a * 2; }", target));
+        fooMethod = CtNewMethod.make("public void foo() { bar(3); }", target);
+        target.addMethod(fooMethod);
+    }
+
+    @Test
+    public void testResolve_argumentAndResultAfterCall() throws Exception {
+        // GIVEN
+        String body = "count = " + BodyAccessors.arg(0) + " + " + BodyAccessors.RESULT + ";";
+
+        // WHEN
+        afterBurner.addOrInsertMethod(new SimpleInsertableMethod(target, "foo", null, "bar", body, null));
+
+        // THEN
+        Class<?> targetClass = target.toClass();
+        Object instance = targetClass.newInstance();
+        targetClass.getMethod("foo").invoke(instance);
+        assertEquals(9, targetClass.getField("count").get(instance));
+    }
+
+    @Test
+    public void testResolve_parameterOfFullMethodAndConstructor() throws Exception {
+        // GIVEN
+        String fullMethod = "public void baz(int a) { count = count + " + BodyAccessors.arg(0) + "; }";
+
+        // WHEN
+        afterBurner.addOrInsertMethod(new SimpleInsertableMethod(target, "baz", null, "qux", "", fullMethod));
+        afterBurner.insertConstructor(new InsertableConstructor(target) {
+            @Override
+            public String getConstructorBody(CtClass[] paramClasses) {
+                return "count = " + BodyAccessors.arg(0) + ";";
+            }
+
+            @Override
+            public boolean acceptParameters(CtClass[] paramClasses) {
+                return paramClasses.length == 1;
+            }
+        });
+
+        // THEN
+        Class<?> targetClass = target.toClass();
+        Object instance = targetClass.getConstructor(int.class).newInstance(4);
+        targetClass.getMethod("baz", int.class).invoke(instance, 5);
+        assertEquals(9, targetClass.getField("count").get(instance));
+    }
+
+    @Test(expected = AfterBurnerImpossibleException.class)
+    public void testResolve_resultBeforeCall() throws Exception {
+        // GIVEN
+        String body = "count = " + BodyAccessors.RESULT + ";";
+
+        // WHEN
+        afterBurner.addOrInsertMethod(new SimpleInsertableMethod(target, "foo", "bar", null, body, null));
+    }
+
+    @Test
+    public void testResolve_typedArgumentAndResult() throws Exception {
+        // GIVEN
+        String body = "count = " + BodyAccessors.arg(0, "int") + " + " + BodyAccessors.result("int") + ";";
+
+        // WHEN
+        afterBurner.addOrInsertMethod(new SimpleInsertableMethod(target, "foo", null, "bar", body, null));
+
+        // THEN
+        Class<?> targetClass = target.toClass();
+        Object instance = targetClass.newInstance();
+        targetClass.getMethod("foo").invoke(instance);
+        assertEquals(9, targetClass.getField("count").get(instance));
+    }
+
+    @Test(expected = AfterBurnerImpossibleException.class)
+    public void testCheck_rejectsArgumentOfAnotherType() throws Exception {
+        // GIVEN
+        String body = "count = (int) " + BodyAccessors.arg(0, "long") + ";";
+
+        // WHEN
+        afterBurner.addOrInsertMethod(new SimpleInsertableMethod(target, "foo", "bar", null, body, null));
+    }
+
+    @Test(expected = AfterBurnerImpossibleException.class)
+    public void testCheck_rejectsMissingArgument() throws Exception {
+        // GIVEN
+        String body = "count = " + BodyAccessors.arg(1) + ";";
+
+        // WHEN
+        afterBurner.addOrInsertMethod(new SimpleInsertableMethod(target, "foo", "bar", null, body, null));
+    }
+
+    @Test(expected = AfterBurnerImpossibleException.class)
+    public void testCheck_rejectsConstructorParameterOfAnotherType() throws Exception {
+        // GIVEN
+        InsertableConstructor insertableConstructor = new InsertableConstructor(target) {
+            @Override
+            public String getConstructorBody(CtClass[] paramClasses) {
+                return "count = " + BodyAccessors.arg(0, "java.lang.String") + ".length();";
+            }
+
+            @Override
+            public boolean acceptParameters(CtClass[] paramClasses) {
+                return paramClasses.length == 1;
+            }
+        };
+
+        // WHEN
+        afterBurner.insertConstructor(insertableConstructor);
+    }
+
+    @Test(expected = AfterBurnerImpossibleException.class)
+    public void testStrictMode_rejectsBoxingHelpersInHotMethods() throws Exception {
+        // GIVEN
+        markHot(fooMethod);
+        afterBurner.setHotMethodAnnotation(HOT_ANNOTATION);
+
+        // WHEN
+        afterBurner.addOrInsertMethod(new SimpleInsertableMethod(target, "foo", "bar", null, "count = $args.length;", null));
+    }
+
+    @Test
+    public void testStrictMode_acceptsBoxingHelpersInOtherMethods() throws Exception {
+        // GIVEN
+        afterBurner.setHotMethodAnnotation(HOT_ANNOTATION);
+
+        // WHEN
+        afterBurner.addOrInsertMethod(new SimpleInsertableMethod(target, "foo", "bar", null, "count = $args.length;", null));
+
+        // THEN
+        Class<?> targetClass = target.toClass();
+        Object instance = targetClass.newInstance();
+        targetClass.getMethod("foo").invoke(instance);
+        assertEquals(1, targetClass.getField("count").get(instance));
+    }
+
+    private void markHot(CtMethod method) {
+        ConstPool constPool = method.getMethodInfo().getConstPool();
+        AnnotationsAttribute attribute = new AnnotationsAttribute(constPool, AnnotationsAttribute.invisibleTag);
+        attribute.addAnnotation(new Annotation(HOT_ANNOTATION, constPool));
+        method.getMethodInfo().addAttribute(attribute);
+    }
+}
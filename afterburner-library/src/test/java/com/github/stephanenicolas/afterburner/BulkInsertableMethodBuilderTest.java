@@ -0,0 +1,102 @@
+package com.github.stephanenicolas.afterburner;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewMethod;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.index.ClassIndex;
+import com.github.stephanenicolas.afterburner.index.ClassIndexBuilder;
+import com.github.stephanenicolas.afterburner.inserts.InsertableMethod;
+
+public class BulkInsertableMethodBuilderTest {
+
+    private ClassPool classPool;
+    private CtClass ancestor;
+    private CtClass child;
+    private CtClass grandChild;
+    private BulkInsertableMethodBuilder builder;
+
+    @Before
+    public void setUp() throws Exception {
+        classPool = new ClassPool(true);
+        String suffix = "" + TestCounter.testCounter;
+        TestCounter.testCounter++;
+        ancestor = classPool.makeClass("Ancestor" + suffix);
+        ancestor.addField(CtField.make("public int foo;", ancestor));
+        ancestor.addMethod(CtNewMethod.make("public void bar() { }", ancestor));
+        child = classPool.makeClass("Child" + suffix, ancestor);
+        grandChild = classPool.makeClass("GrandChild" + suffix, child);
+        grandChild.addMethod(CtNewMethod.make("public void bar() { super.bar(); }", grandChild));
+        ClassIndex classIndex = new ClassIndexBuilder()
+            .addClassFile(ancestor.toBytecode())
+            .addClassFile(child.toBytecode())
+            .addClassFile(grandChild.toBytecode())
+            .build();
+        ancestor.defrost();
+        child.defrost();
+        grandChild.defrost();
+        builder = new BulkInsertableMethodBuilder(new AfterBurner(), classIndex, classPool);
+    }
+
+    @Test
+    public void testCreateInsertableMethods_selectsSubclasses() throws Exception {
+        // GIVEN
+
+        // WHEN
+        List<InsertableMethod> methods = builder
+            .insertIntoSubclassesOf(ancestor.getName())
+            .afterOverrideMethod("bar")
+            .withBody("foo = 2;")
+            .createInsertableMethods();
+
+        // THEN
+        assertEquals(2, methods.size());
+        assertEquals(child, methods.get(0).getClassToInsertInto());
+        assertEquals(grandChild, methods.get(1).getClassToInsertInto());
+        assertEquals("bar", methods.get(0).getInsertionAfterMethod());
+    }
+
+    @Test
+    public void testDoIt_insertsIntoAllSubclasses() throws Exception {
+        // GIVEN
+
+        // WHEN
+        List<CtClass> modifiedClasses = builder
+            .insertIntoSubclassesOf(ancestor.getName())
+            .afterOverrideMethod("bar")
+            .withBody("foo = foo + 2;")
+            .doIt();
+
+        // THEN
+        assertEquals(2, modifiedClasses.size());
+        ancestor.toClass();
+        child.toClass();
+        Object instance = grandChild.toClass().newInstance();
+        instance.getClass().getMethod("bar").invoke(instance);
+        Field fooField = instance.getClass().getField("foo");
+        // once in GrandChild.bar, once in the override created in Child
+        assertEquals(4, fooField.get(instance));
+    }
+
+    @Test(expected = AfterBurnerImpossibleException.class)
+    public void testCreateInsertableMethods_withoutBody() throws Exception {
+        // GIVEN
+
+        // WHEN
+        builder
+            .insertIntoSubclassesOf(ancestor.getName())
+            .afterOverrideMethod("bar")
+            .withBody(null)
+            .createInsertableMethods();
+    }
+}
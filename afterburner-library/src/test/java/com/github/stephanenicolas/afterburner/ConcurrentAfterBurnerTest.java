@@ -0,0 +1,148 @@
+package com.github.stephanenicolas.afterburner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.stephanenicolas.afterburner.inserts.SimpleInsertableConstructor;
+import com.github.stephanenicolas.afterburner.inserts.SimpleInsertableMethod;
+
+public class ConcurrentAfterBurnerTest {
+
+    private static final int CLASS_COUNT = 8;
+    private static final int THREAD_COUNT = 4;
+    private static final int INSERTIONS_PER_THREAD = 5;
+
+    private ConcurrentAfterBurner concurrentAfterBurner;
+    private List<CtClass> targets;
+
+    @Before
+    public void setUp() throws Exception {
+        concurrentAfterBurner = new ConcurrentAfterBurner(3, null);
+        targets = new ArrayList<CtClass>();
+        for (int indexClass = 0; indexClass < CLASS_COUNT; indexClass++) {
+            CtClass target = ClassPool.getDefault().makeClass("Target" + TestCounter.testCounter++);
+            target.addField(CtField.make("public int count;", target));
+            target.addField(CtField.make("public int constructed;", target));
+            target.addConstructor(CtNewConstructor.make("public " + target.getSimpleName() + "() {}", target));
+            target.addMethod(CtNewMethod.make("public void bar() { }", target));
+            target.addMethod(CtNewMethod.make("public void foo() { bar(); }", target));
+            targets.add(target);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        concurrentAfterBurner.shutdown(1, TimeUnit.MINUTES);
+    }
+
+    @Test
+    public void testSubmit_fromManyThreads() throws Exception {
+        // GIVEN
+        ExecutorService submitters = Executors.newFixedThreadPool(THREAD_COUNT);
+        List<Future<List<Future<CtClass>>>> submissions = new ArrayList<Future<List<Future<CtClass>>>>();
+
+        // WHEN
+        for (int indexThread = 0; indexThread < THREAD_COUNT; indexThread++) {
+            submissions.add(submitters.submit(new Callable<List<Future<CtClass>>>() {
+                @Override
+                public List<Future<CtClass>> call() throws Exception {
+                    List<Future<CtClass>> results = new ArrayList<Future<CtClass>>();
+                    for (int indexInsertion = 0; indexInsertion < INSERTIONS_PER_THREAD; indexInsertion++) {
+                        for (CtClass target : targets) {
+                            results.add(concurrentAfterBurner.submit(new SimpleInsertableMethod(target, "foo", null, "bar", "count++;", null)));
+                        }
+                    }
+                    return results;
+                }
+            }));
+        }
+        for (CtClass target : targets) {
+            concurrentAfterBurner.submit(new SimpleInsertableConstructor(target, "constructed++;", true));
+        }
+        for (Future<List<Future<CtClass>>> submission : submissions) {
+            for (Future<CtClass> result : submission.get()) {
+                result.get();
+            }
+        }
+        submitters.shutdown();
+
+        // THEN
+        for (CtClass target : targets) {
+            byte[] bytecode = concurrentAfterBurner.serialize(target).get();
+            assertTrue(bytecode.length > 0);
+            Class<?> targetClass = target.toClass();
+            Object instance = targetClass.newInstance();
+            targetClass.getMethod("foo").invoke(instance);
+            assertEquals(THREAD_COUNT * INSERTIONS_PER_THREAD, targetClass.getField("count").get(instance));
+            assertEquals(1, targetClass.getField("constructed").get(instance));
+        }
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testSubmit_afterShutdownIsRejected() throws Exception {
+        // GIVEN
+        CtClass target = targets.get(0);
+        concurrentAfterBurner.shutdown(1, TimeUnit.MINUTES);
+        try {
+            concurrentAfterBurner.submit(new SimpleInsertableMethod(target, "foo", null, "bar", "count++;", null));
+            fail();
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        // WHEN
+        concurrentAfterBurner.submit(new SimpleInsertableMethod(target, "foo", null, "bar", "count++;", null));
+    }
+
+    @Test
+    public void testSubmit_returnsModifiedClass() throws Exception {
+        // GIVEN
+        CtClass target = targets.get(0);
+
+        // WHEN
+        Future<CtClass> result = concurrentAfterBurner.submit(new SimpleInsertableMethod(target, "foo", "bar", null, "count++;", null));
+
+        // THEN
+        assertSame(target, result.get());
+    }
+
+    @Test
+    public void testSubmit_failureIsReported() throws Exception {
+        // GIVEN
+        CtClass target = targets.get(0);
+
+        // WHEN
+        Future<CtClass> result = concurrentAfterBurner.submit(new SimpleInsertableMethod(target, "foo", "qurk", null, "count++;", null));
+
+        // THEN
+        try {
+            result.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof CannotCompileException);
+        }
+    }
+}
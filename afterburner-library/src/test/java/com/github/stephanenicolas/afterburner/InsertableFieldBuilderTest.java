@@ -0,0 +1,130 @@
+package com.github.stephanenicolas.afterburner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.inserts.InsertableField;
+import com.github.stephanenicolas.afterburner.inserts.InsertableField.Padding;
+
+public class InsertableFieldBuilderTest {
+
+    private InsertableFieldBuilder builder;
+    private CtClass target;
+
+    @Before
+    public void setUp() {
+        builder = new InsertableFieldBuilder(new AfterBurner());
+        target = ClassPool.getDefault().makeClass("FieldTarget" + TestCounter.testCounter++);
+    }
+
+    @Test
+    public void testDoIt_calls_afterburner() throws Exception {
+        //GIVEN
+        AfterBurner afterBurnerMock = EasyMock.createMock(AfterBurner.class);
+        afterBurnerMock.addField((InsertableField) EasyMock.anyObject());
+        EasyMock.replay(afterBurnerMock);
+
+        //WHEN
+        new InsertableFieldBuilder(afterBurnerMock).insertIntoClass(target).withField("int", "count").doIt();
+
+        //THEN
+        EasyMock.verify(afterBurnerMock);
+    }
+
+    @Test(expected = AfterBurnerImpossibleException.class)
+    public void testCheckAllFields_should_throw_exceptions_if_no_field_defined() throws Exception {
+        //GIVEN
+        //WHEN
+        builder.insertIntoClass(target).withField(null, "count").createInsertableField();
+
+        //THEN
+    }
+
+    @Test
+    public void testDoIt_surroundingPaddingAndAccessors() throws Exception {
+        //GIVEN
+        //WHEN
+        builder.insertIntoClass(target).withField("long", "hits").initializedBy("3L").paddedBy(Padding.SURROUNDING).withAtomicAccessors().doIt();
+
+        //THEN
+        Class<?> targetClass = target.toClass();
+        Field[] fields = targetClass.getDeclaredFields();
+        int indexHits = 0;
+        while (!fields[indexHits].getName().equals("hits")) {
+            indexHits++;
+        }
+        assertEquals(FieldInserter.PADDING_LONG_COUNT, indexHits);
+        assertTrue(Modifier.isVolatile(fields[indexHits].getModifiers()));
+        assertEquals(long.class, fields[indexHits + FieldInserter.PADDING_LONG_COUNT].getType());
+        Object instance = targetClass.newInstance();
+        assertEquals(4L, targetClass.getMethod("incrementAndGetHits").invoke(instance));
+        assertEquals(6L, targetClass.getMethod("addAndGetHits", long.class).invoke(instance, 2L));
+        assertEquals(true, targetClass.getMethod("compareAndSetHits", long.class, long.class).invoke(instance, 6L, 10L));
+        assertEquals(10L, targetClass.getMethod("getHits").invoke(instance));
+    }
+
+    @Test
+    public void testDoIt_holderAndAccessors() throws Exception {
+        //GIVEN
+        //WHEN
+        builder.insertIntoClass(target).withField("long", "hits").paddedBy(Padding.HOLDER).withAtomicAccessors().doIt();
+
+        //THEN
+        Class<?> targetClass = target.toClass();
+        Object instance = targetClass.newInstance();
+        assertEquals(1L, targetClass.getMethod("incrementAndGetHits").invoke(instance));
+        assertEquals(1L, targetClass.getMethod("getHits").invoke(instance));
+        assertEquals(2 * FieldInserter.PADDING_LONG_COUNT + 1, targetClass.getDeclaredField("hits").getType()
+                .getMethod("length").invoke(getField(targetClass, instance, "hits")));
+    }
+
+    @Test
+    public void testDoIt_referenceAndIntAccessors() throws Exception {
+        //GIVEN
+        //WHEN
+        builder.insertIntoClass(target).withField("java.lang.String", "name").initializedBy("\"foo\"").withAtomicAccessors().doIt();
+        new InsertableFieldBuilder(new AfterBurner()).insertIntoClass(target).withField("int", "count").withAtomicAccessors().doIt();
+
+        //THEN
+        Class<?> targetClass = target.toClass();
+        Object instance = targetClass.newInstance();
+        assertEquals(true, targetClass.getMethod("compareAndSetName", String.class, String.class).invoke(instance, "foo", "bar"));
+        assertEquals("bar", targetClass.getMethod("getName").invoke(instance));
+        assertEquals(1, targetClass.getMethod("incrementAndGetCount").invoke(instance));
+    }
+
+    @Test(expected = AfterBurnerImpossibleException.class)
+    public void testDoIt_surroundingPaddingOfIntFails() throws Exception {
+        //GIVEN
+        //WHEN
+        builder.insertIntoClass(target).withField("int", "count").paddedBy(Padding.SURROUNDING).doIt();
+
+        //THEN
+    }
+
+    @Test(expected = AfterBurnerImpossibleException.class)
+    public void testDoIt_accessorsOfStaticFieldFail() throws Exception {
+        //GIVEN
+        //WHEN
+        builder.insertIntoClass(target).withField("long", "count").withModifiers(javassist.Modifier.STATIC).withAtomicAccessors().doIt();
+
+        //THEN
+    }
+
+    private Object getField(Class<?> targetClass, Object instance, String fieldName) throws Exception {
+        Field field = targetClass.getDeclaredField(fieldName);
+        field.setAccessible(true);
+        return field.get(instance);
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.stephanenicolas.afterburner;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.CtNewMethod;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.stephanenicolas.afterburner.inserts.SimpleInsertableMethod;
+import com.github.stephanenicolas.afterburner.runtime.EventFileReader;
+import com.github.stephanenicolas.afterburner.runtime.EventHandler;
+import com.github.stephanenicolas.afterburner.runtime.Probes;
+
+public class ProbeBodiesTest {
+
+    private AfterBurner afterBurner;
+    private CtClass target;
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        afterBurner = new AfterBurner();
+        target = ClassPool.getDefault().makeClass("Target" + TestCounter.testCounter++);
+        target.addMethod(CtNewMethod.make("public int bar(int a) { return a * 2; }", target));
+        CtMethod fooMethod = CtNewMethod.make("public void foo() { bar(3); }", target);
+        target.addMethod(fooMethod);
+        file = File.createTempFile("probes", ".bin");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Probes.stop();
+        file.delete();
+    }
+
+    @Test
+    public void testEmit_beforeAndAfterCall() throws Exception {
+        // GIVEN
+        afterBurner.addOrInsertMethod(new SimpleInsertableMethod(target, "foo", "bar", null, ProbeBodies.emit(1, BodyAccessors.arg(0)), null));
+        afterBurner.addOrInsertMethod(new SimpleInsertableMethod(target, "foo", null, "bar", ProbeBodies.emit(2, BodyAccessors.RESULT), null));
+        afterBurner.addOrInsertMethod(new SimpleInsertableMethod(target, "foo", null, "bar", ProbeBodies.emit(3), null));
+        Class<?> targetClass = target.toClass();
+        Probes.start(file, 16);
+
+        // WHEN
+        targetClass.getMethod("foo").invoke(targetClass.newInstance());
+        Probes.stop();
+
+        // THEN
+        final List<String> events = new ArrayList<String>();
+        EventFileReader.read(file, new EventHandler() {
+            @Override
+            public void onEvent(long timestamp, long threadId, int eventId, long value) {
+                events.add(eventId + ":" + value);
+            }
+        });
+        // the order of several insertions after the same call is not specified
+        Collections.sort(events);
+        assertEquals(3, events.size());
+        assertEquals("1:3", events.get(0));
+        assertEquals("2:6", events.get(1));
+        assertEquals("3:0", events.get(2));
+    }
+}
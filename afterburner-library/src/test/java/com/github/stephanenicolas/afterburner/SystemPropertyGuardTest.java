@@ -0,0 +1,133 @@
+package com.github.stephanenicolas.afterburner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Modifier;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.stephanenicolas.afterburner.inserts.InsertableMethod;
+
+public class SystemPropertyGuardTest {
+
+    private AfterBurner afterBurner;
+    private CtClass target;
+    private String property;
+
+    @Before
+    public void setUp() throws Exception {
+        afterBurner = new AfterBurner();
+        target = ClassPool.getDefault().makeClass("Target" + TestCounter.testCounter++);
+        target.addField(CtField.make("public int count;", target));
+        target.addConstructor(CtNewConstructor.make("public " + target.getSimpleName() + "() {}", target));
+        target.addMethod(CtNewMethod.make("public void bar() { }", target));
+        target.addMethod(CtNewMethod.make("public void foo() { bar(); }", target));
+        property = "afterburner.test.flag" + TestCounter.testCounter++;
+    }
+
+    @Test
+    public void testGuardedBySystemProperty_whenPropertyIsNotSet() throws Exception {
+        // GIVEN
+        insertGuardedCode();
+
+        // WHEN
+        Object instance = invokeFoo();
+
+        // THEN
+        assertEquals(0, instance.getClass().getField("count").get(instance));
+    }
+
+    @Test
+    public void testGuardedBySystemProperty_whenPropertyIsSet() throws Exception {
+        // GIVEN
+        insertGuardedCode();
+        System.setProperty(property, "true");
+
+        // WHEN
+        Object instance;
+        try {
+            instance = invokeFoo();
+        } finally {
+            System.clearProperty(property);
+        }
+
+        // THEN
+        assertEquals(2, instance.getClass().getField("count").get(instance));
+    }
+
+    @Test
+    public void testGuardedBySystemProperty_flagIsStaticFinal() throws Exception {
+        // GIVEN
+        insertGuardedCode();
+
+        // WHEN
+        Class<?> targetClass = target.toClass();
+
+        // THEN
+        int modifiers = targetClass.getDeclaredField(SystemPropertyGuard.getFieldName(property)).getModifiers();
+        assertTrue(Modifier.isStatic(modifiers) && Modifier.isFinal(modifiers));
+        // count and a single flag, shared by both guards
+        assertEquals(2, targetClass.getDeclaredFields().length);
+    }
+
+    @Test
+    public void testGuardedBySystemProperty_flagIsAddedWhenInsertionIsApplied() throws Exception {
+        // GIVEN
+        InsertableMethod insertableMethod = new InsertableMethodBuilder(afterBurner)
+            .insertIntoClass(target)
+            .inMethodIfExists("foo")
+            .afterACallTo("bar")
+            .withBody("count++;")
+            .elseCreateMethodIfNotExists("")
+            .guardedBySystemProperty(property)
+            .createInsertableMethod();
+        assertFalse(hasFlagField());
+
+        // WHEN
+        afterBurner.addOrInsertMethod(insertableMethod);
+
+        // THEN
+        assertTrue(hasFlagField());
+    }
+
+    private boolean hasFlagField() {
+        for (CtField field : target.getDeclaredFields()) {
+            if (field.getName().equals(SystemPropertyGuard.getFieldName(property))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void insertGuardedCode() throws Exception {
+        new InsertableMethodBuilder(afterBurner)
+            .insertIntoClass(target)
+            .inMethodIfExists("foo")
+            .afterACallTo("bar")
+            .withBody("count++;")
+            .elseCreateMethodIfNotExists("")
+            .guardedBySystemProperty(property)
+            .doIt();
+        new InsertableConstructorBuilder(afterBurner)
+            .insertIntoClass(target)
+            .withBody("count++;")
+            .guardedBySystemProperty(property)
+            .doIt();
+    }
+
+    private Object invokeFoo() throws Exception {
+        Class<?> targetClass = target.toClass();
+        Object instance = targetClass.newInstance();
+        targetClass.getMethod("foo").invoke(instance);
+        return instance;
+    }
+}
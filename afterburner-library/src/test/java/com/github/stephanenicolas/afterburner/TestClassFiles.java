@@ -0,0 +1,25 @@
+package com.github.stephanenicolas.afterburner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.github.stephanenicolas.afterburner.io.ClassFiles;
+
+/**
+ * Copies the class files of fixtures, as compiled by javac, to the input directory of a transformation.
+ */
+public final class TestClassFiles {
+
+    private TestClassFiles() {
+    }
+
+    public static void copyClassFile(String className, File directory) throws IOException {
+        InputStream inputStream = TestClassFiles.class.getClassLoader().getResourceAsStream(className.replace('.', '/') + ".class");
+        try {
+            ClassFiles.write(ClassFiles.getClassFile(directory, className), ClassFiles.readFully(inputStream));
+        } finally {
+            inputStream.close();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.stephanenicolas.afterburner.bytecode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewMethod;
+import javassist.Modifier;
+import javassist.bytecode.AttributeInfo;
+import javassist.bytecode.ClassFile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.stephanenicolas.afterburner.TestCounter;
+
+public class ClassFileParserTest {
+
+    private ClassPool classPool;
+    private CtClass target;
+
+    @Before
+    public void setUp() {
+        classPool = new ClassPool(true);
+        target = classPool.makeClass("Target" + TestCounter.testCounter);
+        TestCounter.testCounter++;
+    }
+
+    @Test
+    public void testParse_readsHierarchy() throws Exception {
+        // GIVEN
+        target.setSuperclass(classPool.get("java.util.AbstractList"));
+        target.addInterface(classPool.get("java.io.Serializable"));
+        target.addInterface(classPool.get("java.lang.Cloneable"));
+        target.addField(CtField.make("private long foo = 2L;", target));
+        target.addField(CtField.make("private double bar = 3.0;", target));
+        target.addMethod(CtNewMethod.make("public Object get(int i) { return \"foo\" + i; }", target));
+        target.addMethod(CtNewMethod.make("public int size() { return 0; }", target));
+
+        // WHEN
+        ClassFileParser parser = new ClassFileParser(target.toBytecode());
+
+        // THEN
+        assertEquals(target.getName(), parser.getClassName());
+        assertEquals("java.util.AbstractList", parser.getSuperclassName());
+        assertArrayEquals(new String[] {"java.io.Serializable", "java.lang.Cloneable"}, parser.getInterfaceNames());
+        assertEquals(Modifier.PUBLIC, parser.getAccessFlags() & Modifier.PUBLIC);
+    }
+
+    @Test
+    public void testGetAttribute() throws Exception {
+        // GIVEN
+        ClassFile classFile = target.getClassFile();
+        byte[] content = new byte[] {1, 2, 3};
+        classFile.addAttribute(new AttributeInfo(classFile.getConstPool(), "Foo", content));
+        target.addMethod(CtNewMethod.make("public void foo() { }", target));
+
+        // WHEN
+        ClassFileParser parser = new ClassFileParser(target.toBytecode());
+
+        // THEN
+        assertArrayEquals(content, parser.getAttribute("Foo"));
+        assertNull(parser.getAttribute("Bar"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testParse_rejectsInvalidClassFile() throws Exception {
+        // GIVEN
+        byte[] notAClassFile = new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12};
+
+        // WHEN
+        new ClassFileParser(notAClassFile);
+    }
+}
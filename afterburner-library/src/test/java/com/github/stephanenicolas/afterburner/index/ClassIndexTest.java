@@ -0,0 +1,130 @@
+package com.github.stephanenicolas.afterburner.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.annotation.Annotation;
+import javassist.bytecode.annotation.StringMemberValue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClassIndexTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private ClassPool classPool;
+    private File classesDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        classPool = new ClassPool(true);
+        classesDirectory = temporaryFolder.newFolder("classes");
+        CtClass a = makeClass("index.A", null);
+        CtClass b = makeClass("index.B", a);
+        makeClass("index.C", b);
+        CtClass i = classPool.makeInterface("index.I");
+        CtClass j = classPool.makeInterface("index.J", i);
+        CtClass d = makeClass("index.D", null);
+        d.addInterface(j);
+        makeClass("index.E", d);
+        CtClass f = makeClass("index.F", null);
+        annotate(f, "index.Traced", true);
+        CtClass g = makeClass("index.G", null);
+        annotate(g, "index.Traced", false);
+        for (CtClass ctClass : Arrays.asList(a, b, i, j, d, f, g, classPool.get("index.C"), classPool.get("index.E"))) {
+            ctClass.writeFile(classesDirectory.getAbsolutePath());
+        }
+    }
+
+    @Test
+    public void testBuild_fromDirectory() throws Exception {
+        // GIVEN
+        ClassIndexBuilder builder = new ClassIndexBuilder();
+
+        // WHEN
+        ClassIndex classIndex = builder.addDirectory(classesDirectory).build();
+
+        // THEN
+        assertIndexIsComplete(classIndex);
+    }
+
+    @Test
+    public void testBuild_fromJar() throws Exception {
+        // GIVEN
+        File jar = temporaryFolder.newFile("classes.jar");
+        ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(jar));
+        for (String className : Arrays.asList("index.A", "index.B", "index.C", "index.D", "index.E", "index.F", "index.G", "index.I", "index.J")) {
+            zipOutputStream.putNextEntry(new ZipEntry(className.replace('.', '/') + ".class"));
+            zipOutputStream.write(classPool.get(className).toBytecode());
+            zipOutputStream.closeEntry();
+        }
+        zipOutputStream.close();
+
+        // WHEN
+        ClassIndex classIndex = new ClassIndexBuilder().addJar(jar).build();
+
+        // THEN
+        assertIndexIsComplete(classIndex);
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        // GIVEN
+        ClassIndex classIndex = new ClassIndexBuilder().addDirectory(classesDirectory).build();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        // WHEN
+        classIndex.writeTo(outputStream);
+        ClassIndex loadedClassIndex = ClassIndex.readFrom(new ByteArrayInputStream(outputStream.toByteArray()));
+
+        // THEN
+        assertIndexIsComplete(loadedClassIndex);
+        assertTrue(loadedClassIndex.getIndexedClass("index.J").isInterface());
+    }
+
+    private void assertIndexIsComplete(ClassIndex classIndex) {
+        assertEquals(9, classIndex.getClassNames().size());
+        assertEquals(Arrays.asList("index.B", "index.C"), classIndex.getSubclassesOf("index.A"));
+        assertEquals(Collections.emptyList(), classIndex.getSubclassesOf("index.C"));
+        assertTrue(classIndex.getSubclassesOf("java.lang.Object").containsAll(Arrays.asList("index.A", "index.B", "index.C", "index.D", "index.E")));
+        assertEquals(Arrays.asList("index.D", "index.E"), classIndex.getImplementationsOf("index.I"));
+        assertEquals(Arrays.asList("index.F", "index.G"), classIndex.getClassesAnnotatedWith("index.Traced"));
+        assertEquals("index.B", classIndex.getIndexedClass("index.C").getSuperclassName());
+        assertNull(classIndex.getIndexedClass("java.lang.Object"));
+    }
+
+    private CtClass makeClass(String name, CtClass superclass) throws Exception {
+        CtClass ctClass = classPool.makeClass(name);
+        if (superclass != null) {
+            ctClass.setSuperclass(superclass);
+        }
+        return ctClass;
+    }
+
+    private void annotate(CtClass ctClass, String annotationName, boolean visible) {
+        ClassFile classFile = ctClass.getClassFile();
+        AnnotationsAttribute attribute = new AnnotationsAttribute(classFile.getConstPool(), visible ? AnnotationsAttribute.visibleTag : AnnotationsAttribute.invisibleTag);
+        Annotation annotation = new Annotation(annotationName, classFile.getConstPool());
+        annotation.addMemberValue("value", new StringMemberValue("foo", classFile.getConstPool()));
+        attribute.addAnnotation(annotation);
+        classFile.addAttribute(attribute);
+    }
+}
@@ -0,0 +1,184 @@
+package com.github.stephanenicolas.afterburner.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.CtNewMethod;
+import javassist.bytecode.AccessFlag;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.stephanenicolas.afterburner.AfterBurner;
+import com.github.stephanenicolas.afterburner.TestCounter;
+import com.github.stephanenicolas.afterburner.inserts.MethodSignature;
+
+public class HierarchyCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File classesDirectory;
+    private String ancestorName;
+    private String parentName;
+    private String interfaceName;
+
+    @Before
+    public void setUp() throws Exception {
+        ClassPool classPool = new ClassPool(true);
+        classesDirectory = temporaryFolder.newFolder("classes");
+        String suffix = "" + TestCounter.testCounter++;
+        CtClass ancestor = classPool.makeClass("cache.Ancestor" + suffix);
+        ancestor.addMethod(CtNewMethod.make("public void foo(int a, String b) throws java.io.IOException { }", ancestor));
+        ancestor.addMethod(CtNewMethod.make("private void secret() { }", ancestor));
+        CtMethod bridge = CtNewMethod.make("public Object generated() { return null; }", ancestor);
+        bridge.getMethodInfo().setAccessFlags(AccessFlag.PUBLIC | AccessFlag.BRIDGE | AccessFlag.SYNTHETIC);
+        ancestor.addMethod(bridge);
+        CtClass parent = classPool.makeClass("cache.Parent" + suffix, ancestor);
+        CtClass anInterface = classPool.makeInterface("cache.I" + suffix);
+        anInterface.addMethod(CtNewMethod.make("public abstract void bar();", anInterface));
+        parent.addInterface(anInterface);
+        for (CtClass ctClass : Arrays.asList(ancestor, parent, anInterface)) {
+            ctClass.writeFile(classesDirectory.getAbsolutePath());
+        }
+        ancestorName = ancestor.getName();
+        parentName = parent.getName();
+        interfaceName = anInterface.getName();
+    }
+
+    @Test
+    public void testFindInheritedMethod_inSuperclasses() throws Exception {
+        // GIVEN
+        HierarchyCache hierarchyCache = new HierarchyCache();
+
+        // WHEN
+        MethodSignature method = hierarchyCache.findInheritedMethod(makeTargetClass(), "foo");
+
+        // THEN
+        assertEquals(ancestorName, method.getDeclaringClassName());
+        assertEquals("(ILjava/lang/String;)V", method.getDescriptor());
+        assertEquals(Arrays.asList("java.io.IOException"), method.getExceptionTypeNames());
+        assertEquals(2, hierarchyCache.getParsedClassCount());
+    }
+
+    @Test
+    public void testFindInheritedMethod_inInterfaces() throws Exception {
+        // GIVEN
+        HierarchyCache hierarchyCache = new HierarchyCache();
+
+        // WHEN
+        MethodSignature method = hierarchyCache.findInheritedMethod(makeTargetClass(), "bar");
+
+        // THEN
+        assertEquals(interfaceName, method.getDeclaringClassName());
+    }
+
+    @Test
+    public void testFindInheritedMethod_ignoresPrivateMethods() throws Exception {
+        // GIVEN
+        HierarchyCache hierarchyCache = new HierarchyCache();
+
+        // WHEN
+        MethodSignature method = hierarchyCache.findInheritedMethod(makeTargetClass(), "secret");
+
+        // THEN
+        assertNull(method);
+    }
+
+    @Test
+    public void testFindInheritedMethod_ignoresBridgeMethods() throws Exception {
+        // GIVEN
+        HierarchyCache hierarchyCache = new HierarchyCache();
+
+        // WHEN
+        MethodSignature method = hierarchyCache.findInheritedMethod(makeTargetClass(), "generated");
+
+        // THEN
+        assertNull(method);
+    }
+
+    @Test
+    public void testFindInheritedMethod_scopedByClassPath() throws Exception {
+        // GIVEN
+        HierarchyCache hierarchyCache = new HierarchyCache();
+        hierarchyCache.findInheritedMethod(makeTargetClass(), "foo");
+        File otherClassesDirectory = temporaryFolder.newFolder("otherClasses");
+        new ClassPool(true).makeClass(parentName).writeFile(otherClassesDirectory.getAbsolutePath());
+
+        // WHEN
+        MethodSignature method = hierarchyCache.findInheritedMethod(makeTargetClass(otherClassesDirectory), "foo");
+
+        // THEN
+        assertNull(method);
+    }
+
+    @Test
+    public void testFindInheritedMethod_doesNotParseTwice() throws Exception {
+        // GIVEN
+        HierarchyCache hierarchyCache = new HierarchyCache();
+        hierarchyCache.findInheritedMethod(makeTargetClass(), "foo");
+
+        // WHEN
+        hierarchyCache.findInheritedMethod(makeTargetClass(), "foo");
+
+        // THEN
+        assertEquals(2, hierarchyCache.getParsedClassCount());
+    }
+
+    @Test
+    public void testSaveAndLoad_warmCacheDoesNotParse() throws Exception {
+        // GIVEN
+        HierarchyCache hierarchyCache = new HierarchyCache();
+        hierarchyCache.findInheritedMethod(makeTargetClass(), "bar");
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        hierarchyCache.writeTo(outputStream);
+
+        // WHEN
+        HierarchyCache loadedHierarchyCache = HierarchyCache.readFrom(new ByteArrayInputStream(outputStream.toByteArray()));
+        MethodSignature method = loadedHierarchyCache.findInheritedMethod(makeTargetClass(), "foo");
+
+        // THEN
+        assertEquals(ancestorName, method.getDeclaringClassName());
+        assertEquals(Arrays.asList("java.io.IOException"), method.getExceptionTypeNames());
+        assertEquals(0, loadedHierarchyCache.getParsedClassCount());
+    }
+
+    @Test
+    public void testAfterOverrideMethod_usesHierarchyCache() throws Exception {
+        // GIVEN
+        AfterBurner afterBurner = new AfterBurner();
+        HierarchyCache hierarchyCache = new HierarchyCache();
+        afterBurner.setHierarchyCache(hierarchyCache);
+        CtClass targetClass = makeTargetClass();
+
+        // WHEN
+        afterBurner.afterOverrideMethod(targetClass, "foo", "System.out.println();");
+
+        // THEN
+        CtMethod override = targetClass.getDeclaredMethod("foo");
+        assertEquals("(ILjava/lang/String;)V", override.getSignature());
+        assertEquals(2, hierarchyCache.getParsedClassCount());
+    }
+
+    private CtClass makeTargetClass() throws Exception {
+        return makeTargetClass(classesDirectory);
+    }
+
+    private CtClass makeTargetClass(File directory) throws Exception {
+        ClassPool classPool = new ClassPool(true);
+        classPool.appendClassPath(directory.getAbsolutePath());
+        CtClass targetClass = classPool.makeClass("cache.Target" + TestCounter.testCounter++);
+        targetClass.getClassFile2().setSuperclass(parentName);
+        return targetClass;
+    }
+}
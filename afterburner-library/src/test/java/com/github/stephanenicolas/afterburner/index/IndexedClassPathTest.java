@@ -0,0 +1,133 @@
+package com.github.stephanenicolas.afterburner.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.stephanenicolas.afterburner.io.ClassFiles;
+
+public class IndexedClassPathTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private ClassPool classPool;
+    private File jar;
+    private File classesDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        classPool = new ClassPool(true);
+        CtClass stored = classPool.makeClass("classpath.Stored");
+        stored.addMethod(CtNewMethod.make("public int foo() { return 1; }", stored));
+        CtClass deflated = classPool.makeClass("classpath.Deflated");
+        deflated.addMethod(CtNewMethod.make("public int foo() { return 2; }", deflated));
+        CtClass shadowed = classPool.makeClass("classpath.Shadowed");
+        jar = temporaryFolder.newFile("classes.jar");
+        ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(jar));
+        zipOutputStream.setComment("a comment at the end of the jar");
+        zipOutputStream.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+        zipOutputStream.write("Manifest-Version: 1.0\n".getBytes("UTF-8"));
+        putStoredEntry(zipOutputStream, stored);
+        zipOutputStream.putNextEntry(new ZipEntry("classpath/Deflated.class"));
+        zipOutputStream.write(deflated.toBytecode());
+        zipOutputStream.putNextEntry(new ZipEntry("classpath/Shadowed.class"));
+        zipOutputStream.write(shadowed.toBytecode());
+        zipOutputStream.close();
+        shadowed.defrost();
+        shadowed.addMethod(CtNewMethod.make("public int bar() { return 3; }", shadowed));
+        classesDirectory = temporaryFolder.newFolder("classes");
+        shadowed.writeFile(classesDirectory.getAbsolutePath());
+    }
+
+    @Test
+    public void testGetClassFile_fromJar() throws Exception {
+        // GIVEN
+        IndexedClassPath indexedClassPath = new IndexedClassPath(Arrays.asList(jar.getAbsolutePath()));
+
+        // WHEN
+        byte[] storedClassFile = indexedClassPath.getClassFile("classpath.Stored");
+        byte[] deflatedClassFile = indexedClassPath.getClassFile("classpath.Deflated");
+
+        // THEN
+        assertEquals(3, indexedClassPath.size());
+        assertArrayEquals(classPool.get("classpath.Stored").toBytecode(), storedClassFile);
+        assertArrayEquals(classPool.get("classpath.Deflated").toBytecode(), deflatedClassFile);
+        assertNull(indexedClassPath.getClassFile("classpath.Missing"));
+        assertFalse(indexedClassPath.contains("classpath.Missing"));
+    }
+
+    @Test
+    public void testGetClassFile_firstEntryWins() throws Exception {
+        // GIVEN
+        IndexedClassPath indexedClassPath = new IndexedClassPath(Arrays.asList(classesDirectory.getAbsolutePath(), jar.getAbsolutePath()));
+
+        // WHEN
+        byte[] shadowedClassFile = indexedClassPath.getClassFile("classpath.Shadowed");
+
+        // THEN
+        assertArrayEquals(ClassFiles.readFully(new File(classesDirectory, "classpath/Shadowed.class")), shadowedClassFile);
+    }
+
+    @Test
+    public void testFind_urlIsReadable() throws Exception {
+        // GIVEN
+        IndexedClassPath indexedClassPath = new IndexedClassPath(Arrays.asList(jar.getAbsolutePath()));
+
+        // WHEN
+        InputStream inputStream = indexedClassPath.find("classpath.Deflated").openStream();
+
+        // THEN
+        try {
+            assertArrayEquals(indexedClassPath.getClassFile("classpath.Deflated"), ClassFiles.readFully(inputStream));
+        } finally {
+            inputStream.close();
+        }
+        assertNull(indexedClassPath.find("classpath.Missing"));
+    }
+
+    @Test
+    public void testClassPool_loadsClassesFromIndex() throws Exception {
+        // GIVEN
+        ClassPool indexedClassPool = new ClassPool(true);
+        indexedClassPool.appendClassPath(new IndexedClassPath(Arrays.asList(jar.getAbsolutePath() + "", temporaryFolder.getRoot().getAbsolutePath() + "/*")));
+
+        // WHEN
+        CtClass deflated = indexedClassPool.get("classpath.Deflated");
+
+        // THEN
+        assertEquals("foo", deflated.getDeclaredMethods()[0].getName());
+        assertTrue(indexedClassPool.getOrNull("classpath.Missing") == null);
+    }
+
+    private void putStoredEntry(ZipOutputStream zipOutputStream, CtClass ctClass) throws Exception {
+        byte[] classFile = ctClass.toBytecode();
+        ZipEntry entry = new ZipEntry(ctClass.getName().replace('.', '/') + ".class");
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(classFile.length);
+        CRC32 crc = new CRC32();
+        crc.update(classFile);
+        entry.setCrc(crc.getValue());
+        zipOutputStream.putNextEntry(entry);
+        zipOutputStream.write(classFile);
+    }
+}
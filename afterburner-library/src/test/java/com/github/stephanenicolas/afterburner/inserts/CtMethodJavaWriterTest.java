@@ -1,11 +1,16 @@
 package com.github.stephanenicolas.afterburner.inserts;
 
 import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
 import javassist.CannotCompileException;
 import javassist.ClassPool;
 import javassist.CtClass;
 import javassist.CtMethod;
 import javassist.CtNewMethod;
+import javassist.Modifier;
 import javassist.NotFoundException;
 
 import org.junit.Before;
@@ -111,4 +116,28 @@ public class CtMethodJavaWriterTest {
         //THEN
         assertEquals("super.foo(p0, p1);", extractSignature);
     }
+
+    @Test
+    public void testExtractSignature_from_method_signature() {
+        //GIVEN
+        MethodSignature fooMethod = new MethodSignature("Target", "foo", "(I[Ljava/lang/String;)Ljava/lang/Object;", Modifier.PUBLIC, Arrays.asList("java.io.IOException"));
+
+        //WHEN
+        String extractSignature = signatureExtractor.createJavaSignature(fooMethod);
+
+        //THEN
+        assertEquals("public java.lang.Object foo(int p0, java.lang.String[] p1) throws java.io.IOException", extractSignature);
+    }
+
+    @Test
+    public void testInvokeSuper_from_method_signature() {
+        //GIVEN
+        MethodSignature fooMethod = new MethodSignature("Target", "foo", "(IJ)V", Modifier.PUBLIC, Collections.<String>emptyList());
+
+        //WHEN
+        String extractSignature = signatureExtractor.invokeSuper(fooMethod);
+
+        //THEN
+        assertEquals("super.foo(p0, p1);", extractSignature);
+    }
 }
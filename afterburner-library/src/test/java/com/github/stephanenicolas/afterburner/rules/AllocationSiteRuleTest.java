@@ -0,0 +1,127 @@
+package com.github.stephanenicolas.afterburner.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.stephanenicolas.afterburner.AfterBurner;
+import com.github.stephanenicolas.afterburner.TestCounter;
+import com.github.stephanenicolas.afterburner.runtime.CounterTable;
+import com.github.stephanenicolas.afterburner.runtime.Counters;
+
+public class AllocationSiteRuleTest {
+
+    private CtClass target;
+
+    @Before
+    public void setUp() throws Exception {
+        target = ClassPool.getDefault().makeClass("AllocationTarget" + TestCounter.testCounter++);
+        target.addField(CtField.make("public Object field;", target));
+        target.addConstructor(CtNewConstructor.make("public " + target.getSimpleName() + "() { field = new StringBuilder(); }", target));
+        target.addMethod(CtNewMethod.make("public void allocate() { field = new java.util.ArrayList(); field = new int[3][2]; }", target));
+        target.addMethod(CtNewMethod.make("public void other() { field = new Object(); }", target));
+    }
+
+    @Test
+    public void testApplyTransformations_countsAllocationsOfSelectedMethods() throws Exception {
+        // GIVEN
+        AllocationSiteRule rule = new AllocationSiteRule(target.getName(), "<init>|allocate", 1);
+
+        // WHEN
+        assertTrue(rule.shouldTransform(target));
+        rule.applyTransformations(new AfterBurner(), target);
+        Class<?> targetClass = target.toClass();
+        Object instance = targetClass.newInstance();
+        for (int indexCall = 0; indexCall < 3; indexCall++) {
+            targetClass.getMethod("allocate").invoke(instance);
+            targetClass.getMethod("other").invoke(instance);
+        }
+
+        // THEN
+        Map<String, Long> countsByType = getCountsByAllocatedType();
+        assertEquals(countsByType.toString(), 3, countsByType.size());
+        assertEquals(1L, (long) countsByType.get("java.lang.StringBuilder"));
+        assertEquals(3L, (long) countsByType.get("java.util.ArrayList"));
+        assertEquals(3L, (long) countsByType.get("int[][]"));
+    }
+
+    @Test
+    public void testApplyTransformations_sampled() throws Exception {
+        // GIVEN
+        AllocationSiteRule rule = new AllocationSiteRule(".*", "other", 4);
+
+        // WHEN
+        rule.applyTransformations(new AfterBurner(), target);
+        Class<?> targetClass = target.toClass();
+        Object instance = targetClass.newInstance();
+        for (int indexCall = 0; indexCall < 9; indexCall++) {
+            targetClass.getMethod("other").invoke(instance);
+        }
+
+        // THEN
+        assertEquals(8L, (long) getCountsByAllocatedType().get("java.lang.Object"));
+    }
+
+    @Test
+    public void testShouldTransform_skipsInterfacesAndOtherClasses() throws Exception {
+        // GIVEN
+        AllocationSiteRule rule = new AllocationSiteRule("Foo.*", ".*", 1);
+
+        // WHEN
+        boolean shouldTransform = rule.shouldTransform(target);
+
+        // THEN
+        assertFalse(shouldTransform);
+        assertFalse(new AllocationSiteRule().shouldTransform(ClassPool.getDefault().makeInterface("Interface" + TestCounter.testCounter++)));
+    }
+
+    @Test
+    public void testShouldTransform_onlyClassesWithAllocations() throws Exception {
+        // GIVEN
+        CtClass withoutAllocation = ClassPool.getDefault().makeClass("WithoutAllocation" + TestCounter.testCounter++);
+        withoutAllocation.addMethod(CtNewMethod.make("public int get() { return 1; }", withoutAllocation));
+        AllocationSiteRule rule = new AllocationSiteRule(".*", "allocate|get", 1);
+
+        // WHEN
+        boolean shouldTransformWithoutAllocation = rule.shouldTransform(withoutAllocation);
+
+        // THEN
+        assertFalse(shouldTransformWithoutAllocation);
+        assertTrue(rule.shouldTransform(target));
+        assertFalse(new AllocationSiteRule(".*", "get", 1).shouldTransform(target));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_samplingRateNotPowerOf2() {
+        // GIVEN
+        // WHEN
+        new AllocationSiteRule(".*", ".*", 3);
+
+        // THEN
+    }
+
+    private Map<String, Long> getCountsByAllocatedType() {
+        CounterTable.Snapshot snapshot = Counters.ALLOCATIONS.snapshot();
+        Map<String, Long> countsByType = new HashMap<String, Long>();
+        for (int site = 0; site < snapshot.getSiteCount(); site++) {
+            String description = snapshot.getDescription(site);
+            // constructors are described as "Foo(int)", methods as "Foo.bar(int)"
+            if (description.startsWith(target.getName() + ".") || description.startsWith(target.getName() + "(")) {
+                countsByType.put(description.substring(description.indexOf(" new ") + " new ".length()), snapshot.getCount(site));
+            }
+        }
+        return countsByType;
+    }
+}
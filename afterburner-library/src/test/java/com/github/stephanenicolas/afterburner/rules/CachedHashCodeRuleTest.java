@@ -0,0 +1,112 @@
+package com.github.stephanenicolas.afterburner.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Modifier;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewMethod;
+import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.annotation.Annotation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.stephanenicolas.afterburner.AfterBurner;
+import com.github.stephanenicolas.afterburner.TestCounter;
+
+public class CachedHashCodeRuleTest {
+
+    private static final String IMMUTABLE_ANNOTATION = "test.Immutable";
+
+    private CtClass target;
+
+    @Before
+    public void setUp() throws Exception {
+        target = ClassPool.getDefault().makeClass("HashTarget" + TestCounter.testCounter++);
+        target.addField(CtField.make("public static int computeCount;", target));
+        target.addMethod(CtNewMethod.make("public int hashCode() { computeCount++; return 42; }", target));
+    }
+
+    @Test
+    public void testApplyTransformations_computesOnce() throws Exception {
+        // GIVEN
+        target.addField(CtField.make("private final String name = \"foo\";", target));
+        CachedHashCodeRule rule = new CachedHashCodeRule();
+
+        // WHEN
+        assertTrue(rule.shouldTransform(target));
+        rule.applyTransformations(new AfterBurner(), target);
+
+        // THEN
+        Class<?> targetClass = target.toClass();
+        Object instance = targetClass.newInstance();
+        assertEquals(42, instance.hashCode());
+        assertEquals(42, instance.hashCode());
+        assertEquals(1, targetClass.getField("computeCount").get(null));
+        assertEquals(42, targetClass.newInstance().hashCode());
+        assertEquals(2, targetClass.getField("computeCount").get(null));
+        int cacheModifiers = targetClass.getDeclaredField(CachedHashCodeRule.CACHE_FIELD).getModifiers();
+        assertTrue(Modifier.isPrivate(cacheModifiers));
+        assertTrue(Modifier.isTransient(cacheModifiers));
+    }
+
+    @Test
+    public void testShouldTransform_mutableClass() throws Exception {
+        // GIVEN
+        target.addField(CtField.make("private String name;", target));
+
+        // WHEN
+        boolean shouldTransform = new CachedHashCodeRule(IMMUTABLE_ANNOTATION).shouldTransform(target);
+
+        // THEN
+        assertFalse(shouldTransform);
+    }
+
+    @Test
+    public void testShouldTransform_finalFieldHoldingMutableValue() throws Exception {
+        // GIVEN
+        target.addField(CtField.make("private final StringBuilder name = new StringBuilder();", target));
+
+        // WHEN
+        boolean shouldTransform = new CachedHashCodeRule(IMMUTABLE_ANNOTATION).shouldTransform(target);
+
+        // THEN
+        assertFalse(shouldTransform);
+    }
+
+    @Test
+    public void testShouldTransform_annotatedMutableClass() throws Exception {
+        // GIVEN
+        target.addField(CtField.make("private String name;", target));
+        ClassFile classFile = target.getClassFile();
+        ConstPool constPool = classFile.getConstPool();
+        AnnotationsAttribute attribute = new AnnotationsAttribute(constPool, AnnotationsAttribute.invisibleTag);
+        attribute.addAnnotation(new Annotation(IMMUTABLE_ANNOTATION, constPool));
+        classFile.addAttribute(attribute);
+
+        // WHEN
+        boolean shouldTransform = new CachedHashCodeRule(IMMUTABLE_ANNOTATION).shouldTransform(target);
+
+        // THEN
+        assertTrue(shouldTransform);
+    }
+
+    @Test
+    public void testShouldTransform_noHashCode() throws Exception {
+        // GIVEN
+        CtClass classWithoutHashCode = ClassPool.getDefault().makeClass("HashTarget" + TestCounter.testCounter++);
+
+        // WHEN
+        boolean shouldTransform = new CachedHashCodeRule().shouldTransform(classWithoutHashCode);
+
+        // THEN
+        assertFalse(shouldTransform);
+    }
+}
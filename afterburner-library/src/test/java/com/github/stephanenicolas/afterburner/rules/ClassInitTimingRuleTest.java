@@ -0,0 +1,68 @@
+package com.github.stephanenicolas.afterburner.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.stephanenicolas.afterburner.runtime.ClassInitTimings;
+import com.github.stephanenicolas.afterburner.transform.ClassFilesTransformer;
+import com.github.stephanenicolas.afterburner.transform.TransformationRule;
+
+public class ClassInitTimingRuleTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testTransform_timesNestedStaticInitializers() throws Exception {
+        // GIVEN
+        File inputDirectory = temporaryFolder.newFolder("input");
+        File outputDirectory = temporaryFolder.newFolder("output");
+        ClassPool classPool = new ClassPool(true);
+        CtClass inner = classPool.makeClass("timing.Inner");
+        inner.addField(CtField.make("public static final Object VALUE = new Object();", inner));
+        CtClass outer = classPool.makeClass("timing.Outer");
+        outer.addField(CtField.make("public static final Object VALUE = timing.Inner.VALUE;", outer));
+        CtClass noInitializer = classPool.makeClass("timing.NoInitializer");
+        for (CtClass ctClass : Arrays.asList(inner, outer, noInitializer)) {
+            ctClass.writeFile(inputDirectory.getAbsolutePath());
+        }
+        List<TransformationRule> rules = Collections.<TransformationRule>singletonList(new ClassInitTimingRule("timing\\..*"));
+
+        // WHEN
+        List<String> transformedClassNames = new ClassFilesTransformer(rules, Collections.<String>emptyList()).transform(inputDirectory, outputDirectory);
+        URLClassLoader classLoader = new URLClassLoader(new URL[] {outputDirectory.toURI().toURL()}, getClass().getClassLoader());
+        Class.forName("timing.Outer", true, classLoader);
+
+        // THEN
+        assertEquals(Arrays.asList("timing.Inner", "timing.Outer"), transformedClassNames);
+        List<String> foldedStacks = ClassInitTimings.TIMER.getFoldedStacks();
+        assertTrue(foldedStacks.toString(), containsStack(foldedStacks, "timing.Outer"));
+        assertTrue(foldedStacks.toString(), containsStack(foldedStacks, "timing.Outer;timing.Inner"));
+        assertFalse(foldedStacks.toString(), containsStack(foldedStacks, "timing.NoInitializer"));
+    }
+
+    private boolean containsStack(List<String> foldedStacks, String stack) {
+        for (String line : foldedStacks) {
+            if (line.startsWith(stack + " ")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,89 @@
+package com.github.stephanenicolas.afterburner.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.List;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.expr.ExprEditor;
+import javassist.expr.MethodCall;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.stephanenicolas.afterburner.TestClassFiles;
+import com.github.stephanenicolas.afterburner.rules.fixtures.ReflectionFixture;
+import com.github.stephanenicolas.afterburner.transform.ClassFilesTransformer;
+import com.github.stephanenicolas.afterburner.transform.TransformationRule;
+
+public class ConstantReflectionRuleTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testTransform_replacesConstantReflectionByDirectCode() throws Exception {
+        // GIVEN
+        File inputDirectory = temporaryFolder.newFolder("input");
+        File outputDirectory = temporaryFolder.newFolder("output");
+        String className = ReflectionFixture.class.getName();
+        TestClassFiles.copyClassFile(className, inputDirectory);
+        List<TransformationRule> rules = Collections.<TransformationRule>singletonList(new ConstantReflectionRule());
+
+        // WHEN
+        List<String> transformedClassNames = new ClassFilesTransformer(rules, Collections.<String>emptyList()).transform(inputDirectory, outputDirectory);
+
+        // THEN
+        assertEquals(Collections.singletonList(className), transformedClassNames);
+        URLClassLoader classLoader = new URLClassLoader(new URL[] {outputDirectory.toURI().toURL()}, null);
+        Class<?> fixtureClass = classLoader.loadClass(className);
+        Object fixture = fixtureClass.newInstance();
+        assertEquals(fixtureClass, invoke(fixtureClass, "createByClass").getClass());
+        assertEquals(fixtureClass, invoke(fixtureClass, "createByName").getClass());
+        assertEquals("described fixture", invoke(fixtureClass, "describeByReflection", fixture));
+        assertEquals(42, invoke(fixtureClass, "countByReflection"));
+        assertTrue(invoke(fixtureClass, "failByReflection", fixture) instanceof IllegalStateException);
+        assertEquals("fixture", invoke(fixtureClass, "readName", fixture));
+        assertEquals(ReflectionFixture.CONSTANT, invoke(fixtureClass, "readConstant"));
+        try {
+            invoke(fixtureClass, "invokeMissing");
+            fail();
+        } catch (InvocationTargetException e) {
+            assertTrue(e.getCause() instanceof NoSuchMethodException);
+        }
+
+        final int[] reflectiveCallCount = new int[1];
+        ClassPool classPool = new ClassPool(true);
+        classPool.insertClassPath(outputDirectory.getAbsolutePath());
+        classPool.get(className).instrument(new ExprEditor() {
+            @Override
+            public void edit(MethodCall methodCall) throws CannotCompileException {
+                if (methodCall.getMethodName().equals("newInstance") || methodCall.getMethodName().equals("getMethod")
+                        || methodCall.getMethodName().equals("getField")) {
+                    reflectiveCallCount[0]++;
+                }
+            }
+        });
+        assertEquals("only the lookup of the missing method is kept", 1, reflectiveCallCount[0]);
+    }
+
+    private Object invoke(Class<?> fixtureClass, String methodName, Object... arguments) throws Exception {
+        for (Method method : fixtureClass.getMethods()) {
+            if (method.getName().equals(methodName)) {
+                return method.invoke(null, arguments);
+            }
+        }
+        throw new NoSuchMethodException(methodName);
+    }
+}
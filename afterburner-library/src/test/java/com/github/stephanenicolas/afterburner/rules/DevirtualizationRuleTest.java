@@ -0,0 +1,142 @@
+package com.github.stephanenicolas.afterburner.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.index.ClassIndex;
+import com.github.stephanenicolas.afterburner.index.ClassIndexBuilder;
+import com.github.stephanenicolas.afterburner.transform.ClassFilesTransformer;
+import com.github.stephanenicolas.afterburner.transform.TransformationRule;
+
+public class DevirtualizationRuleTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testTransform_finalizesLeafClassesAndMethods() throws Exception {
+        // GIVEN
+        File inputDirectory = temporaryFolder.newFolder("input");
+        File outputDirectory = temporaryFolder.newFolder("output");
+        ClassPool classPool = new ClassPool(true);
+        CtClass base = classPool.makeClass("devirtualization.Base");
+        base.addMethod(CtNewMethod.make("public int overriden() { return 1; }", base));
+        base.addMethod(CtNewMethod.make("public int notOverriden() { return 2; }", base));
+        base.addMethod(CtNewMethod.make("public static int utility() { return 3; }", base));
+        CtClass sub = classPool.makeClass("devirtualization.Sub", base);
+        sub.addMethod(CtNewMethod.make("public int overriden() { return 4; }", sub));
+        CtClass leaf = classPool.makeClass("devirtualization.Leaf");
+        CtClass outsider = classPool.makeClass("devirtualization.Outsider");
+        for (CtClass ctClass : Arrays.asList(base, sub, leaf)) {
+            ctClass.writeFile(inputDirectory.getAbsolutePath());
+        }
+        ClassIndex closedWorld = new ClassIndexBuilder().addDirectory(inputDirectory).build();
+        outsider.writeFile(inputDirectory.getAbsolutePath());
+        List<TransformationRule> rules = Collections.<TransformationRule>singletonList(new DevirtualizationRule(closedWorld));
+
+        // WHEN
+        List<String> transformedClassNames = new ClassFilesTransformer(rules, Collections.<String>emptyList()).transform(inputDirectory, outputDirectory);
+
+        // THEN
+        assertEquals(Arrays.asList("devirtualization.Base", "devirtualization.Leaf", "devirtualization.Sub"), transformedClassNames);
+        URLClassLoader classLoader = new URLClassLoader(new URL[] {outputDirectory.toURI().toURL()}, null);
+        Class<?> baseClass = classLoader.loadClass("devirtualization.Base");
+        assertFalse(Modifier.isFinal(baseClass.getModifiers()));
+        assertFalse(Modifier.isFinal(baseClass.getMethod("overriden").getModifiers()));
+        assertTrue(Modifier.isFinal(baseClass.getMethod("notOverriden").getModifiers()));
+        assertFalse(Modifier.isFinal(baseClass.getMethod("utility").getModifiers()));
+        Class<?> subClass = classLoader.loadClass("devirtualization.Sub");
+        assertTrue(Modifier.isFinal(subClass.getModifiers()));
+        assertEquals(4, subClass.getMethod("overriden").invoke(subClass.newInstance()));
+        assertTrue(Modifier.isFinal(classLoader.loadClass("devirtualization.Leaf").getModifiers()));
+        assertFalse(Modifier.isFinal(classLoader.loadClass("devirtualization.Outsider").getModifiers()));
+    }
+
+    @Test
+    public void testTransform_earlierOutputAfterAddingSubclasses() throws Exception {
+        // GIVEN
+        File earlierOutputDirectory = devirtualizeHierarchy();
+        File outputDirectory = temporaryFolder.newFolder("output");
+        ClassPool classPool = new ClassPool(true);
+        classPool.appendClassPath(earlierOutputDirectory.getAbsolutePath());
+        CtClass base = classPool.get("devirtualization.Base");
+        CtClass leaf = classPool.get("devirtualization.Leaf");
+        CtClass otherSub = classPool.makeClass("devirtualization.OtherSub", base);
+        otherSub.addMethod(CtNewMethod.make("public int notOverriden() { return 5; }", otherSub));
+        otherSub.writeFile(earlierOutputDirectory.getAbsolutePath());
+        CtClass subLeaf = classPool.makeClass("devirtualization.SubLeaf", leaf);
+        subLeaf.writeFile(earlierOutputDirectory.getAbsolutePath());
+        ClassIndex closedWorld = new ClassIndexBuilder().addDirectory(earlierOutputDirectory).build();
+        List<TransformationRule> rules = Collections.<TransformationRule>singletonList(new DevirtualizationRule(closedWorld));
+
+        // WHEN
+        new ClassFilesTransformer(rules, Collections.<String>emptyList()).transform(earlierOutputDirectory, outputDirectory);
+
+        // THEN
+        URLClassLoader classLoader = new URLClassLoader(new URL[] {outputDirectory.toURI().toURL()}, null);
+        Class<?> baseClass = classLoader.loadClass("devirtualization.Base");
+        assertFalse(Modifier.isFinal(baseClass.getMethod("notOverriden").getModifiers()));
+        assertFalse(Modifier.isFinal(baseClass.getMethod("overriden").getModifiers()));
+        Class<?> otherSubClass = classLoader.loadClass("devirtualization.OtherSub");
+        assertEquals(5, otherSubClass.getMethod("notOverriden").invoke(otherSubClass.newInstance()));
+        assertFalse(Modifier.isFinal(classLoader.loadClass("devirtualization.Leaf").getModifiers()));
+        Class<?> subLeafClass = classLoader.loadClass("devirtualization.SubLeaf");
+        assertTrue(Modifier.isFinal(subLeafClass.getModifiers()));
+        assertTrue(Modifier.isFinal(classLoader.loadClass("devirtualization.Sub").getModifiers()));
+    }
+
+    @Test(expected = AfterBurnerImpossibleException.class)
+    public void testTransform_earlierOutputAfterAddingAnOverride() throws Exception {
+        // GIVEN
+        File earlierOutputDirectory = devirtualizeHierarchy();
+        File outputDirectory = temporaryFolder.newFolder("output");
+        ClassPool classPool = new ClassPool(true);
+        classPool.appendClassPath(earlierOutputDirectory.getAbsolutePath());
+        CtClass sub = classPool.makeClass("devirtualization.Sub", classPool.get("devirtualization.Base"));
+        sub.addMethod(CtNewMethod.make("public int overriden() { return 4; }", sub));
+        sub.addMethod(CtNewMethod.make("public int notOverriden() { return 5; }", sub));
+        sub.writeFile(earlierOutputDirectory.getAbsolutePath());
+        ClassIndex closedWorld = new ClassIndexBuilder().addDirectory(earlierOutputDirectory).build();
+        List<TransformationRule> rules = Collections.<TransformationRule>singletonList(new DevirtualizationRule(closedWorld));
+
+        // WHEN
+        new ClassFilesTransformer(rules, Collections.<String>emptyList()).transform(earlierOutputDirectory, outputDirectory);
+    }
+
+    private File devirtualizeHierarchy() throws Exception {
+        File inputDirectory = temporaryFolder.newFolder("earlierInput");
+        File outputDirectory = temporaryFolder.newFolder("earlierOutput");
+        ClassPool classPool = new ClassPool(true);
+        CtClass base = classPool.makeClass("devirtualization.Base");
+        base.addMethod(CtNewMethod.make("public int overriden() { return 1; }", base));
+        base.addMethod(CtNewMethod.make("public int notOverriden() { return 2; }", base));
+        CtClass sub = classPool.makeClass("devirtualization.Sub", base);
+        sub.addMethod(CtNewMethod.make("public int overriden() { return 4; }", sub));
+        CtClass leaf = classPool.makeClass("devirtualization.Leaf");
+        for (CtClass ctClass : Arrays.asList(base, sub, leaf)) {
+            ctClass.writeFile(inputDirectory.getAbsolutePath());
+        }
+        ClassIndex closedWorld = new ClassIndexBuilder().addDirectory(inputDirectory).build();
+        List<TransformationRule> rules = Collections.<TransformationRule>singletonList(new DevirtualizationRule(closedWorld));
+        new ClassFilesTransformer(rules, Collections.<String>emptyList()).transform(inputDirectory, outputDirectory);
+        return outputDirectory;
+    }
+}
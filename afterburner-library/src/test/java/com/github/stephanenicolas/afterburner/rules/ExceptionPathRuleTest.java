@@ -0,0 +1,127 @@
+package com.github.stephanenicolas.afterburner.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.stephanenicolas.afterburner.AfterBurner;
+import com.github.stephanenicolas.afterburner.TestCounter;
+import com.github.stephanenicolas.afterburner.runtime.CounterTable;
+import com.github.stephanenicolas.afterburner.runtime.Counters;
+
+public class ExceptionPathRuleTest {
+
+    private CtClass target;
+
+    @Before
+    public void setUp() throws Exception {
+        target = ClassPool.getDefault().makeClass("ExceptionTarget" + TestCounter.testCounter++);
+        target.addMethod(CtNewMethod.make("public int parse(String s) { "
+                + "try { return Integer.parseInt(s); } catch (NumberFormatException e) { return -1; } finally { s = null; } }", target));
+        target.addMethod(CtNewMethod.make("public void fail() { throw new IllegalStateException(); }", target));
+    }
+
+    @Test
+    public void testApplyTransformations_countsCaughtAndThrown() throws Exception {
+        // GIVEN
+        ExceptionPathRule rule = new ExceptionPathRule(target.getName(), ".*", 0);
+
+        // WHEN
+        assertTrue(rule.shouldTransform(target));
+        rule.applyTransformations(new AfterBurner(), target);
+        Class<?> targetClass = target.toClass();
+        Object instance = targetClass.newInstance();
+        for (int indexCall = 0; indexCall < 3; indexCall++) {
+            assertEquals(-1, targetClass.getMethod("parse", String.class).invoke(instance, "foo"));
+            assertEquals(4, targetClass.getMethod("parse", String.class).invoke(instance, "4"));
+        }
+        try {
+            targetClass.getMethod("fail").invoke(instance);
+        } catch (InvocationTargetException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        // THEN
+        Map<String, Long> counts = getCounts(Counters.EXCEPTIONS);
+        assertEquals(counts.toString(), 3, counts.size());
+        assertEquals(3L, (long) counts.get(".parse(java.lang.String) catch java.lang.NumberFormatException"));
+        assertEquals(0L, (long) counts.get(".parse(java.lang.String) throws"));
+        assertEquals(1L, (long) counts.get(".fail() throws"));
+    }
+
+    @Test
+    public void testApplyTransformations_samplesStackDepth() throws Exception {
+        // GIVEN
+        ExceptionPathRule rule = new ExceptionPathRule(target.getName(), "parse", 2);
+
+        // WHEN
+        rule.applyTransformations(new AfterBurner(), target);
+        Class<?> targetClass = target.toClass();
+        Object instance = targetClass.newInstance();
+        for (int indexCall = 0; indexCall < 4; indexCall++) {
+            targetClass.getMethod("parse", String.class).invoke(instance, "foo");
+        }
+
+        // THEN
+        String handlerSite = ".parse(java.lang.String) catch java.lang.NumberFormatException";
+        assertEquals(4L, (long) getCounts(Counters.EXCEPTIONS).get(handlerSite));
+        long depthSum = getCounts(Counters.EXCEPTION_STACK_DEPTHS).get(handlerSite);
+        // 2 samples, each counted twice, of stacks deeper than the test method
+        assertTrue(depthSum > 4 * 2);
+        assertEquals(0, depthSum % 2);
+    }
+
+    @Test
+    public void testShouldTransform_onlyClassesWithSites() throws Exception {
+        // GIVEN
+        CtClass withoutSite = ClassPool.getDefault().makeClass("WithoutExceptionSite" + TestCounter.testCounter++);
+        withoutSite.addConstructor(CtNewConstructor.make("public " + withoutSite.getSimpleName() + "() { super(); }", withoutSite));
+        CtClass withCatch = ClassPool.getDefault().makeClass("WithCatch" + TestCounter.testCounter++);
+        withCatch.addConstructor(CtNewConstructor.make("public " + withCatch.getSimpleName() + "() { "
+                + "try { Integer.parseInt(\"1\"); } catch (NumberFormatException e) { } }", withCatch));
+        ExceptionPathRule rule = new ExceptionPathRule(".*", "<init>", 0);
+
+        // WHEN
+        boolean shouldTransformWithoutSite = rule.shouldTransform(withoutSite);
+
+        // THEN
+        assertFalse(shouldTransformWithoutSite);
+        assertTrue(rule.shouldTransform(withCatch));
+        assertFalse(rule.shouldTransform(target));
+        assertTrue(new ExceptionPathRule(".*", "fail", 0).shouldTransform(target));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_samplingRateNotPowerOf2() {
+        // GIVEN
+        // WHEN
+        new ExceptionPathRule(".*", ".*", 3);
+
+        // THEN
+    }
+
+    private Map<String, Long> getCounts(CounterTable table) {
+        CounterTable.Snapshot snapshot = table.snapshot();
+        Map<String, Long> counts = new HashMap<String, Long>();
+        for (int site = 0; site < snapshot.getSiteCount(); site++) {
+            String description = snapshot.getDescription(site);
+            if (description.startsWith(target.getName() + ".")) {
+                // line numbers depend on the compiler
+                counts.put(description.substring(target.getName().length()).replaceAll(" line -?\\d+", ""), snapshot.getCount(site));
+            }
+        }
+        return counts;
+    }
+}
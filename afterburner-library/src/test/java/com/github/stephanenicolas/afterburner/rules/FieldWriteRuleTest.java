@@ -0,0 +1,145 @@
+package com.github.stephanenicolas.afterburner.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewMethod;
+import javassist.bytecode.AccessFlag;
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.stephanenicolas.afterburner.AfterBurner;
+import com.github.stephanenicolas.afterburner.TestCounter;
+import com.github.stephanenicolas.afterburner.runtime.CounterTable;
+import com.github.stephanenicolas.afterburner.runtime.Counters;
+import com.github.stephanenicolas.afterburner.runtime.FieldWriteReport;
+
+public class FieldWriteRuleTest {
+
+    private CtClass target;
+
+    @Before
+    public void setUp() throws Exception {
+        target = ClassPool.getDefault().makeClass("FieldWriteTarget" + TestCounter.testCounter++);
+        target.addField(CtField.make("public int count;", target));
+        target.addField(CtField.make("public static long total;", target));
+        target.addField(CtField.make("public int ignored;", target));
+        target.addMethod(CtNewMethod.make("public void write() { count = count + 1; total = total + 2L; ignored = count; }", target));
+    }
+
+    @Test
+    public void testApplyTransformations_countsWritesAndWriterThreads() throws Exception {
+        // GIVEN
+        FieldWriteRule rule = new FieldWriteRule(target.getName(), "write", ".*\\.(count|total)", true);
+        assertTrue(rule.shouldTransform(target));
+
+        // WHEN
+        rule.applyTransformations(new AfterBurner(), target);
+        Class<?> targetClass = target.toClass();
+        final Object instance = targetClass.newInstance();
+        final Method writeMethod = targetClass.getMethod("write");
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int indexThread = 0; indexThread < 3; indexThread++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int indexCall = 0; indexCall < 10; indexCall++) {
+                            writeMethod.invoke(instance);
+                        }
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // THEN
+        CounterTable.Snapshot snapshot = Counters.FIELD_WRITES.snapshot();
+        int countSite = findSite(snapshot, target.getName() + ".count");
+        int totalSite = findSite(snapshot, target.getName() + ".total");
+        assertEquals(30, snapshot.getCount(countSite));
+        assertEquals(30, snapshot.getCount(totalSite));
+        assertEquals(-1, findSite(snapshot, target.getName() + ".ignored"));
+        assertTrue(snapshot.getThreadCount(countSite) >= 1);
+        assertTrue(snapshot.getThreadCount(countSite) <= 3);
+        List<String> contendedFields = FieldWriteReport.findContendedFields(snapshot, 1, 0);
+        boolean flagged = false;
+        for (String line : contendedFields) {
+            flagged |= line.endsWith(": " + target.getName() + ".count");
+        }
+        assertTrue(flagged);
+    }
+
+    @Test
+    public void testApplyTransformations_countsWritesThroughSubclassesAsWritesOfTheDeclaringClass() throws Exception {
+        // GIVEN
+        ClassPool classPool = ClassPool.getDefault();
+        CtClass base = classPool.makeClass("FieldWriteBase" + TestCounter.testCounter++);
+        base.addField(CtField.make("public static long total;", base));
+        CtClass sub = classPool.makeClass("FieldWriteSub" + TestCounter.testCounter++, base);
+        // javac records the class of the access, javassist the declaring class
+        CtClass writer = classPool.makeClass("FieldWriteWriter" + TestCounter.testCounter++);
+        Bytecode code = new Bytecode(writer.getClassFile().getConstPool(), 2, 0);
+        code.addOpcode(Opcode.LCONST_1);
+        code.addPutstatic(sub.getName(), "total", "J");
+        code.addOpcode(Opcode.RETURN);
+        MethodInfo write = new MethodInfo(writer.getClassFile().getConstPool(), "write", "()V");
+        write.setCodeAttribute(code.toCodeAttribute());
+        write.setAccessFlags(AccessFlag.PUBLIC | AccessFlag.STATIC);
+        writer.getClassFile().addMethod(write);
+        FieldWriteRule rule = new FieldWriteRule(writer.getName(), "write", base.getName() + "\\.total", false);
+        assertTrue(rule.shouldTransform(writer));
+
+        // WHEN
+        rule.applyTransformations(new AfterBurner(), writer);
+        base.toClass();
+        sub.toClass();
+        writer.toClass().getMethod("write").invoke(null);
+
+        // THEN
+        CounterTable.Snapshot snapshot = Counters.FIELD_WRITES.snapshot();
+        assertEquals(1, snapshot.getCount(findSite(snapshot, base.getName() + ".total")));
+        assertEquals(-1, findSite(snapshot, sub.getName() + ".total"));
+    }
+
+    @Test
+    public void testShouldTransform_onlyClassesWritingSelectedFields() throws Exception {
+        // GIVEN
+        FieldWriteRule rule = new FieldWriteRule(".*", "write", ".*\\.other", false);
+
+        // WHEN
+        boolean shouldTransform = rule.shouldTransform(target);
+
+        // THEN
+        assertFalse(shouldTransform);
+        assertTrue(new FieldWriteRule(".*", "write", ".*\\.ignored", false).shouldTransform(target));
+        assertFalse(new FieldWriteRule(".*", "read", ".*", false).shouldTransform(target));
+    }
+
+    private int findSite(CounterTable.Snapshot snapshot, String description) {
+        for (int site = 0; site < snapshot.getSiteCount(); site++) {
+            if (snapshot.getDescription(site).equals(description)) {
+                return site;
+            }
+        }
+        return -1;
+    }
+}
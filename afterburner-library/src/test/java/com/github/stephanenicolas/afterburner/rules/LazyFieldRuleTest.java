@@ -0,0 +1,169 @@
+package com.github.stephanenicolas.afterburner.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.bytecode.AccessFlag;
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.stephanenicolas.afterburner.AfterBurner;
+import com.github.stephanenicolas.afterburner.TestCounter;
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.transform.ClassFilesTransformer;
+import com.github.stephanenicolas.afterburner.transform.TransformationRule;
+
+public class LazyFieldRuleTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testApplyTransformations_instanceField() throws Exception {
+        // GIVEN
+        ClassPool classPool = ClassPool.getDefault();
+        CtClass heavy = createHeavyClass(classPool, "Heavy" + TestCounter.testCounter++);
+        CtClass host = classPool.makeClass("LazyHost" + TestCounter.testCounter++);
+        host.addField(CtField.make("private final " + heavy.getName() + " heavy;", host));
+        host.addConstructor(CtNewConstructor.make("public " + host.getSimpleName() + "() { heavy = new " + heavy.getName() + "(); }", host));
+        host.addMethod(CtNewMethod.make("public Object get() { return heavy; }", host));
+        LazyFieldRule rule = new LazyFieldRule(host.getName(), "heavy", null);
+
+        // WHEN
+        assertTrue(rule.shouldTransform(host));
+        rule.applyTransformations(new AfterBurner(), host);
+        Class<?> heavyClass = heavy.toClass();
+        Class<?> hostClass = host.toClass();
+        Object instance = hostClass.newInstance();
+
+        // THEN
+        assertEquals(0, heavyClass.getField("count").get(null));
+        Object value = hostClass.getMethod("get").invoke(instance);
+        assertNotNull(value);
+        assertSame(value, hostClass.getMethod("get").invoke(instance));
+        assertEquals(1, heavyClass.getField("count").get(null));
+        assertTrue(Modifier.isVolatile(hostClass.getDeclaredField("heavy").getModifiers()));
+    }
+
+    @Test
+    public void testTransform_staticFieldWithHolderReadByOtherClass() throws Exception {
+        // GIVEN
+        File inputDirectory = temporaryFolder.newFolder("input");
+        File outputDirectory = temporaryFolder.newFolder("output");
+        ClassPool classPool = new ClassPool(true);
+        CtClass heavy = createHeavyClass(classPool, "lazy.Heavy");
+        CtClass host = classPool.makeClass("lazy.Host");
+        host.addField(CtField.make("public static lazy.Heavy heavy = new lazy.Heavy();", host));
+        CtClass reader = classPool.makeClass("lazy.Reader");
+        reader.addMethod(CtNewMethod.make("public static Object read() { return lazy.Host.heavy; }", reader));
+        for (CtClass ctClass : Arrays.asList(heavy, host, reader)) {
+            ctClass.writeFile(inputDirectory.getAbsolutePath());
+        }
+        List<TransformationRule> rules = Collections.<TransformationRule>singletonList(new LazyFieldRule("lazy.Host", "heavy", null));
+
+        // WHEN
+        List<String> transformedClassNames = new ClassFilesTransformer(rules, Collections.<String>emptyList()).transform(inputDirectory, outputDirectory);
+
+        // THEN
+        assertEquals(Arrays.asList("lazy.Host", "lazy.Reader"), transformedClassNames);
+        URLClassLoader classLoader = new URLClassLoader(new URL[] {outputDirectory.toURI().toURL()}, null);
+        Class<?> heavyClass = classLoader.loadClass("lazy.Heavy");
+        Class<?> hostClass = classLoader.loadClass("lazy.Host");
+        Class.forName(hostClass.getName(), true, classLoader);
+        assertEquals(0, heavyClass.getField("count").get(null));
+        Object value = classLoader.loadClass("lazy.Reader").getMethod("read").invoke(null);
+        assertNotNull(value);
+        assertSame(value, hostClass.getMethod(LazyFieldRule.getGetterName("heavy")).invoke(null));
+        assertEquals(1, heavyClass.getField("count").get(null));
+    }
+
+    @Test
+    public void testTransform_staticFieldReadThroughSubclass() throws Exception {
+        // GIVEN
+        File inputDirectory = temporaryFolder.newFolder("input");
+        File outputDirectory = temporaryFolder.newFolder("output");
+        ClassPool classPool = new ClassPool(true);
+        CtClass heavy = createHeavyClass(classPool, "lazysub.Heavy");
+        CtClass host = classPool.makeClass("lazysub.Host");
+        host.addField(CtField.make("public static lazysub.Heavy heavy = new lazysub.Heavy();", host));
+        CtClass subHost = classPool.makeClass("lazysub.SubHost", host);
+        // javac records the class of the access, javassist the declaring class
+        CtClass reader = classPool.makeClass("lazysub.Reader");
+        Bytecode code = new Bytecode(reader.getClassFile().getConstPool(), 1, 0);
+        code.addGetstatic("lazysub.SubHost", "heavy", "Llazysub/Heavy;");
+        code.addOpcode(Opcode.ARETURN);
+        MethodInfo read = new MethodInfo(reader.getClassFile().getConstPool(), "read", "()Ljava/lang/Object;");
+        read.setCodeAttribute(code.toCodeAttribute());
+        read.setAccessFlags(AccessFlag.PUBLIC | AccessFlag.STATIC);
+        reader.getClassFile().addMethod(read);
+        for (CtClass ctClass : Arrays.asList(heavy, host, subHost, reader)) {
+            ctClass.writeFile(inputDirectory.getAbsolutePath());
+        }
+        List<TransformationRule> rules = Collections.<TransformationRule>singletonList(new LazyFieldRule("lazysub.Host", "heavy", null));
+
+        // WHEN
+        List<String> transformedClassNames = new ClassFilesTransformer(rules, Collections.<String>emptyList()).transform(inputDirectory, outputDirectory);
+
+        // THEN
+        assertEquals(Arrays.asList("lazysub.Host", "lazysub.Reader"), transformedClassNames);
+        URLClassLoader classLoader = new URLClassLoader(new URL[] {outputDirectory.toURI().toURL()}, null);
+        Class<?> heavyClass = classLoader.loadClass("lazysub.Heavy");
+        Object value = classLoader.loadClass("lazysub.Reader").getMethod("read").invoke(null);
+        assertNotNull(value);
+        assertSame(value, classLoader.loadClass("lazysub.Host").getMethod(LazyFieldRule.getGetterName("heavy")).invoke(null));
+        assertEquals(1, heavyClass.getField("count").get(null));
+    }
+
+    @Test(expected = AfterBurnerImpossibleException.class)
+    public void testApplyTransformations_staticFieldWrittenOutsideOfItsInitialization() throws Exception {
+        // GIVEN
+        ClassPool classPool = ClassPool.getDefault();
+        CtClass host = classPool.makeClass("LazyHost" + TestCounter.testCounter++);
+        host.addField(CtField.make("private static StringBuilder builder;", host));
+        host.addMethod(CtNewMethod.make("public static void reset() { builder = null; }", host));
+
+        // WHEN
+        new LazyFieldRule(host.getName(), "builder", "new StringBuilder()").applyTransformations(new AfterBurner(), host);
+    }
+
+    @Test(expected = AfterBurnerImpossibleException.class)
+    public void testApplyTransformations_noReproducibleInitializer() throws Exception {
+        // GIVEN
+        ClassPool classPool = ClassPool.getDefault();
+        CtClass host = classPool.makeClass("LazyHost" + TestCounter.testCounter++);
+        host.addField(CtField.make("private StringBuilder builder;", host));
+        host.addConstructor(CtNewConstructor.make("public " + host.getSimpleName() + "() { builder = new StringBuilder(\"foo\"); }", host));
+
+        // WHEN
+        new LazyFieldRule(host.getName(), "builder", null).applyTransformations(new AfterBurner(), host);
+
+        // THEN
+    }
+
+    private CtClass createHeavyClass(ClassPool classPool, String name) throws Exception {
+        CtClass heavy = classPool.makeClass(name);
+        heavy.addField(CtField.make("public static int count;", heavy));
+        heavy.addConstructor(CtNewConstructor.make("public " + heavy.getSimpleName() + "() { count++; }", heavy));
+        return heavy;
+    }
+}
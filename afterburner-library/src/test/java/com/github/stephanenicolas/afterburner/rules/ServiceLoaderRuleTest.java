@@ -0,0 +1,131 @@
+package com.github.stephanenicolas.afterburner.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.stephanenicolas.afterburner.TestClassFiles;
+import com.github.stephanenicolas.afterburner.rules.fixtures.ServiceLoaderFixture;
+import com.github.stephanenicolas.afterburner.transform.ClassFilesTransformer;
+import com.github.stephanenicolas.afterburner.transform.TransformationRule;
+
+public class ServiceLoaderRuleTest {
+    private static final String GREETER = ServiceLoaderFixture.Greeter.class.getName();
+    private static final String FAREWELL = ServiceLoaderFixture.Farewell.class.getName();
+    private static final String HELLO = ServiceLoaderFixture.Hello.class.getName();
+    private static final String BONJOUR = ServiceLoaderFixture.Bonjour.class.getName();
+    private static final String FAILING = ServiceLoaderFixture.Failing.class.getName();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testConstructor_readsProviderConfigurationFiles() throws Exception {
+        // GIVEN
+        File servicesDirectory = temporaryFolder.newFolder("services");
+        writeFile(new File(servicesDirectory, "META-INF/services/" + GREETER), "# greeters\n" + HELLO + "  # english\n\n" + HELLO + "\n");
+        File jar = temporaryFolder.newFile("services.jar");
+        ZipOutputStream outputStream = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            outputStream.putNextEntry(new ZipEntry("META-INF/services/" + GREETER));
+            outputStream.write((BONJOUR + "\r\n" + HELLO).getBytes("UTF-8"));
+            outputStream.closeEntry();
+        } finally {
+            outputStream.close();
+        }
+
+        // WHEN
+        ServiceLoaderRule rule = new ServiceLoaderRule(Arrays.asList(servicesDirectory.getAbsolutePath(), jar.getAbsolutePath()));
+
+        // THEN
+        assertEquals(Collections.singletonMap(GREETER, Arrays.asList(HELLO, BONJOUR)), rule.getProviderNamesByServiceName());
+    }
+
+    @Test
+    public void testTransform_instantiatesProvidersResolvedAtBuildTime() throws Exception {
+        // GIVEN
+        File inputDirectory = temporaryFolder.newFolder("input");
+        File outputDirectory = temporaryFolder.newFolder("output");
+        File servicesDirectory = temporaryFolder.newFolder("services");
+        writeFile(new File(servicesDirectory, "META-INF/services/" + GREETER), HELLO + "\n" + BONJOUR + "\n");
+        writeFile(new File(servicesDirectory, "META-INF/services/" + FAREWELL), "missing.Provider\n");
+        String className = ServiceLoaderFixture.class.getName();
+        for (String name : Arrays.asList(className, GREETER, FAREWELL, HELLO, BONJOUR)) {
+            TestClassFiles.copyClassFile(name, inputDirectory);
+        }
+        List<TransformationRule> rules = Collections.<TransformationRule>singletonList(
+                new ServiceLoaderRule(Collections.singletonList(servicesDirectory.getAbsolutePath())));
+
+        // WHEN
+        List<String> transformedClassNames = new ClassFilesTransformer(rules, Collections.<String>emptyList()).transform(inputDirectory, outputDirectory);
+
+        // THEN
+        assertEquals(Collections.singletonList(className), transformedClassNames);
+        URLClassLoader classLoader = new URLClassLoader(new URL[] {outputDirectory.toURI().toURL()}, null);
+        Class<?> fixtureClass = classLoader.loadClass(className);
+        assertEquals(Arrays.asList("hello", "bonjour"), fixtureClass.getMethod("greetAll").invoke(null));
+        assertEquals(Arrays.asList("hello", "bonjour"), fixtureClass.getMethod("greetAllWithClassLoader").invoke(null));
+        assertFalse("a loader used otherwise still reads the runtime class path, without configuration file",
+                ((Iterator<?>) fixtureClass.getMethod("getGreeterLoaderIterator").invoke(null)).hasNext());
+        assertFalse("a service with an unresolved provider is still loaded at runtime", (Boolean) fixtureClass.getMethod("hasFarewell").invoke(null));
+    }
+
+    @Test
+    public void testTransform_wrapsWhatProvidersThrow() throws Exception {
+        // GIVEN
+        File inputDirectory = temporaryFolder.newFolder("input");
+        File outputDirectory = temporaryFolder.newFolder("output");
+        File servicesDirectory = temporaryFolder.newFolder("services");
+        writeFile(new File(servicesDirectory, "META-INF/services/" + GREETER), HELLO + "\n" + FAILING + "\n");
+        String className = ServiceLoaderFixture.class.getName();
+        for (String name : Arrays.asList(className, GREETER, FAREWELL, HELLO, FAILING)) {
+            TestClassFiles.copyClassFile(name, inputDirectory);
+        }
+        List<TransformationRule> rules = Collections.<TransformationRule>singletonList(
+                new ServiceLoaderRule(Collections.singletonList(servicesDirectory.getAbsolutePath())));
+        new ClassFilesTransformer(rules, Collections.<String>emptyList()).transform(inputDirectory, outputDirectory);
+        URLClassLoader classLoader = new URLClassLoader(new URL[] {outputDirectory.toURI().toURL()}, null);
+        Method greetAll = classLoader.loadClass(className).getMethod("greetAll");
+
+        // WHEN
+        Throwable thrown = null;
+        try {
+            greetAll.invoke(null);
+        } catch (InvocationTargetException e) {
+            thrown = e.getCause();
+        }
+
+        // THEN
+        assertTrue(thrown instanceof ServiceConfigurationError);
+        assertTrue(thrown.getCause() instanceof IllegalStateException);
+        assertEquals(GREETER + ": Provider " + FAILING + " could not be instantiated: " + thrown.getCause(), thrown.getMessage());
+    }
+
+    private void writeFile(File file, String content) throws Exception {
+        file.getParentFile().mkdirs();
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(content.getBytes("UTF-8"));
+        } finally {
+            outputStream.close();
+        }
+    }
+}
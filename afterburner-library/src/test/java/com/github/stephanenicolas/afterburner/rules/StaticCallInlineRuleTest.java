@@ -0,0 +1,121 @@
+package com.github.stephanenicolas.afterburner.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
+import javassist.expr.ExprEditor;
+import javassist.expr.MethodCall;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.stephanenicolas.afterburner.TestClassFiles;
+import com.github.stephanenicolas.afterburner.TestCounter;
+import com.github.stephanenicolas.afterburner.rules.fixtures.InlineFixture;
+import com.github.stephanenicolas.afterburner.rules.fixtures.InlineHelpers;
+import com.github.stephanenicolas.afterburner.transform.ClassFilesTransformer;
+import com.github.stephanenicolas.afterburner.transform.TransformationRule;
+
+public class StaticCallInlineRuleTest {
+    private static final int MAX_CODE_LENGTH = 40;
+    private static final String HELPER_NAME_REGEX = InlineHelpers.class.getName().replace(".", "\\.") + "\\..*";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testTransform_inlinesSmallHelpers() throws Exception {
+        // GIVEN
+        File inputDirectory = temporaryFolder.newFolder("input");
+        File outputDirectory = temporaryFolder.newFolder("output");
+        String className = InlineFixture.class.getName();
+        String helpersClassName = InlineHelpers.class.getName();
+        TestClassFiles.copyClassFile(className, inputDirectory);
+        TestClassFiles.copyClassFile(helpersClassName, inputDirectory);
+        List<TransformationRule> rules = Collections.<TransformationRule>singletonList(
+                new StaticCallInlineRule(Collections.singletonList(inputDirectory.getAbsolutePath()), helpersClassName.replace(".", "\\.") + "\\..*",
+                        MAX_CODE_LENGTH, className.replace(".", "\\.")));
+
+        // WHEN
+        List<String> transformedClassNames = new ClassFilesTransformer(rules, Collections.<String>emptyList()).transform(inputDirectory, outputDirectory);
+
+        // THEN
+        assertEquals(Collections.singletonList(className), transformedClassNames);
+        URLClassLoader classLoader = new URLClassLoader(new URL[] {outputDirectory.toURI().toURL()}, null);
+        Class<?> fixtureClass = classLoader.loadClass(className);
+        Class<?> helpersClass = classLoader.loadClass(helpersClassName);
+        assertEquals(18, fixtureClass.getMethod("compute", int.class).invoke(null, 3));
+        assertEquals(1, helpersClass.getField("callCount").get(null));
+        assertEquals(15L, fixtureClass.getMethod("clamp", long.class, long.class, long.class).invoke(null, 5L, 100L, 10L));
+        assertEquals("name:1007:0.5", fixtureClass.getMethod("describe", String.class).invoke(null, "name"));
+        assertEquals(-2, fixtureClass.getMethod("catchFailure", int.class).invoke(null, 2));
+        assertEquals(1 + 24 + 12, fixtureClass.getMethod("callKeptHelpers").invoke(null));
+
+        final Set<String> calledHelperNames = new TreeSet<String>();
+        ClassPool classPool = new ClassPool(true);
+        classPool.insertClassPath(outputDirectory.getAbsolutePath());
+        classPool.get(className).instrument(new ExprEditor() {
+            @Override
+            public void edit(MethodCall methodCall) throws CannotCompileException {
+                if (methodCall.getClassName().equals(InlineHelpers.class.getName())) {
+                    calledHelperNames.add(methodCall.getMethodName());
+                }
+            }
+        });
+        assertEquals("private members, recursion, exception handlers and long helpers are kept",
+                new TreeSet<String>(Arrays.asList("countHidden", "describe", "factorial", "parse")), calledHelperNames);
+    }
+
+    @Test
+    public void testShouldTransform_onlyClassesReferencingHelpers() throws Exception {
+        // GIVEN
+        File helperDirectory = temporaryFolder.newFolder("helpers");
+        TestClassFiles.copyClassFile(InlineHelpers.class.getName(), helperDirectory);
+        StaticCallInlineRule rule = new StaticCallInlineRule(Collections.singletonList(helperDirectory.getAbsolutePath()), HELPER_NAME_REGEX, MAX_CODE_LENGTH);
+        CtClass withoutHelperCall = ClassPool.getDefault().makeClass("WithoutHelperCall" + TestCounter.testCounter++);
+        withoutHelperCall.addMethod(CtNewMethod.make("public static int compute(int value) { return Math.abs(value); }", withoutHelperCall));
+
+        // WHEN
+        boolean shouldTransform = rule.shouldTransform(withoutHelperCall);
+
+        // THEN
+        assertFalse(shouldTransform);
+        assertTrue(rule.shouldTransform(ClassPool.getDefault().get(InlineFixture.class.getName())));
+    }
+
+    @Test
+    public void testGetFingerprint_changesWithTheHelpers() throws Exception {
+        // GIVEN
+        File helperDirectory = temporaryFolder.newFolder("helpers");
+        TestClassFiles.copyClassFile(InlineHelpers.class.getName(), helperDirectory);
+        List<String> helperClassPath = Collections.singletonList(helperDirectory.getAbsolutePath());
+        String fingerprint = new StaticCallInlineRule(helperClassPath, HELPER_NAME_REGEX, MAX_CODE_LENGTH).getFingerprint();
+        assertEquals(fingerprint, new StaticCallInlineRule(helperClassPath, HELPER_NAME_REGEX, MAX_CODE_LENGTH).getFingerprint());
+        ClassPool classPool = new ClassPool(true);
+        classPool.insertClassPath(helperDirectory.getAbsolutePath());
+        CtClass helpers = classPool.get(InlineHelpers.class.getName());
+        helpers.addMethod(CtNewMethod.make("public static int added() { return 1; }", helpers));
+
+        // WHEN
+        helpers.writeFile(helperDirectory.getAbsolutePath());
+
+        // THEN
+        assertNotEquals(fingerprint, new StaticCallInlineRule(helperClassPath, HELPER_NAME_REGEX, MAX_CODE_LENGTH).getFingerprint());
+    }
+}
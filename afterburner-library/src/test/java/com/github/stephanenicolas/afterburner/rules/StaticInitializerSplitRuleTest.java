@@ -0,0 +1,214 @@
+package com.github.stephanenicolas.afterburner.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.bytecode.AccessFlag;
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.ConstPool;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.Opcode;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.stephanenicolas.afterburner.AfterBurner;
+import com.github.stephanenicolas.afterburner.transform.ClassFilesTransformer;
+import com.github.stephanenicolas.afterburner.transform.TransformationRule;
+
+public class StaticInitializerSplitRuleTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File inputDirectory;
+    private File outputDirectory;
+    private ClassPool classPool;
+
+    @Before
+    public void setUp() throws Exception {
+        inputDirectory = temporaryFolder.newFolder("input");
+        outputDirectory = temporaryFolder.newFolder("output");
+        classPool = new ClassPool(true);
+        CtClass heavy = classPool.makeClass("split.Heavy");
+        heavy.addField(CtField.make("public static int count;", heavy));
+        heavy.addConstructor(CtNewConstructor.make("public Heavy() { count++; }", heavy));
+        heavy.addMethod(CtNewMethod.make("public static split.Heavy create() { return new split.Heavy(); }", heavy));
+        heavy.writeFile(inputDirectory.getAbsolutePath());
+    }
+
+    @Test
+    public void testTransform_splitsReproducibleInitializations() throws Exception {
+        // GIVEN
+        CtClass host = classPool.makeClass("split.Host");
+        host.addField(CtField.make("public static final split.Heavy BY_CONSTRUCTOR;", host), "new split.Heavy()");
+        host.addField(CtField.make("public static final split.Heavy BY_FACTORY;", host), "split.Heavy.create()");
+        host.addField(CtField.make("public static final StringBuilder WITH_ARGUMENT;", host), "new StringBuilder(\"kept\")");
+        host.addMethod(CtNewMethod.make("public static int ping() { return 42; }", host));
+        CtClass reader = classPool.makeClass("split.Reader");
+        reader.addMethod(CtNewMethod.make("public static Object read() { return split.Host.BY_CONSTRUCTOR; }", reader));
+        host.writeFile(inputDirectory.getAbsolutePath());
+        reader.writeFile(inputDirectory.getAbsolutePath());
+
+        // WHEN
+        List<String> transformedClassNames = transform(createRule());
+
+        // THEN
+        assertEquals(Arrays.asList("split.Host", "split.Reader"), transformedClassNames);
+        URLClassLoader classLoader = new URLClassLoader(new URL[] {outputDirectory.toURI().toURL()}, null);
+        Class<?> heavyClass = classLoader.loadClass("split.Heavy");
+        Class<?> hostClass = classLoader.loadClass("split.Host");
+        assertEquals(42, hostClass.getMethod("ping").invoke(null));
+        assertEquals(0, heavyClass.getField("count").get(null));
+        assertEquals("kept", hostClass.getField("WITH_ARGUMENT").get(null).toString());
+
+        Object value = classLoader.loadClass("split.Reader").getMethod("read").invoke(null);
+        assertNotNull(value);
+        assertSame(value, hostClass.getMethod(LazyFieldRule.getGetterName("BY_CONSTRUCTOR")).invoke(null));
+        assertEquals(1, heavyClass.getField("count").get(null));
+        assertNotNull(hostClass.getMethod(LazyFieldRule.getGetterName("BY_FACTORY")).invoke(null));
+        assertEquals(2, heavyClass.getField("count").get(null));
+    }
+
+    @Test
+    public void testTransform_keepsConditionalAndNonFinalInitializations() throws Exception {
+        // GIVEN
+        CtClass host = classPool.makeClass("split.Host");
+        host.addField(CtField.make("public static final split.Heavy CONDITIONAL;", host), "Boolean.getBoolean(\"split.none\") ? null : new split.Heavy()");
+        host.addField(CtField.make("public static split.Heavy NOT_FINAL;", host), "new split.Heavy()");
+        host.writeFile(inputDirectory.getAbsolutePath());
+
+        // WHEN
+        transform(createRule());
+
+        // THEN
+        URLClassLoader classLoader = new URLClassLoader(new URL[] {outputDirectory.toURI().toURL()}, null);
+        Class<?> heavyClass = classLoader.loadClass("split.Heavy");
+        Class<?> hostClass = Class.forName("split.Host", true, classLoader);
+        assertEquals(2, heavyClass.getField("count").get(null));
+        assertNotNull(hostClass.getField("CONDITIONAL").get(null));
+        assertFalse(hasMethod(hostClass, LazyFieldRule.getGetterName("CONDITIONAL")));
+        assertFalse(hasMethod(hostClass, LazyFieldRule.getGetterName("NOT_FINAL")));
+    }
+
+    @Test
+    public void testTransform_readThroughSubclass() throws Exception {
+        // GIVEN
+        CtClass host = classPool.makeClass("split.Host");
+        host.addField(CtField.make("public static final split.Heavy HEAVY;", host), "new split.Heavy()");
+        CtClass subHost = classPool.makeClass("split.SubHost", host);
+        // javac records the class of the access, javassist the declaring class
+        CtClass reader = classPool.makeClass("split.Reader");
+        ConstPool constPool = reader.getClassFile().getConstPool();
+        Bytecode code = new Bytecode(constPool, 1, 0);
+        code.addGetstatic("split.SubHost", "HEAVY", "Lsplit/Heavy;");
+        code.addOpcode(Opcode.ARETURN);
+        MethodInfo read = new MethodInfo(constPool, "read", "()Ljava/lang/Object;");
+        read.setCodeAttribute(code.toCodeAttribute());
+        read.setAccessFlags(AccessFlag.PUBLIC | AccessFlag.STATIC);
+        reader.getClassFile().addMethod(read);
+        for (CtClass ctClass : Arrays.asList(host, subHost, reader)) {
+            ctClass.writeFile(inputDirectory.getAbsolutePath());
+        }
+
+        // WHEN
+        List<String> transformedClassNames = transform(createRule());
+
+        // THEN
+        assertEquals(Arrays.asList("split.Host", "split.Reader"), transformedClassNames);
+        URLClassLoader classLoader = new URLClassLoader(new URL[] {outputDirectory.toURI().toURL()}, null);
+        Object value = classLoader.loadClass("split.Reader").getMethod("read").invoke(null);
+        assertNotNull(value);
+        assertSame(value, classLoader.loadClass("split.Host").getMethod(LazyFieldRule.getGetterName("HEAVY")).invoke(null));
+    }
+
+    @Test
+    public void testApplyTransformations_referencingClassAfterItsHost() throws Exception {
+        // GIVEN
+        CtClass host = classPool.makeClass("split.Host");
+        host.addField(CtField.make("public static final split.Heavy HEAVY;", host), "new split.Heavy()");
+        CtClass reader = classPool.makeClass("split.Reader");
+        reader.addMethod(CtNewMethod.make("public static Object read() { return split.Host.HEAVY; }", reader));
+        host.writeFile(inputDirectory.getAbsolutePath());
+        reader.writeFile(inputDirectory.getAbsolutePath());
+        StaticInitializerSplitRule rule = createRule();
+        ClassPool transformationPool = new ClassPool(true);
+        transformationPool.appendClassPath(inputDirectory.getAbsolutePath());
+        AfterBurner afterBurner = new AfterBurner();
+        rule.applyTransformations(afterBurner, transformationPool.get("split.Host"));
+
+        // WHEN
+        CtClass transformedReader = transformationPool.get("split.Reader");
+        rule.applyTransformations(afterBurner, transformedReader);
+
+        // THEN
+        assertTrue(hasMethodRef(transformedReader.getClassFile().getConstPool(), LazyFieldRule.getGetterName("HEAVY")));
+    }
+
+    @Test
+    public void testShouldTransform_onlySplitAndReferencingClasses() throws Exception {
+        // GIVEN
+        CtClass host = classPool.makeClass("split.Host");
+        host.addField(CtField.make("public static final split.Heavy HEAVY;", host), "new split.Heavy()");
+        host.addMethod(CtNewMethod.make("public static int ping() { return 42; }", host));
+        CtClass other = classPool.makeClass("split.Other");
+        other.addMethod(CtNewMethod.make("public static int read() { return split.Host.ping(); }", other));
+        CtClass reader = classPool.makeClass("split.Reader");
+        reader.addMethod(CtNewMethod.make("public static Object read() { return split.Host.HEAVY; }", reader));
+        host.writeFile(inputDirectory.getAbsolutePath());
+
+        // WHEN
+        StaticInitializerSplitRule rule = createRule();
+
+        // THEN
+        assertEquals(Collections.singletonMap("split.Host", Collections.singletonList("HEAVY")), rule.getSplitFieldNamesByClassName());
+        assertTrue(rule.getFingerprint().contains("HEAVY"));
+        assertTrue(rule.shouldTransform(host));
+        assertTrue(rule.shouldTransform(reader));
+        assertFalse(rule.shouldTransform(other));
+    }
+
+    private StaticInitializerSplitRule createRule() throws Exception {
+        return new StaticInitializerSplitRule(Collections.singletonList(inputDirectory.getAbsolutePath()), "split\\.Host", ".*");
+    }
+
+    private List<String> transform(TransformationRule rule) throws Exception {
+        return new ClassFilesTransformer(Collections.singletonList(rule), Collections.<String>emptyList()).transform(inputDirectory, outputDirectory);
+    }
+
+    private boolean hasMethodRef(ConstPool constPool, String methodName) {
+        for (int index = 1; index < constPool.getSize(); index++) {
+            if (constPool.getTag(index) == ConstPool.CONST_Methodref && constPool.getMethodrefName(index).equals(methodName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasMethod(Class<?> clazz, String methodName) {
+        for (Method method : clazz.getDeclaredMethods()) {
+            if (method.getName().equals(methodName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.stephanenicolas.afterburner.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.stephanenicolas.afterburner.TestClassFiles;
+import com.github.stephanenicolas.afterburner.index.ClassIndex;
+import com.github.stephanenicolas.afterburner.index.ClassIndexBuilder;
+import com.github.stephanenicolas.afterburner.rules.fixtures.AccessorBaseFixture;
+import com.github.stephanenicolas.afterburner.rules.fixtures.AccessorFixture;
+import com.github.stephanenicolas.afterburner.rules.fixtures.AccessorSubFixture;
+import com.github.stephanenicolas.afterburner.transform.ClassFilesTransformer;
+import com.github.stephanenicolas.afterburner.transform.TransformationRule;
+
+public class SyntheticAccessorRuleTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testTransform_replacesAccessorsByDirectAccesses() throws Exception {
+        // GIVEN
+        File inputDirectory = temporaryFolder.newFolder("input");
+        File outputDirectory = temporaryFolder.newFolder("output");
+        String outerName = AccessorFixture.class.getName();
+        String innerName = outerName + "$Inner";
+        TestClassFiles.copyClassFile(outerName, inputDirectory);
+        TestClassFiles.copyClassFile(innerName, inputDirectory);
+        List<String> accessorsBefore = getAccessorNames(AccessorFixture.class);
+        List<TransformationRule> rules = Collections.<TransformationRule>singletonList(new SyntheticAccessorRule(".*\\.AccessorFixture"));
+
+        // WHEN
+        List<String> transformedClassNames = new ClassFilesTransformer(rules, Collections.<String>emptyList()).transform(inputDirectory, outputDirectory);
+
+        // THEN
+        assertEquals(Arrays.asList(outerName, innerName), transformedClassNames);
+        URLClassLoader classLoader = new URLClassLoader(new URL[] {outputDirectory.toURI().toURL()}, null);
+        Class<?> outerClass = classLoader.loadClass(outerName);
+        assertEquals(new AccessorFixture().run(), outerClass.getMethod("run").invoke(outerClass.newInstance()));
+        assertTrue(accessorsBefore.toString(), accessorsBefore.size() > 1);
+        assertEquals("only the accessor writing the chained value is kept", 1, getAccessorNames(outerClass).size());
+        assertFalse(Modifier.isPrivate(outerClass.getDeclaredField("secret").getModifiers()));
+        Method twice = outerClass.getDeclaredMethod("twice", int.class);
+        assertFalse(Modifier.isPrivate(twice.getModifiers()));
+        assertTrue(Modifier.isFinal(twice.getModifiers()));
+    }
+
+    @Test
+    public void testTransform_keepsAccessorsOfMethodsDeclaredBySubclasses() throws Exception {
+        // GIVEN
+        File inputDirectory = temporaryFolder.newFolder("input");
+        File outputDirectory = temporaryFolder.newFolder("output");
+        String baseName = AccessorBaseFixture.class.getName();
+        String subName = AccessorSubFixture.class.getName();
+        TestClassFiles.copyClassFile(baseName, inputDirectory);
+        TestClassFiles.copyClassFile(baseName + "$Inner", inputDirectory);
+        TestClassFiles.copyClassFile(subName, inputDirectory);
+        ClassIndex closedWorld = new ClassIndexBuilder().addDirectory(inputDirectory).build();
+        List<TransformationRule> rules = Collections.<TransformationRule>singletonList(new SyntheticAccessorRule(closedWorld, ".*\\.AccessorBaseFixture"));
+
+        // WHEN
+        new ClassFilesTransformer(rules, Collections.<String>emptyList()).transform(inputDirectory, outputDirectory);
+
+        // THEN
+        URLClassLoader classLoader = new URLClassLoader(new URL[] {outputDirectory.toURI().toURL()}, null);
+        Class<?> subClass = classLoader.loadClass(subName);
+        assertEquals(new AccessorSubFixture().run(), subClass.getMethod("run").invoke(subClass.newInstance()));
+        Class<?> baseClass = classLoader.loadClass(baseName);
+        assertTrue(Modifier.isPrivate(baseClass.getDeclaredMethod("twice", int.class).getModifiers()));
+        assertEquals("only the accessor reading the field is deleted", 1, getAccessorNames(baseClass).size());
+    }
+
+    private List<String> getAccessorNames(Class<?> clazz) {
+        List<String> accessorNames = new ArrayList<String>();
+        for (Method method : clazz.getDeclaredMethods()) {
+            if (method.isSynthetic() && method.getName().startsWith("access$")) {
+                accessorNames.add(method.getName());
+            }
+        }
+        return accessorNames;
+    }
+}
@@ -0,0 +1,23 @@
+package com.github.stephanenicolas.afterburner.rules.fixtures;
+
+/**
+ * Compiled by javac for Java 6, its inner class calls a private method via a synthetic accessor,
+ * and {@link AccessorSubFixture} declares a method with the same name and descriptor.
+ */
+public class AccessorBaseFixture {
+    private int secret = 1;
+
+    public int run() {
+        return new Inner().compute();
+    }
+
+    private int twice(int value) {
+        return 2 * value;
+    }
+
+    final class Inner {
+        int compute() {
+            return twice(secret);
+        }
+    }
+}
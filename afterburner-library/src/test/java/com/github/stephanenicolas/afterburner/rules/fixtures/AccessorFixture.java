@@ -0,0 +1,29 @@
+package com.github.stephanenicolas.afterburner.rules.fixtures;
+
+/**
+ * Compiled by javac for Java 6, its inner class accesses its private members via synthetic accessors.
+ */
+public final class AccessorFixture {
+    private static String label = "label";
+    private int secret = 1;
+
+    public int run() {
+        return new Inner().compute();
+    }
+
+    private int twice(int value) {
+        return 2 * value;
+    }
+
+    private static int square(int value) {
+        return value * value;
+    }
+
+    final class Inner {
+        int compute() {
+            secret = 5;
+            int chained = secret = 6;
+            return twice(secret) + square(label.length()) + chained;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.github.stephanenicolas.afterburner.rules.fixtures;
+
+/**
+ * Declares a method with the name and descriptor of a private method of its super class.
+ */
+public class AccessorSubFixture extends AccessorBaseFixture {
+    int twice(int value) {
+        return 3 * value;
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.stephanenicolas.afterburner.rules.fixtures;
+
+/**
+ * Calls small static helpers.
+ */
+public final class InlineFixture {
+
+    private InlineFixture() {
+    }
+
+    public static int compute(int value) {
+        InlineHelpers.count();
+        int result = InlineHelpers.twice(value);
+        return result + InlineHelpers.twice(result);
+    }
+
+    public static long clamp(long first, long second, long max) {
+        return InlineHelpers.clamp(first, max) + InlineHelpers.clamp(second, max);
+    }
+
+    public static String describe(String name) {
+        return InlineHelpers.describe(name, 7, 0.5);
+    }
+
+    public static int catchFailure(int value) {
+        try {
+            return value + InlineHelpers.fail();
+        } catch (IllegalStateException e) {
+            return -value;
+        }
+    }
+
+    public static int callKeptHelpers() {
+        return InlineHelpers.countHidden() + InlineHelpers.factorial(4) + InlineHelpers.parse("12");
+    }
+}
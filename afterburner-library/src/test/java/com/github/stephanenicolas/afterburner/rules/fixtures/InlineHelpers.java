@@ -0,0 +1,53 @@
+package com.github.stephanenicolas.afterburner.rules.fixtures;
+
+/**
+ * Small static helpers, some of which can be inlined.
+ */
+public final class InlineHelpers {
+    public static int callCount;
+    private static int hiddenCount;
+
+    private InlineHelpers() {
+    }
+
+    public static void count() {
+        callCount++;
+    }
+
+    public static int twice(int value) {
+        return value * 2;
+    }
+
+    public static long clamp(long value, long max) {
+        if (value > max) {
+            return max;
+        }
+        return value;
+    }
+
+    public static String describe(String name, int count, double ratio) {
+        int total = count;
+        total += 1000;
+        return name + ":" + total + ":" + ratio;
+    }
+
+    public static int fail() {
+        throw new IllegalStateException("failure");
+    }
+
+    public static int countHidden() {
+        return ++hiddenCount;
+    }
+
+    public static int factorial(int value) {
+        return value <= 1 ? 1 : value * factorial(value - 1);
+    }
+
+    public static int parse(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
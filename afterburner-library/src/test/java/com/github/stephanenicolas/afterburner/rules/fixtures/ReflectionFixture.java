@@ -0,0 +1,60 @@
+package com.github.stephanenicolas.afterburner.rules.fixtures;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Uses reflection on constant class and member names.
+ */
+public final class ReflectionFixture {
+    public static final String CONSTANT = "constant";
+    public String name = "fixture";
+
+    public String describe() {
+        return "described " + name;
+    }
+
+    public static int count() {
+        return 42;
+    }
+
+    public void fail() {
+        throw new IllegalStateException("failure");
+    }
+
+    public static Object createByClass() throws Exception {
+        return ReflectionFixture.class.newInstance();
+    }
+
+    public static Object createByName() throws Exception {
+        return Class.forName("com.github.stephanenicolas.afterburner.rules.fixtures.ReflectionFixture").newInstance();
+    }
+
+    public static Object describeByReflection(ReflectionFixture target) throws Exception {
+        return ReflectionFixture.class.getMethod("describe").invoke(target);
+    }
+
+    public static Object countByReflection() throws Exception {
+        return ReflectionFixture.class.getMethod("count").invoke(null);
+    }
+
+    public static Throwable failByReflection(ReflectionFixture target) throws Exception {
+        try {
+            ReflectionFixture.class.getMethod("fail").invoke(target);
+            return null;
+        } catch (InvocationTargetException e) {
+            return e.getCause();
+        }
+    }
+
+    public static Object readName(ReflectionFixture target) throws Exception {
+        return ReflectionFixture.class.getField("name").get(target);
+    }
+
+    public static Object readConstant() throws Exception {
+        return ReflectionFixture.class.getField("CONSTANT").get(null);
+    }
+
+    public static Object invokeMissing() throws Exception {
+        return ReflectionFixture.class.getMethod("missing").invoke(null);
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.stephanenicolas.afterburner.rules.fixtures;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Loads services through {@link ServiceLoader}.
+ */
+public final class ServiceLoaderFixture {
+
+    private ServiceLoaderFixture() {
+    }
+
+    public interface Greeter {
+        String greet();
+    }
+
+    public interface Farewell {
+        String sayGoodbye();
+    }
+
+    public static class Hello implements Greeter {
+        @Override
+        public String greet() {
+            return "hello";
+        }
+    }
+
+    public static class Bonjour implements Greeter {
+        @Override
+        public String greet() {
+            return "bonjour";
+        }
+    }
+
+    public static class Failing implements Greeter {
+        public Failing() {
+            throw new IllegalStateException("Failing provider");
+        }
+
+        @Override
+        public String greet() {
+            return "failing";
+        }
+    }
+
+    public static List<String> greetAll() {
+        List<String> greetings = new ArrayList<String>();
+        for (Greeter greeter : ServiceLoader.load(Greeter.class)) {
+            greetings.add(greeter.greet());
+        }
+        return greetings;
+    }
+
+    public static List<String> greetAllWithClassLoader() {
+        ClassLoader classLoader = ServiceLoaderFixture.class.getClassLoader();
+        List<String> greetings = new ArrayList<String>();
+        for (Greeter greeter : ServiceLoader.load(Greeter.class, classLoader)) {
+            greetings.add(greeter.greet());
+        }
+        return greetings;
+    }
+
+    public static Iterator<Greeter> getGreeterLoaderIterator() {
+        ServiceLoader<Greeter> serviceLoader = ServiceLoader.load(Greeter.class);
+        serviceLoader.reload();
+        return serviceLoader.iterator();
+    }
+
+    public static boolean hasFarewell() {
+        return ServiceLoader.load(Farewell.class).iterator().hasNext();
+    }
+}
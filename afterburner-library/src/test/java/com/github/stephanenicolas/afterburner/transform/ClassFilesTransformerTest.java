@@ -0,0 +1,239 @@
+package com.github.stephanenicolas.afterburner.transform;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtMethod;
+import javassist.CtNewMethod;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.stephanenicolas.afterburner.AfterBurner;
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.inserts.SimpleInsertableMethod;
+import com.github.stephanenicolas.afterburner.io.ClassFiles;
+
+public class ClassFilesTransformerTest {
+
+    private static final int CORPUS_SIZE = 40;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File inputDirectory;
+    private List<TransformationRule> rules;
+
+    @Before
+    public void setUp() throws Exception {
+        inputDirectory = temporaryFolder.newFolder("input");
+        ClassPool classPool = new ClassPool(true);
+        for (int indexClass = 0; indexClass < CORPUS_SIZE; indexClass++) {
+            CtClass corpusClass = classPool.makeClass("corpus.p" + (indexClass % 3) + ".Sample" + indexClass);
+            if (indexClass % 4 == 1) {
+                corpusClass.setSuperclass(classPool.get("corpus.p" + ((indexClass - 1) % 3) + ".Sample" + (indexClass - 1)));
+            }
+            corpusClass.addField(new CtField(CtClass.intType, "count" + indexClass, corpusClass));
+            corpusClass.addMethod(CtNewMethod.make("public void bar() { }", corpusClass));
+            if (indexClass % 2 == 0) {
+                corpusClass.addMethod(CtNewMethod.make("public void foo() { bar(); }", corpusClass));
+            }
+            corpusClass.writeFile(inputDirectory.getAbsolutePath());
+        }
+        rules = new ArrayList<TransformationRule>();
+        rules.add(new CountingRule("first"));
+        rules.add(new CountingRule("second"));
+    }
+
+    @Test
+    public void testTransform_isReproducible_sequentialAndParallel() throws Exception {
+        // GIVEN
+        File sequentialDirectory = temporaryFolder.newFolder("sequential");
+        File sequentialAgainDirectory = temporaryFolder.newFolder("sequentialAgain");
+        File parallelDirectory = temporaryFolder.newFolder("parallel");
+        ClassFilesTransformer parallelTransformer = new ClassFilesTransformer(rules, Collections.<String>emptyList());
+        parallelTransformer.setThreadCount(4);
+
+        // WHEN
+        List<String> transformedSequentially = new ClassFilesTransformer(rules, Collections.<String>emptyList()).transform(inputDirectory, sequentialDirectory);
+        new ClassFilesTransformer(rules, Collections.<String>emptyList()).transform(inputDirectory, sequentialAgainDirectory);
+        List<String> transformedInParallel = parallelTransformer.transform(inputDirectory, parallelDirectory);
+
+        // THEN
+        assertEquals(CORPUS_SIZE / 2, transformedSequentially.size());
+        assertEquals(transformedSequentially, transformedInParallel);
+        List<String> classNames = ClassFiles.listClassNames(inputDirectory);
+        assertEquals(CORPUS_SIZE, classNames.size());
+        assertEquals(classNames, ClassFiles.listClassNames(parallelDirectory));
+        for (String className : classNames) {
+            byte[] sequentialHash = hash(ClassFiles.getClassFile(sequentialDirectory, className));
+            assertArrayEquals(className, sequentialHash, hash(ClassFiles.getClassFile(sequentialAgainDirectory, className)));
+            assertArrayEquals(className, sequentialHash, hash(ClassFiles.getClassFile(parallelDirectory, className)));
+        }
+    }
+
+    @Test
+    public void testTransform_withBoundedPools_isReproducible() throws Exception {
+        // GIVEN
+        File unboundedDirectory = temporaryFolder.newFolder("unbounded");
+        File boundedDirectory = temporaryFolder.newFolder("bounded");
+        ClassFilesTransformer boundedTransformer = new ClassFilesTransformer(rules, Collections.<String>emptyList());
+        boundedTransformer.setMaxClassesPerPool(3);
+
+        // WHEN
+        List<String> transformedUnbounded = new ClassFilesTransformer(rules, Collections.<String>emptyList()).transform(inputDirectory, unboundedDirectory);
+        List<String> transformedBounded = boundedTransformer.transform(inputDirectory, boundedDirectory);
+
+        // THEN
+        assertEquals(transformedUnbounded, transformedBounded);
+        for (String className : ClassFiles.listClassNames(inputDirectory)) {
+            assertArrayEquals(className, hash(ClassFiles.getClassFile(unboundedDirectory, className)),
+                    hash(ClassFiles.getClassFile(boundedDirectory, className)));
+        }
+    }
+
+    @Test
+    public void testTransform_transformedClassesRun() throws Exception {
+        // GIVEN
+        File outputDirectory = temporaryFolder.newFolder("output");
+
+        // WHEN
+        new ClassFilesTransformer(rules, Collections.<String>emptyList()).transform(inputDirectory, outputDirectory);
+
+        // THEN
+        URLClassLoader classLoader = new URLClassLoader(new URL[] {outputDirectory.toURI().toURL()}, null);
+        Class<?> transformedClass = classLoader.loadClass("corpus.p0.Sample0");
+        Object instance = transformedClass.newInstance();
+        transformedClass.getMethod("foo").invoke(instance);
+        Field countField = transformedClass.getDeclaredField("count0");
+        countField.setAccessible(true);
+        assertEquals(2, countField.get(instance));
+        assertFalse(Arrays.equals(hash(ClassFiles.getClassFile(inputDirectory, "corpus.p0.Sample0")),
+                hash(ClassFiles.getClassFile(outputDirectory, "corpus.p0.Sample0"))));
+        assertArrayEquals(hash(ClassFiles.getClassFile(inputDirectory, "corpus.p1.Sample1")),
+                hash(ClassFiles.getClassFile(outputDirectory, "corpus.p1.Sample1")));
+    }
+
+    @Test
+    public void testTransform_skipsClassesAlreadyTransformed() throws Exception {
+        // GIVEN
+        File outputDirectory = temporaryFolder.newFolder("output");
+        File outputAgainDirectory = temporaryFolder.newFolder("outputAgain");
+        ClassFilesTransformer transformer = new ClassFilesTransformer(rules, Collections.<String>emptyList());
+        transformer.transform(inputDirectory, outputDirectory);
+
+        // WHEN
+        List<String> transformedAgain = transformer.transform(outputDirectory, outputAgainDirectory);
+
+        // THEN
+        assertTrue(transformedAgain.isEmpty());
+        assertEquals(CORPUS_SIZE, transformer.getMetrics().getClassCount());
+        assertEquals(CORPUS_SIZE / 2, transformer.getMetrics().getUpToDateClassCount());
+        assertEquals(0, transformer.getMetrics().getTransformedClassCount());
+        byte[] transformedClass = ClassFiles.readFully(ClassFiles.getClassFile(outputDirectory, "corpus.p0.Sample0"));
+        assertEquals(new TreeSet<String>(Arrays.asList("CountingRule:first", "CountingRule:second")), AppliedRulesMarker.readAppliedRules(transformedClass));
+        for (String className : ClassFiles.listClassNames(inputDirectory)) {
+            assertArrayEquals(className, hash(ClassFiles.getClassFile(outputDirectory, className)),
+                    hash(ClassFiles.getClassFile(outputAgainDirectory, className)));
+        }
+    }
+
+    @Test
+    public void testTransform_appliesOnlyNewRules() throws Exception {
+        // GIVEN
+        File outputDirectory = temporaryFolder.newFolder("output");
+        File outputAgainDirectory = temporaryFolder.newFolder("outputAgain");
+        new ClassFilesTransformer(rules.subList(0, 1), Collections.<String>emptyList()).transform(inputDirectory, outputDirectory);
+
+        // WHEN
+        List<String> transformedAgain = new ClassFilesTransformer(rules, Collections.<String>emptyList()).transform(outputDirectory, outputAgainDirectory);
+
+        // THEN
+        assertEquals(CORPUS_SIZE / 2, transformedAgain.size());
+        URLClassLoader classLoader = new URLClassLoader(new URL[] {outputAgainDirectory.toURI().toURL()}, null);
+        Class<?> transformedClass = classLoader.loadClass("corpus.p0.Sample0");
+        Object instance = transformedClass.newInstance();
+        transformedClass.getMethod("foo").invoke(instance);
+        Field countField = transformedClass.getDeclaredField("count0");
+        countField.setAccessible(true);
+        assertEquals(2, countField.get(instance));
+    }
+
+    @Test(expected = AfterBurnerImpossibleException.class)
+    public void testTransform_rejectsTransformationInPlace() throws Exception {
+        // GIVEN
+        ClassFilesTransformer transformer = new ClassFilesTransformer(rules, Collections.<String>emptyList());
+
+        // WHEN
+        transformer.transform(inputDirectory, new File(inputDirectory, "."));
+    }
+
+    @Test
+    public void testCreateClassPool_classPathTakesPrecedenceOverSystemPath() throws Exception {
+        // GIVEN
+        File classPathDirectory = temporaryFolder.newFolder("classpath");
+        CtClass shadowingClass = new ClassPool(true).makeClass(ClassFilesTransformerTest.class.getName());
+        shadowingClass.addField(new CtField(CtClass.intType, "shadow", shadowingClass));
+        shadowingClass.writeFile(classPathDirectory.getAbsolutePath());
+        ClassFilesTransformer transformer = new ClassFilesTransformer(rules, Arrays.asList(classPathDirectory.getAbsolutePath()));
+
+        // WHEN
+        ClassPool classPool = transformer.createClassPool(inputDirectory);
+
+        // THEN
+        assertEquals("shadow", classPool.get(ClassFilesTransformerTest.class.getName()).getDeclaredFields()[0].getName());
+    }
+
+    private byte[] hash(File file) throws Exception {
+        return MessageDigest.getInstance("SHA-1").digest(ClassFiles.readFully(file));
+    }
+
+    private static final class CountingRule implements TransformationRule {
+        private final String tag;
+
+        private CountingRule(String tag) {
+            this.tag = tag;
+        }
+
+        @Override
+        public String getFingerprint() {
+            return "CountingRule:" + tag;
+        }
+
+        @Override
+        public boolean shouldTransform(CtClass candidateClass) {
+            for (CtMethod method : candidateClass.getDeclaredMethods()) {
+                if (method.getName().equals("foo")) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void applyTransformations(AfterBurner afterBurner, CtClass classToTransform) throws CannotCompileException, AfterBurnerImpossibleException {
+            String countField = classToTransform.getDeclaredFields()[0].getName();
+            String body = countField + " = " + countField + " + 1; String s = \"" + tag + "\" + " + countField + ";";
+            afterBurner.addOrInsertMethod(new SimpleInsertableMethod(classToTransform, "foo", null, "bar", body, null));
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.github.stephanenicolas.afterburner.transform;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtMethod;
+import javassist.CtNewMethod;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.stephanenicolas.afterburner.AfterBurner;
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.inserts.SimpleInsertableMethod;
+import com.github.stephanenicolas.afterburner.io.ClassFiles;
+
+public class ShardedClassFilesTransformerTest {
+
+    private static final int CORPUS_SIZE = 20;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File inputDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        inputDirectory = temporaryFolder.newFolder("input");
+        ClassPool classPool = new ClassPool(true);
+        for (int indexClass = 0; indexClass < CORPUS_SIZE; indexClass++) {
+            CtClass corpusClass = classPool.makeClass("shards.p" + (indexClass % 4) + ".Sample" + indexClass);
+            corpusClass.addField(new CtField(CtClass.intType, "count", corpusClass));
+            corpusClass.addMethod(CtNewMethod.make("public void bar() { }", corpusClass));
+            if (indexClass % 2 == 0) {
+                corpusClass.addMethod(CtNewMethod.make("public void foo() { bar(); }", corpusClass));
+            }
+            corpusClass.writeFile(inputDirectory.getAbsolutePath());
+        }
+    }
+
+    @Test
+    public void testTransform_sameOutputAsSingleJvm() throws Exception {
+        // GIVEN
+        File singleJvmDirectory = temporaryFolder.newFolder("single");
+        File shardedDirectory = temporaryFolder.newFolder("sharded");
+        List<TransformationRule> rules = new ArrayList<TransformationRule>();
+        rules.add(new FooRule());
+        ShardedClassFilesTransformer shardedTransformer = new ShardedClassFilesTransformer(Arrays.asList(FooRule.class.getName()),
+                Collections.<String>emptyList(), 3);
+        shardedTransformer.setWorkerJvmArguments(Arrays.asList("-Xmx64m"));
+        shardedTransformer.setMaxClassesPerPool(2);
+
+        ClassFilesTransformer singleJvmTransformer = new ClassFilesTransformer(rules, Collections.<String>emptyList());
+
+        // WHEN
+        List<String> transformedInSingleJvm = singleJvmTransformer.transform(inputDirectory, singleJvmDirectory);
+        List<String> transformedInShards = shardedTransformer.transform(inputDirectory, shardedDirectory);
+
+        // THEN
+        assertEquals(CORPUS_SIZE / 2, transformedInShards.size());
+        assertEquals(transformedInSingleJvm, transformedInShards);
+        TransformationMetrics singleJvmMetrics = singleJvmTransformer.getMetrics();
+        TransformationMetrics shardedMetrics = shardedTransformer.getMetrics();
+        assertEquals(CORPUS_SIZE, shardedMetrics.getClassCount());
+        assertEquals(singleJvmMetrics.getClassCount(), shardedMetrics.getClassCount());
+        assertEquals(singleJvmMetrics.getTransformedClassCount(), shardedMetrics.getTransformedClassCount());
+        assertEquals(singleJvmMetrics.getUpToDateClassCount(), shardedMetrics.getUpToDateClassCount());
+        assertEquals(singleJvmMetrics.getCreatedClassCount(), shardedMetrics.getCreatedClassCount());
+        List<String> classNames = ClassFiles.listClassNames(inputDirectory);
+        assertEquals(classNames, ClassFiles.listClassNames(shardedDirectory));
+        for (String className : classNames) {
+            assertArrayEquals(className, hash(ClassFiles.getClassFile(singleJvmDirectory, className)),
+                    hash(ClassFiles.getClassFile(shardedDirectory, className)));
+        }
+    }
+
+    @Test(expected = AfterBurnerImpossibleException.class)
+    public void testTransform_failsWhenAWorkerFails() throws Exception {
+        // GIVEN
+        ShardedClassFilesTransformer shardedTransformer = new ShardedClassFilesTransformer(Arrays.asList("not.a.Rule"),
+                Collections.<String>emptyList(), 2);
+
+        // WHEN
+        shardedTransformer.transform(inputDirectory, temporaryFolder.newFolder("output"));
+    }
+
+    @Test(expected = AfterBurnerImpossibleException.class)
+    public void testTransform_rejectsTransformationInPlace() throws Exception {
+        // GIVEN
+        ShardedClassFilesTransformer shardedTransformer = new ShardedClassFilesTransformer(Arrays.asList(FooRule.class.getName()),
+                Collections.<String>emptyList(), 2);
+
+        // WHEN
+        shardedTransformer.transform(inputDirectory, new File(inputDirectory, "."));
+    }
+
+    @Test
+    public void testTransform_doesntForkWorkersForEmptyShards() throws Exception {
+        // GIVEN
+        ShardedClassFilesTransformer shardedTransformer = new ShardedClassFilesTransformer(Arrays.asList(FooRule.class.getName()),
+                Collections.<String>emptyList(), 2);
+        shardedTransformer.setJavaExecutable(new File(temporaryFolder.getRoot(), "no-java").getAbsolutePath());
+
+        // WHEN
+        List<String> transformedClassNames = shardedTransformer.transform(temporaryFolder.newFolder("empty"), temporaryFolder.newFolder("output"));
+
+        // THEN
+        assertTrue(transformedClassNames.isEmpty());
+        assertEquals(0, shardedTransformer.getMetrics().getClassCount());
+    }
+
+    @Test(expected = AfterBurnerImpossibleException.class)
+    public void testTransform_rejectsRulesWithoutNoArgConstructor() throws Exception {
+        // GIVEN
+        ShardedClassFilesTransformer shardedTransformer = new ShardedClassFilesTransformer(Arrays.asList(ConfiguredRule.class.getName()),
+                Collections.<String>emptyList(), 2);
+        shardedTransformer.setJavaExecutable(new File(temporaryFolder.getRoot(), "no-java").getAbsolutePath());
+
+        // WHEN
+        shardedTransformer.transform(inputDirectory, temporaryFolder.newFolder("output"));
+    }
+
+    @Test
+    public void testCreateShards_byPackage() throws Exception {
+        // GIVEN
+        ShardedClassFilesTransformer shardedTransformer = new ShardedClassFilesTransformer(Collections.<String>emptyList(),
+                Collections.<String>emptyList(), 3);
+        shardedTransformer.setShardByPackage(true);
+
+        // WHEN
+        List<List<String>> shards = shardedTransformer.createShards(ClassFiles.listClassNames(inputDirectory));
+
+        // THEN
+        assertEquals(3, shards.size());
+        int classCount = 0;
+        for (List<String> shard : shards) {
+            classCount += shard.size();
+            for (String className : shard) {
+                String packageName = className.substring(0, className.lastIndexOf('.'));
+                for (List<String> otherShard : shards) {
+                    if (otherShard != shard) {
+                        for (String otherClassName : otherShard) {
+                            assertTrue(!otherClassName.startsWith(packageName + "."));
+                        }
+                    }
+                }
+            }
+        }
+        assertEquals(CORPUS_SIZE, classCount);
+    }
+
+    private byte[] hash(File file) throws Exception {
+        return MessageDigest.getInstance("SHA-1").digest(ClassFiles.readFully(file));
+    }
+
+    public static class ConfiguredRule extends FooRule {
+        public ConfiguredRule(String configuration) {
+        }
+    }
+
+    public static class FooRule implements TransformationRule {
+        @Override
+        public String getFingerprint() {
+            return "FooRule";
+        }
+
+        @Override
+        public boolean shouldTransform(CtClass candidateClass) {
+            for (CtMethod method : candidateClass.getDeclaredMethods()) {
+                if (method.getName().equals("foo")) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void applyTransformations(AfterBurner afterBurner, CtClass classToTransform) throws CannotCompileException, AfterBurnerImpossibleException {
+            afterBurner.addOrInsertMethod(new SimpleInsertableMethod(classToTransform, "foo", null, "bar", "count++;", null));
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.github.stephanenicolas.afterburner.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtMethod;
+import javassist.CtNewMethod;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.stephanenicolas.afterburner.AfterBurner;
+import com.github.stephanenicolas.afterburner.exception.AfterBurnerImpossibleException;
+import com.github.stephanenicolas.afterburner.index.HierarchyCache;
+import com.github.stephanenicolas.afterburner.inserts.SimpleInsertableMethod;
+import com.github.stephanenicolas.afterburner.io.ClassFiles;
+
+public class TransformationDaemonTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File inputDirectory;
+    private File outputDirectory;
+    private TransformationDaemon daemon;
+    private long nextModificationTime = System.currentTimeMillis();
+
+    @Before
+    public void setUp() throws Exception {
+        inputDirectory = temporaryFolder.newFolder("input");
+        outputDirectory = temporaryFolder.newFolder("output");
+        compile("daemon.A", null, "");
+        compile("daemon.B", "daemon.A", "");
+        compile("daemon.C", null, "");
+        daemon = new TransformationDaemon(Collections.<TransformationRule>singletonList(new FooRule()), Collections.<String>emptyList(),
+                inputDirectory, outputDirectory, new HierarchyCache());
+    }
+
+    @Test
+    public void testPoll_firstPollTransformsAllClasses() throws Exception {
+        // GIVEN
+
+        // WHEN
+        assertEquals(Arrays.asList("daemon.A", "daemon.B", "daemon.C"), daemon.poll());
+
+        // THEN
+        assertEquals(Collections.emptyList(), daemon.poll());
+    }
+
+    @Test
+    public void testPoll_transformsOnlyChangedClasses() throws Exception {
+        // GIVEN
+        daemon.poll();
+
+        // WHEN
+        compile("daemon.C", null, "public void baz() { }");
+
+        // THEN
+        assertEquals(Arrays.asList("daemon.C"), daemon.poll());
+    }
+
+    @Test
+    public void testPoll_transformsSubclassesOfChangedClasses() throws Exception {
+        // GIVEN
+        daemon.poll();
+
+        // WHEN
+        compile("daemon.A", null, "public void baz() { }");
+
+        // THEN
+        assertEquals(Arrays.asList("daemon.A", "daemon.B"), daemon.poll());
+    }
+
+    @Test
+    public void testPoll_deletesOutputOfDeletedClasses() throws Exception {
+        // GIVEN
+        daemon.poll();
+        File outputFile = ClassFiles.getClassFile(outputDirectory, "daemon.C");
+        assertTrue(outputFile.exists());
+
+        // WHEN
+        assertTrue(ClassFiles.getClassFile(inputDirectory, "daemon.C").delete());
+
+        // THEN
+        assertEquals(Collections.emptyList(), daemon.poll());
+        assertFalse(outputFile.exists());
+    }
+
+    @Test
+    public void testPoll_withoutHierarchyCache() throws Exception {
+        // GIVEN
+        daemon = new TransformationDaemon(Collections.<TransformationRule>singletonList(new FooRule()), Collections.<String>emptyList(),
+                inputDirectory, outputDirectory, null);
+        daemon.poll();
+        assertTrue(ClassFiles.getClassFile(inputDirectory, "daemon.C").delete());
+
+        // WHEN
+        compile("daemon.A", null, "public void baz() { }");
+
+        // THEN
+        assertEquals(Arrays.asList("daemon.A", "daemon.B"), daemon.poll());
+        assertFalse(ClassFiles.getClassFile(outputDirectory, "daemon.C").exists());
+    }
+
+    @Test
+    public void testPoll_retriesClassesWhoseTransformationFailed() throws Exception {
+        // GIVEN
+        daemon = new TransformationDaemon(Arrays.<TransformationRule>asList(new FooRule(), new FailingOnceRule()), Collections.<String>emptyList(),
+                inputDirectory, outputDirectory, new HierarchyCache());
+        try {
+            daemon.poll();
+            fail();
+        } catch (AfterBurnerImpossibleException e) {
+            // expected, the first transformation fails
+        }
+
+        // WHEN
+        List<String> transformedClassNames = daemon.poll();
+
+        // THEN
+        assertEquals(Arrays.asList("daemon.A", "daemon.B", "daemon.C"), transformedClassNames);
+    }
+
+    @Test(expected = AfterBurnerImpossibleException.class)
+    public void testConstructor_rejectsTransformationInPlace() throws Exception {
+        // GIVEN
+
+        // WHEN
+        new TransformationDaemon(Collections.<TransformationRule>singletonList(new FooRule()), Collections.<String>emptyList(),
+                inputDirectory, new File(inputDirectory, "."), null);
+    }
+
+    private void compile(String className, String superclassName, String extraMethod) throws Exception {
+        ClassPool classPool = new ClassPool(true);
+        classPool.appendClassPath(inputDirectory.getAbsolutePath());
+        CtClass ctClass = classPool.makeClass(className);
+        if (superclassName != null) {
+            ctClass.setSuperclass(classPool.get(superclassName));
+        }
+        ctClass.addField(CtField.make("public int count;", ctClass));
+        ctClass.addMethod(CtNewMethod.make("public void bar() { }", ctClass));
+        ctClass.addMethod(CtNewMethod.make("public void foo() { bar(); }", ctClass));
+        if (extraMethod.length() != 0) {
+            ctClass.addMethod(CtNewMethod.make(extraMethod, ctClass));
+        }
+        ctClass.writeFile(inputDirectory.getAbsolutePath());
+        // file systems may have a coarse time resolution
+        nextModificationTime += 2000;
+        assertTrue(ClassFiles.getClassFile(inputDirectory, className).setLastModified(nextModificationTime));
+    }
+
+    private static final class FailingOnceRule implements TransformationRule {
+        private boolean hasFailed;
+
+        @Override
+        public String getFingerprint() {
+            return "FailingOnceRule";
+        }
+
+        @Override
+        public boolean shouldTransform(CtClass candidateClass) {
+            return true;
+        }
+
+        @Override
+        public synchronized void applyTransformations(AfterBurner afterBurner, CtClass classToTransform) throws AfterBurnerImpossibleException {
+            if (!hasFailed) {
+                hasFailed = true;
+                throw new AfterBurnerImpossibleException("First transformation fails");
+            }
+        }
+    }
+
+    private static final class FooRule implements TransformationRule {
+        @Override
+        public String getFingerprint() {
+            return "FooRule";
+        }
+
+        @Override
+        public boolean shouldTransform(CtClass candidateClass) {
+            for (CtMethod method : candidateClass.getDeclaredMethods()) {
+                if (method.getName().equals("foo")) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void applyTransformations(AfterBurner afterBurner, CtClass classToTransform) throws CannotCompileException, AfterBurnerImpossibleException {
+            afterBurner.addOrInsertMethod(new SimpleInsertableMethod(classToTransform, "foo", null, "bar", "count++;", null));
+        }
+    }
+}
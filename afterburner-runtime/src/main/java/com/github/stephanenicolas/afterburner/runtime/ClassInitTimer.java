@@ -0,0 +1,194 @@
+package com.github.stephanenicolas.afterburner.runtime;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Times static initializers, with nesting : the static initializer of a class often triggers the initialization
+ * of other classes, whose time is attributed to them and not to the outer class.
+ * <p>
+ * Each initialization, between {@link #enter(String)} and {@link #exit()}, is a record of preallocated arrays,
+ * linked to the record of the initialization it is nested in. As a class is initialized once,
+ * the number of records is bounded by the number of classes : initializations beyond the capacity are dropped,
+ * see {@link #getDroppedCount()}. Timing doesn't allocate, except the nesting stack of each thread, once.
+ * </p>
+ * <p>
+ * Times include the time spent waiting for an initialization in progress in another thread.
+ * </p>
+ * @author SNI
+ */
+public class ClassInitTimer {
+    static final int MAX_DEPTH = 256;
+
+    private static final int INDEX_SIZE = 0;
+    private static final int INDEX_OVERFLOW = 1;
+    private static final int FIRST_FRAME = 2;
+    private static final long INCOMPLETE = -1;
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private final int capacity;
+    private final String[] classNames;
+    private final int[] parents;
+    private final long[] startNanos;
+    /** Time of the nested initializations of each record, only written by the thread of the record. */
+    private final long[] childNanos;
+    /** Total time of each record, written last : a complete total publishes the rest of the record. */
+    private final AtomicLongArray totalNanos;
+    private final AtomicInteger recordCount = new AtomicInteger();
+    private final AtomicLong droppedCount = new AtomicLong();
+    /** Per thread, the size of the stack, the number of dropped frames on top of it, then the records of the frames. */
+    private final ThreadLocal<int[]> stacks = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[FIRST_FRAME + MAX_DEPTH];
+        }
+    };
+
+    /**
+     * Creates a timer.
+     * @param capacity the maximum number of timed initializations.
+     */
+    public ClassInitTimer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        classNames = new String[capacity];
+        parents = new int[capacity];
+        startNanos = new long[capacity];
+        childNanos = new long[capacity];
+        totalNanos = new AtomicLongArray(capacity);
+        for (int indexRecord = 0; indexRecord < capacity; indexRecord++) {
+            totalNanos.set(indexRecord, INCOMPLETE);
+        }
+    }
+
+    /**
+     * Starts timing the initialization of a class, in the current thread.
+     * @param className the name of the class being initialized.
+     */
+    public void enter(String className) {
+        int[] stack = stacks.get();
+        int size = stack[INDEX_SIZE];
+        if (stack[INDEX_OVERFLOW] > 0 || size == MAX_DEPTH) {
+            stack[INDEX_OVERFLOW]++;
+            droppedCount.incrementAndGet();
+            return;
+        }
+        int record = recordCount.getAndIncrement();
+        if (record >= capacity) {
+            record = -1;
+            droppedCount.incrementAndGet();
+        } else {
+            classNames[record] = className;
+            parents[record] = size == 0 ? -1 : stack[FIRST_FRAME + size - 1];
+            startNanos[record] = System.nanoTime();
+        }
+        stack[FIRST_FRAME + size] = record;
+        stack[INDEX_SIZE] = size + 1;
+    }
+
+    /**
+     * Stops timing the initialization started by the last call to {@link #enter(String)} in the current thread.
+     */
+    public void exit() {
+        long endNanos = System.nanoTime();
+        int[] stack = stacks.get();
+        if (stack[INDEX_OVERFLOW] > 0) {
+            stack[INDEX_OVERFLOW]--;
+            return;
+        }
+        int size = stack[INDEX_SIZE];
+        if (size == 0) {
+            return;
+        }
+        stack[INDEX_SIZE] = size - 1;
+        int record = stack[FIRST_FRAME + size - 1];
+        if (record == -1) {
+            return;
+        }
+        long elapsedNanos = endNanos - startNanos[record];
+        int parent = parents[record];
+        if (parent != -1) {
+            childNanos[parent] += elapsedNanos;
+        }
+        totalNanos.set(record, elapsedNanos);
+    }
+
+    /**
+     * @return the number of initializations not timed, because the timer was full or they were nested too deeply.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return the self time of the completed initializations in the folded stack format of flame graph tools :
+     * a line per stack of nested initializations, like "com.foo.A;com.foo.B 1234", with the self time of the innermost
+     * initialization in microseconds. Identical stacks are merged, lines are sorted.
+     */
+    public List<String> getFoldedStacks() {
+        Map<String, Long> selfMicrosByStack = new TreeMap<String, Long>();
+        int completedCount = Math.min(recordCount.get(), capacity);
+        for (int record = 0; record < completedCount; record++) {
+            long total = totalNanos.get(record);
+            if (total == INCOMPLETE) {
+                continue;
+            }
+            StringBuilder stack = new StringBuilder(classNames[record]);
+            for (int parent = parents[record]; parent != -1; parent = parents[parent]) {
+                stack.insert(0, ';').insert(0, classNames[parent]);
+            }
+            String key = stack.toString();
+            long selfMicros = TimeUnit.NANOSECONDS.toMicros(total - childNanos[record]);
+            Long previousSelfMicros = selfMicrosByStack.get(key);
+            selfMicrosByStack.put(key, previousSelfMicros == null ? selfMicros : previousSelfMicros + selfMicros);
+        }
+        List<String> lines = new ArrayList<String>();
+        for (Map.Entry<String, Long> entry : selfMicrosByStack.entrySet()) {
+            lines.add(entry.getKey() + " " + entry.getValue());
+        }
+        return lines;
+    }
+
+    /**
+     * @param maxLineCount the maximum number of initializations to report.
+     * @return a line per completed initialization, like "12.345 ms self, 20.000 ms total: com.foo.A",
+     * the highest self times first.
+     */
+    public List<String> getSlowestInitializations(int maxLineCount) {
+        List<Integer> records = new ArrayList<Integer>();
+        int completedCount = Math.min(recordCount.get(), capacity);
+        for (int record = 0; record < completedCount; record++) {
+            if (totalNanos.get(record) != INCOMPLETE) {
+                records.add(record);
+            }
+        }
+        Collections.sort(records, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer record1, Integer record2) {
+                long selfNanos1 = getSelfNanos(record1);
+                long selfNanos2 = getSelfNanos(record2);
+                return selfNanos1 > selfNanos2 ? -1 : selfNanos1 == selfNanos2 ? 0 : 1;
+            }
+        });
+        List<String> lines = new ArrayList<String>();
+        for (int record : records.subList(0, Math.min(maxLineCount, records.size()))) {
+            lines.add(String.format("%.3f ms self, %.3f ms total: %s", getSelfNanos(record) / NANOS_PER_MILLI, totalNanos.get(record) / NANOS_PER_MILLI,
+                    classNames[record]));
+        }
+        return lines;
+    }
+
+    private long getSelfNanos(int record) {
+        return totalNanos.get(record) - childNanos[record];
+    }
+}
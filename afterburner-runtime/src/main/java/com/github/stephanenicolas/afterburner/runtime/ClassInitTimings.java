@@ -0,0 +1,79 @@
+package com.github.stephanenicolas.afterburner.runtime;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * The timer of static initializers used by instrumentation rules. Injected code accesses it statically,
+ * e.g. {@code ClassInitTimings.TIMER.enter("com.foo.Bar")}.
+ * <p>
+ * The timer can time up to 65536 initializations, it can be changed by the system property {@value #CAPACITY_PROPERTY}.
+ * Reports are written at shutdown into the files given by the system properties {@value #FOLDED_STACKS_FILE_PROPERTY},
+ * for flame graph tools, and {@value #REPORT_FILE_PROPERTY}, for the slowest initializations.
+ * </p>
+ * @author SNI
+ */
+public final class ClassInitTimings {
+    /** The system property giving the maximum number of timed initializations. */
+    public static final String CAPACITY_PROPERTY = "afterburner.clinit.capacity";
+    /** The system property giving the file to write folded stacks into at shutdown. */
+    public static final String FOLDED_STACKS_FILE_PROPERTY = "afterburner.clinit.foldedStacksFile";
+    /** The system property giving the file to write the slowest initializations into at shutdown. */
+    public static final String REPORT_FILE_PROPERTY = "afterburner.clinit.reportFile";
+    public static final int DEFAULT_CAPACITY = 65536;
+    public static final int REPORT_LINE_COUNT = 100;
+
+    /** Times static initializers. */
+    public static final ClassInitTimer TIMER = new ClassInitTimer(Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY));
+
+    static {
+        final String foldedStacksFileName = System.getProperty(FOLDED_STACKS_FILE_PROPERTY);
+        final String reportFileName = System.getProperty(REPORT_FILE_PROPERTY);
+        if (foldedStacksFileName != null || reportFileName != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread("afterburner-clinit-shutdown") {
+                @Override
+                public void run() {
+                    if (foldedStacksFileName != null) {
+                        writeQuietly(new File(foldedStacksFileName), TIMER.getFoldedStacks());
+                    }
+                    if (reportFileName != null) {
+                        writeQuietly(new File(reportFileName), TIMER.getSlowestInitializations(REPORT_LINE_COUNT));
+                    }
+                }
+            });
+        }
+    }
+
+    private ClassInitTimings() {
+    }
+
+    /**
+     * Writes lines into a file.
+     * @param file the file to write, its content is replaced.
+     * @param lines the lines to write.
+     * @throws IOException if the file can't be written.
+     */
+    public static void write(File file, List<String> lines) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void writeQuietly(File file, List<String> lines) {
+        try {
+            write(file, lines);
+        } catch (IOException e) {
+            System.err.println("Afterburner class init timings: impossible to write " + file + ": " + e);
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.github.stephanenicolas.afterburner.runtime;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A table of counters, one per site of injected code, striped by thread.
+ * <p>
+ * Sites are registered once, usually when an instrumented class is initialized, and receive an id
+ * stored in a static final field. Counting is then a single atomic increment, without allocation nor lock.
+ * Each stripe is a row of counters, and threads are spread over stripes by their id, so that threads
+ * don't contend on the same counters. A {@link #snapshot()} sums the rows.
+ * </p>
+ * <p>
+ * A table can also record which threads hit a site, see {@link #recordThread(int)}.
+ * </p>
+ * <p>
+ * Site 0 is reserved : when the table is full, new sites share it.
+ * </p>
+ * @author SNI
+ */
+public class CounterTable {
+    /** The description of the site shared by sites registered when the table is full. */
+    public static final String OVERFLOW_SITE_DESCRIPTION = "<other sites>";
+
+    private static final int MAX_STRIPE_COUNT = 64;
+
+    private final String name;
+    private final int maxSiteCount;
+    private final int stripeMask;
+    private final AtomicLongArray counts;
+    /** Racy ticks of sampled sites, see {@link #sample(int, int)}. */
+    private final long[] sampleTicks;
+    /** Per site, a bit per thread id modulo 64. */
+    private final AtomicLongArray threadBitmaps;
+    private final String[] descriptions;
+    private final Map<String, Integer> sharedSitesByDescription = new HashMap<String, Integer>();
+    private final long creationNanoTime = System.nanoTime();
+    private volatile int siteCount;
+
+    /**
+     * Creates a table with a stripe per available processor.
+     * @param name the name of the table.
+     * @param maxSiteCount the maximum number of sites, including the overflow site.
+     */
+    public CounterTable(String name, int maxSiteCount) {
+        this(name, maxSiteCount, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a table.
+     * @param name the name of the table.
+     * @param maxSiteCount the maximum number of sites, including the overflow site.
+     * @param stripeCount the number of stripes, rounded up to a power of 2.
+     */
+    public CounterTable(String name, int maxSiteCount, int stripeCount) {
+        if (maxSiteCount < 1) {
+            throw new IllegalArgumentException("A table has at least one site: " + maxSiteCount);
+        }
+        this.name = name;
+        this.maxSiteCount = maxSiteCount;
+        int roundedStripeCount = 1;
+        while (roundedStripeCount < stripeCount && roundedStripeCount < MAX_STRIPE_COUNT) {
+            roundedStripeCount <<= 1;
+        }
+        this.stripeMask = roundedStripeCount - 1;
+        this.counts = new AtomicLongArray(roundedStripeCount * maxSiteCount);
+        this.sampleTicks = new long[roundedStripeCount * maxSiteCount];
+        this.threadBitmaps = new AtomicLongArray(maxSiteCount);
+        this.descriptions = new String[maxSiteCount];
+        descriptions[0] = OVERFLOW_SITE_DESCRIPTION;
+        siteCount = 1;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of registered sites, including the overflow site.
+     */
+    public int getSiteCount() {
+        return siteCount;
+    }
+
+    /**
+     * Registers a site. Each call registers a new site, even if another site has the same description.
+     * @param description describes the site, typically the method and line of injected code.
+     * @return the id of the site, 0 if the table is full.
+     */
+    public synchronized int register(String description) {
+        if (siteCount == maxSiteCount) {
+            return 0;
+        }
+        descriptions[siteCount] = description;
+        // volatile write, publishes the description
+        siteCount = siteCount + 1;
+        return siteCount - 1;
+    }
+
+    /**
+     * Registers a shared site. Shared sites with the same description share their id, whatever the class
+     * that registers them, like all the writes of a field.
+     * @param description describes the site, like the name of a field.
+     * @return the id of the site, 0 if the table is full.
+     */
+    public synchronized int registerShared(String description) {
+        Integer registeredSite = sharedSitesByDescription.get(description);
+        if (registeredSite != null) {
+            return registeredSite;
+        }
+        int site = register(description);
+        if (site != 0) {
+            sharedSitesByDescription.put(description, site);
+        }
+        return site;
+    }
+
+    /**
+     * Counts one event of a site.
+     * @param site the id of the site.
+     */
+    public void increment(int site) {
+        counts.getAndIncrement(getIndex(site));
+    }
+
+    /**
+     * Adds to the counter of a site.
+     * @param site the id of the site.
+     * @param delta the value to add.
+     */
+    public void add(int site, long delta) {
+        counts.getAndAdd(getIndex(site), delta);
+    }
+
+    /**
+     * Counts one event of a site, sampled : the counter is increased by rate, once every rate events.
+     * Sampled events only update a plain, unsynchronized, tick per thread stripe and site, so that
+     * most events cost no atomic operation. Concurrent threads of the same stripe can lose ticks,
+     * sampled counts are estimates.
+     * @param site the id of the site.
+     * @param rate the sampling rate, a power of 2.
+     */
+    public void sample(int site, int rate) {
+        if (tick(site, rate)) {
+            counts.getAndAdd(getIndex(site), rate);
+        }
+    }
+
+    /**
+     * Records that the current thread hit a site. Threads are identified by their id modulo 64, so that
+     * recording is a read of a bitmap once the thread has been recorded, and the number of distinct threads is
+     * estimated, up to 64.
+     * @param site the id of the site.
+     */
+    public void recordThread(int site) {
+        long threadBit = 1L << (Thread.currentThread().getId() & (Long.SIZE - 1));
+        long bitmap = threadBitmaps.get(site);
+        while ((bitmap & threadBit) == 0 && !threadBitmaps.compareAndSet(site, bitmap, bitmap | threadBit)) {
+            bitmap = threadBitmaps.get(site);
+        }
+    }
+
+    /**
+     * Tells whether or not an event of a site is sampled, without counting it.
+     * Uses the same ticks as {@link #sample(int, int)}, a site should be either sampled or ticked.
+     * @param site the id of the site.
+     * @param rate the sampling rate, a power of 2.
+     * @return true once every rate calls, per thread stripe.
+     */
+    public boolean tick(int site, int rate) {
+        return (++sampleTicks[getIndex(site)] & (rate - 1)) == 0;
+    }
+
+    /**
+     * @return the counts of all registered sites, summed over stripes.
+     */
+    public Snapshot snapshot() {
+        int currentSiteCount = siteCount;
+        String[] snapshotDescriptions = new String[currentSiteCount];
+        System.arraycopy(descriptions, 0, snapshotDescriptions, 0, currentSiteCount);
+        long[] snapshotCounts = new long[currentSiteCount];
+        int[] snapshotThreadCounts = new int[currentSiteCount];
+        for (int site = 0; site < currentSiteCount; site++) {
+            snapshotThreadCounts[site] = Long.bitCount(threadBitmaps.get(site));
+        }
+        for (int stripe = 0; stripe <= stripeMask; stripe++) {
+            int offset = stripe * maxSiteCount;
+            for (int site = 0; site < currentSiteCount; site++) {
+                snapshotCounts[site] += counts.get(offset + site);
+            }
+        }
+        return new Snapshot(snapshotDescriptions, snapshotCounts, snapshotThreadCounts, System.nanoTime() - creationNanoTime);
+    }
+
+    private int getIndex(int site) {
+        return ((int) Thread.currentThread().getId() & stripeMask) * maxSiteCount + site;
+    }
+
+    /**
+     * The counts of a table at a given time.
+     */
+    public static final class Snapshot {
+        private final String[] descriptions;
+        private final long[] counts;
+        private final int[] threadCounts;
+        private final long elapsedNanos;
+
+        private Snapshot(String[] descriptions, long[] counts, int[] threadCounts, long elapsedNanos) {
+            this.descriptions = descriptions;
+            this.counts = counts;
+            this.threadCounts = threadCounts;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getSiteCount() {
+            return counts.length;
+        }
+
+        public String getDescription(int site) {
+            return descriptions[site];
+        }
+
+        public long getCount(int site) {
+            return counts[site];
+        }
+
+        /**
+         * @param site the id of a site.
+         * @return the estimated number of distinct threads recorded for site since the table was created,
+         * 0 if threads are not recorded.
+         * @see CounterTable#recordThread(int)
+         */
+        public int getThreadCount(int site) {
+            return threadCounts[site];
+        }
+
+        /**
+         * @return the time covered by the counts, since the table was created or since an earlier snapshot.
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @param site the id of a site.
+         * @return the average number of events per second of site during the time covered by this snapshot.
+         */
+        public double getRatePerSecond(int site) {
+            return elapsedNanos == 0 ? 0 : counts[site] * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        }
+
+        /**
+         * @param earlier a snapshot of the same table, taken before this one.
+         * @return the counts between earlier and this snapshot.
+         */
+        public Snapshot since(Snapshot earlier) {
+            long[] deltaCounts = counts.clone();
+            for (int site = 0; site < earlier.counts.length; site++) {
+                deltaCounts[site] -= earlier.counts[site];
+            }
+            return new Snapshot(descriptions, deltaCounts, threadCounts, elapsedNanos - earlier.elapsedNanos);
+        }
+
+        /**
+         * @param maxSiteCount the maximum number of sites to return.
+         * @return the ids of the sites with the highest counts, highest first. Sites that never counted are ignored.
+         */
+        public List<Integer> getTopSites(int maxSiteCount) {
+            List<Integer> sites = new ArrayList<Integer>();
+            for (int site = 0; site < counts.length; site++) {
+                if (counts[site] != 0) {
+                    sites.add(site);
+                }
+            }
+            Collections.sort(sites, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer site1, Integer site2) {
+                    long count1 = counts[site1];
+                    long count2 = counts[site2];
+                    return count1 < count2 ? 1 : (count1 == count2 ? site1 - site2 : -1);
+                }
+            });
+            return sites.size() > maxSiteCount ? new ArrayList<Integer>(sites.subList(0, maxSiteCount)) : sites;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            for (int site : getTopSites(Integer.MAX_VALUE)) {
+                builder.append(counts[site]).append(' ').append(descriptions[site]).append('\n');
+            }
+            return builder.toString();
+        }
+    }
+}
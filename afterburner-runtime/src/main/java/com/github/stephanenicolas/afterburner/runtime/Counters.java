@@ -0,0 +1,31 @@
+package com.github.stephanenicolas.afterburner.runtime;
+
+/**
+ * The counter tables used by instrumentation rules. Injected code accesses them statically,
+ * e.g. {@code Counters.ALLOCATIONS.increment(site)}.
+ * <p>
+ * The maximum number of sites per table is 4096, it can be changed by the system property {@value #MAX_SITE_COUNT_PROPERTY}.
+ * </p>
+ * @author SNI
+ */
+public final class Counters {
+    /** The system property giving the maximum number of sites per table. */
+    public static final String MAX_SITE_COUNT_PROPERTY = "afterburner.counters.maxSites";
+    public static final int DEFAULT_MAX_SITE_COUNT = 4096;
+
+    /** Counts allocations, per allocation site. */
+    public static final CounterTable ALLOCATIONS = new CounterTable("allocations", getMaxSiteCount());
+    /** Counts exceptions caught, per handler, and thrown out of methods, per method. */
+    public static final CounterTable EXCEPTIONS = new CounterTable("exceptions", getMaxSiteCount());
+    /** Sums the stack depths of the exceptions counted in {@link #EXCEPTIONS}, estimated from samples. */
+    public static final CounterTable EXCEPTION_STACK_DEPTHS = new CounterTable("exception stack depths", getMaxSiteCount());
+    /** Counts writes per field, and can record the threads writing them. */
+    public static final CounterTable FIELD_WRITES = new CounterTable("field writes", getMaxSiteCount());
+
+    private Counters() {
+    }
+
+    private static int getMaxSiteCount() {
+        return Integer.getInteger(MAX_SITE_COUNT_PROPERTY, DEFAULT_MAX_SITE_COUNT);
+    }
+}
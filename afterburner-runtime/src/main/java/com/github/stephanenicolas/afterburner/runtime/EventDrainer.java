@@ -0,0 +1,115 @@
+package com.github.stephanenicolas.afterburner.runtime;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A background thread that drains an {@link EventRingBuffer} into an {@link EventFileWriter}, by batches.
+ * The header of the file is updated after each batch. When the buffer is empty, the drainer sleeps
+ * for a short while, producers are never signaled.
+ * If the file can't grow anymore, the failure is reported once on the standard error stream and the drainer
+ * keeps draining the buffer, discarding the events, so that producers don't fill it up.
+ * @author SNI
+ */
+public class EventDrainer extends Thread {
+    private static final int DEFAULT_BATCH_SIZE = 4096;
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final EventRingBuffer ringBuffer;
+    private final EventFileWriter writer;
+    private final int batchSize;
+    private volatile boolean running = true;
+    private volatile IOException closeException;
+    private volatile long discardedCount;
+    private EventHandler handler;
+
+    /**
+     * Creates a drainer, as a daemon thread. It needs to be started.
+     * @param ringBuffer the buffer to drain.
+     * @param writer the writer receiving the events, closed when the drainer stops.
+     */
+    public EventDrainer(EventRingBuffer ringBuffer, EventFileWriter writer) {
+        this(ringBuffer, writer, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Creates a drainer, as a daemon thread. It needs to be started.
+     * @param ringBuffer the buffer to drain.
+     * @param writer the writer receiving the events, closed when the drainer stops.
+     * @param batchSize the maximum number of events written between 2 updates of the file header.
+     */
+    public EventDrainer(EventRingBuffer ringBuffer, EventFileWriter writer, int batchSize) {
+        super("afterburner-event-drainer");
+        this.ringBuffer = ringBuffer;
+        this.writer = writer;
+        this.batchSize = batchSize;
+        this.handler = writer;
+        setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                if (drainBatch() == 0) {
+                    LockSupport.parkNanos(this, IDLE_NANOS);
+                }
+            }
+            // events published before stop
+            int drainedCount;
+            do {
+                drainedCount = drainBatch();
+            } while (drainedCount != 0);
+        } finally {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                closeException = e;
+            }
+        }
+    }
+
+    /**
+     * Stops draining, once all events published so far have been written, and closes the writer.
+     * @throws IOException if the writer can't be closed.
+     * @throws InterruptedException if interrupted while waiting for the drainer.
+     */
+    public void shutdown() throws IOException, InterruptedException {
+        running = false;
+        LockSupport.unpark(this);
+        join();
+        if (closeException != null) {
+            throw closeException;
+        }
+    }
+
+    /**
+     * @return the number of events drained but not written, because the file couldn't grow.
+     */
+    public long getDiscardedCount() {
+        return discardedCount;
+    }
+
+    private int drainBatch() {
+        int drainedCount;
+        try {
+            drainedCount = ringBuffer.drain(handler, batchSize);
+        } catch (IllegalStateException e) {
+            System.err.println("Afterburner probes: impossible to write events, next events are discarded: " + e);
+            writer.flush();
+            handler = new EventHandler() {
+                @Override
+                public void onEvent(long timestamp, long threadId, int eventId, long value) {
+                    discardedCount++;
+                }
+            };
+            // the event that failed is still in the buffer, it is discarded with the rest of the batch
+            return drainBatch();
+        }
+        if (drainedCount != 0) {
+            writer.flush();
+        }
+        return drainedCount;
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.stephanenicolas.afterburner.runtime;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Reads the events written by an {@link EventFileWriter}.
+ * @author SNI
+ */
+public final class EventFileReader {
+    private EventFileReader() {
+    }
+
+    /**
+     * Passes all events of a file to a handler.
+     * @param file a file written by an {@link EventFileWriter}.
+     * @param handler receives the events, in the order they have been written.
+     * @return the number of events read.
+     * @throws IOException if the file can't be read or is not an event file.
+     */
+    public static long read(File file, EventHandler handler) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (input.readInt() != EventFileWriter.MAGIC) {
+                throw new IOException("Not an event file: " + file);
+            }
+            int version = input.readInt();
+            if (version != EventFileWriter.VERSION) {
+                throw new IOException("Unsupported event file version " + version + ": " + file);
+            }
+            long recordCount = input.readLong();
+            for (long indexRecord = 0; indexRecord < recordCount; indexRecord++) {
+                long timestamp = input.readLong();
+                long threadId = input.readLong();
+                int eventId = (int) input.readLong();
+                handler.onEvent(timestamp, threadId, eventId, input.readLong());
+            }
+            return recordCount;
+        } finally {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.github.stephanenicolas.afterburner.runtime;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes events into a memory-mapped file, as binary records.
+ * <p>
+ * The file starts with a header : a magic number (int), the format version (int) and the number of records (long).
+ * Each record is then 32 bytes : timestamp (long), thread id (long), event id (long) and value (long),
+ * in big endian order. The file is mapped and grows by chunks, the number of records in the header
+ * is updated by {@link #flush()}, so that a reader ignores the unused end of the last chunk.
+ * </p>
+ * Not thread safe, it is meant to be used by the single consumer of an {@link EventRingBuffer}.
+ * @author SNI
+ * @see EventFileReader
+ */
+public class EventFileWriter implements EventHandler {
+    static final int MAGIC = 0xAFB1E7;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = EventRingBuffer.RECORD_LONGS * (Long.SIZE / Byte.SIZE);
+    static final int INDEX_RECORD_COUNT = 8;
+
+    private static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int chunkSize;
+    private final MappedByteBuffer header;
+    private MappedByteBuffer chunk;
+    private long chunkPosition;
+    private long recordCount;
+
+    /**
+     * Creates a writer with chunks of 1 MB.
+     * @param file the file to write, its content is replaced.
+     * @throws IOException if the file can't be mapped.
+     */
+    public EventFileWriter(File file) throws IOException {
+        this(file, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a writer.
+     * @param file the file to write, its content is replaced.
+     * @param chunkSize the number of bytes mapped at once, rounded down to a multiple of the record size.
+     * @throws IOException if the file can't be mapped.
+     */
+    public EventFileWriter(File file, int chunkSize) throws IOException {
+        if (chunkSize < RECORD_SIZE) {
+            throw new IllegalArgumentException("Chunks must be able to contain a record: " + chunkSize);
+        }
+        this.chunkSize = chunkSize - chunkSize % RECORD_SIZE;
+        this.file = new RandomAccessFile(file, "rw");
+        boolean mapped = false;
+        try {
+            this.file.setLength(0);
+            channel = this.file.getChannel();
+            header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putLong(0);
+            chunkPosition = HEADER_SIZE;
+            chunk = channel.map(FileChannel.MapMode.READ_WRITE, chunkPosition, this.chunkSize);
+            mapped = true;
+        } finally {
+            if (!mapped) {
+                this.file.close();
+            }
+        }
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public void onEvent(long timestamp, long threadId, int eventId, long value) {
+        if (!chunk.hasRemaining()) {
+            try {
+                chunkPosition += chunkSize;
+                chunk = channel.map(FileChannel.MapMode.READ_WRITE, chunkPosition, chunkSize);
+            } catch (IOException e) {
+                throw new IllegalStateException("Impossible to grow event file", e);
+            }
+        }
+        chunk.putLong(timestamp);
+        chunk.putLong(threadId);
+        chunk.putLong(eventId);
+        chunk.putLong(value);
+        recordCount++;
+    }
+
+    /**
+     * Publishes the records written so far in the header. Pages are written to disk by the OS.
+     */
+    public void flush() {
+        header.putLong(INDEX_RECORD_COUNT, recordCount);
+    }
+
+    /**
+     * Flushes the records, forces them to disk and closes the file.
+     * @throws IOException if the file can't be written.
+     */
+    public void close() throws IOException {
+        try {
+            flush();
+            chunk.force();
+            header.force();
+        } finally {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.github.stephanenicolas.afterburner.runtime;
+
+/**
+ * Receives the events drained from an {@link EventRingBuffer}.
+ * @author SNI
+ */
+public interface EventHandler {
+    /**
+     * Called once per event, in the order events have been claimed in the ring buffer.
+     * @param timestamp the {@link System#nanoTime()} of the event.
+     * @param threadId the id of the thread that emitted the event.
+     * @param eventId the id of the event, chosen by the injected code.
+     * @param value the value of the event.
+     */
+    void onEvent(long timestamp, long threadId, int eventId, long value);
+}
@@ -0,0 +1,113 @@
+package com.github.stephanenicolas.afterburner.runtime;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, multi-producer, single-consumer ring buffer of fixed-size events.
+ * All events are preallocated as primitive records in a single array : emitting an event
+ * never allocates, never blocks and never takes a lock.
+ * <p>
+ * Producers claim a slot with a compare-and-set on the sequence of the next slot, write the event,
+ * then publish the slot. If the buffer is full, the event is dropped and counted, producers never wait
+ * for the consumer. The consumer drains published events in order, it stops at the first slot
+ * that is claimed but not yet published.
+ * </p>
+ * @author SNI
+ */
+public class EventRingBuffer {
+    /** Number of longs of an event : timestamp, thread id, event id and value. */
+    static final int RECORD_LONGS = 4;
+
+    private static final int INDEX_THREAD_ID = 1;
+    private static final int INDEX_EVENT_ID = 2;
+    private static final int INDEX_VALUE = 3;
+
+    private final int capacity;
+    private final int mask;
+    private final long[] records;
+    /** Per slot, the sequence of the event it contains plus one, 0 if no event has been published in it. */
+    private final AtomicLongArray publishedSequences;
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile long consumedSequence;
+
+    /**
+     * Creates a ring buffer.
+     * @param capacity the maximum number of events not yet drained, must be a power of 2.
+     */
+    public EventRingBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a positive power of 2: " + capacity);
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.records = new long[capacity * RECORD_LONGS];
+        this.publishedSequences = new AtomicLongArray(capacity);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of events dropped because the buffer was full.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Adds an event, stamped with the current time and thread. Can be called from any thread.
+     * @param eventId the id of the event.
+     * @param value the value of the event.
+     * @return false if the buffer is full, in which case the event is dropped.
+     */
+    public boolean offer(int eventId, long value) {
+        long sequence;
+        do {
+            sequence = nextSequence.get();
+            if (sequence - consumedSequence >= capacity) {
+                droppedCount.incrementAndGet();
+                return false;
+            }
+        } while (!nextSequence.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) sequence & mask;
+        int offset = slot * RECORD_LONGS;
+        records[offset] = System.nanoTime();
+        records[offset + INDEX_THREAD_ID] = Thread.currentThread().getId();
+        records[offset + INDEX_EVENT_ID] = eventId;
+        records[offset + INDEX_VALUE] = value;
+        // ordered write : the record is visible to the consumer before the slot is
+        publishedSequences.lazySet(slot, sequence + 1);
+        return true;
+    }
+
+    /**
+     * Passes published events to a handler, and frees their slots. Must be called by a single thread at a time.
+     * @param handler receives the events.
+     * @param maxEventCount the maximum number of events to drain.
+     * @return the number of events drained.
+     */
+    public int drain(EventHandler handler, int maxEventCount) {
+        long sequence = consumedSequence;
+        int drainedCount = 0;
+        try {
+            while (drainedCount < maxEventCount) {
+                int slot = (int) sequence & mask;
+                if (publishedSequences.get(slot) != sequence + 1) {
+                    break;
+                }
+                int offset = slot * RECORD_LONGS;
+                handler.onEvent(records[offset], records[offset + INDEX_THREAD_ID], (int) records[offset + INDEX_EVENT_ID], records[offset + INDEX_VALUE]);
+                sequence++;
+                drainedCount++;
+            }
+        } finally {
+            // frees the drained slots for producers, once per batch
+            consumedSequence = sequence;
+        }
+        return drainedCount;
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.stephanenicolas.afterburner.runtime;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Flags the fields that are candidates to padding or striping : fields written by many threads at high rates.
+ * Uses the snapshots of {@link Counters#FIELD_WRITES}, with writer threads recorded.
+ * @author SNI
+ */
+public final class FieldWriteReport {
+    private FieldWriteReport() {
+    }
+
+    /**
+     * @param snapshot a snapshot of field writes, typically the difference of 2 snapshots, see {@link CounterTable.Snapshot#since}.
+     * @param minWriterThreadCount the minimum number of distinct writer threads of a flagged field.
+     * @param minWritesPerSecond the minimum write rate of a flagged field.
+     * @return a line per flagged field, like "12000.0 writes/s by 8 threads: com.foo.Bar.count", highest rates first.
+     */
+    public static List<String> findContendedFields(CounterTable.Snapshot snapshot, int minWriterThreadCount, double minWritesPerSecond) {
+        List<String> lines = new ArrayList<String>();
+        for (int site : snapshot.getTopSites(Integer.MAX_VALUE)) {
+            double writesPerSecond = snapshot.getRatePerSecond(site);
+            if (writesPerSecond < minWritesPerSecond) {
+                // sites are sorted by count, hence by rate
+                break;
+            }
+            int writerThreadCount = snapshot.getThreadCount(site);
+            if (writerThreadCount >= minWriterThreadCount) {
+                lines.add(writesPerSecond + " writes/s by " + writerThreadCount + " threads: " + snapshot.getDescription(site));
+            }
+        }
+        return lines;
+    }
+}
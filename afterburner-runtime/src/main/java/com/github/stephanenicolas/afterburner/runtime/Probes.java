@@ -0,0 +1,123 @@
+package com.github.stephanenicolas.afterburner.runtime;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Entry point of injected probes : a single static call that records an event
+ * in an {@link EventRingBuffer}, drained in the background into a file by an {@link EventDrainer}.
+ * <p>
+ * Until {@link #start(File, int)} is called, {@link #emit(int, long)} does nothing.
+ * Probes can also be started when this class is initialized, by setting the system property
+ * {@value #FILE_PROPERTY} to the path of the event file. They are then stopped by a shutdown hook.
+ * </p>
+ * Emitting an event never allocates, blocks nor locks. Events emitted while the ring buffer is full
+ * are dropped, see {@link #getDroppedCount()}, and so are events emitted while probes are being stopped.
+ * @author SNI
+ */
+public final class Probes {
+    /** The system property giving the event file to start probes with. */
+    public static final String FILE_PROPERTY = "afterburner.probes.file";
+    /** The system property giving the capacity of the ring buffer started with {@link #FILE_PROPERTY}. */
+    public static final String CAPACITY_PROPERTY = "afterburner.probes.capacity";
+    public static final int DEFAULT_CAPACITY = 65536;
+
+    private static volatile EventRingBuffer ringBuffer;
+    private static EventDrainer drainer;
+
+    static {
+        String fileName = System.getProperty(FILE_PROPERTY);
+        if (fileName != null) {
+            try {
+                start(new File(fileName), Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY));
+                Runtime.getRuntime().addShutdownHook(new Thread("afterburner-probes-shutdown") {
+                    @Override
+                    public void run() {
+                        stopQuietly();
+                    }
+                });
+            } catch (IOException e) {
+                System.err.println("Afterburner probes disabled, impossible to write events into " + fileName + ": " + e);
+            }
+        }
+    }
+
+    private Probes() {
+    }
+
+    /**
+     * Records an event with no value.
+     * @param eventId the id of the event.
+     */
+    public static void emit(int eventId) {
+        emit(eventId, 0);
+    }
+
+    /**
+     * Records an event.
+     * @param eventId the id of the event.
+     * @param value the value of the event.
+     */
+    public static void emit(int eventId, long value) {
+        EventRingBuffer currentRingBuffer = ringBuffer;
+        if (currentRingBuffer != null) {
+            currentRingBuffer.offer(eventId, value);
+        }
+    }
+
+    /**
+     * @return true if probes record events.
+     */
+    public static boolean isStarted() {
+        return ringBuffer != null;
+    }
+
+    /**
+     * @return the number of events dropped since probes have been started, because the ring buffer was full.
+     */
+    public static long getDroppedCount() {
+        EventRingBuffer currentRingBuffer = ringBuffer;
+        return currentRingBuffer == null ? 0 : currentRingBuffer.getDroppedCount();
+    }
+
+    /**
+     * Starts recording events into a file.
+     * @param file the event file, its content is replaced.
+     * @param capacity the capacity of the ring buffer, a power of 2.
+     * @throws IOException if the file can't be mapped.
+     */
+    public static synchronized void start(File file, int capacity) throws IOException {
+        if (ringBuffer != null) {
+            throw new IllegalStateException("Probes are already started.");
+        }
+        EventRingBuffer newRingBuffer = new EventRingBuffer(capacity);
+        drainer = new EventDrainer(newRingBuffer, new EventFileWriter(file));
+        drainer.start();
+        ringBuffer = newRingBuffer;
+    }
+
+    /**
+     * Stops recording events, once all events recorded so far have been written into the file.
+     * @throws IOException if the file can't be written.
+     * @throws InterruptedException if interrupted while waiting for the events to be written.
+     */
+    public static synchronized void stop() throws IOException, InterruptedException {
+        if (ringBuffer == null) {
+            return;
+        }
+        ringBuffer = null;
+        EventDrainer stoppedDrainer = drainer;
+        drainer = null;
+        stoppedDrainer.shutdown();
+    }
+
+    private static void stopQuietly() {
+        try {
+            stop();
+        } catch (IOException e) {
+            System.err.println("Afterburner probes: impossible to write events: " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
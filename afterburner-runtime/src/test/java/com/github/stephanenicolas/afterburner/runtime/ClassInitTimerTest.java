@@ -0,0 +1,93 @@
+package com.github.stephanenicolas.afterburner.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class ClassInitTimerTest {
+
+    @Test
+    public void testGetFoldedStacks_attributesNestedTimeToNestedClasses() throws Exception {
+        // GIVEN
+        ClassInitTimer timer = new ClassInitTimer(8);
+
+        // WHEN
+        timer.enter("Outer");
+        timer.enter("Inner");
+        Thread.sleep(20);
+        timer.exit();
+        timer.enter("Sibling");
+        timer.exit();
+        timer.exit();
+        List<String> foldedStacks = timer.getFoldedStacks();
+
+        // THEN
+        assertEquals(foldedStacks.toString(), 3, foldedStacks.size());
+        assertTrue(foldedStacks.get(0).startsWith("Outer "));
+        assertTrue(foldedStacks.get(1).startsWith("Outer;Inner "));
+        assertTrue(foldedStacks.get(2).startsWith("Outer;Sibling "));
+        long outerSelfMicros = Long.parseLong(foldedStacks.get(0).substring("Outer ".length()));
+        long innerSelfMicros = Long.parseLong(foldedStacks.get(1).substring("Outer;Inner ".length()));
+        assertTrue(innerSelfMicros >= 20000);
+        assertTrue(outerSelfMicros < innerSelfMicros);
+    }
+
+    @Test
+    public void testGetSlowestInitializations() throws Exception {
+        // GIVEN
+        ClassInitTimer timer = new ClassInitTimer(8);
+        timer.enter("Fast");
+        timer.exit();
+        timer.enter("Slow");
+        Thread.sleep(10);
+        timer.exit();
+        timer.enter("Incomplete");
+
+        // WHEN
+        List<String> slowestInitializations = timer.getSlowestInitializations(1);
+
+        // THEN
+        assertEquals(1, slowestInitializations.size());
+        assertTrue(slowestInitializations.get(0), slowestInitializations.get(0).endsWith(" ms total: Slow"));
+    }
+
+    @Test
+    public void testEnter_dropsInitializationsBeyondCapacity() throws Exception {
+        // GIVEN
+        ClassInitTimer timer = new ClassInitTimer(1);
+
+        // WHEN
+        timer.enter("Outer");
+        timer.enter("Dropped");
+        timer.enter("DroppedToo");
+        timer.exit();
+        timer.exit();
+        timer.exit();
+
+        // THEN
+        assertEquals(2, timer.getDroppedCount());
+        assertEquals(1, timer.getFoldedStacks().size());
+        assertTrue(timer.getFoldedStacks().get(0).startsWith("Outer "));
+    }
+
+    @Test
+    public void testEnter_dropsInitializationsNestedTooDeeply() throws Exception {
+        // GIVEN
+        ClassInitTimer timer = new ClassInitTimer(ClassInitTimer.MAX_DEPTH + 2);
+
+        // WHEN
+        for (int depth = 0; depth < ClassInitTimer.MAX_DEPTH + 2; depth++) {
+            timer.enter("Class" + depth);
+        }
+        for (int depth = 0; depth < ClassInitTimer.MAX_DEPTH + 2; depth++) {
+            timer.exit();
+        }
+
+        // THEN
+        assertEquals(2, timer.getDroppedCount());
+        assertEquals(ClassInitTimer.MAX_DEPTH, timer.getFoldedStacks().size());
+    }
+}
@@ -0,0 +1,166 @@
+package com.github.stephanenicolas.afterburner.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CounterTableTest {
+
+    @Test
+    public void testRegister_overflow() {
+        // GIVEN
+        CounterTable table = new CounterTable("test", 2, 1);
+
+        // WHEN
+        int firstSite = table.register("first");
+        int secondSite = table.register("second");
+
+        // THEN
+        assertEquals(1, firstSite);
+        assertEquals(0, secondSite);
+        assertEquals(2, table.getSiteCount());
+        assertEquals(CounterTable.OVERFLOW_SITE_DESCRIPTION, table.snapshot().getDescription(0));
+    }
+
+    @Test
+    public void testIncrementAndAdd() {
+        // GIVEN
+        CounterTable table = new CounterTable("test", 4, 2);
+        int site = table.register("site");
+
+        // WHEN
+        table.increment(site);
+        table.add(site, 5);
+
+        // THEN
+        CounterTable.Snapshot snapshot = table.snapshot();
+        assertEquals("site", snapshot.getDescription(site));
+        assertEquals(6, snapshot.getCount(site));
+    }
+
+    @Test
+    public void testSample() {
+        // GIVEN
+        CounterTable table = new CounterTable("test", 4, 1);
+        int site = table.register("site");
+
+        // WHEN
+        for (int indexEvent = 0; indexEvent < 35; indexEvent++) {
+            table.sample(site, 8);
+        }
+
+        // THEN
+        assertEquals(32, table.snapshot().getCount(site));
+    }
+
+    @Test
+    public void testSnapshot_mergesStripes() throws Exception {
+        // GIVEN
+        final CounterTable table = new CounterTable("test", 4, 8);
+        final int site = table.register("site");
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int indexThread = 0; indexThread < 8; indexThread++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int indexEvent = 0; indexEvent < 1000; indexEvent++) {
+                        table.increment(site);
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+
+        // WHEN
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // THEN
+        assertEquals(8000, table.snapshot().getCount(site));
+    }
+
+    @Test
+    public void testSnapshot_sinceAndTopSites() throws Exception {
+        // GIVEN
+        CounterTable table = new CounterTable("test", 4, 1);
+        int rareSite = table.register("rare");
+        int frequentSite = table.register("frequent");
+        table.add(rareSite, 10);
+        CounterTable.Snapshot earlier = table.snapshot();
+        Thread.sleep(1);
+
+        // WHEN
+        table.add(rareSite, 1);
+        table.add(frequentSite, 3);
+        CounterTable.Snapshot delta = table.snapshot().since(earlier);
+
+        // THEN
+        assertEquals(1, delta.getCount(rareSite));
+        assertEquals(3, delta.getCount(frequentSite));
+        assertEquals(Arrays.asList(frequentSite, rareSite), delta.getTopSites(2));
+        assertEquals(Arrays.asList(frequentSite), delta.getTopSites(1));
+        assertTrue(delta.getElapsedNanos() > 0);
+        assertTrue(delta.getRatePerSecond(frequentSite) > delta.getRatePerSecond(rareSite));
+    }
+
+    @Test
+    public void testRegister_sameDescriptionGetsAnotherSite() {
+        // GIVEN
+        CounterTable table = new CounterTable("test", 4, 1);
+        int site = table.register("site");
+
+        // WHEN
+        int otherSite = table.register("site");
+
+        // THEN
+        assertTrue(site != otherSite);
+        assertEquals(3, table.getSiteCount());
+    }
+
+    @Test
+    public void testRegisterShared_sameDescriptionSharesSite() {
+        // GIVEN
+        CounterTable table = new CounterTable("test", 4, 1);
+        int site = table.registerShared("site");
+
+        // WHEN
+        int sameSite = table.registerShared("site");
+
+        // THEN
+        assertEquals(site, sameSite);
+        assertTrue(site != table.register("site"));
+        assertEquals(3, table.getSiteCount());
+    }
+
+    @Test
+    public void testRecordThread() throws Exception {
+        // GIVEN
+        final CounterTable table = new CounterTable("test", 4, 1);
+        final int site = table.register("site");
+        Thread otherThread = new Thread() {
+            @Override
+            public void run() {
+                table.recordThread(site);
+            }
+        };
+
+        // WHEN
+        table.recordThread(site);
+        table.recordThread(site);
+        otherThread.start();
+        otherThread.join();
+
+        // THEN
+        int threadCount = table.snapshot().getThreadCount(site);
+        // thread ids can collide modulo 64
+        assertTrue(threadCount == 1 && (otherThread.getId() - Thread.currentThread().getId()) % 64 == 0 || threadCount == 2);
+        assertEquals(0, table.snapshot().getThreadCount(0));
+    }
+}
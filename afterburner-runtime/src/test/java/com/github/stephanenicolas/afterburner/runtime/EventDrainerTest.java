@@ -0,0 +1,84 @@
+package com.github.stephanenicolas.afterburner.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.stephanenicolas.afterburner.runtime.EventRingBufferTest.RecordingHandler;
+
+public class EventDrainerTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("events", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testShutdown_drainsAllEvents() throws Exception {
+        // GIVEN
+        EventRingBuffer ringBuffer = new EventRingBuffer(8);
+        EventDrainer drainer = new EventDrainer(ringBuffer, new EventFileWriter(file), 2);
+        for (int indexEvent = 0; indexEvent < 5; indexEvent++) {
+            ringBuffer.offer(indexEvent, 0);
+        }
+
+        // WHEN
+        drainer.start();
+        drainer.shutdown();
+
+        // THEN
+        assertEquals(5, EventFileReader.read(file, new RecordingHandler()));
+        assertEquals(0, drainer.getDiscardedCount());
+    }
+
+    @Test
+    public void testShutdown_keepsDrainingWhenTheFileCantGrow() throws Exception {
+        // GIVEN
+        EventRingBuffer ringBuffer = new EventRingBuffer(8);
+        EventDrainer drainer = new EventDrainer(ringBuffer, new FailingEventFileWriter(file, 2));
+        for (int indexEvent = 0; indexEvent < 5; indexEvent++) {
+            ringBuffer.offer(indexEvent, 0);
+        }
+
+        // WHEN
+        drainer.start();
+        drainer.shutdown();
+
+        // THEN
+        assertEquals(2, EventFileReader.read(file, new RecordingHandler()));
+        assertEquals(3, drainer.getDiscardedCount());
+        for (int indexEvent = 0; indexEvent < 8; indexEvent++) {
+            assertTrue(ringBuffer.offer(indexEvent, 0));
+        }
+    }
+
+    private static class FailingEventFileWriter extends EventFileWriter {
+        private int remainingEventCount;
+
+        FailingEventFileWriter(File file, int writtenEventCount) throws IOException {
+            super(file);
+            this.remainingEventCount = writtenEventCount;
+        }
+
+        @Override
+        public void onEvent(long timestamp, long threadId, int eventId, long value) {
+            if (remainingEventCount-- == 0) {
+                throw new IllegalStateException("Impossible to grow event file");
+            }
+            super.onEvent(timestamp, threadId, eventId, value);
+        }
+    }
+}
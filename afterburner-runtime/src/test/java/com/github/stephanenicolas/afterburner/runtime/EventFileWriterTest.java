@@ -0,0 +1,65 @@
+package com.github.stephanenicolas.afterburner.runtime;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.stephanenicolas.afterburner.runtime.EventRingBufferTest.RecordingHandler;
+
+public class EventFileWriterTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("events", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testWriteAndRead_acrossChunks() throws Exception {
+        // GIVEN
+        EventFileWriter writer = new EventFileWriter(file, 3 * EventFileWriter.RECORD_SIZE);
+        for (int indexEvent = 0; indexEvent < 10; indexEvent++) {
+            writer.onEvent(indexEvent * 100, 7, indexEvent, -indexEvent);
+        }
+
+        // WHEN
+        writer.close();
+
+        // THEN
+        RecordingHandler handler = new RecordingHandler();
+        assertEquals(10, EventFileReader.read(file, handler));
+        assertEquals(10, handler.eventIds.size());
+        assertEquals(900L, (long) handler.timestamps.get(9));
+        assertEquals(7L, (long) handler.threadIds.get(9));
+        assertEquals(9, (int) handler.eventIds.get(9));
+        assertEquals(-9L, (long) handler.values.get(9));
+    }
+
+    @Test
+    public void testRead_onlyFlushedRecords() throws Exception {
+        // GIVEN
+        EventFileWriter writer = new EventFileWriter(file);
+        writer.onEvent(0, 0, 1, 0);
+        writer.flush();
+        writer.onEvent(0, 0, 2, 0);
+
+        // WHEN
+        RecordingHandler handler = new RecordingHandler();
+        long readCount = EventFileReader.read(file, handler);
+
+        // THEN
+        writer.close();
+        assertEquals(1, readCount);
+        assertEquals(1, (int) handler.eventIds.get(0));
+    }
+}
@@ -0,0 +1,152 @@
+package com.github.stephanenicolas.afterburner.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class EventRingBufferTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_capacityNotPowerOf2() {
+        // GIVEN
+        // WHEN
+        new EventRingBuffer(3);
+
+        // THEN
+    }
+
+    @Test
+    public void testOfferAndDrain() {
+        // GIVEN
+        EventRingBuffer ringBuffer = new EventRingBuffer(4);
+        ringBuffer.offer(1, 10);
+        ringBuffer.offer(2, 20);
+        RecordingHandler handler = new RecordingHandler();
+
+        // WHEN
+        int drainedCount = ringBuffer.drain(handler, Integer.MAX_VALUE);
+
+        // THEN
+        assertEquals(2, drainedCount);
+        assertEquals(2, handler.eventIds.size());
+        assertEquals(1, (int) handler.eventIds.get(0));
+        assertEquals(10L, (long) handler.values.get(0));
+        assertEquals(2, (int) handler.eventIds.get(1));
+        assertEquals(20L, (long) handler.values.get(1));
+        assertEquals(Thread.currentThread().getId(), (long) handler.threadIds.get(0));
+        assertTrue(handler.timestamps.get(0) <= handler.timestamps.get(1));
+    }
+
+    @Test
+    public void testOffer_dropsWhenFull() {
+        // GIVEN
+        EventRingBuffer ringBuffer = new EventRingBuffer(2);
+        ringBuffer.offer(1, 0);
+        ringBuffer.offer(2, 0);
+
+        // WHEN
+        boolean offered = ringBuffer.offer(3, 0);
+
+        // THEN
+        assertFalse(offered);
+        assertEquals(1, ringBuffer.getDroppedCount());
+        ringBuffer.drain(new RecordingHandler(), 1);
+        assertTrue(ringBuffer.offer(4, 0));
+    }
+
+    @Test
+    public void testDrain_limitedBatchAndWrapAround() {
+        // GIVEN
+        EventRingBuffer ringBuffer = new EventRingBuffer(2);
+        RecordingHandler handler = new RecordingHandler();
+
+        // WHEN
+        for (int indexEvent = 0; indexEvent < 5; indexEvent++) {
+            ringBuffer.offer(indexEvent, indexEvent);
+            assertEquals(1, ringBuffer.drain(handler, 1));
+        }
+
+        // THEN
+        assertEquals(5, handler.eventIds.size());
+        assertEquals(4, (int) handler.eventIds.get(4));
+        assertEquals(0, ringBuffer.drain(handler, 1));
+    }
+
+    @Test
+    public void testOffer_multipleProducers() throws Exception {
+        // GIVEN
+        final EventRingBuffer ringBuffer = new EventRingBuffer(1024);
+        final int threadCount = 4;
+        final int eventCountPerThread = 10000;
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int indexThread = 0; indexThread < threadCount; indexThread++) {
+            final int eventId = indexThread;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int indexEvent = 0; indexEvent < eventCountPerThread; indexEvent++) {
+                        while (!ringBuffer.offer(eventId, indexEvent)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        final Map<Integer, Long> nextValueByEventId = new HashMap<Integer, Long>();
+        EventHandler handler = new EventHandler() {
+            @Override
+            public void onEvent(long timestamp, long threadId, int eventId, long value) {
+                Long expectedValue = nextValueByEventId.get(eventId);
+                assertEquals(expectedValue == null ? 0L : expectedValue.longValue(), value);
+                nextValueByEventId.put(eventId, value + 1);
+            }
+        };
+
+        // WHEN
+        startLatch.countDown();
+        long drainedCount = 0;
+        while (drainedCount < threadCount * eventCountPerThread) {
+            drainedCount += ringBuffer.drain(handler, Integer.MAX_VALUE);
+        }
+
+        // THEN
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(threadCount, nextValueByEventId.size());
+        for (Long nextValue : nextValueByEventId.values()) {
+            assertEquals(eventCountPerThread, nextValue.longValue());
+        }
+    }
+
+    static class RecordingHandler implements EventHandler {
+        final List<Long> timestamps = new ArrayList<Long>();
+        final List<Long> threadIds = new ArrayList<Long>();
+        final List<Integer> eventIds = new ArrayList<Integer>();
+        final List<Long> values = new ArrayList<Long>();
+
+        @Override
+        public void onEvent(long timestamp, long threadId, int eventId, long value) {
+            timestamps.add(timestamp);
+            threadIds.add(threadId);
+            eventIds.add(eventId);
+            values.add(value);
+        }
+    }
+}
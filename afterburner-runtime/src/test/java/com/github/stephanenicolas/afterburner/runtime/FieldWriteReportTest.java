@@ -0,0 +1,33 @@
+package com.github.stephanenicolas.afterburner.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class FieldWriteReportTest {
+
+    @Test
+    public void testFindContendedFields() throws Exception {
+        // GIVEN
+        CounterTable table = new CounterTable("test", 8, 1);
+        int sharedSite = table.register("Foo.shared");
+        int privateSite = table.register("Foo.private");
+        int rareSite = table.register("Foo.rare");
+        table.add(sharedSite, 1000000);
+        table.recordThread(sharedSite);
+        table.add(privateSite, 1000000);
+        table.add(rareSite, 1);
+        table.recordThread(rareSite);
+        Thread.sleep(1);
+
+        // WHEN
+        List<String> contendedFields = FieldWriteReport.findContendedFields(table.snapshot(), 1, 100000);
+
+        // THEN
+        assertEquals(contendedFields.toString(), 1, contendedFields.size());
+        assertTrue(contendedFields.get(0).endsWith(" writes/s by 1 threads: Foo.shared"));
+    }
+}
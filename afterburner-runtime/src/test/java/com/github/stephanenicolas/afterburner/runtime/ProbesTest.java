@@ -0,0 +1,70 @@
+package com.github.stephanenicolas.afterburner.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.stephanenicolas.afterburner.runtime.EventRingBufferTest.RecordingHandler;
+
+public class ProbesTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("probes", ".bin");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Probes.stop();
+        file.delete();
+    }
+
+    @Test
+    public void testEmit_notStarted() throws Exception {
+        // GIVEN
+        // WHEN
+        Probes.emit(1, 2);
+
+        // THEN
+        assertFalse(Probes.isStarted());
+        assertEquals(0, Probes.getDroppedCount());
+    }
+
+    @Test
+    public void testEmit_writtenOnStop() throws Exception {
+        // GIVEN
+        Probes.start(file, 1024);
+
+        // WHEN
+        for (int indexEvent = 0; indexEvent < 500; indexEvent++) {
+            Probes.emit(indexEvent, indexEvent * 2);
+        }
+        Probes.emit(-1);
+        Probes.stop();
+
+        // THEN
+        assertFalse(Probes.isStarted());
+        RecordingHandler handler = new RecordingHandler();
+        assertEquals(501, EventFileReader.read(file, handler));
+        assertTrue(handler.eventIds.contains(-1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testStart_twice() throws Exception {
+        // GIVEN
+        Probes.start(file, 2);
+
+        // WHEN
+        Probes.start(file, 2);
+
+        // THEN
+    }
+}